@@ -0,0 +1,42 @@
+-- Migration: per-course summary for catalog cards + keyset index on courses
+-- Ứng dụng cập nhật bảng này trong cùng transaction khi module/lesson/asset thay đổi (CourseCardSummaryService)
+IF OBJECT_ID('dbo.course_card_summaries', 'U') IS NULL
+BEGIN
+    CREATE TABLE dbo.course_card_summaries (
+        course_id BIGINT NOT NULL PRIMARY KEY,
+        lessons_count INT NOT NULL CONSTRAINT df_course_card_summaries_lessons DEFAULT 0,
+        preview_video_url NVARCHAR(1024) NULL,
+        updated_at DATETIME2 NOT NULL CONSTRAINT df_course_card_summaries_updated DEFAULT SYSUTCDATETIME(),
+        CONSTRAINT fk_course_card_summaries_course FOREIGN KEY (course_id) REFERENCES dbo.courses(id) ON DELETE CASCADE
+    );
+END;
+
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'ix_courses_status_created_id' AND object_id = OBJECT_ID('dbo.courses'))
+BEGIN
+    CREATE INDEX ix_courses_status_created_id ON dbo.courses(status, created_at DESC, id DESC);
+END;
+
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'ix_courses_created_id' AND object_id = OBJECT_ID('dbo.courses'))
+BEGIN
+    CREATE INDEX ix_courses_created_id ON dbo.courses(created_at DESC, id DESC);
+END;
+
+-- Backfill cho dữ liệu hiện có
+MERGE dbo.course_card_summaries AS t
+USING (
+    SELECT c.id AS course_id,
+           (SELECT COUNT(*)
+              FROM dbo.lessons l JOIN dbo.modules m ON l.module_id = m.id
+             WHERE m.course_id = c.id) AS lessons_count,
+           (SELECT TOP 1 a.url
+              FROM dbo.lesson_assets a
+              JOIN dbo.lessons l ON a.lesson_id = l.id
+              JOIN dbo.modules m ON l.module_id = m.id
+             WHERE m.course_id = c.id AND a.kind = N'video'
+             ORDER BY a.id) AS preview_video_url
+      FROM dbo.courses c
+) AS s ON t.course_id = s.course_id
+WHEN MATCHED THEN
+    UPDATE SET lessons_count = s.lessons_count, preview_video_url = s.preview_video_url, updated_at = SYSUTCDATETIME()
+WHEN NOT MATCHED THEN
+    INSERT (course_id, lessons_count, preview_video_url) VALUES (s.course_id, s.lessons_count, s.preview_video_url);
@@ -0,0 +1,7 @@
+-- Hỗ trợ truy vấn đánh giá quyền thi (StudentExamService.evaluateAccess):
+-- đếm lượt, tìm attempt đang làm và lần nộp gần nhất theo (quiz_id, user_id) chỉ bằng index seek.
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'ix_quiz_attempts_quiz_user' AND object_id = OBJECT_ID('dbo.quiz_attempts'))
+BEGIN
+    CREATE INDEX ix_quiz_attempts_quiz_user ON dbo.quiz_attempts(quiz_id, user_id, status)
+        INCLUDE (started_at, finished_at, ends_at);
+END;
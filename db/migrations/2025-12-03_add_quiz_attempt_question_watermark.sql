@@ -0,0 +1,7 @@
+-- Thứ tự câu hỏi/lựa chọn của attempt mới được tính lại từ (attempt id, seed) thay vì lưu từng dòng
+-- trong dbo.quiz_attempt_items. question_watermark là id câu hỏi lớn nhất lúc bắt đầu làm bài, để câu hỏi
+-- thêm vào đề sau đó không xuất hiện trong attempt đang làm. NULL = attempt cũ, vẫn đọc từ quiz_attempt_items.
+IF COL_LENGTH('dbo.quiz_attempts', 'question_watermark') IS NULL
+BEGIN
+    ALTER TABLE dbo.quiz_attempts ADD question_watermark BIGINT NULL;
+END;
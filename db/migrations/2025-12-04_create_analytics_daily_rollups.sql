@@ -0,0 +1,26 @@
+-- Bảng tổng hợp theo ngày cho dashboard quản lý (AdminAnalyticsController).
+-- AnalyticsRollupService tính lại các ngày từ mốc (ngày mới nhất đã tổng hợp trừ lookback) tới hôm nay;
+-- lần chạy đầu tiên khi bảng trống sẽ tự backfill toàn bộ lịch sử.
+
+-- Chỉ số cộng dồn được (đếm, tổng tiền...): một dòng cho mỗi (ngày, chỉ số)
+IF OBJECT_ID('dbo.analytics_daily_facts', 'U') IS NULL
+BEGIN
+    CREATE TABLE dbo.analytics_daily_facts (
+        day DATE NOT NULL,
+        metric VARCHAR(32) NOT NULL,
+        value DECIMAL(18,2) NOT NULL,
+        CONSTRAINT pk_analytics_daily_facts PRIMARY KEY (day, metric)
+    );
+END;
+
+-- User hoạt động theo ngày và nguồn (A = làm bài, E = ghi danh), đã khử trùng lặp trong ngày,
+-- để đếm distinct theo tháng mà không quét bảng gốc.
+IF OBJECT_ID('dbo.analytics_daily_users', 'U') IS NULL
+BEGIN
+    CREATE TABLE dbo.analytics_daily_users (
+        day DATE NOT NULL,
+        source CHAR(1) NOT NULL,
+        user_id BIGINT NOT NULL,
+        CONSTRAINT pk_analytics_daily_users PRIMARY KEY (source, day, user_id)
+    );
+END;
@@ -0,0 +1,12 @@
+-- Hỗ trợ OtpCodeStore: tra OTP theo (email, purpose) khi bộ nhớ không có mã,
+-- và dọn theo lô các dòng đã hết hạn (DELETE TOP (n) ... WHERE expires_at < ?) bằng index seek.
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'ix_email_otps_email_purpose' AND object_id = OBJECT_ID('dbo.email_otps'))
+BEGIN
+    CREATE INDEX ix_email_otps_email_purpose ON dbo.email_otps(email, purpose, expires_at)
+        INCLUDE (code, consumed_at);
+END;
+
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE name = 'ix_email_otps_expires_at' AND object_id = OBJECT_ID('dbo.email_otps'))
+BEGIN
+    CREATE INDEX ix_email_otps_expires_at ON dbo.email_otps(expires_at);
+END;
@@ -0,0 +1,39 @@
+package com.example.back_end.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+/**
+ * Pool riêng cho các job @Scheduled. Cấu hình STOMP đăng ký messageBrokerTaskScheduler nên taskScheduler tự cấu hình
+ * của Boot không được tạo (spring.task.scheduling.* bị bỏ qua) và job sẽ chạy chung thread heartbeat của broker;
+ * job DB chậm khi đó làm trễ heartbeat và ngược lại.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig implements SchedulingConfigurer {
+    private final int poolSize;
+
+    public SchedulingConfig(@Value("${spring.task.scheduling.pool.size:7}") int poolSize) {
+        this.poolSize = Math.max(1, poolSize);
+    }
+
+    @Bean
+    public ThreadPoolTaskScheduler scheduledJobsTaskScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("scheduling-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(10);
+        return scheduler;
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar registrar) {
+        registrar.setTaskScheduler(scheduledJobsTaskScheduler());
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.back_end.config;
+
+import com.example.back_end.service.JdbcSupportEventBus;
+import com.example.back_end.service.LocalSupportEventBus;
+import com.example.back_end.service.SupportEventBus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Locale;
+
+/**
+ * Chọn bus cho chế độ relay của support chat (app.support.broker.bus): local (trong JVM, một node/test)
+ * hoặc jdbc (bảng dbo.support_events, dùng khi chạy nhiều node sau load balancer).
+ */
+@Configuration
+public class SupportBrokerConfig {
+
+    @Bean
+    public SupportEventBus supportEventBus(JdbcTemplate jdbcTemplate,
+                                           @Value("${app.support.broker.bus:local}") String bus,
+                                           @Value("${app.support.broker.jdbc.poll-ms:100}") long pollMs,
+                                           @Value("${app.support.broker.jdbc.batch-size:200}") int batchSize,
+                                           @Value("${app.support.broker.jdbc.gap-wait-ms:2000}") long gapWaitMs,
+                                           @Value("${app.support.broker.jdbc.retention-minutes:60}") int retentionMinutes) {
+        switch (bus.trim().toLowerCase(Locale.ROOT)) {
+            case "local":
+                return new LocalSupportEventBus();
+            case "jdbc":
+                JdbcSupportEventBus jdbcBus = new JdbcSupportEventBus(jdbcTemplate, batchSize, gapWaitMs, retentionMinutes);
+                jdbcBus.start(pollMs);
+                return jdbcBus;
+            default:
+                throw new IllegalArgumentException("app.support.broker.bus không hợp lệ: " + bus);
+        }
+    }
+}
@@ -33,6 +33,7 @@ public class SupportSchemaInitializer {
             createSupportMessages();
             createSupportAttachments();
             createSupportRatings();
+            createSupportEvents();
         } catch (DataAccessException ex) {
             log.error("Không thể tạo bảng support chat, vui lòng kiểm tra kết nối DB", ex);
         }
@@ -133,4 +134,21 @@ public class SupportSchemaInitializer {
             """;
         jdbcTemplate.execute(sql);
     }
+
+    private void createSupportEvents() {
+        // Bus giữa các node cho chế độ relay (app.support.broker.bus=jdbc); published_at là epoch ms
+        String sql = """
+            IF OBJECT_ID('dbo.support_events', 'U') IS NULL
+            BEGIN
+                CREATE TABLE dbo.support_events (
+                    id BIGINT IDENTITY(1,1) PRIMARY KEY,
+                    destination NVARCHAR(255) NOT NULL,
+                    payload NVARCHAR(MAX) NOT NULL,
+                    published_at BIGINT NOT NULL
+                );
+                CREATE INDEX ix_support_events_published ON dbo.support_events(published_at);
+            END;
+            """;
+        jdbcTemplate.execute(sql);
+    }
 }
@@ -1,14 +1,25 @@
 package com.example.back_end.controller;
 
+import com.example.back_end.service.AnalyticsQueryFanout;
+import com.example.back_end.service.AnalyticsRollupService;
+import com.example.back_end.service.ExportStreamService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.time.LocalDateTime;
@@ -24,38 +35,75 @@ import java.util.Objects;
 @RestController
 @RequestMapping("/api/admin/analytics")
 public class AdminAnalyticsController {
+    private static final Logger log = LoggerFactory.getLogger(AdminAnalyticsController.class);
 
     @PersistenceContext
     private EntityManager em;
 
+    private static final String REVENUE_EXPORT_SQL = """
+            SELECT N'payment', p.order_id, p.id, p.provider, CAST(p.amount AS DECIMAL(18,2)), p.status, p.created_at
+              FROM dbo.payments p
+             WHERE p.status IN (N'succeeded',N'paid',N'approved') AND p.created_at >= ? AND p.created_at < ?
+            UNION ALL
+            SELECT N'order', o.id, NULL, NULL, CAST(o.total AS DECIMAL(18,2)), o.status, o.created_at
+              FROM dbo.orders o
+             WHERE o.status IN (N'approved',N'paid',N'completed') AND o.created_at >= ? AND o.created_at < ?
+               AND NOT EXISTS (SELECT 1 FROM dbo.payments p
+                                WHERE p.order_id = o.id AND p.status IN (N'succeeded',N'paid',N'approved'))
+             ORDER BY 7
+            """;
+
+    private static final List<ExportStreamService.Column> REVENUE_EXPORT_COLUMNS = List.of(
+            new ExportStreamService.Column("source", 1),
+            new ExportStreamService.Column("orderId", 2),
+            new ExportStreamService.Column("paymentId", 3),
+            new ExportStreamService.Column("provider", 4),
+            new ExportStreamService.Column("amount", 5),
+            new ExportStreamService.Column("status", 6),
+            new ExportStreamService.Column("createdAt", 7));
+
+    private static final List<ExportStreamService.Column> DAILY_EXPORT_COLUMNS = List.of(
+            new ExportStreamService.Column("day", 1),
+            new ExportStreamService.Column("metric", 2),
+            new ExportStreamService.Column("value", 3));
+
+    private final AnalyticsRollupService rollups;
+    private final AnalyticsQueryFanout fanout;
+    private final ExportStreamService exportStreamService;
+
+    public AdminAnalyticsController(AnalyticsRollupService rollups, AnalyticsQueryFanout fanout,
+                                    ExportStreamService exportStreamService) {
+        this.rollups = rollups;
+        this.fanout = fanout;
+        this.exportStreamService = exportStreamService;
+    }
+
     @GetMapping("/summary")
     @PreAuthorize("hasAnyRole('MANAGER')")
     public ResponseEntity<Map<String, Object>> summary() {
         Map<String, Object> data = new HashMap<>();
+        LocalDate today = AnalyticsRollupService.today();
 
-        Number totalUsers = (Number) em.createNativeQuery("SELECT COUNT(*) FROM dbo.users").getSingleResult();
-        Number newUsers7d = (Number) em.createNativeQuery(
-                        "SELECT COUNT(*) FROM dbo.users WHERE created_at >= DATEADD(day, -7, SYSUTCDATETIME())")
-                .getSingleResult();
-        Number newUsers30d = (Number) em.createNativeQuery(
-                        "SELECT COUNT(*) FROM dbo.users WHERE created_at >= DATEADD(day, -30, SYSUTCDATETIME())")
-                .getSingleResult();
-
-        // Active users tạm tính: có enrollment cập nhật 30 ngày gần nhất
-        Number activeUsers = (Number) em.createNativeQuery(
-                        "SELECT COUNT(DISTINCT user_id) FROM dbo.enrollments WHERE start_at >= DATEADD(day, -30, SYSUTCDATETIME())")
-                .getSingleResult();
+        AnalyticsQueryFanout.Result r = fanout.batch()
+                // Tổng user đếm trực tiếp: chính xác, giảm khi xóa user (bảng tổng hợp chỉ cộng dồn lượt đăng ký)
+                .add("totalUsers", () -> count("SELECT COUNT(*) FROM dbo.users"))
+                .add("newUsers7d", () -> rollups.total(AnalyticsRollupService.NEW_USERS, today.minusDays(7), today))
+                .add("newUsers30d", () -> rollups.total(AnalyticsRollupService.NEW_USERS, today.minusDays(30), today))
+                // Active users tạm tính: có enrollment bắt đầu trong 30 ngày gần nhất
+                .add("activeUsers30d", () -> rollups.distinctUsersTotal(AnalyticsRollupService.SOURCE_ENROLLMENTS, today.minusDays(30), today))
+                .await();
+        long totalUsers = r.getLong("totalUsers");
+        long activeUsers = r.getLong("activeUsers30d");
 
         // Retention sơ bộ: % user có enrollment trong 30 ngày / tổng
-        double retention = totalUsers != null && totalUsers.longValue() > 0
-                ? (activeUsers.doubleValue() / totalUsers.doubleValue()) * 100.0
-                : 0.0;
+        double retention = totalUsers > 0 ? ((double) activeUsers / totalUsers) * 100.0 : 0.0;
 
-        data.put("totalUsers", totalUsers != null ? totalUsers.longValue() : 0);
-        data.put("newUsers7d", newUsers7d != null ? newUsers7d.longValue() : 0);
-        data.put("newUsers30d", newUsers30d != null ? newUsers30d.longValue() : 0);
-        data.put("activeUsers30d", activeUsers != null ? activeUsers.longValue() : 0);
+        data.put("totalUsers", totalUsers);
+        data.put("newUsers7d", r.getLong("newUsers7d"));
+        data.put("newUsers30d", r.getLong("newUsers30d"));
+        data.put("activeUsers30d", activeUsers);
         data.put("retentionPercent", Math.round(retention * 10.0) / 10.0);
+        r.markPartial(data);
 
         return ResponseEntity.ok(data);
     }
@@ -85,6 +133,7 @@ public class AdminAnalyticsController {
     * - logins: lấy từ quiz_attempts (bắt đầu làm bài)
     * - activeUsers: distinct user trong quiz_attempts
     * - newUsers: lấy từ users.created_at
+    * Số liệu đọc từ bảng tổng hợp theo ngày (AnalyticsRollupService), trễ tối đa một chu kỳ refresh.
     */
     @GetMapping("/logins")
     @PreAuthorize("hasAnyRole('MANAGER')")
@@ -93,59 +142,25 @@ public class AdminAnalyticsController {
             @RequestParam(value = "to", required = false) String toStr,
             @RequestParam(value = "groupBy", required = false, defaultValue = "day") String groupBy
     ) {
-        LocalDate to = (toStr != null && !toStr.isBlank()) ? LocalDate.parse(toStr) : LocalDate.now(ZoneOffset.UTC);
-        LocalDate from = (fromStr != null && !fromStr.isBlank()) ? LocalDate.parse(fromStr) : to.minusDays(30);
-        String dateExpr;
-        if ("month".equalsIgnoreCase(groupBy)) {
-            dateExpr = "FORMAT(d, 'yyyy-MM')";
-        } else {
-            dateExpr = "CONVERT(varchar(10), d, 23)"; // yyyy-MM-dd
-        }
-
-        // logins / active via quiz_attempts
-        @SuppressWarnings("unchecked")
-        List<Object[]> attemptRows = em.createNativeQuery(
-                        "WITH t AS (" +
-                                "  SELECT CONVERT(date, started_at) AS d, user_id " +
-                                "  FROM dbo.quiz_attempts " +
-                                "  WHERE started_at >= :from AND started_at <= DATEADD(day, 1, :to)" +
-                                ")" +
-                                "SELECT " + dateExpr + " AS bucket, COUNT(*) AS logins, COUNT(DISTINCT user_id) AS activeUsers " +
-                                "FROM t GROUP BY " + dateExpr + " ORDER BY " + dateExpr)
-                .setParameter("from", from)
-                .setParameter("to", to)
-                .getResultList();
-
-        // new users
-        @SuppressWarnings("unchecked")
-        List<Object[]> newRows = em.createNativeQuery(
-                        "WITH t AS (" +
-                                "  SELECT CONVERT(date, created_at) AS d " +
-                                "  FROM dbo.users " +
-                                "  WHERE created_at >= :from AND created_at <= DATEADD(day, 1, :to)" +
-                                ")" +
-                                "SELECT " + dateExpr + " AS bucket, COUNT(*) AS newUsers " +
-                                "FROM t GROUP BY " + dateExpr + " ORDER BY " + dateExpr)
-                .setParameter("from", from)
-                .setParameter("to", to)
-                .getResultList();
+        LocalDateRange range = parseRange(fromStr, toStr, 30);
+        boolean byMonth = "month".equalsIgnoreCase(groupBy);
+        Map<String, Map<String, BigDecimal>> facts = rollups.facts(range.from, range.to, byMonth,
+                List.of(AnalyticsRollupService.LOGINS, AnalyticsRollupService.NEW_USERS));
+        Map<String, Long> active = rollups.distinctUsers(AnalyticsRollupService.SOURCE_ATTEMPTS, range.from, range.to, byMonth);
 
-        Map<String, Map<String, Object>> buckets = new LinkedHashMap<>();
-        for (Object[] r : attemptRows) {
-            String bucket = r[0] != null ? r[0].toString() : "";
-            Map<String, Object> m = buckets.computeIfAbsent(bucket, k -> new HashMap<>());
-            m.put("bucket", bucket);
-            m.put("logins", r[1] != null ? ((Number) r[1]).longValue() : 0L);
-            m.put("activeUsers", r[2] != null ? ((Number) r[2]).longValue() : 0L);
-        }
-        for (Object[] r : newRows) {
-            String bucket = r[0] != null ? r[0].toString() : "";
-            Map<String, Object> m = buckets.computeIfAbsent(bucket, k -> new HashMap<>());
-            m.put("bucket", bucket);
-            m.put("newUsers", r[1] != null ? ((Number) r[1]).longValue() : 0L);
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Map.Entry<String, Map<String, BigDecimal>> e : facts.entrySet()) {
+            Map<String, Object> m = new HashMap<>();
+            m.put("bucket", e.getKey());
+            if (e.getValue().containsKey(AnalyticsRollupService.LOGINS)) {
+                m.put("logins", longOf(e.getValue(), AnalyticsRollupService.LOGINS));
+                m.put("activeUsers", active.getOrDefault(e.getKey(), 0L));
+            }
+            if (e.getValue().containsKey(AnalyticsRollupService.NEW_USERS)) {
+                m.put("newUsers", longOf(e.getValue(), AnalyticsRollupService.NEW_USERS));
+            }
+            result.add(m);
         }
-
-        List<Map<String, Object>> result = new ArrayList<>(buckets.values());
         return ResponseEntity.ok(result);
     }
 
@@ -154,27 +169,22 @@ public class AdminAnalyticsController {
     @PreAuthorize("hasAnyRole('MANAGER')")
     public ResponseEntity<Map<String, Object>> courseSummary() {
         Map<String, Object> data = new HashMap<>();
-        Number active = (Number) em.createNativeQuery("SELECT COUNT(*) FROM dbo.courses WHERE status = N'published'")
-                .getSingleResult();
-        Number newMonth = (Number) em.createNativeQuery(
-                        "SELECT COUNT(*) FROM dbo.courses WHERE created_at >= DATEADD(day,-30,SYSUTCDATETIME())")
-                .getSingleResult();
-        Number paused = (Number) em.createNativeQuery(
-                        "SELECT COUNT(*) FROM dbo.courses WHERE status IN (N'archived', N'draft')")
-                .getSingleResult();
-        Number totalProgress = (Number) em.createNativeQuery(
-                        "SELECT COUNT(*) FROM dbo.lesson_progress WHERE progress_percent = 100")
-                .getSingleResult();
-        Number totalEnroll = (Number) em.createNativeQuery(
-                        "SELECT COUNT(*) FROM dbo.enrollments")
-                .getSingleResult();
-        double completionRate = (totalEnroll != null && totalEnroll.longValue() > 0)
-                ? (totalProgress.doubleValue() / totalEnroll.doubleValue()) * 100.0
+        AnalyticsQueryFanout.Result r = fanout.batch()
+                .add("active", () -> count("SELECT COUNT(*) FROM dbo.courses WHERE status = N'published'"))
+                .add("newMonth", () -> count("SELECT COUNT(*) FROM dbo.courses WHERE created_at >= DATEADD(day,-30,SYSUTCDATETIME())"))
+                .add("paused", () -> count("SELECT COUNT(*) FROM dbo.courses WHERE status IN (N'archived', N'draft')"))
+                .add("totalProgress", () -> count("SELECT COUNT(*) FROM dbo.lesson_progress WHERE progress_percent = 100"))
+                .add("totalEnroll", () -> count("SELECT COUNT(*) FROM dbo.enrollments"))
+                .await();
+        long totalEnroll = r.getLong("totalEnroll");
+        double completionRate = totalEnroll > 0
+                ? (r.getDouble("totalProgress") / totalEnroll) * 100.0
                 : 0.0;
-        data.put("active", active != null ? active.longValue() : 0);
-        data.put("newPerMonth", newMonth != null ? newMonth.longValue() : 0);
-        data.put("paused", paused != null ? paused.longValue() : 0);
+        data.put("active", r.getLong("active"));
+        data.put("newPerMonth", r.getLong("newMonth"));
+        data.put("paused", r.getLong("paused"));
         data.put("completionRate", Math.round(completionRate * 10.0) / 10.0);
+        r.markPartial(data);
         return ResponseEntity.ok(data);
     }
 
@@ -186,43 +196,22 @@ public class AdminAnalyticsController {
             @RequestParam(value = "groupBy", required = false, defaultValue = "day") String groupBy
     ) {
         LocalDateRange range = parseRange(fromStr, toStr, 30);
-        String dateExpr = "month".equalsIgnoreCase(groupBy) ? "FORMAT(d, 'yyyy-MM')" : "CONVERT(varchar(10), d, 23)";
+        Map<String, Map<String, BigDecimal>> facts = rollups.facts(range.from, range.to, "month".equalsIgnoreCase(groupBy),
+                List.of(AnalyticsRollupService.COURSES_CREATED, AnalyticsRollupService.ENROLLMENTS));
 
-        @SuppressWarnings("unchecked")
-        List<Object[]> createdRows = em.createNativeQuery(
-                        "WITH t AS (SELECT CONVERT(date, created_at) AS d FROM dbo.courses WHERE created_at >= :from AND created_at <= DATEADD(day,1,:to)) " +
-                                "SELECT " + dateExpr + " AS bucket, COUNT(*) AS created FROM t GROUP BY " + dateExpr + " ORDER BY " + dateExpr)
-                .setParameter("from", java.sql.Date.valueOf(range.from))
-                .setParameter("to", java.sql.Date.valueOf(range.to))
-                .getResultList();
-
-        @SuppressWarnings("unchecked")
-        List<Object[]> enrollRows = em.createNativeQuery(
-                        "WITH t AS (SELECT CONVERT(date, start_at) AS d FROM dbo.enrollments WHERE start_at >= :from AND start_at <= DATEADD(day,1,:to)) " +
-                                "SELECT " + dateExpr + " AS bucket, COUNT(*) AS enroll FROM t GROUP BY " + dateExpr + " ORDER BY " + dateExpr)
-                .setParameter("from", java.sql.Date.valueOf(range.from))
-                .setParameter("to", java.sql.Date.valueOf(range.to))
-                .getResultList();
-
-        Map<String, Map<String, Object>> buckets = new LinkedHashMap<>();
-        for (Object[] r : createdRows) {
-            String b = Objects.toString(r[0], "");
-            Map<String, Object> m = buckets.computeIfAbsent(b, k -> new HashMap<>());
-            m.put("bucket", b);
-            m.put("enroll", 0);
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Map.Entry<String, Map<String, BigDecimal>> e : facts.entrySet()) {
+            Map<String, Object> m = new HashMap<>();
+            m.put("bucket", e.getKey());
+            m.put("enroll", longOf(e.getValue(), AnalyticsRollupService.ENROLLMENTS));
             m.put("complete", 0);
             m.put("dropoff", 0);
-            m.put("created", r[1] != null ? ((Number) r[1]).longValue() : 0);
-        }
-        for (Object[] r : enrollRows) {
-            String b = Objects.toString(r[0], "");
-            Map<String, Object> m = buckets.computeIfAbsent(b, k -> new HashMap<>());
-            m.put("bucket", b);
-            m.put("enroll", r[1] != null ? ((Number) r[1]).longValue() : 0);
-            m.putIfAbsent("complete", 0);
-            m.putIfAbsent("dropoff", 0);
+            if (e.getValue().containsKey(AnalyticsRollupService.COURSES_CREATED)) {
+                m.put("created", longOf(e.getValue(), AnalyticsRollupService.COURSES_CREATED));
+            }
+            list.add(m);
         }
-        return ResponseEntity.ok(new ArrayList<>(buckets.values()));
+        return ResponseEntity.ok(list);
     }
 
     // ---------- Content / Lessons ----------
@@ -230,26 +219,25 @@ public class AdminAnalyticsController {
     @PreAuthorize("hasAnyRole('MANAGER')")
     public ResponseEntity<Map<String, Object>> contentSummary() {
         Map<String, Object> data = new HashMap<>();
-        Number lessonCount = (Number) em.createNativeQuery("SELECT COUNT(*) FROM dbo.lessons").getSingleResult();
-        Number lessonDone = (Number) em.createNativeQuery(
-                        "SELECT COUNT(*) FROM dbo.lesson_progress WHERE progress_percent = 100")
-                .getSingleResult();
-        double lessonCompletion = (lessonCount != null && lessonCount.longValue() > 0)
-                ? (lessonDone.doubleValue() / lessonCount.doubleValue()) * 100.0
+        AnalyticsQueryFanout.Result r = fanout.batch()
+                .add("lessonCount", () -> count("SELECT COUNT(*) FROM dbo.lessons"))
+                .add("lessonDone", () -> count("SELECT COUNT(*) FROM dbo.lesson_progress WHERE progress_percent = 100"))
+                .add("submits", () -> count("SELECT COUNT(*) FROM dbo.quiz_attempts WHERE status IN (N'submitted', N'graded')"))
+                .add("pass", () -> count("SELECT COUNT(*) FROM dbo.quiz_attempts WHERE passed = 1"))
+                .await();
+        long lessonCount = r.getLong("lessonCount");
+        double lessonCompletion = lessonCount > 0
+                ? (r.getDouble("lessonDone") / lessonCount) * 100.0
                 : 0.0;
-        Number submits = (Number) em.createNativeQuery(
-                        "SELECT COUNT(*) FROM dbo.quiz_attempts WHERE status IN (N'submitted', N'graded')")
-                .getSingleResult();
-        Number pass = (Number) em.createNativeQuery(
-                        "SELECT COUNT(*) FROM dbo.quiz_attempts WHERE passed = 1")
-                .getSingleResult();
-        double passRate = (submits != null && submits.longValue() > 0)
-                ? (pass.doubleValue() / submits.doubleValue()) * 100.0
+        long submits = r.getLong("submits");
+        double passRate = submits > 0
+                ? (r.getDouble("pass") / submits) * 100.0
                 : 0.0;
         data.put("views", 0); // không có log xem video
         data.put("lessonCompletionRate", Math.round(lessonCompletion * 10.0) / 10.0);
-        data.put("submitRate", submits != null ? submits.longValue() : 0);
+        data.put("submitRate", submits);
         data.put("passRate", Math.round(passRate * 10.0) / 10.0);
+        r.markPartial(data);
         return ResponseEntity.ok(data);
     }
 
@@ -261,31 +249,16 @@ public class AdminAnalyticsController {
             @RequestParam(value = "groupBy", required = false, defaultValue = "day") String groupBy
     ) {
         LocalDateRange range = parseRange(fromStr, toStr, 30);
-        String dateExpr = "month".equalsIgnoreCase(groupBy) ? "FORMAT(d, 'yyyy-MM')" : "CONVERT(varchar(10), d, 23)";
-        @SuppressWarnings("unchecked")
-        List<Object[]> rows = em.createNativeQuery(
-                        "WITH lp AS (" +
-                                "  SELECT CONVERT(date, completed_at) AS d FROM dbo.lesson_progress WHERE completed_at IS NOT NULL " +
-                                "    AND completed_at >= :from AND completed_at < DATEADD(day,1,:to)" +
-                                "), qa AS (" +
-                                "  SELECT CONVERT(date, graded_at) AS d, passed FROM dbo.quiz_attempts WHERE graded_at IS NOT NULL " +
-                                "    AND graded_at >= :from AND graded_at < DATEADD(day,1,:to)" +
-                                ")" +
-                                "SELECT " + dateExpr + " AS bucket, " +
-                                "  (SELECT COUNT(*) FROM lp WHERE lp.d = t.d) AS completion, " +
-                                "  (SELECT COUNT(*) FROM qa WHERE qa.d = t.d) AS attempts, " +
-                                "  (SELECT COUNT(*) FROM qa WHERE qa.d = t.d AND passed = 1) AS pass " +
-                                "FROM (SELECT DISTINCT d FROM lp UNION SELECT DISTINCT d FROM qa) t ORDER BY bucket")
-                .setParameter("from", java.sql.Date.valueOf(range.from))
-                .setParameter("to", java.sql.Date.valueOf(range.to))
-                .getResultList();
+        Map<String, Map<String, BigDecimal>> facts = rollups.facts(range.from, range.to, "month".equalsIgnoreCase(groupBy),
+                List.of(AnalyticsRollupService.LESSON_COMPLETIONS, AnalyticsRollupService.QUIZ_GRADED, AnalyticsRollupService.QUIZ_PASSED));
         List<Map<String, Object>> list = new ArrayList<>();
-        for (Object[] r : rows) {
+        for (Map.Entry<String, Map<String, BigDecimal>> e : facts.entrySet()) {
+            long completion = longOf(e.getValue(), AnalyticsRollupService.LESSON_COMPLETIONS);
             Map<String, Object> m = new HashMap<>();
-            m.put("bucket", r[0] != null ? r[0].toString() : "");
-            m.put("views", r[1] != null ? ((Number) r[1]).longValue() : 0);
-            m.put("completion", r[1] != null ? ((Number) r[1]).longValue() : 0);
-            m.put("pass", r[3] != null ? ((Number) r[3]).longValue() : 0);
+            m.put("bucket", e.getKey());
+            m.put("views", completion);
+            m.put("completion", completion);
+            m.put("pass", longOf(e.getValue(), AnalyticsRollupService.QUIZ_PASSED));
             list.add(m);
         }
         return ResponseEntity.ok(list);
@@ -296,55 +269,48 @@ public class AdminAnalyticsController {
     @PreAuthorize("hasAnyRole('MANAGER')")
     public ResponseEntity<Map<String, Object>> revenueSummary() {
         Map<String, Object> data = new HashMap<>();
-        try {
-            Number total = (Number) em.createNativeQuery(
-                            "SELECT COALESCE(SUM(revenue),0) FROM (" +
-                                    " SELECT CAST(amount AS DECIMAL(18,2)) AS revenue" +
-                                    "   FROM dbo.payments WHERE status IN (N'succeeded',N'paid',N'approved')" +
-                                    " UNION ALL" +
-                                    " SELECT CAST(o.total AS DECIMAL(18,2))" +
-                                    "   FROM dbo.orders o" +
-                                    "   WHERE o.status IN (N'approved',N'paid',N'completed')" +
-                                    "     AND NOT EXISTS (" +
-                                    "         SELECT 1 FROM dbo.payments p" +
-                                    "         WHERE p.order_id = o.id AND p.status IN (N'succeeded',N'paid',N'approved')" +
-                                    "     )" +
-                                    ") t")
-                    .getSingleResult();
-            Number orders = (Number) em.createNativeQuery(
-                            "SELECT COUNT(*) FROM dbo.orders WHERE status IS NOT NULL")
-                    .getSingleResult();
-            Number success = (Number) em.createNativeQuery(
-                            "SELECT COUNT(*) FROM dbo.orders WHERE status IN (N'approved', N'paid', N'completed')")
-                    .getSingleResult();
-            double successRate = (orders != null && orders.longValue() > 0)
-                    ? (success.doubleValue() / orders.doubleValue()) * 100.0
-                    : 0.0;
-            Object topChannel = em.createNativeQuery(
-                            "SELECT TOP 1 provider FROM dbo.payments WHERE status IN (N'succeeded',N'paid',N'approved') GROUP BY provider ORDER BY COUNT(*) DESC")
-                    .getResultStream().findFirst().orElse("--");
-            data.put("total", total != null ? total : 0);
-            data.put("orders", orders != null ? orders.longValue() : 0);
-            data.put("successRate", Math.round(successRate * 10.0) / 10.0);
-            data.put("topChannel", topChannel != null ? topChannel.toString() : "--");
-        } catch (Exception e) {
-            data.put("total", 0);
-            data.put("orders", 0);
-            data.put("successRate", 0);
-            data.put("topChannel", "--");
-        }
+        AnalyticsQueryFanout.Result r = fanout.batch()
+                .add("total", () -> em.createNativeQuery(
+                                "SELECT COALESCE(SUM(revenue),0) FROM (" +
+                                        " SELECT CAST(amount AS DECIMAL(18,2)) AS revenue" +
+                                        "   FROM dbo.payments WHERE status IN (N'succeeded',N'paid',N'approved')" +
+                                        " UNION ALL" +
+                                        " SELECT CAST(o.total AS DECIMAL(18,2))" +
+                                        "   FROM dbo.orders o" +
+                                        "   WHERE o.status IN (N'approved',N'paid',N'completed')" +
+                                        "     AND NOT EXISTS (" +
+                                        "         SELECT 1 FROM dbo.payments p" +
+                                        "         WHERE p.order_id = o.id AND p.status IN (N'succeeded',N'paid',N'approved')" +
+                                        "     )" +
+                                        ") t")
+                        .getSingleResult())
+                .add("orders", () -> count("SELECT COUNT(*) FROM dbo.orders WHERE status IS NOT NULL"))
+                .add("success", () -> count("SELECT COUNT(*) FROM dbo.orders WHERE status IN (N'approved', N'paid', N'completed')"))
+                .add("topChannel", () -> em.createNativeQuery(
+                                "SELECT TOP 1 provider FROM dbo.payments WHERE status IN (N'succeeded',N'paid',N'approved') GROUP BY provider ORDER BY COUNT(*) DESC")
+                        .getResultStream().findFirst().orElse("--"))
+                .await();
+        long orders = r.getLong("orders");
+        double successRate = orders > 0
+                ? (r.getDouble("success") / orders) * 100.0
+                : 0.0;
+        data.put("total", r.get("total", 0));
+        data.put("orders", orders);
+        data.put("successRate", Math.round(successRate * 10.0) / 10.0);
+        data.put("topChannel", Objects.toString(r.get("topChannel", "--")));
+        r.markPartial(data);
         return ResponseEntity.ok(data);
     }
 
     @GetMapping("/revenue/trend")
     @PreAuthorize("hasAnyRole('MANAGER')")
-    public ResponseEntity<List<Map<String, Object>>> revenueTrend(
+    public ResponseEntity<?> revenueTrend(
             @RequestParam(value = "from", required = false) String fromStr,
             @RequestParam(value = "to", required = false) String toStr,
             @RequestParam(value = "groupBy", required = false, defaultValue = "day") String groupBy
     ) {
         LocalDateRange range = parseRange(fromStr, toStr, 30);
-        String dateExpr = "month".equalsIgnoreCase(groupBy) ? "FORMAT(d, 'yyyy-MM')" : "CONVERT(varchar(10), d, 23)";
+        // Trạng thái payment/đơn đổi sau ngày tạo nên doanh thu đọc trực tiếp, không qua bảng tổng hợp
         String bucketExpr = "month".equalsIgnoreCase(groupBy)
                 ? "FORMAT(CONVERT(date, created_at), 'yyyy-MM')"
                 : "CONVERT(varchar(10), CONVERT(date, created_at), 23)";
@@ -391,8 +357,15 @@ public class AdminAnalyticsController {
                 list.add(m);
             }
             return ResponseEntity.ok(list);
-        } catch (Exception e) {
-            return ResponseEntity.ok(List.of());
+        } catch (DataAccessException | PersistenceException e) {
+            // EntityManager ngoài @Repository không được dịch sang DataAccessException nên bắt cả PersistenceException.
+            // Báo thiếu như kết quả một phần của fan-out, để dashboard không hiểu nhầm là doanh thu bằng 0
+            log.warn("Truy vấn thống kê 'revenueTrend' lỗi: {}", e.getMessage());
+            Map<String, Object> body = new HashMap<>();
+            body.put("partial", true);
+            body.put("missing", List.of("revenueTrend"));
+            body.put("data", List.of());
+            return ResponseEntity.ok(body);
         }
     }
 
@@ -405,35 +378,43 @@ public class AdminAnalyticsController {
             @RequestParam(value = "groupBy", required = false, defaultValue = "day") String groupBy
     ) {
         LocalDateRange range = parseRange(fromStr, toStr, 30);
-        String dateExpr = "month".equalsIgnoreCase(groupBy) ? "FORMAT(la.d, 'yyyy-MM')" : "CONVERT(varchar(10), la.d, 23)";
+        boolean byMonth = "month".equalsIgnoreCase(groupBy);
+        // lesson_progress.updated_at bị ghi đè mỗi lần học tiếp nên phần này đọc trực tiếp, không qua bảng tổng hợp
+        String bucketExpr = byMonth
+                ? "FORMAT(CONVERT(date, updated_at), 'yyyy-MM')"
+                : "CONVERT(varchar(10), CONVERT(date, updated_at), 23)";
         @SuppressWarnings("unchecked")
         List<Object[]> rows = em.createNativeQuery(
-                        "WITH a AS ( " +
-                                "   SELECT CONVERT(date, started_at) AS d, user_id " +
-                                "   FROM dbo.quiz_attempts WHERE started_at >= :from AND started_at < DATEADD(day,1,:to)" +
-                                "), lp AS ( " +
-                                "   SELECT CONVERT(date, updated_at) AS d, user_id, progress_percent " +
-                                "   FROM dbo.lesson_progress WHERE updated_at >= :from AND updated_at < DATEADD(day,1,:to)" +
-                                ") " +
-                                "SELECT " + dateExpr + " AS bucket, " +
-                                "  COUNT(DISTINCT lp.user_id) AS sessions, " +
-                                "  AVG(CAST(lp.progress_percent AS FLOAT)) AS interact, " +
-                                "  COUNT(DISTINCT a.user_id) AS timeVal " +
-                                "FROM lp FULL OUTER JOIN a ON lp.d = a.d " +
-                                "GROUP BY " + dateExpr + " ORDER BY " + dateExpr)
+                        "SELECT " + bucketExpr + " AS bucket, COUNT(DISTINCT user_id) AS sessions, " +
+                                "  AVG(CAST(progress_percent AS FLOAT)) AS interact " +
+                                "FROM dbo.lesson_progress WHERE updated_at >= :from AND updated_at < DATEADD(day,1,:to) " +
+                                "GROUP BY " + bucketExpr)
                 .setParameter("from", java.sql.Date.valueOf(range.from))
                 .setParameter("to", java.sql.Date.valueOf(range.to))
                 .getResultList();
-        List<Map<String, Object>> list = new ArrayList<>();
+        Map<String, Long> examTakers = rollups.distinctUsers(AnalyticsRollupService.SOURCE_ATTEMPTS, range.from, range.to, byMonth);
+
+        Map<String, Map<String, Object>> buckets = new java.util.TreeMap<>();
         for (Object[] r : rows) {
-            Map<String, Object> m = new HashMap<>();
-            m.put("bucket", r[0] != null ? r[0].toString() : "");
-            m.put("sessions", r[1] != null ? ((Number) r[1]).longValue() : 0);
-            m.put("interact", r[2] != null ? ((Number) r[2]).doubleValue() : 0);
-            m.put("time", r[3] != null ? ((Number) r[3]).longValue() : 0);
-            list.add(m);
+            Map<String, Object> m = bucket(buckets, r[0] != null ? r[0].toString() : "");
+            m.put("sessions", r[1] != null ? ((Number) r[1]).longValue() : 0L);
+            m.put("interact", r[2] != null ? ((Number) r[2]).doubleValue() : 0d);
         }
-        return ResponseEntity.ok(list);
+        for (Map.Entry<String, Long> e : examTakers.entrySet()) {
+            bucket(buckets, e.getKey()).put("time", e.getValue());
+        }
+        return ResponseEntity.ok(new ArrayList<>(buckets.values()));
+    }
+
+    private static Map<String, Object> bucket(Map<String, Map<String, Object>> buckets, String key) {
+        return buckets.computeIfAbsent(key, k -> {
+            Map<String, Object> m = new HashMap<>();
+            m.put("bucket", k);
+            m.put("sessions", 0L);
+            m.put("interact", 0d);
+            m.put("time", 0L);
+            return m;
+        });
     }
 
     // ---------- System ----------
@@ -498,6 +479,7 @@ public class AdminAnalyticsController {
             @RequestParam(value = "groupBy", required = false, defaultValue = "day") String groupBy
     ) {
         LocalDateRange range = parseRange(fromStr, toStr, 30);
+        // Đếm theo trạng thái hiện tại của ticket nên đọc trực tiếp, không qua bảng tổng hợp
         String dateExpr = "month".equalsIgnoreCase(groupBy) ? "FORMAT(created_at, 'yyyy-MM')" : "CONVERT(varchar(10), created_at, 23)";
         @SuppressWarnings("unchecked")
         List<Object[]> rows = em.createNativeQuery(
@@ -505,7 +487,7 @@ public class AdminAnalyticsController {
                                 "SUM(CASE WHEN status = N'new' THEN 1 ELSE 0 END) AS newTicket, " +
                                 "SUM(CASE WHEN status IN (N'in_progress', N'waiting_student') THEN 1 ELSE 0 END) AS openTicket, " +
                                 "SUM(CASE WHEN status = N'closed' THEN 1 ELSE 0 END) AS closedTicket " +
-                                "FROM dbo.support_threads WHERE created_at >= :from AND created_at <= DATEADD(day,1,:to) " +
+                                "FROM dbo.support_threads WHERE created_at >= :from AND created_at < DATEADD(day,1,:to) " +
                                 "GROUP BY " + dateExpr + " ORDER BY " + dateExpr)
                 .setParameter("from", range.from)
                 .setParameter("to", range.to)
@@ -522,6 +504,60 @@ public class AdminAnalyticsController {
         return ResponseEntity.ok(list);
     }
 
+    // ---------- Export ----------
+    // Các dòng tạo nên doanh thu (payment thành công + đơn đã duyệt không có payment), cùng logic với /revenue
+    @GetMapping("/export/revenue")
+    @PreAuthorize("hasAnyRole('MANAGER')")
+    public ResponseEntity<StreamingResponseBody> exportRevenue(
+            @RequestParam(value = "from", required = false) String fromStr,
+            @RequestParam(value = "to", required = false) String toStr,
+            @RequestParam(value = "format", required = false) String format
+    ) {
+        LocalDateRange range = parseRange(fromStr, toStr, 365);
+        Timestamp from = Timestamp.valueOf(range.from.atStartOfDay());
+        Timestamp to = Timestamp.valueOf(range.to.plusDays(1).atStartOfDay());
+        return exportStreamService.export("revenue_" + range.from + "_" + range.to,
+                ExportStreamService.parseFormat(format), REVENUE_EXPORT_SQL, REVENUE_EXPORT_COLUMNS, from, to, from, to);
+    }
+
+    // Số liệu theo ngày từ bảng tổng hợp: mỗi dòng (day, metric, value)
+    @GetMapping("/export/daily")
+    @PreAuthorize("hasAnyRole('MANAGER')")
+    public ResponseEntity<StreamingResponseBody> exportDaily(
+            @RequestParam(value = "from", required = false) String fromStr,
+            @RequestParam(value = "to", required = false) String toStr,
+            @RequestParam(value = "format", required = false) String format
+    ) {
+        LocalDateRange range = parseRange(fromStr, toStr, 365);
+        return exportStreamService.export("analytics_daily_" + range.from + "_" + range.to,
+                ExportStreamService.parseFormat(format),
+                "SELECT day, metric, value FROM dbo.analytics_daily_facts WHERE day BETWEEN ? AND ? ORDER BY day, metric",
+                DAILY_EXPORT_COLUMNS, java.sql.Date.valueOf(range.from), java.sql.Date.valueOf(range.to));
+    }
+
+    // Tính lại bảng tổng hợp ngay (full=true: xóa và dựng lại toàn bộ lịch sử)
+    @PostMapping("/rollups/refresh")
+    @PreAuthorize("hasAnyRole('MANAGER')")
+    public ResponseEntity<Map<String, Object>> refreshRollups(
+            @RequestParam(value = "full", required = false, defaultValue = "false") boolean full
+    ) {
+        if (full) {
+            rollups.rebuild();
+        } else {
+            rollups.refresh();
+        }
+        return ResponseEntity.ok(rollups.stats());
+    }
+
+    private Number count(String sql) {
+        return (Number) em.createNativeQuery(sql).getSingleResult();
+    }
+
+    private static long longOf(Map<String, BigDecimal> values, String metric) {
+        BigDecimal v = values.get(metric);
+        return v != null ? v.longValue() : 0L;
+    }
+
     private LocalDateRange parseRange(String fromStr, String toStr, int defaultDays) {
         DateTimeFormatter fmt = DateTimeFormatter.ISO_LOCAL_DATE;
         LocalDate to = LocalDate.now(ZoneOffset.UTC);
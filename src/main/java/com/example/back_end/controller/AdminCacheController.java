@@ -0,0 +1,84 @@
+package com.example.back_end.controller;
+
+import com.example.back_end.security.PrincipalCache;
+import com.example.back_end.security.VerifiedTokenCache;
+import com.example.back_end.service.CourseMembershipCache;
+import com.example.back_end.service.CourseSearchIndex;
+import com.example.back_end.service.PublicCourseDetailCache;
+import com.example.back_end.service.QuizSnapshotCache;
+import com.example.back_end.service.TeacherDashboardCache;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/cache")
+public class AdminCacheController {
+    private final PublicCourseDetailCache courseDetailCache;
+    private final CourseSearchIndex courseSearchIndex;
+    private final QuizSnapshotCache quizSnapshots;
+    private final TeacherDashboardCache teacherDashboards;
+    private final PrincipalCache principalCache;
+    private final VerifiedTokenCache tokenCache;
+    private final CourseMembershipCache membershipCache;
+
+    public AdminCacheController(PublicCourseDetailCache courseDetailCache, CourseSearchIndex courseSearchIndex,
+                                QuizSnapshotCache quizSnapshots, TeacherDashboardCache teacherDashboards,
+                                PrincipalCache principalCache, VerifiedTokenCache tokenCache,
+                                CourseMembershipCache membershipCache) {
+        this.courseDetailCache = courseDetailCache;
+        this.courseSearchIndex = courseSearchIndex;
+        this.quizSnapshots = quizSnapshots;
+        this.teacherDashboards = teacherDashboards;
+        this.principalCache = principalCache;
+        this.tokenCache = tokenCache;
+        this.membershipCache = membershipCache;
+    }
+
+    @GetMapping("/stats")
+    @PreAuthorize("hasRole('MANAGER')")
+    public ResponseEntity<Map<String, Object>> stats() {
+        Map<String, Object> res = new LinkedHashMap<>();
+        res.put("courseDetail", courseDetailCache.stats());
+        res.put("courseSearch", Map.of("ready", courseSearchIndex.isReady(), "courses", courseSearchIndex.size()));
+        res.put("quizSnapshots", quizSnapshots.stats());
+        res.put("teacherDashboards", teacherDashboards.stats());
+        res.put("principals", principalCache.stats());
+        res.put("verifiedTokens", tokenCache.stats());
+        res.put("courseMembership", membershipCache.stats());
+        return ResponseEntity.ok(res);
+    }
+
+    @DeleteMapping("/course-detail")
+    @PreAuthorize("hasRole('MANAGER')")
+    public ResponseEntity<?> clearCourseDetail() {
+        courseDetailCache.clear();
+        return ResponseEntity.ok(Map.of("ok", true));
+    }
+
+    @DeleteMapping("/teacher-dashboards")
+    @PreAuthorize("hasRole('MANAGER')")
+    public ResponseEntity<?> clearTeacherDashboards() {
+        teacherDashboards.invalidateAll();
+        return ResponseEntity.ok(Map.of("ok", true));
+    }
+
+    // Sau khi phân công giảng viên trực tiếp trong DB (dbo.course_instructors)
+    @DeleteMapping("/course-membership")
+    @PreAuthorize("hasRole('MANAGER')")
+    public ResponseEntity<?> clearCourseMembership() {
+        membershipCache.invalidateAll();
+        return ResponseEntity.ok(Map.of("ok", true));
+    }
+
+    // Dựng lại chỉ mục tìm kiếm, ví dụ sau khi đổi tên giáo viên hoặc danh mục trực tiếp trong DB
+    @PostMapping("/course-search/rebuild")
+    @PreAuthorize("hasRole('MANAGER')")
+    public ResponseEntity<?> rebuildCourseSearch() {
+        courseSearchIndex.rebuild();
+        return ResponseEntity.ok(Map.of("ok", true, "courses", courseSearchIndex.size()));
+    }
+}
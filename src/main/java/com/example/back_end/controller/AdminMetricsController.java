@@ -0,0 +1,82 @@
+package com.example.back_end.controller;
+
+import com.example.back_end.security.PasswordHasher;
+import com.example.back_end.service.AnalyticsQueryFanout;
+import com.example.back_end.service.AnalyticsRollupService;
+import com.example.back_end.service.ExamAnswerBuffer;
+import com.example.back_end.service.ExamDeadlineScheduler;
+import com.example.back_end.service.ExamGradingEngine;
+import com.example.back_end.service.MailService;
+import com.example.back_end.service.OtpCodeStore;
+import com.example.back_end.service.OtpRateLimiter;
+import com.example.back_end.service.StudentExamService;
+import com.example.back_end.service.SupportInboxIndex;
+import com.example.back_end.service.SupportPresenceService;
+import com.example.back_end.service.SupportRealtimeGateway;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/metrics")
+public class AdminMetricsController {
+    private final ExamGradingEngine gradingEngine;
+    private final ExamAnswerBuffer answerBuffer;
+    private final StudentExamService studentExamService;
+    private final ExamDeadlineScheduler deadlineScheduler;
+    private final AnalyticsRollupService analyticsRollups;
+    private final AnalyticsQueryFanout analyticsFanout;
+    private final MailService mailService;
+    private final OtpCodeStore otpStore;
+    private final OtpRateLimiter otpRateLimiter;
+    private final PasswordHasher passwordHasher;
+    private final SupportRealtimeGateway supportRealtime;
+    private final SupportPresenceService supportPresence;
+    private final SupportInboxIndex supportInbox;
+
+    public AdminMetricsController(ExamGradingEngine gradingEngine, ExamAnswerBuffer answerBuffer,
+                                  StudentExamService studentExamService, ExamDeadlineScheduler deadlineScheduler,
+                                  AnalyticsRollupService analyticsRollups, AnalyticsQueryFanout analyticsFanout,
+                                  MailService mailService, OtpCodeStore otpStore, OtpRateLimiter otpRateLimiter,
+                                  PasswordHasher passwordHasher, SupportRealtimeGateway supportRealtime,
+                                  SupportPresenceService supportPresence, SupportInboxIndex supportInbox) {
+        this.gradingEngine = gradingEngine;
+        this.answerBuffer = answerBuffer;
+        this.studentExamService = studentExamService;
+        this.deadlineScheduler = deadlineScheduler;
+        this.analyticsRollups = analyticsRollups;
+        this.analyticsFanout = analyticsFanout;
+        this.mailService = mailService;
+        this.otpStore = otpStore;
+        this.otpRateLimiter = otpRateLimiter;
+        this.passwordHasher = passwordHasher;
+        this.supportRealtime = supportRealtime;
+        this.supportPresence = supportPresence;
+        this.supportInbox = supportInbox;
+    }
+
+    @GetMapping
+    @PreAuthorize("hasRole('MANAGER')")
+    public ResponseEntity<Map<String, Object>> metrics() {
+        Map<String, Object> res = new LinkedHashMap<>();
+        res.put("examGrading", gradingEngine.stats());
+        res.put("examAnswerBuffer", answerBuffer.stats());
+        res.put("examOverviewLatency", studentExamService.overviewLatency().snapshot());
+        res.put("examAutoSubmit", deadlineScheduler.stats());
+        res.put("analyticsRollup", analyticsRollups.stats());
+        res.put("analyticsFanout", analyticsFanout.stats());
+        res.put("mail", mailService.stats());
+        res.put("otpStore", otpStore.stats());
+        res.put("otpRateLimits", otpRateLimiter.stats());
+        res.put("passwordHashing", passwordHasher.stats());
+        res.put("supportRealtime", supportRealtime.stats());
+        res.put("supportPresence", supportPresence.stats());
+        res.put("supportInbox", supportInbox.stats());
+        return ResponseEntity.ok(res);
+    }
+}
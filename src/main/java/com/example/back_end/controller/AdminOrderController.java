@@ -1,12 +1,22 @@
 package com.example.back_end.controller;
 
+import com.example.back_end.service.ExportStreamService;
+import com.example.back_end.service.event.CourseMembershipChangedEvent;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,9 +25,41 @@ import java.util.Map;
 @RequestMapping("/api/admin/orders")
 public class AdminOrderController {
 
+    private static final String EXPORT_SQL =
+            "SELECT o.id, o.external_code, o.user_id, u.email, u.full_name, o.course_id, c.title, " +
+            "o.amount, o.currency, o.status, o.method, o.created_at, o.paid_at " +
+            "FROM dbo.orders o " +
+            "LEFT JOIN dbo.users u ON u.id = o.user_id " +
+            "LEFT JOIN dbo.courses c ON c.id = o.course_id " +
+            "WHERE o.created_at >= ? AND o.created_at < ? " +
+            "ORDER BY o.id";
+
+    private static final List<ExportStreamService.Column> EXPORT_COLUMNS = List.of(
+            new ExportStreamService.Column("id", 1),
+            new ExportStreamService.Column("code", 2),
+            new ExportStreamService.Column("userId", 3),
+            new ExportStreamService.Column("email", 4),
+            new ExportStreamService.Column("fullName", 5),
+            new ExportStreamService.Column("courseId", 6),
+            new ExportStreamService.Column("courseTitle", 7),
+            new ExportStreamService.Column("amount", 8),
+            new ExportStreamService.Column("currency", 9),
+            new ExportStreamService.Column("status", 10),
+            new ExportStreamService.Column("method", 11),
+            new ExportStreamService.Column("createdAt", 12),
+            new ExportStreamService.Column("paidAt", 13));
+
     @PersistenceContext
     private EntityManager em;
 
+    private final ExportStreamService exportStreamService;
+    private final ApplicationEventPublisher events;
+
+    public AdminOrderController(ExportStreamService exportStreamService, ApplicationEventPublisher events) {
+        this.exportStreamService = exportStreamService;
+        this.events = events;
+    }
+
     @GetMapping
     @PreAuthorize("hasAnyRole('MANAGER')")
     public ResponseEntity<List<Map<String, Object>>> list() {
@@ -47,6 +89,24 @@ public class AdminOrderController {
         }).toList());
     }
 
+    /**
+     * Xuất đơn hàng tạo trong [from, to] (yyyy-MM-dd, mặc định từ đầu năm tới hôm nay) dạng CSV hoặc NDJSON,
+     * ghi thẳng từ cursor ra response nên xuất được cả năm mà không giữ danh sách trong bộ nhớ.
+     */
+    @GetMapping("/export")
+    @PreAuthorize("hasAnyRole('MANAGER')")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(value = "format", required = false) String format,
+            @RequestParam(value = "from", required = false) String from,
+            @RequestParam(value = "to", required = false) String to
+    ) {
+        LocalDate toDate = parseDate(to, LocalDate.now(ZoneOffset.UTC));
+        LocalDate fromDate = parseDate(from, toDate.withDayOfYear(1));
+        return exportStreamService.export("orders_" + fromDate + "_" + toDate,
+                ExportStreamService.parseFormat(format), EXPORT_SQL, EXPORT_COLUMNS,
+                Timestamp.valueOf(fromDate.atStartOfDay()), Timestamp.valueOf(toDate.plusDays(1).atStartOfDay()));
+    }
+
     @PostMapping("/{id}/approve")
     @PreAuthorize("hasAnyRole('MANAGER')")
     @Transactional
@@ -73,6 +133,7 @@ public class AdminOrderController {
                 .setParameter("uid", userId)
                 .setParameter("cid", courseId)
                 .executeUpdate();
+        events.publishEvent(CourseMembershipChangedEvent.enrollment(courseId, userId));
         return ResponseEntity.ok().build();
     }
 
@@ -89,6 +150,15 @@ public class AdminOrderController {
         return ResponseEntity.ok().build();
     }
 
+    private static LocalDate parseDate(String value, LocalDate fallback) {
+        if (value == null || value.isBlank()) return fallback;
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Ngày không hợp lệ: " + value);
+        }
+    }
+
     private static Long num(Object v){ return v==null? null: ((Number)v).longValue(); }
     private static String str(Object v){ return v==null? null: v.toString(); }
 }
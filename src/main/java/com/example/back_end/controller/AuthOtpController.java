@@ -2,6 +2,7 @@ package com.example.back_end.controller;
 
 import com.example.back_end.dto.AuthDtos;
 import com.example.back_end.service.OtpService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -14,9 +15,10 @@ public class AuthOtpController {
     public AuthOtpController(OtpService otpService) { this.otpService = otpService; }
 
     @PostMapping("/register/start")
-    public ResponseEntity<?> start(@RequestBody AuthDtos.RegisterRequest req) {
+    public ResponseEntity<?> start(@RequestBody AuthDtos.RegisterRequest req, HttpServletRequest request) {
         try {
-            return ResponseEntity.ok(otpService.startRegister(req));
+            // IP client thật sau proxy nhờ server.forward-headers-strategy, không phải IP của proxy
+            return ResponseEntity.ok(otpService.startRegister(req, request.getRemoteAddr()));
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
         }
@@ -1,11 +1,12 @@
 package com.example.back_end.controller;
 
 import com.example.back_end.model.Course;
-import com.example.back_end.model.User;
 import com.example.back_end.repository.CourseRepository;
-import com.example.back_end.repository.UserRepository;
+import com.example.back_end.security.PrincipalCache;
+import com.example.back_end.service.event.CourseMembershipChangedEvent;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -18,20 +19,19 @@ import java.util.Map;
 @RequestMapping("/api/courses")
 public class EnrollmentController {
     @PersistenceContext private EntityManager em;
-    private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
     private final CourseRepository courseRepository;
-    public EnrollmentController(UserRepository userRepository, CourseRepository courseRepository){
-        this.userRepository = userRepository; this.courseRepository = courseRepository;
+    private final ApplicationEventPublisher events;
+    public EnrollmentController(PrincipalCache principalCache, CourseRepository courseRepository, ApplicationEventPublisher events){
+        this.principalCache = principalCache; this.courseRepository = courseRepository; this.events = events;
     }
 
-    private User currentUser(Authentication auth){ return userRepository.findByEmailIgnoreCase(String.valueOf(auth.getPrincipal())).orElseThrow(); }
-
     @PostMapping("/{courseId}/enroll")
     @PreAuthorize("isAuthenticated()")
     @Transactional
     public ResponseEntity<?> enroll(@PathVariable Long courseId, Authentication auth){
         Course c = courseRepository.findById(courseId).orElseThrow();
-        Long uid = currentUser(auth).getId();
+        Long uid = principalCache.require(auth).id();
         // Try insert; if unique constraint hit, treat as already enrolled
         int n = em.createNativeQuery(
                 "INSERT INTO dbo.enrollments(user_id, course_id, source, status)\n" +
@@ -41,6 +41,7 @@ public class EnrollmentController {
                 .setParameter("cid", c.getId())
                 .executeUpdate();
         boolean existed = (n == 0);
+        if (!existed) events.publishEvent(CourseMembershipChangedEvent.enrollment(c.getId(), uid));
         return ResponseEntity.ok(Map.of("ok", true, "enrolled", true, "existed", existed));
     }
 }
@@ -1,11 +1,14 @@
 package com.example.back_end.controller;
 
+import com.example.back_end.service.event.CourseChangedEvent;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
 import java.util.Map;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -15,6 +18,12 @@ public class LessonAssetController {
     @PersistenceContext
     private EntityManager em;
 
+    private final ApplicationEventPublisher events;
+
+    public LessonAssetController(ApplicationEventPublisher events) {
+        this.events = events;
+    }
+
     @PostMapping("/{lessonId}/assets")
     @PreAuthorize("hasAnyRole('TEACHER','MANAGER')")
     @Transactional
@@ -29,6 +38,13 @@ public class LessonAssetController {
                 .setParameter(3, url)
                 .setParameter(4, mime)
                 .executeUpdate();
+        List<?> courseIds = em.createNativeQuery(
+                        "SELECT m.course_id FROM dbo.lessons l JOIN dbo.modules m ON m.id = l.module_id WHERE l.id = :lid")
+                .setParameter("lid", lessonId)
+                .getResultList();
+        if (!courseIds.isEmpty() && courseIds.get(0) != null) {
+            events.publishEvent(CourseChangedEvent.outline(((Number) courseIds.get(0)).longValue()));
+        }
         return ResponseEntity.ok(Map.of("ok", true));
     }
 }
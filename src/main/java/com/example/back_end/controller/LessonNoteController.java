@@ -1,8 +1,8 @@
 package com.example.back_end.controller;
 
 import com.example.back_end.dto.LessonNoteDtos;
-import com.example.back_end.model.User;
-import com.example.back_end.repository.UserRepository;
+import com.example.back_end.security.AuthenticatedUser;
+import com.example.back_end.security.PrincipalCache;
 import com.example.back_end.service.LessonNoteService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -16,11 +16,11 @@ import java.util.Map;
 @RequestMapping("/api/lesson-notes")
 public class LessonNoteController {
     private final LessonNoteService lessonNoteService;
-    private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
 
-    public LessonNoteController(LessonNoteService lessonNoteService, UserRepository userRepository) {
+    public LessonNoteController(LessonNoteService lessonNoteService, PrincipalCache principalCache) {
         this.lessonNoteService = lessonNoteService;
-        this.userRepository = userRepository;
+        this.principalCache = principalCache;
     }
 
     @GetMapping("/courses/{courseId}/lessons/{lessonId}")
@@ -30,7 +30,7 @@ public class LessonNoteController {
             @PathVariable Long courseId,
             @PathVariable Long lessonId
     ) {
-        User user = currentUser(auth);
+        AuthenticatedUser user = principalCache.require(auth);
         return ResponseEntity.ok(lessonNoteService.listNotes(user, courseId, lessonId));
     }
 
@@ -42,7 +42,7 @@ public class LessonNoteController {
             @PathVariable Long lessonId,
             @RequestBody LessonNoteDtos.CreateRequest request
     ) {
-        User user = currentUser(auth);
+        AuthenticatedUser user = principalCache.require(auth);
         return ResponseEntity.ok(lessonNoteService.createNote(user, courseId, lessonId, request != null ? request.content : null));
     }
 
@@ -53,7 +53,7 @@ public class LessonNoteController {
             @PathVariable Long noteId,
             @RequestBody LessonNoteDtos.CommentRequest request
     ) {
-        User user = currentUser(auth);
+        AuthenticatedUser user = principalCache.require(auth);
         return ResponseEntity.ok(lessonNoteService.addComment(user, noteId, request != null ? request.content : null));
     }
 
@@ -64,19 +64,11 @@ public class LessonNoteController {
             @PathVariable Long noteId,
             @RequestBody(required = false) Map<String, String> body
     ) {
-        User user = currentUser(auth);
-        LessonNoteDtos.NoteResponse dto = lessonNoteService.getNoteForUser(noteId, user.getId());
+        AuthenticatedUser user = principalCache.require(auth);
+        LessonNoteDtos.NoteResponse dto = lessonNoteService.getNoteForUser(noteId, user.id());
         if (body != null && body.get("status") != null) {
             dto.status = body.get("status");
         }
         return ResponseEntity.ok(dto);
     }
-
-    private User currentUser(Authentication auth) {
-        if (auth == null) {
-            throw new IllegalStateException("Chưa xác thực");
-        }
-        return userRepository.findByEmailIgnoreCase(String.valueOf(auth.getPrincipal()))
-                .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy người dùng"));
-    }
 }
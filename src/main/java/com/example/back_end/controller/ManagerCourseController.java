@@ -4,6 +4,8 @@ import com.example.back_end.model.Course;
 import com.example.back_end.model.User;
 import com.example.back_end.repository.CourseRepository;
 import com.example.back_end.repository.UserRepository;
+import com.example.back_end.service.event.CourseChangedEvent;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -19,10 +21,12 @@ import com.example.back_end.repository.projection.ManagerPendingCourseProjection
 public class ManagerCourseController {
     private final CourseRepository courseRepository;
     private final UserRepository userRepository;
+    private final ApplicationEventPublisher events;
 
-    public ManagerCourseController(CourseRepository courseRepository, UserRepository userRepository) {
+    public ManagerCourseController(CourseRepository courseRepository, UserRepository userRepository, ApplicationEventPublisher events) {
         this.courseRepository = courseRepository;
         this.userRepository = userRepository;
+        this.events = events;
     }
 
     private User currentUser(Authentication auth) {
@@ -44,6 +48,7 @@ public class ManagerCourseController {
         c.setApprovedBy(currentUser(auth));
         c.setStatus("published");
         courseRepository.save(c);
+        events.publishEvent(CourseChangedEvent.course(id));
         return ResponseEntity.ok(Map.of("ok", true));
     }
 
@@ -61,6 +66,7 @@ public class ManagerCourseController {
             c.setStatus("draft");
         }
         courseRepository.save(c);
+        events.publishEvent(CourseChangedEvent.course(id));
         return ResponseEntity.ok(Map.of("ok", true, "note", note));
     }
 
@@ -69,6 +75,7 @@ public class ManagerCourseController {
     public ResponseEntity<?> delete(@PathVariable Long id) {
         if (!courseRepository.existsById(id)) return ResponseEntity.notFound().build();
         courseRepository.deleteById(id);
+        events.publishEvent(CourseChangedEvent.course(id));
         return ResponseEntity.noContent().build();
     }
 }
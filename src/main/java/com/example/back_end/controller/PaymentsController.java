@@ -2,6 +2,7 @@ package com.example.back_end.controller;
 
 import com.example.back_end.model.User;
 import com.example.back_end.repository.UserRepository;
+import com.example.back_end.security.AuthenticatedUser;
 import com.example.back_end.service.PaymentGatewayService;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
@@ -103,6 +104,7 @@ public class PaymentsController {
     private Long resolveUserId(Map<String, Object> body) {
         String email = str(body.get("buyer_email"));
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth != null && auth.getDetails() instanceof AuthenticatedUser user) return user.id();
         if (auth != null && auth.isAuthenticated() && auth.getPrincipal() instanceof String) {
             email = (String) auth.getPrincipal();
         }
@@ -1,6 +1,7 @@
 package com.example.back_end.controller;
 
 import com.example.back_end.dto.ProfileDtos;
+import com.example.back_end.security.PrincipalCache;
 import com.example.back_end.service.OtpService;
 import com.example.back_end.service.ProfileService;
 import org.springframework.http.ResponseEntity;
@@ -20,10 +21,12 @@ public class ProfileController {
 
     private final ProfileService profileService;
     private final OtpService otpService;
+    private final PrincipalCache principalCache;
 
-    public ProfileController(ProfileService profileService, OtpService otpService) {
+    public ProfileController(ProfileService profileService, OtpService otpService, PrincipalCache principalCache) {
         this.profileService = profileService;
         this.otpService = otpService;
+        this.principalCache = principalCache;
     }
 
     @GetMapping
@@ -31,7 +34,7 @@ public class ProfileController {
         if (authentication == null || authentication.getPrincipal() == null) {
             return ResponseEntity.status(401).body("Unauthenticated");
         }
-        return ResponseEntity.ok(profileService.getProfile(authentication.getName()));
+        return ResponseEntity.ok(profileService.getProfile(principalCache.require(authentication).id()));
     }
 
     @PutMapping
@@ -40,7 +43,7 @@ public class ProfileController {
             return ResponseEntity.status(401).body("Unauthenticated");
         }
         try {
-            return ResponseEntity.ok(profileService.updateProfile(authentication.getName(), request));
+            return ResponseEntity.ok(profileService.updateProfile(principalCache.require(authentication).id(), request));
         } catch (IllegalArgumentException ex) {
             return ResponseEntity.badRequest().body(Map.of("message", ex.getMessage()));
         }
@@ -52,7 +55,7 @@ public class ProfileController {
             return ResponseEntity.status(401).body("Unauthenticated");
         }
         try {
-            profileService.changePassword(authentication.getName(), request);
+            profileService.changePassword(principalCache.require(authentication).id(), request);
             return ResponseEntity.ok(Map.of("success", true));
         } catch (IllegalArgumentException ex) {
             return ResponseEntity.badRequest().body(Map.of("message", ex.getMessage()));
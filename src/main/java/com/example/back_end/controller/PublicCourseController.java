@@ -2,21 +2,28 @@ package com.example.back_end.controller;
 
 import com.example.back_end.repository.CourseRepository;
 import com.example.back_end.repository.projection.CourseCardProjection;
+import com.example.back_end.service.CourseSearchIndex;
+import com.example.back_end.util.KeysetCursor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/public/courses")
 public class PublicCourseController {
     private final CourseRepository courseRepository;
+    private final CourseSearchIndex searchIndex;
 
-    public PublicCourseController(CourseRepository courseRepository) {
+    public PublicCourseController(CourseRepository courseRepository, CourseSearchIndex searchIndex) {
         this.courseRepository = courseRepository;
+        this.searchIndex = searchIndex;
     }
 
     @GetMapping
@@ -24,13 +31,54 @@ public class PublicCourseController {
             @RequestParam(defaultValue = "0") int offset,
             @RequestParam(defaultValue = "12") int limit,
             @RequestParam(required = false) String status,
-            @RequestParam(value = "q", required = false) String keyword
+            @RequestParam(value = "q", required = false) String keyword,
+            @RequestParam(required = false) String cursor
     ) {
         int safeLimit = Math.max(1, Math.min(limit, 100));
         String normalizedKeyword = normalizeKeyword(keyword);
+        if (normalizedKeyword != null && searchIndex.isReady()) {
+            // Tìm theo chỉ mục trong bộ nhớ: kết quả xếp theo độ liên quan, phân trang bằng offset (cursor bị bỏ qua)
+            List<Long> ids = searchIndex.search(normalizedKeyword, status, Math.max(0, offset), safeLimit);
+            return ResponseEntity.ok(ids.isEmpty() ? List.of() : inRankOrder(ids, courseRepository.findCourseCardsByIds(ids)));
+        }
+        if (cursor != null) {
+            // Keyset mode: cursor rỗng = trang đầu, trang kế tiếp lấy từ header X-Next-Cursor
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            List<CourseCardProjection> page = courseRepository.findCourseCardsAfter(status, after.createdAt(), after.id(), safeLimit, normalizedKeyword);
+            ResponseEntity.BodyBuilder res = ResponseEntity.ok();
+            if (page.size() == safeLimit) {
+                CourseCardProjection last = page.get(page.size() - 1);
+                res.header("X-Next-Cursor", new KeysetCursor(last.getCreatedAt(), last.getId()).encode());
+            }
+            return res.body(page);
+        }
         return ResponseEntity.ok(courseRepository.findCourseCards(status, offset, safeLimit, normalizedKeyword));
     }
 
+    // Gợi ý cho ô tìm kiếm (typeahead), trả thẳng từ chỉ mục trong bộ nhớ
+    @GetMapping("/suggest")
+    public ResponseEntity<List<CourseSearchIndex.Hit>> suggest(
+            @RequestParam("q") String keyword,
+            @RequestParam(defaultValue = "published") String status,
+            @RequestParam(defaultValue = "8") int limit
+    ) {
+        String normalizedKeyword = normalizeKeyword(keyword);
+        if (normalizedKeyword == null) return ResponseEntity.ok(List.of());
+        String statusFilter = status.isBlank() || "all".equalsIgnoreCase(status) ? null : status;
+        return ResponseEntity.ok(searchIndex.suggest(normalizedKeyword, statusFilter, Math.max(1, Math.min(limit, 20))));
+    }
+
+    private static List<CourseCardProjection> inRankOrder(List<Long> ids, List<CourseCardProjection> rows) {
+        Map<Long, CourseCardProjection> byId = new HashMap<>();
+        for (CourseCardProjection r : rows) byId.put(r.getId(), r);
+        List<CourseCardProjection> ordered = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            CourseCardProjection r = byId.get(id);
+            if (r != null) ordered.add(r);
+        }
+        return ordered;
+    }
+
     private String normalizeKeyword(String keyword) {
         if (keyword == null) return null;
         String trimmed = keyword.trim();
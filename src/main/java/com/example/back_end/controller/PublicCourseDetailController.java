@@ -1,27 +1,26 @@
 package com.example.back_end.controller;
 
 import com.example.back_end.dto.public_.PublicCourseDetailDto;
-import com.example.back_end.service.PublicCourseQueryService;
+import com.example.back_end.service.PublicCourseDetailCache;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
 @RequestMapping("/api/public/courses")
 public class PublicCourseDetailController {
-    private final PublicCourseQueryService queryService;
+    private final PublicCourseDetailCache detailCache;
 
-    public PublicCourseDetailController(PublicCourseQueryService queryService) {
-        this.queryService = queryService;
+    public PublicCourseDetailController(PublicCourseDetailCache detailCache) {
+        this.detailCache = detailCache;
     }
 
     @GetMapping("/{slug}/detail-sql")
     public ResponseEntity<?> detail(@PathVariable String slug) {
-        PublicCourseDetailDto dto = queryService.loadCourseDetailBySlug(slug);
+        PublicCourseDetailDto dto = detailCache.bySlug(slug);
         if (dto == null && slug.matches("\\d+")) {
-            dto = queryService.loadCourseDetailById(Long.parseLong(slug), false);
+            dto = detailCache.byId(Long.parseLong(slug));
         }
         if (dto == null) return ResponseEntity.notFound().build();
         return ResponseEntity.ok(dto);
     }
 }
-
@@ -2,22 +2,29 @@ package com.example.back_end.controller;
 
 import com.example.back_end.repository.CourseRepository;
 import com.example.back_end.repository.projection.CourseCardSqlProjection;
+import com.example.back_end.service.CourseSearchIndex;
+import com.example.back_end.util.KeysetCursor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 // Trả dữ liệu đúng tên cột theo T-SQL (snake_case)
 @RestController
 @RequestMapping("/api/public/courses-sql")
 public class PublicCourseSqlController {
     private final CourseRepository courseRepository;
+    private final CourseSearchIndex searchIndex;
 
-    public PublicCourseSqlController(CourseRepository courseRepository) {
+    public PublicCourseSqlController(CourseRepository courseRepository, CourseSearchIndex searchIndex) {
         this.courseRepository = courseRepository;
+        this.searchIndex = searchIndex;
     }
 
     @GetMapping
@@ -25,13 +32,41 @@ public class PublicCourseSqlController {
             @RequestParam(defaultValue = "0") int offset,
             @RequestParam(defaultValue = "12") int limit,
             @RequestParam(required = false) String status,
-            @RequestParam(value = "q", required = false) String keyword
+            @RequestParam(value = "q", required = false) String keyword,
+            @RequestParam(required = false) String cursor
     ) {
         int safeLimit = Math.max(1, Math.min(limit, 100));
         String normalizedKeyword = normalizeKeyword(keyword);
+        if (normalizedKeyword != null && searchIndex.isReady()) {
+            // Tìm theo chỉ mục trong bộ nhớ: kết quả xếp theo độ liên quan, phân trang bằng offset (cursor bị bỏ qua)
+            List<Long> ids = searchIndex.search(normalizedKeyword, status, Math.max(0, offset), safeLimit);
+            return ResponseEntity.ok(ids.isEmpty() ? List.of() : inRankOrder(ids, courseRepository.findCourseCardsSqlByIds(ids)));
+        }
+        if (cursor != null) {
+            // Keyset mode: cursor rỗng = trang đầu, trang kế tiếp lấy từ header X-Next-Cursor
+            KeysetCursor after = KeysetCursor.decode(cursor);
+            List<CourseCardSqlProjection> page = courseRepository.findCourseCardsSqlAfter(status, after.createdAt(), after.id(), safeLimit, normalizedKeyword);
+            ResponseEntity.BodyBuilder res = ResponseEntity.ok();
+            if (page.size() == safeLimit) {
+                CourseCardSqlProjection last = page.get(page.size() - 1);
+                res.header("X-Next-Cursor", new KeysetCursor(last.getCreated_at(), last.getId()).encode());
+            }
+            return res.body(page);
+        }
         return ResponseEntity.ok(courseRepository.findCourseCardsSql(status, offset, safeLimit, normalizedKeyword));
     }
 
+    private static List<CourseCardSqlProjection> inRankOrder(List<Long> ids, List<CourseCardSqlProjection> rows) {
+        Map<Long, CourseCardSqlProjection> byId = new HashMap<>();
+        for (CourseCardSqlProjection r : rows) byId.put(r.getId(), r);
+        List<CourseCardSqlProjection> ordered = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            CourseCardSqlProjection r = byId.get(id);
+            if (r != null) ordered.add(r);
+        }
+        return ordered;
+    }
+
     private String normalizeKeyword(String keyword) {
         if (keyword == null) return null;
         String trimmed = keyword.trim();
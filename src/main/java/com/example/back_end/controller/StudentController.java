@@ -1,9 +1,8 @@
 package com.example.back_end.controller;
 
 import com.example.back_end.dto.StudentDtos;
-import com.example.back_end.model.Role;
-import com.example.back_end.model.User;
-import com.example.back_end.repository.UserRepository;
+import com.example.back_end.security.AuthenticatedUser;
+import com.example.back_end.security.PrincipalCache;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import org.springframework.http.ResponseEntity;
@@ -21,27 +20,25 @@ import java.util.stream.Collectors;
 @RestController
 @RequestMapping("/api/student")
 public class StudentController {
-    private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
     @PersistenceContext private EntityManager em;
 
-    public StudentController(UserRepository userRepository){ this.userRepository = userRepository; }
-
-    private User currentUser(Authentication auth){ return userRepository.findByEmailIgnoreCase(String.valueOf(auth.getPrincipal())).orElseThrow(); }
+    public StudentController(PrincipalCache principalCache){ this.principalCache = principalCache; }
 
     @GetMapping("/me")
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<StudentDtos.StudentInfo> me(Authentication auth){
-        User u = currentUser(auth);
+        AuthenticatedUser u = principalCache.require(auth);
         StudentDtos.StudentInfo info = new StudentDtos.StudentInfo();
-        info.id = u.getId(); info.email = u.getEmail(); info.fullName = u.getFullName();
-        info.roles = u.getRoles().stream().map(Role::getCode).collect(Collectors.toList());
+        info.id = u.id(); info.email = u.email(); info.fullName = u.fullName();
+        info.roles = u.roles().stream().sorted().collect(Collectors.toList());
         return ResponseEntity.ok(info);
     }
 
     @GetMapping("/enrollments")
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<List<StudentDtos.EnrolledCourse>> enrollments(Authentication auth){
-        Long uid = currentUser(auth).getId();
+        Long uid = principalCache.require(auth).id();
         List<Object[]> rows = em.createNativeQuery(
                 "SELECT c.id, c.title, c.slug, c.level, c.thumbnail_url, c.price, c.is_free, e.status, e.start_at\n"+
                 "FROM dbo.enrollments e JOIN dbo.courses c ON c.id = e.course_id\n"+
@@ -1,8 +1,7 @@
 package com.example.back_end.controller;
 
 import com.example.back_end.dto.ExamDtos;
-import com.example.back_end.model.User;
-import com.example.back_end.repository.UserRepository;
+import com.example.back_end.security.PrincipalCache;
 import com.example.back_end.service.StudentExamService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -14,16 +13,16 @@ import java.util.List;
 @RestController
 @RequestMapping("/api/student/exams")
 public class StudentExamController {
-    private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
     private final StudentExamService studentExamService;
 
-    public StudentExamController(UserRepository userRepository, StudentExamService studentExamService) {
-        this.userRepository = userRepository;
+    public StudentExamController(PrincipalCache principalCache, StudentExamService studentExamService) {
+        this.principalCache = principalCache;
         this.studentExamService = studentExamService;
     }
 
-    private User currentUser(Authentication auth) {
-        return userRepository.findByEmailIgnoreCase(String.valueOf(auth.getPrincipal())).orElseThrow();
+    private Long currentUserId(Authentication auth) {
+        return principalCache.require(auth).id();
     }
 
     @GetMapping("/courses/{courseId}")
@@ -32,7 +31,7 @@ public class StudentExamController {
             @PathVariable Long courseId,
             Authentication auth
     ) {
-        currentUser(auth); // ensure authenticated user exists
+        currentUserId(auth); // ensure authenticated user exists
         return ResponseEntity.ok(studentExamService.listCourseExams(courseId));
     }
 
@@ -43,8 +42,8 @@ public class StudentExamController {
             @PathVariable Long examId,
             Authentication auth
     ) {
-        User user = currentUser(auth);
-        return ResponseEntity.ok(studentExamService.loadOverview(user.getId(), courseId, examId));
+        Long userId = currentUserId(auth);
+        return ResponseEntity.ok(studentExamService.loadOverview(userId, courseId, examId));
     }
 
     @PostMapping("/courses/{courseId}/exams/{examId}/attempts")
@@ -55,9 +54,9 @@ public class StudentExamController {
             @RequestBody(required = false) ExamDtos.StartAttemptRequest body,
             Authentication auth
     ) {
-        User user = currentUser(auth);
+        Long userId = currentUserId(auth);
         Long resumeId = body != null ? body.resumeAttemptId : null;
-        return ResponseEntity.ok(studentExamService.createOrResumeAttempt(user.getId(), courseId, examId, resumeId));
+        return ResponseEntity.ok(studentExamService.createOrResumeAttempt(userId, courseId, examId, resumeId));
     }
 
     @GetMapping("/attempts/{attemptId}")
@@ -66,8 +65,8 @@ public class StudentExamController {
             @PathVariable Long attemptId,
             Authentication auth
     ) {
-        User user = currentUser(auth);
-        return ResponseEntity.ok(studentExamService.loadAttempt(user.getId(), attemptId));
+        Long userId = currentUserId(auth);
+        return ResponseEntity.ok(studentExamService.loadAttempt(userId, attemptId));
     }
 
     @PatchMapping("/attempts/{attemptId}/answers")
@@ -77,8 +76,8 @@ public class StudentExamController {
             @RequestBody ExamDtos.AnswerUpdateRequest request,
             Authentication auth
     ) {
-        User user = currentUser(auth);
-        studentExamService.saveAnswer(user.getId(), attemptId, request);
+        Long userId = currentUserId(auth);
+        studentExamService.saveAnswer(userId, attemptId, request);
         return ResponseEntity.ok().build();
     }
 
@@ -88,8 +87,8 @@ public class StudentExamController {
             @PathVariable Long attemptId,
             Authentication auth
     ) {
-        User user = currentUser(auth);
-        return ResponseEntity.ok(studentExamService.submitAttempt(user.getId(), attemptId));
+        Long userId = currentUserId(auth);
+        return ResponseEntity.ok(studentExamService.submitAttempt(userId, attemptId));
     }
 
     @PostMapping("/courses/{courseId}/certificate")
@@ -98,14 +97,14 @@ public class StudentExamController {
             @PathVariable Long courseId,
             Authentication auth
     ) {
-        User user = currentUser(auth);
-        return ResponseEntity.ok(studentExamService.ensureCertificate(user.getId(), courseId));
+        Long userId = currentUserId(auth);
+        return ResponseEntity.ok(studentExamService.ensureCertificate(userId, courseId));
     }
 
     @GetMapping("/certificates")
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<List<StudentExamService.CertificateSummary>> certificates(Authentication auth) {
-        User user = currentUser(auth);
-        return ResponseEntity.ok(studentExamService.listCertificates(user.getId()));
+        Long userId = currentUserId(auth);
+        return ResponseEntity.ok(studentExamService.listCertificates(userId));
     }
 }
@@ -1,8 +1,7 @@
 package com.example.back_end.controller;
 
 import com.example.back_end.dto.StudentDtos;
-import com.example.back_end.model.User;
-import com.example.back_end.repository.UserRepository;
+import com.example.back_end.security.PrincipalCache;
 import com.example.back_end.service.StudentProgressService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -15,30 +14,30 @@ import java.util.Map;
 @RestController
 @RequestMapping("/api/student/progress")
 public class StudentProgressController {
-    private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
     private final StudentProgressService studentProgressService;
 
-    public StudentProgressController(UserRepository userRepository, StudentProgressService studentProgressService) {
-        this.userRepository = userRepository;
+    public StudentProgressController(PrincipalCache principalCache, StudentProgressService studentProgressService) {
+        this.principalCache = principalCache;
         this.studentProgressService = studentProgressService;
     }
 
-    private User currentUser(Authentication auth) {
-        return userRepository.findByEmailIgnoreCase(String.valueOf(auth.getPrincipal())).orElseThrow();
+    private Long currentUserId(Authentication auth) {
+        return principalCache.require(auth).id();
     }
 
     @GetMapping("/courses/{courseId}")
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<StudentDtos.CourseProgress> courseProgress(@PathVariable Long courseId, Authentication auth) {
-        User user = currentUser(auth);
-        return ResponseEntity.ok(studentProgressService.getCourseProgress(user.getId(), courseId));
+        Long userId = currentUserId(auth);
+        return ResponseEntity.ok(studentProgressService.getCourseProgress(userId, courseId));
     }
 
     @PostMapping("/lessons/{lessonId}/complete")
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<Map<String, Object>> completeLesson(@PathVariable Long lessonId, Authentication auth) {
-        User user = currentUser(auth);
-        studentProgressService.markLessonCompleted(user.getId(), lessonId);
+        Long userId = currentUserId(auth);
+        studentProgressService.markLessonCompleted(userId, lessonId);
         return ResponseEntity.ok(Collections.singletonMap("ok", true));
     }
 }
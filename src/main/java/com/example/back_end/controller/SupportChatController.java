@@ -4,6 +4,7 @@ import com.example.back_end.dto.SupportDtos;
 import com.example.back_end.model.User;
 import com.example.back_end.repository.UserRepository;
 import com.example.back_end.service.SupportChatService;
+import com.example.back_end.service.SupportPresenceService;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -18,11 +19,14 @@ import java.time.LocalDateTime;
 public class SupportChatController {
     private final SupportChatService supportChatService;
     private final UserRepository userRepository;
+    private final SupportPresenceService presenceService;
 
     public SupportChatController(SupportChatService supportChatService,
-                                 UserRepository userRepository) {
+                                 UserRepository userRepository,
+                                 SupportPresenceService presenceService) {
         this.supportChatService = supportChatService;
         this.userRepository = userRepository;
+        this.presenceService = presenceService;
     }
 
     @PostMapping("/threads")
@@ -59,6 +63,21 @@ public class SupportChatController {
         return ResponseEntity.ok(supportChatService.studentThreadDetail(id, current.getId()));
     }
 
+    @GetMapping("/threads/{id}/messages")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<SupportDtos.MessagePage> threadMessages(
+            Authentication auth,
+            @PathVariable Long id,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(required = false) Integer limit
+    ) {
+        User current = requireCurrentUser(auth);
+        if (hasRole(auth, "MANAGER")) {
+            return ResponseEntity.ok(supportChatService.managerMessages(id, beforeId, limit));
+        }
+        return ResponseEntity.ok(supportChatService.studentMessages(id, current.getId(), beforeId, limit));
+    }
+
     @PostMapping("/threads/{id}/messages")
     @PreAuthorize("hasRole('STUDENT')")
     public ResponseEntity<SupportDtos.MessageDto> sendStudentMessage(
@@ -106,6 +125,23 @@ public class SupportChatController {
         return ResponseEntity.ok(supportChatService.managerThreads(manager.getId(), filter, page, size));
     }
 
+    @GetMapping("/manager/presence")
+    @PreAuthorize("hasRole('MANAGER')")
+    public ResponseEntity<SupportDtos.PresenceSnapshot> presence() {
+        // Ảnh chụp ban đầu; sau đó client nghe delta trên /topic/support/presence
+        SupportDtos.PresenceSnapshot snapshot = new SupportDtos.PresenceSnapshot();
+        snapshot.online = presenceService.onlineUsers();
+        return ResponseEntity.ok(snapshot);
+    }
+
+    @GetMapping("/manager/inbox/badges")
+    @PreAuthorize("hasRole('MANAGER')")
+    public ResponseEntity<SupportDtos.InboxBadges> inboxBadges(Authentication auth) {
+        // Số ban đầu; sau đó client nghe InboxDelta trên /topic/support/inbox
+        User manager = requireCurrentUser(auth);
+        return ResponseEntity.ok(supportChatService.managerBadges(manager.getId()));
+    }
+
     @PostMapping("/manager/threads/{id}/claim")
     @PreAuthorize("hasRole('MANAGER')")
     public ResponseEntity<SupportDtos.ThreadSummary> claimThread(
@@ -0,0 +1,32 @@
+package com.example.back_end.controller;
+
+import com.example.back_end.dto.SupportDtos;
+import com.example.back_end.service.SupportPresenceService;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Controller;
+
+/** Frame STOMP gửi lên /app: heartbeat giữ trạng thái online và sự kiện đang gõ trong một hội thoại. */
+@Controller
+public class SupportRealtimeController {
+    private final SupportPresenceService presenceService;
+
+    public SupportRealtimeController(SupportPresenceService presenceService) {
+        this.presenceService = presenceService;
+    }
+
+    @MessageMapping("/support/heartbeat")
+    public void heartbeat(SimpMessageHeaderAccessor headers) {
+        presenceService.touch(headers.getSessionId(), System.currentTimeMillis());
+    }
+
+    @MessageMapping("/support/threads/{threadId}/typing")
+    public void typing(@DestinationVariable Long threadId,
+                       @Payload(required = false) SupportDtos.TypingRequest request,
+                       SimpMessageHeaderAccessor headers) {
+        boolean typing = request == null || request.typing == null || request.typing;
+        presenceService.typing(headers.getSessionId(), threadId, typing, System.currentTimeMillis());
+    }
+}
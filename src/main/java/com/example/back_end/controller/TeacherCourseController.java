@@ -7,6 +7,8 @@ import com.example.back_end.model.User;
 import com.example.back_end.repository.CategoryRepository;
 import com.example.back_end.repository.CourseRepository;
 import com.example.back_end.repository.UserRepository;
+import com.example.back_end.service.event.CourseChangedEvent;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -24,11 +26,14 @@ public class TeacherCourseController {
     private final CourseRepository courseRepository;
     private final UserRepository userRepository;
     private final CategoryRepository categoryRepository;
+    private final ApplicationEventPublisher events;
 
-    public TeacherCourseController(CourseRepository courseRepository, UserRepository userRepository, CategoryRepository categoryRepository) {
+    public TeacherCourseController(CourseRepository courseRepository, UserRepository userRepository, CategoryRepository categoryRepository,
+                                   ApplicationEventPublisher events) {
         this.courseRepository = courseRepository;
         this.userRepository = userRepository;
         this.categoryRepository = categoryRepository;
+        this.events = events;
     }
 
     private User currentUser(Authentication auth) {
@@ -54,6 +59,7 @@ public class TeacherCourseController {
             c.setCreatedBy(creator);
             c.setApprovalStatus("draft");
             c = courseRepository.save(c);
+            events.publishEvent(CourseChangedEvent.course(c.getId()));
             return ResponseEntity.ok(Map.of("id", c.getId(), "slug", c.getSlug()));
         } catch (org.springframework.dao.DataIntegrityViolationException dive) {
             String msg = String.valueOf(dive.getMostSpecificCause());
@@ -79,6 +85,7 @@ public class TeacherCourseController {
         }
         c.setThumbnailUrl(body.get("url"));
         courseRepository.save(c);
+        events.publishEvent(CourseChangedEvent.course(id));
         return ResponseEntity.ok(Map.of("ok", true));
     }
 
@@ -133,6 +140,7 @@ public class TeacherCourseController {
         if (req.categories != null) c.setCategories(resolveCategories(req.categories));
         try {
             courseRepository.save(c);
+            events.publishEvent(CourseChangedEvent.course(id));
             return ResponseEntity.ok(Map.of("ok", true));
         } catch (org.springframework.dao.DataIntegrityViolationException dive) {
             String msg = String.valueOf(dive.getMostSpecificCause());
@@ -234,6 +242,7 @@ public class TeacherCourseController {
         boolean isManager = auth.getAuthorities().stream().anyMatch(a -> a.getAuthority().equals("ROLE_MANAGER"));
         if (!(isOwner || isManager)) return ResponseEntity.status(403).body("Not owner");
         courseRepository.delete(c);
+        events.publishEvent(CourseChangedEvent.course(id));
         return ResponseEntity.noContent().build();
     }
 
@@ -248,6 +257,7 @@ public class TeacherCourseController {
         c.setApprovalStatus("pending");
         c.setSubmittedAt(LocalDateTime.now());
         courseRepository.save(c);
+        events.publishEvent(CourseChangedEvent.course(id));
         return ResponseEntity.ok(Map.of("ok", true));
     }
 }
@@ -1,9 +1,9 @@
 package com.example.back_end.controller;
 
-import com.example.back_end.model.User;
 import com.example.back_end.repository.CourseRepository;
-import com.example.back_end.repository.UserRepository;
 import com.example.back_end.repository.projection.TeacherCourseProjection;
+import com.example.back_end.security.AuthenticatedUser;
+import com.example.back_end.security.PrincipalCache;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -18,11 +18,11 @@ import java.util.List;
 @RequestMapping("/api/teacher/courses")
 public class TeacherCourseQueryController {
     private final CourseRepository courseRepository;
-    private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
 
-    public TeacherCourseQueryController(CourseRepository courseRepository, UserRepository userRepository) {
+    public TeacherCourseQueryController(CourseRepository courseRepository, PrincipalCache principalCache) {
         this.courseRepository = courseRepository;
-        this.userRepository = userRepository;
+        this.principalCache = principalCache;
     }
 
     @GetMapping("/my")
@@ -38,7 +38,8 @@ public class TeacherCourseQueryController {
             Authentication auth,
             @RequestParam(value = "status", required = false) String status
     ) {
-        User user = userRepository.findByEmailIgnoreCase(String.valueOf(auth.getPrincipal())).orElse(null);
+        AuthenticatedUser user = auth.getDetails() instanceof AuthenticatedUser u
+                ? u : principalCache.resolve(String.valueOf(auth.getPrincipal()));
         if (user == null) {
             return ResponseEntity.status(401).build();
         }
@@ -46,6 +47,6 @@ public class TeacherCourseQueryController {
         if (isManager) {
             return ResponseEntity.ok(courseRepository.findAllCoursesForManager(status));
         }
-        return ResponseEntity.ok(courseRepository.findCoursesByInstructor(user.getId(), status));
+        return ResponseEntity.ok(courseRepository.findCoursesByInstructor(user.id(), status));
     }
 }
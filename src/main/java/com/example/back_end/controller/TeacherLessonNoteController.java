@@ -1,7 +1,7 @@
 package com.example.back_end.controller;
 
-import com.example.back_end.model.User;
-import com.example.back_end.repository.UserRepository;
+import com.example.back_end.security.AuthenticatedUser;
+import com.example.back_end.security.PrincipalCache;
 import com.example.back_end.service.LessonNoteService;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -17,11 +17,11 @@ import java.util.Map;
 @RequestMapping("/api/teacher/lesson-notes")
 public class TeacherLessonNoteController {
     private final LessonNoteService lessonNoteService;
-    private final UserRepository userRepository;
+    private final PrincipalCache principalCache;
 
-    public TeacherLessonNoteController(LessonNoteService lessonNoteService, UserRepository userRepository) {
+    public TeacherLessonNoteController(LessonNoteService lessonNoteService, PrincipalCache principalCache) {
         this.lessonNoteService = lessonNoteService;
-        this.userRepository = userRepository;
+        this.principalCache = principalCache;
     }
 
     @GetMapping
@@ -32,16 +32,8 @@ public class TeacherLessonNoteController {
             @RequestParam(value = "status", required = false) String status,
             @RequestParam(value = "q", required = false) String query
     ) {
-        User user = currentUser(auth);
+        AuthenticatedUser user = principalCache.require(auth);
         var data = lessonNoteService.listNotesForTeacher(user, courseId, status, query);
         return ResponseEntity.ok(Map.of("data", data));
     }
-
-    private User currentUser(Authentication auth) {
-        if (auth == null) {
-            throw new IllegalStateException("Chưa xác thực");
-        }
-        return userRepository.findByEmailIgnoreCase(String.valueOf(auth.getPrincipal()))
-                .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy người dùng"));
-    }
 }
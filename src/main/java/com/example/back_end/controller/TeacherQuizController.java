@@ -2,9 +2,9 @@ package com.example.back_end.controller;
 
 import com.example.back_end.dto.QuizDtos;
 import com.example.back_end.model.Course;
-import com.example.back_end.model.User;
 import com.example.back_end.repository.CourseRepository;
-import com.example.back_end.repository.UserRepository;
+import com.example.back_end.security.PrincipalCache;
+import com.example.back_end.service.QuizSnapshotCache;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import org.springframework.http.HttpStatus;
@@ -25,9 +25,10 @@ import java.util.Map;
 @RequestMapping("/api/teacher/quizzes")
 public class TeacherQuizController {
     @PersistenceContext private EntityManager em;
-    private final CourseRepository courseRepository; private final UserRepository userRepository;
-    public TeacherQuizController(CourseRepository courseRepository, UserRepository userRepository){ this.courseRepository=courseRepository; this.userRepository=userRepository; }
-    private User currentUser(Authentication auth){ return userRepository.findByEmailIgnoreCase(String.valueOf(auth.getPrincipal())).orElseThrow(); }
+    private final CourseRepository courseRepository; private final PrincipalCache principalCache;
+    private final QuizSnapshotCache quizSnapshots;
+    public TeacherQuizController(CourseRepository courseRepository, PrincipalCache principalCache, QuizSnapshotCache quizSnapshots){ this.courseRepository=courseRepository; this.principalCache=principalCache; this.quizSnapshots=quizSnapshots; }
+    private Long currentUserId(Authentication auth){ return principalCache.require(auth).id(); }
     private boolean isManager(Authentication auth){ return auth.getAuthorities().stream().anyMatch(a->a.getAuthority().equals("ROLE_MANAGER")); }
 
     @PostMapping
@@ -125,6 +126,7 @@ public class TeacherQuizController {
         em.createNativeQuery("DELETE FROM dbo.quizzes WHERE id=:id")
                 .setParameter("id", quizId)
                 .executeUpdate();
+        quizSnapshots.invalidate(quizId);
         return ResponseEntity.noContent().build();
     }
 
@@ -139,7 +141,7 @@ public class TeacherQuizController {
         Object[] r = rows.get(0);
         if(!isManager(auth)){
             Long ownerId = ((Number) r[5]).longValue();
-            if(!ownerId.equals(currentUser(auth).getId())){
+            if(!ownerId.equals(currentUserId(auth))){
                 throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Bạn không có quyền thao tác đề này");
             }
         }
@@ -225,6 +227,11 @@ public class TeacherQuizController {
                         .executeUpdate();
             }
         }
+        // updated_at là phiên bản đề: bài nộp sau đó sẽ chấm theo đáp án mới
+        em.createNativeQuery("UPDATE dbo.quizzes SET updated_at=SYSUTCDATETIME() WHERE id=?")
+                .setParameter(1, quizId)
+                .executeUpdate();
+        quizSnapshots.invalidate(quizId);
         return ResponseEntity.ok(Map.of("id", qid));
     }
 }
@@ -5,6 +5,7 @@ import com.example.back_end.model.enums.SupportThreadStatus;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 public class SupportDtos {
     public static class CreateThreadRequest {
@@ -63,6 +64,8 @@ public class SupportDtos {
         public SupportSenderType lastSender;
         public boolean unreadForStudent;
         public boolean unreadForManager;
+        /** Số tin của học viên quản lý chưa đọc (chỉ có trong danh sách hộp thư quản lý). */
+        public int unreadCount;
         public LocalDateTime createdAt;
         public LocalDateTime updatedAt;
         public ParticipantInfo student;
@@ -70,10 +73,19 @@ public class SupportDtos {
     }
 
     public static class ThreadDetail extends ThreadSummary {
+        /** Trang tin nhắn mới nhất (cũ → mới); tin cũ hơn lấy qua /threads/{id}/messages?beforeId=. */
         public List<MessageDto> messages;
+        public boolean hasMoreMessages;
+        public Long nextBeforeId;
         public RatingDto rating;
     }
 
+    public static class MessagePage {
+        public List<MessageDto> data;
+        public boolean hasMore;
+        public Long nextBeforeId;
+    }
+
     public static class MessageDto {
         public Long id;
         public Long threadId;
@@ -98,6 +110,52 @@ public class SupportDtos {
         public LocalDateTime createdAt;
     }
 
+    public static class TypingRequest {
+        public Boolean typing;
+    }
+
+    public static class TypingEvent {
+        public Long threadId;
+        public Long userId;
+        public String fullName;
+        public boolean typing;
+    }
+
+    /** Người dùng đổi trạng thái online/offline kể từ lượt gửi trước. */
+    public static class PresenceDelta {
+        public List<Long> online;
+        public List<Long> offline;
+    }
+
+    public static class PresenceSnapshot {
+        public List<Long> online;
+    }
+
+    /** Số hội thoại đang mở theo trạng thái (không tính CLOSED) và số chưa đọc của quản lý. */
+    public static class InboxCounts {
+        public Map<SupportThreadStatus, Long> byStatus;
+        public long unassigned;
+        public long unreadThreads;
+        public long unreadMessages;
+    }
+
+    public static class InboxBadges {
+        public InboxCounts all;
+        public InboxCounts mine;
+    }
+
+    /**
+     * Một hội thoại trong hộp thư quản lý vừa đổi: bản mới (kèm unreadCount) và giá trị trước đó để client tự cộng
+     * trừ các nhóm nó đang hiển thị; counts là số toàn hệ thống sau thay đổi.
+     */
+    public static class InboxDelta {
+        public ThreadSummary thread;
+        public SupportThreadStatus previousStatus;
+        public Long previousManagerId;
+        public int previousUnreadCount;
+        public InboxCounts counts;
+    }
+
     public static class ThreadListResponse {
         public List<ThreadSummary> data;
         public long totalElements;
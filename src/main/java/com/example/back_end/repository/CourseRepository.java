@@ -9,6 +9,8 @@ import org.springframework.stereotype.Repository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import com.example.back_end.repository.projection.CourseCardProjection;
@@ -29,50 +31,103 @@ public interface CourseRepository extends JpaRepository<Course, Long> {
             "SELECT\n" +
             "  c.id, c.title, c.slug, c.level, c.status, u.full_name AS teacherName,\n" +
             "  c.price, c.is_free AS isFree, c.thumbnail_url AS thumbnailUrl,\n" +
-            "  (SELECT COUNT(*)\n" +
-            "     FROM dbo.lessons l JOIN dbo.modules m ON l.module_id = m.id\n" +
-            "    WHERE m.course_id = c.id) AS lessonsCount,\n" +
-            "  (SELECT TOP 1 a.url\n" +
-            "     FROM dbo.lesson_assets a\n" +
-            "     JOIN dbo.lessons l ON a.lesson_id = l.id\n" +
-            "     JOIN dbo.modules m ON l.module_id = m.id\n" +
-            "    WHERE m.course_id = c.id AND a.kind = N'video'\n" +
-            "    ORDER BY a.id) AS previewVideoUrl\n" +
+            "  COALESCE(s.lessons_count, 0) AS lessonsCount, s.preview_video_url AS previewVideoUrl,\n" +
+            "  c.created_at AS createdAt\n" +
             "FROM dbo.courses c\n" +
             "JOIN dbo.users u ON u.id = c.created_by\n" +
+            "LEFT JOIN dbo.course_card_summaries s ON s.course_id = c.id\n" +
             "WHERE (:status IS NULL OR c.status = :status)\n" +
             "  AND (:keyword IS NULL OR c.title LIKE N'%' + :keyword + '%' OR c.slug LIKE N'%' + :keyword + '%')\n" +
-            "ORDER BY c.created_at DESC\n" +
+            "ORDER BY c.created_at DESC, c.id DESC\n" +
             "OFFSET :offset ROWS FETCH NEXT :limit ROWS ONLY\n", nativeQuery = true)
     List<CourseCardProjection> findCourseCards(@Param("status") String status,
                                                @Param("offset") int offset,
                                                @Param("limit") int limit,
                                                @Param("keyword") String keyword);
 
+    // Keyset (seek) theo (created_at, id): trang sau bắt đầu ngay sau dòng cuối của trang trước,
+    // chi phí không tăng theo độ sâu như OFFSET
+    @Query(value = "\n" +
+            "SELECT TOP (:limit)\n" +
+            "  c.id, c.title, c.slug, c.level, c.status, u.full_name AS teacherName,\n" +
+            "  c.price, c.is_free AS isFree, c.thumbnail_url AS thumbnailUrl,\n" +
+            "  COALESCE(s.lessons_count, 0) AS lessonsCount, s.preview_video_url AS previewVideoUrl,\n" +
+            "  c.created_at AS createdAt\n" +
+            "FROM dbo.courses c\n" +
+            "JOIN dbo.users u ON u.id = c.created_by\n" +
+            "LEFT JOIN dbo.course_card_summaries s ON s.course_id = c.id\n" +
+            "WHERE (:status IS NULL OR c.status = :status)\n" +
+            "  AND (:keyword IS NULL OR c.title LIKE N'%' + :keyword + '%' OR c.slug LIKE N'%' + :keyword + '%')\n" +
+            "  AND (c.created_at < :afterCreatedAt OR (c.created_at = :afterCreatedAt AND c.id < :afterId))\n" +
+            "ORDER BY c.created_at DESC, c.id DESC\n", nativeQuery = true)
+    List<CourseCardProjection> findCourseCardsAfter(@Param("status") String status,
+                                                    @Param("afterCreatedAt") LocalDateTime afterCreatedAt,
+                                                    @Param("afterId") long afterId,
+                                                    @Param("limit") int limit,
+                                                    @Param("keyword") String keyword);
+
+    // Lấy thẻ khóa học theo danh sách id (kết quả của CourseSearchIndex); thứ tự do nơi gọi sắp lại
+    @Query(value = "\n" +
+            "SELECT\n" +
+            "  c.id, c.title, c.slug, c.level, c.status, u.full_name AS teacherName,\n" +
+            "  c.price, c.is_free AS isFree, c.thumbnail_url AS thumbnailUrl,\n" +
+            "  COALESCE(s.lessons_count, 0) AS lessonsCount, s.preview_video_url AS previewVideoUrl,\n" +
+            "  c.created_at AS createdAt\n" +
+            "FROM dbo.courses c\n" +
+            "JOIN dbo.users u ON u.id = c.created_by\n" +
+            "LEFT JOIN dbo.course_card_summaries s ON s.course_id = c.id\n" +
+            "WHERE c.id IN (:ids)\n", nativeQuery = true)
+    List<CourseCardProjection> findCourseCardsByIds(@Param("ids") Collection<Long> ids);
+
     // Phiên bản trả tên cột đúng T-SQL (snake_case)
     @Query(value = "\n" +
             "SELECT\n" +
             "  c.id, c.title, c.slug, c.level, c.status, u.full_name AS teacher_name,\n" +
             "  c.price, c.is_free, c.thumbnail_url,\n" +
-            "  (SELECT COUNT(*)\n" +
-            "     FROM dbo.lessons l JOIN dbo.modules m ON l.module_id = m.id\n" +
-            "    WHERE m.course_id = c.id) AS lessons_count,\n" +
-            "  (SELECT TOP 1 a.url\n" +
-            "     FROM dbo.lesson_assets a\n" +
-            "     JOIN dbo.lessons l ON a.lesson_id = l.id\n" +
-            "     JOIN dbo.modules m ON l.module_id = m.id\n" +
-            "    WHERE m.course_id = c.id AND a.kind = N'video'\n" +
-            "    ORDER BY a.id) AS preview_video_url\n" +
+            "  COALESCE(s.lessons_count, 0) AS lessons_count, s.preview_video_url,\n" +
+            "  c.created_at\n" +
             "FROM dbo.courses c\n" +
             "JOIN dbo.users u ON u.id = c.created_by\n" +
+            "LEFT JOIN dbo.course_card_summaries s ON s.course_id = c.id\n" +
             "WHERE (:status IS NULL OR c.status = :status)\n" +
             "  AND (:keyword IS NULL OR c.title LIKE N'%' + :keyword + '%' OR c.slug LIKE N'%' + :keyword + '%')\n" +
-            "ORDER BY c.created_at DESC\n" +
+            "ORDER BY c.created_at DESC, c.id DESC\n" +
             "OFFSET :offset ROWS FETCH NEXT :limit ROWS ONLY\n", nativeQuery = true)
     List<CourseCardSqlProjection> findCourseCardsSql(@Param("status") String status,
                                                      @Param("offset") int offset,
                                                      @Param("limit") int limit,
                                                      @Param("keyword") String keyword);
+
+    @Query(value = "\n" +
+            "SELECT TOP (:limit)\n" +
+            "  c.id, c.title, c.slug, c.level, c.status, u.full_name AS teacher_name,\n" +
+            "  c.price, c.is_free, c.thumbnail_url,\n" +
+            "  COALESCE(s.lessons_count, 0) AS lessons_count, s.preview_video_url,\n" +
+            "  c.created_at\n" +
+            "FROM dbo.courses c\n" +
+            "JOIN dbo.users u ON u.id = c.created_by\n" +
+            "LEFT JOIN dbo.course_card_summaries s ON s.course_id = c.id\n" +
+            "WHERE (:status IS NULL OR c.status = :status)\n" +
+            "  AND (:keyword IS NULL OR c.title LIKE N'%' + :keyword + '%' OR c.slug LIKE N'%' + :keyword + '%')\n" +
+            "  AND (c.created_at < :afterCreatedAt OR (c.created_at = :afterCreatedAt AND c.id < :afterId))\n" +
+            "ORDER BY c.created_at DESC, c.id DESC\n", nativeQuery = true)
+    List<CourseCardSqlProjection> findCourseCardsSqlAfter(@Param("status") String status,
+                                                          @Param("afterCreatedAt") LocalDateTime afterCreatedAt,
+                                                          @Param("afterId") long afterId,
+                                                          @Param("limit") int limit,
+                                                          @Param("keyword") String keyword);
+
+    @Query(value = "\n" +
+            "SELECT\n" +
+            "  c.id, c.title, c.slug, c.level, c.status, u.full_name AS teacher_name,\n" +
+            "  c.price, c.is_free, c.thumbnail_url,\n" +
+            "  COALESCE(s.lessons_count, 0) AS lessons_count, s.preview_video_url,\n" +
+            "  c.created_at\n" +
+            "FROM dbo.courses c\n" +
+            "JOIN dbo.users u ON u.id = c.created_by\n" +
+            "LEFT JOIN dbo.course_card_summaries s ON s.course_id = c.id\n" +
+            "WHERE c.id IN (:ids)\n", nativeQuery = true)
+    List<CourseCardSqlProjection> findCourseCardsSqlByIds(@Param("ids") Collection<Long> ids);
 
     @Query(value = "\n" +
             "SELECT c.id, c.title, c.slug, c.level, c.status, c.approval_status AS approvalStatus,\n" +
@@ -1,12 +1,23 @@
 package com.example.back_end.repository;
 
 import com.example.back_end.model.SupportMessage;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface SupportMessageRepository extends JpaRepository<SupportMessage, Long> {
-    List<SupportMessage> findByThread_IdOrderByCreatedAtAsc(Long threadId);
+    // Trang tin nhắn mới nhất trước, đi theo index ix_support_messages_thread(thread_id, id)
+    List<SupportMessage> findByThread_IdOrderByIdDesc(Long threadId, Pageable pageable);
+
+    List<SupportMessage> findByThread_IdAndIdLessThanOrderByIdDesc(Long threadId, Long beforeId, Pageable pageable);
+
+    /** Đính kèm của cả trang trong một truy vấn: [message_id, attachment_url]. */
+    @Query("SELECT a.id.messageId, a.id.attachmentUrl FROM SupportMessageAttachment a WHERE a.id.messageId IN :messageIds")
+    List<Object[]> findAttachmentUrls(@Param("messageIds") Collection<Long> messageIds);
 }
@@ -1,6 +1,7 @@
 package com.example.back_end.repository.projection;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 
 public interface CourseCardProjection {
     Long getId();
@@ -14,5 +15,5 @@ public interface CourseCardProjection {
     String getThumbnailUrl();
     Integer getLessonsCount();
     String getPreviewVideoUrl();
+    LocalDateTime getCreatedAt();
 }
-
@@ -1,6 +1,7 @@
 package com.example.back_end.repository.projection;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 
 // Projection giữ đúng tên cột theo T-SQL (snake_case)
 public interface CourseCardSqlProjection {
@@ -15,5 +16,5 @@ public interface CourseCardSqlProjection {
     String getThumbnail_url();
     Integer getLessons_count();
     String getPreview_video_url();
+    LocalDateTime getCreated_at();
 }
-
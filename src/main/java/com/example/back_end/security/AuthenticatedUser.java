@@ -0,0 +1,14 @@
+package com.example.back_end.security;
+
+import java.util.Set;
+
+/**
+ * Thông tin gọn, bất biến của người dùng đang đăng nhập (đặt vào Authentication.details bởi JwtAuthFilter).
+ * Dùng thay cho việc nạp entity User (kèm roles EAGER) khi controller chỉ cần id/email/vai trò.
+ */
+public record AuthenticatedUser(Long id, String email, String fullName, Set<String> roles) {
+
+    public boolean hasRole(String code) {
+        return code != null && roles.contains(code.toLowerCase());
+    }
+}
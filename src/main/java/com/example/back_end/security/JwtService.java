@@ -1,6 +1,7 @@
 package com.example.back_end.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
@@ -16,6 +17,8 @@ import java.util.Map;
 public class JwtService {
     private final Key signingKey;
     private final long expirationMs;
+    // Parser bất biến, thread-safe: dựng một lần thay vì mỗi request
+    private final JwtParser parser;
 
     public JwtService(@Value("${app.jwt.secret}") String secret,
                       @Value("${app.jwt.expiration-ms:86400000}") long expirationMs) {
@@ -24,6 +27,7 @@ public class JwtService {
         try { keyBytes = Decoders.BASE64.decode(secret); } catch (Exception e) { keyBytes = secret.getBytes(); }
         this.signingKey = Keys.hmacShaKeyFor(keyBytes);
         this.expirationMs = expirationMs;
+        this.parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
     }
 
     public String generate(String subject, Map<String, Object> claims) {
@@ -38,7 +42,7 @@ public class JwtService {
     }
 
     public Claims parse(String token) {
-        return Jwts.parserBuilder().setSigningKey(signingKey).build().parseClaimsJws(token).getBody();
+        return parser.parseClaimsJws(token).getBody();
     }
 }
 
@@ -0,0 +1,123 @@
+package com.example.back_end.security;
+
+import com.example.back_end.util.LatencyRecorder;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Băm/kiểm mật khẩu (BCrypt) trên một pool riêng có giới hạn thay vì trực tiếp trên thread Tomcat.
+ *
+ * Số phép băm chạy đồng thời không vượt quá số thread của pool, nên một đợt đăng nhập dồn dập không chiếm hết CPU
+ * của các endpoint khác. Hàng đợi đầy hoặc chờ quá timeout-ms thì request nhận 503 ngay (admission control) thay vì
+ * xếp hàng vô hạn. Thời gian chờ trong hàng đợi và thời gian băm được đo riêng.
+ */
+@Component
+public class PasswordHasher {
+    private static final String BUSY = "Hệ thống đang bận, vui lòng thử lại sau giây lát";
+
+    private final PasswordEncoder encoder;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LatencyRecorder queueLatency = new LatencyRecorder("password.queue");
+    private final LatencyRecorder hashLatency = new LatencyRecorder("password.hash");
+
+    public PasswordHasher(PasswordEncoder encoder,
+                          @Value("${app.security.hashing.threads:0}") int threads,
+                          @Value("${app.security.hashing.queue-capacity:64}") int queueCapacity,
+                          @Value("${app.security.hashing.timeout-ms:5000}") long timeoutMs) {
+        this.encoder = encoder;
+        // 0: một thread mỗi core
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "password-hash-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        this.timeoutMs = Math.max(1, timeoutMs);
+    }
+
+    public String encode(String rawPassword) {
+        return run(() -> encoder.encode(rawPassword));
+    }
+
+    public boolean matches(String rawPassword, String encodedPassword) {
+        return run(() -> encoder.matches(rawPassword, encodedPassword));
+    }
+
+    /** Hash được tạo với cost thấp hơn cost đang cấu hình (app.security.bcrypt.strength). */
+    public boolean needsUpgrade(String encodedPassword) {
+        return encodedPassword != null && !encodedPassword.isBlank() && encoder.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T run(Callable<T> task) {
+        long submitted = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                long started = System.nanoTime();
+                queueLatency.recordNanos(started - submitted);
+                try {
+                    return task.call();
+                } finally {
+                    hashLatency.recordSince(started);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            rejected.increment();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, BUSY);
+        }
+        try {
+            return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException ex) {
+            future.cancel(true);
+            timeouts.increment();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, BUSY);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, BUSY);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("threads", executor.getMaximumPoolSize());
+        m.put("active", executor.getActiveCount());
+        m.put("queued", executor.getQueue().size());
+        m.put("completed", executor.getCompletedTaskCount());
+        m.put("rejected", rejected.sum());
+        m.put("timeouts", timeouts.sum());
+        m.put("queueLatency", queueLatency.snapshot());
+        m.put("hashLatency", hashLatency.snapshot());
+        // Thông lượng ước tính của một core (số lần đăng nhập/giây): 1 giây / thời gian băm trung vị
+        long p50 = hashLatency.percentileMicros(50);
+        m.put("hashesPerSecondPerCore", p50 == 0 ? null : 1_000_000 / p50);
+        return m;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.back_end.security;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache email (subject của JWT) -> AuthenticatedUser để mỗi request đã đăng nhập không phải nạp lại User.
+ *
+ * Mục sống tối đa ttl-ms (mặc định bằng thời hạn token) và bị bỏ khi quản trị sửa/xóa người dùng hoặc người dùng
+ * sửa hồ sơ; việc bỏ chạy sau commit nên request đồng thời không nạp lại dữ liệu cũ vào cache.
+ */
+@Component
+public class PrincipalCache {
+    private static final String PRINCIPAL_SQL =
+            "SELECT u.id, u.email, u.full_name, r.code FROM dbo.users u" +
+            " LEFT JOIN dbo.user_roles ur ON ur.user_id = u.id" +
+            " LEFT JOIN dbo.roles r ON r.id = ur.role_id" +
+            " WHERE u.email = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long ttlMs;
+    private final int maxEntries;
+    private final LinkedHashMap<String, Entry> entries;
+    // Tăng mỗi lần invalidate; kết quả nạp song song với một lần invalidate thì không được lưu
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public PrincipalCache(JdbcTemplate jdbcTemplate,
+                          @Value("${app.security.principal-cache.ttl-ms:${app.jwt.expiration-ms:86400000}}") long ttlMs,
+                          @Value("${app.security.principal-cache.max-entries:10000}") int maxEntries) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ttlMs = Math.max(0, ttlMs);
+        this.maxEntries = Math.max(1, maxEntries);
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > PrincipalCache.this.maxEntries;
+            }
+        };
+    }
+
+    private record Entry(AuthenticatedUser user, long expiresAt) {}
+
+    /** Trả principal của email, null nếu không còn người dùng đó. */
+    public AuthenticatedUser resolve(String email) {
+        if (email == null || email.isBlank()) return null;
+        String key = email.trim().toLowerCase(Locale.ROOT);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry e = entries.get(key);
+            if (e != null && e.expiresAt() > now) {
+                hits.increment();
+                return e.user();
+            }
+        }
+        misses.increment();
+        long gen = generation.get();
+        AuthenticatedUser loaded = load(key);
+        if (loaded != null && ttlMs > 0) {
+            synchronized (this) {
+                if (generation.get() == gen) entries.put(key, new Entry(loaded, now + ttlMs));
+            }
+        }
+        return loaded;
+    }
+
+    /** Principal của request: lấy từ details do JwtAuthFilter đặt, nếu không có thì tra theo email. */
+    public AuthenticatedUser require(Authentication auth) {
+        if (auth == null) throw new IllegalStateException("Chưa xác thực");
+        if (auth.getDetails() instanceof AuthenticatedUser user) return user;
+        AuthenticatedUser user = resolve(String.valueOf(auth.getPrincipal()));
+        if (user == null) throw new IllegalArgumentException("Không tìm thấy người dùng");
+        return user;
+    }
+
+    AuthenticatedUser load(String email) {
+        Long[] id = new Long[1];
+        String[] fields = new String[2];
+        Set<String> roles = new HashSet<>();
+        jdbcTemplate.query(PRINCIPAL_SQL, rs -> {
+            id[0] = rs.getLong(1);
+            fields[0] = rs.getString(2);
+            fields[1] = rs.getString(3);
+            String role = rs.getString(4);
+            if (role != null) roles.add(role.toLowerCase(Locale.ROOT));
+        }, email);
+        return id[0] == null ? null : new AuthenticatedUser(id[0], fields[0], fields[1], Set.copyOf(roles));
+    }
+
+    /** Bỏ principal của người dùng (theo id, vì email có thể vừa đổi); trong transaction thì chờ commit. */
+    public void invalidateUser(Long userId) {
+        if (userId == null) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    remove(userId);
+                }
+            });
+        } else {
+            remove(userId);
+        }
+    }
+
+    private synchronized void remove(Long userId) {
+        generation.incrementAndGet();
+        if (entries.values().removeIf(e -> userId.equals(e.user().id()))) invalidations.increment();
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("entries", entries.size());
+        m.put("maxEntries", maxEntries);
+        m.put("ttlMs", ttlMs);
+        m.put("hits", hits.sum());
+        m.put("misses", misses.sum());
+        m.put("invalidations", invalidations.sum());
+        return m;
+    }
+}
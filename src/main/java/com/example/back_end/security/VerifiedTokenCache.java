@@ -0,0 +1,162 @@
+package com.example.back_end.security;
+
+import com.example.back_end.util.LatencyRecorder;
+import io.jsonwebtoken.Claims;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache token đã xác minh chữ ký: SHA-256(token) -> Authentication dựng sẵn, sống tới đúng hạn exp của token.
+ *
+ * Request lặp lại cùng token chỉ còn một lần băm và một lần tra PrincipalCache thay vì parse + kiểm HMAC + dựng lại
+ * danh sách quyền. Authentication được dựng từ AuthenticatedUser của PrincipalCache; khi principal bị bỏ (đổi vai trò,
+ * xóa người dùng) thì lần tra sau trả về đối tượng khác và Authentication được dựng lại.
+ */
+@Component
+public class VerifiedTokenCache {
+    private static final Logger log = LoggerFactory.getLogger(VerifiedTokenCache.class);
+
+    private final JwtService jwtService;
+    private final PrincipalCache principalCache;
+    private final int maxEntries;
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LatencyRecorder verifyLatency = new LatencyRecorder("security.jwt.verify");
+    private final LatencyRecorder authLatency = new LatencyRecorder("security.jwt.authenticate");
+
+    public VerifiedTokenCache(JwtService jwtService, PrincipalCache principalCache,
+                              @Value("${app.security.token-cache.max-entries:10000}") int maxEntries) {
+        this.jwtService = jwtService;
+        this.principalCache = principalCache;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.entries = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > VerifiedTokenCache.this.maxEntries;
+            }
+        };
+    }
+
+    /** user/authentication null khi chưa dựng (hoặc lần dựng trước dùng vai trò trong token do DB lỗi). */
+    private record Entry(String subject, List<String> tokenRoles, long expiresAt,
+                         AuthenticatedUser user, Authentication authentication) {}
+
+    /** Authentication của bearer token; null nếu token sai chữ ký, hết hạn hoặc người dùng không còn. */
+    public Authentication authenticate(String token) {
+        long started = System.nanoTime();
+        try {
+            return doAuthenticate(token);
+        } finally {
+            authLatency.recordSince(started);
+        }
+    }
+
+    private Authentication doAuthenticate(String token) {
+        if (token == null || token.isBlank()) return null;
+        String key = hash(token);
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && entry.expiresAt() <= now) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+        if (entry != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            entry = verify(token, now);
+            if (entry == null) return null;
+        }
+
+        AuthenticatedUser user;
+        try {
+            user = principalCache.resolve(entry.subject());
+        } catch (DataAccessException ex) {
+            // DB lỗi: vẫn xác thực theo vai trò trong token như trước, controller tự tra người dùng
+            log.warn("Không tra được người dùng của token: {}", ex.getMessage());
+            return build(entry.subject(), entry.tokenRoles(), null);
+        }
+        // Người dùng đã bị xóa: token không còn giá trị
+        if (user == null) return null;
+        if (entry.user() == user) return entry.authentication();
+
+        // Vai trò lấy từ DB (qua cache) để đổi vai trò có hiệu lực ngay, không chờ token hết hạn
+        Authentication auth = build(entry.subject(), user.roles(), user);
+        if (entry.expiresAt() > now) {
+            synchronized (this) {
+                entries.put(key, new Entry(entry.subject(), entry.tokenRoles(), entry.expiresAt(), user, auth));
+            }
+        }
+        return auth;
+    }
+
+    private Entry verify(String token, long now) {
+        long started = System.nanoTime();
+        Claims claims;
+        try {
+            claims = jwtService.parse(token);
+        } catch (Exception ex) {
+            rejected.increment();
+            return null;
+        } finally {
+            verifyLatency.recordSince(started);
+        }
+        // Token không có exp thì không cache: không biết lúc nào phải ngừng tin nó
+        long expiresAt = claims.getExpiration() != null ? claims.getExpiration().getTime() : now;
+        return new Entry(claims.getSubject(), rolesClaim(claims), expiresAt, null, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> rolesClaim(Claims claims) {
+        Object roles = claims.get("roles");
+        return roles instanceof List<?> list ? List.copyOf((List<String>) list) : List.of();
+    }
+
+    private static Authentication build(String subject, Collection<String> roles, AuthenticatedUser user) {
+        List<GrantedAuthority> authorities = new ArrayList<>(roles.size());
+        for (String r : roles) authorities.add(new SimpleGrantedAuthority("ROLE_" + r.toUpperCase()));
+        var auth = new UsernamePasswordAuthenticationToken(subject, null, List.copyOf(authorities));
+        auth.setDetails(user);
+        return auth;
+    }
+
+    static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("entries", entries.size());
+        m.put("maxEntries", maxEntries);
+        m.put("hits", hits.sum());
+        m.put("misses", misses.sum());
+        m.put("rejected", rejected.sum());
+        m.put("verifyLatency", verifyLatency.snapshot());
+        m.put("authenticateLatency", authLatency.snapshot());
+        return m;
+    }
+}
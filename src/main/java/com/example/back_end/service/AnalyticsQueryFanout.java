@@ -0,0 +1,169 @@
+package com.example.back_end.service;
+
+import com.example.back_end.util.LatencyRecorder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Chạy song song các truy vấn thống kê độc lập của một dashboard trên pool giới hạn.
+ *
+ * Mỗi truy vấn chạy trong transaction read-only riêng trên thread của pool, có timeout của transaction bằng timeout
+ * của dashboard (JdbcTemplate/Hibernate áp timeout này cho statement). Truy vấn nào không xong trước hạn thì bị bỏ
+ * và dashboard trả kết quả một phần; độ trễ dashboard bằng truy vấn chậm nhất thay vì tổng các truy vấn.
+ *
+ * Mỗi thread giữ một connection Hikari trong suốt truy vấn, nên số thread bị chặn ở
+ * maximum-pool-size - connection-reserve: các request thường luôn còn connection-reserve connection để dùng.
+ */
+@Component
+public class AnalyticsQueryFanout {
+    private static final Logger log = LoggerFactory.getLogger(AnalyticsQueryFanout.class);
+
+    private final ThreadPoolExecutor executor;
+    private final TransactionTemplate readOnlyTx;
+    private final long timeoutMs;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LatencyRecorder batchLatency = new LatencyRecorder("analytics.fanout.batch");
+
+    public AnalyticsQueryFanout(PlatformTransactionManager transactionManager,
+                                @Value("${app.analytics.fanout.pool-size:4}") int poolSize,
+                                @Value("${spring.datasource.hikari.maximum-pool-size:10}") int dbPoolSize,
+                                @Value("${app.analytics.fanout.connection-reserve:3}") int connectionReserve,
+                                @Value("${app.analytics.fanout.timeout-ms:3000}") long timeoutMs) {
+        int threads = threadsFor(poolSize, dbPoolSize, connectionReserve);
+        if (threads < poolSize) {
+            log.info("Giới hạn analytics fan-out còn {} thread (Hikari {} connection, chừa {})",
+                    threads, dbPoolSize, connectionReserve);
+        }
+        AtomicInteger seq = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 16),
+                r -> {
+                    Thread t = new Thread(r, "analytics-fanout-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        this.timeoutMs = Math.max(1, timeoutMs);
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.readOnlyTx.setTimeout((int) Math.max(1, (this.timeoutMs + 999) / 1000));
+    }
+
+    /** Số thread fan-out: không vượt số connection còn lại sau phần chừa cho request thường, tối thiểu 1. */
+    static int threadsFor(int poolSize, int dbPoolSize, int connectionReserve) {
+        return Math.max(1, Math.min(poolSize, dbPoolSize - Math.max(0, connectionReserve)));
+    }
+
+    /** Kết quả của một lượt: giá trị theo key và các key không có kết quả (quá hạn, lỗi, pool đầy). */
+    public record Result(Map<String, Object> values, List<String> missing) {
+
+        public boolean partial() {
+            return !missing.isEmpty();
+        }
+
+        public long getLong(String key) {
+            Object v = values.get(key);
+            return v instanceof Number n ? n.longValue() : 0L;
+        }
+
+        public double getDouble(String key) {
+            Object v = values.get(key);
+            return v instanceof Number n ? n.doubleValue() : 0.0;
+        }
+
+        public Object get(String key, Object fallback) {
+            Object v = values.get(key);
+            return v != null ? v : fallback;
+        }
+
+        /** Đánh dấu response là kết quả một phần để frontend hiển thị cảnh báo. */
+        public void markPartial(Map<String, Object> response) {
+            if (partial()) {
+                response.put("partial", true);
+                response.put("missing", missing);
+            }
+        }
+    }
+
+    public final class Batch {
+        private final Map<String, Future<Object>> futures = new LinkedHashMap<>();
+        private final List<String> missing = new ArrayList<>();
+
+        public Batch add(String key, Supplier<?> query) {
+            try {
+                futures.put(key, executor.submit(() -> readOnlyTx.execute(status -> query.get())));
+            } catch (RejectedExecutionException ex) {
+                rejected.increment();
+                missing.add(key);
+            }
+            return this;
+        }
+
+        /** Chờ các truy vấn tới hết timeout của dashboard; truy vấn chưa xong bị hủy. */
+        public Result await() {
+            long started = System.nanoTime();
+            long deadline = started + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            Map<String, Object> values = new HashMap<>();
+            for (Map.Entry<String, Future<Object>> e : futures.entrySet()) {
+                Future<Object> f = e.getValue();
+                try {
+                    values.put(e.getKey(), f.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                    completed.increment();
+                } catch (TimeoutException ex) {
+                    f.cancel(true);
+                    timeouts.increment();
+                    missing.add(e.getKey());
+                } catch (ExecutionException ex) {
+                    failures.increment();
+                    missing.add(e.getKey());
+                    log.warn("Truy vấn thống kê '{}' lỗi: {}", e.getKey(), ex.getCause().getMessage());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    f.cancel(true);
+                    missing.add(e.getKey());
+                }
+            }
+            batchLatency.recordSince(started);
+            return new Result(values, List.copyOf(missing));
+        }
+    }
+
+    public Batch batch() {
+        return new Batch();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("poolSize", executor.getMaximumPoolSize());
+        m.put("active", executor.getActiveCount());
+        m.put("queued", executor.getQueue().size());
+        m.put("timeoutMs", timeoutMs);
+        m.put("completed", completed.sum());
+        m.put("timeouts", timeouts.sum());
+        m.put("failures", failures.sum());
+        m.put("rejected", rejected.sum());
+        m.put("batchLatency", batchLatency.snapshot());
+        return m;
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.back_end.service;
+
+import com.example.back_end.util.LatencyRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * Bảng tổng hợp theo ngày cho dashboard quản lý, thay cho việc gom users/courses/enrollments/quiz_attempts/
+ * lesson_progress thô mỗi lần mở trang.
+ *
+ * dbo.analytics_daily_facts giữ các chỉ số cộng dồn được theo (ngày, chỉ số); dbo.analytics_daily_users giữ user
+ * hoạt động đã khử trùng lặp theo ngày để đếm distinct theo tháng. Mỗi lần refresh chỉ tính lại các ngày từ
+ * (ngày mới nhất đã có - lookback-days) tới hôm nay; lookback chỉ bù cho dòng commit muộn với mốc thời gian cũ.
+ * Vì vậy chỉ tổng hợp sự kiện có mốc ghi một lần (started_at, created_at, start_at, completed_at, graded_at) và
+ * không lọc theo cột còn đổi về sau. Doanh thu (trạng thái đơn/payment), ticket hỗ trợ (trạng thái hiện tại) và
+ * tiến độ học (updated_at bị ghi đè) vẫn đọc trực tiếp trong AdminAnalyticsController.
+ * Dữ liệu trên dashboard trễ tối đa một chu kỳ refresh.
+ */
+@Service
+public class AnalyticsRollupService {
+    private static final Logger log = LoggerFactory.getLogger(AnalyticsRollupService.class);
+
+    public static final String LOGINS = "logins";
+    public static final String NEW_USERS = "new_users";
+    public static final String COURSES_CREATED = "courses_created";
+    public static final String ENROLLMENTS = "enrollments";
+    public static final String LESSON_COMPLETIONS = "lesson_completions";
+    public static final String QUIZ_GRADED = "quiz_graded";
+    public static final String QUIZ_PASSED = "quiz_passed";
+
+    public static final String SOURCE_ATTEMPTS = "A";
+    public static final String SOURCE_ENROLLMENTS = "E";
+
+    // Mỗi câu trả về (ngày, chỉ số, giá trị) cho các dòng gốc từ ngày ? trở đi
+    private static final List<String> FACT_SQL = List.of(
+            count(LOGINS, "dbo.quiz_attempts", "started_at", null),
+            count(NEW_USERS, "dbo.users", "created_at", null),
+            count(COURSES_CREATED, "dbo.courses", "created_at", null),
+            count(ENROLLMENTS, "dbo.enrollments", "start_at", null),
+            count(LESSON_COMPLETIONS, "dbo.lesson_progress", "completed_at", null),
+            count(QUIZ_GRADED, "dbo.quiz_attempts", "graded_at", null),
+            count(QUIZ_PASSED, "dbo.quiz_attempts", "graded_at", "passed = 1"));
+
+    private static final List<String> USER_SQL = List.of(
+            users(SOURCE_ATTEMPTS, "dbo.quiz_attempts", "started_at"),
+            users(SOURCE_ENROLLMENTS, "dbo.enrollments", "start_at"));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate tx;
+    private final int lookbackDays;
+
+    private volatile LocalDate lastRefreshedFrom;
+    private final LatencyRecorder refreshLatency = new LatencyRecorder("analytics.rollup.refresh");
+
+    public AnalyticsRollupService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                  @Value("${app.analytics.rollup.lookback-days:7}") int lookbackDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.lookbackDays = Math.max(0, lookbackDays);
+    }
+
+    private static String count(String metric, String table, String column, String filter) {
+        return aggregate(metric, "COUNT(*)", table, column, filter);
+    }
+
+    private static String aggregate(String metric, String expr, String table, String column, String filter) {
+        return "SELECT CONVERT(date, " + column + "), '" + metric + "', " + expr +
+                " FROM " + table + " WHERE " + column + " >= ?" + (filter != null ? " AND " + filter : "") +
+                " GROUP BY CONVERT(date, " + column + ")";
+    }
+
+    private static String users(String source, String table, String column) {
+        return "SELECT DISTINCT CONVERT(date, " + column + "), '" + source + "', user_id" +
+                " FROM " + table + " WHERE " + column + " >= ? AND user_id IS NOT NULL";
+    }
+
+    @Scheduled(fixedDelayString = "${app.analytics.rollup.refresh-ms:300000}", initialDelay = 10_000)
+    public void refreshQuietly() {
+        try {
+            refresh();
+        } catch (DataAccessException ex) {
+            log.warn("Không cập nhật được bảng tổng hợp analytics: {}", ex.getMessage());
+        }
+    }
+
+    /** Tính lại các ngày từ mốc tới hôm nay; trả ngày bắt đầu đã tính lại. */
+    public synchronized LocalDate refresh() {
+        LocalDate from = refreshFrom();
+        refresh(from);
+        return from;
+    }
+
+    /** Xóa và tính lại toàn bộ, dùng sau khi sửa dữ liệu cũ trực tiếp trong DB. */
+    public synchronized void rebuild() {
+        refresh(LocalDate.of(1900, 1, 1));
+    }
+
+    private LocalDate refreshFrom() {
+        Date latest = jdbcTemplate.queryForObject("SELECT MAX(day) FROM dbo.analytics_daily_facts", Date.class);
+        return latest == null ? LocalDate.of(1900, 1, 1) : latest.toLocalDate().minusDays(lookbackDays);
+    }
+
+    private void refresh(LocalDate from) {
+        long started = System.nanoTime();
+        Date fromDate = Date.valueOf(from);
+        tx.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM dbo.analytics_daily_facts WHERE day >= ?", fromDate);
+            jdbcTemplate.update("DELETE FROM dbo.analytics_daily_users WHERE day >= ?", fromDate);
+            for (String sql : FACT_SQL) {
+                int params = (int) sql.chars().filter(c -> c == '?').count();
+                jdbcTemplate.update("INSERT INTO dbo.analytics_daily_facts(day, metric, value) " + sql,
+                        Collections.nCopies(params, fromDate).toArray());
+            }
+            for (String sql : USER_SQL) {
+                jdbcTemplate.update("INSERT INTO dbo.analytics_daily_users(day, source, user_id) " + sql, fromDate);
+            }
+        });
+        lastRefreshedFrom = from;
+        refreshLatency.recordSince(started);
+    }
+
+    /**
+     * Giá trị các chỉ số trong [from, to], gom theo ngày ("yyyy-MM-dd") hoặc tháng ("yyyy-MM"), theo thứ tự thời gian.
+     */
+    public Map<String, Map<String, BigDecimal>> facts(LocalDate from, LocalDate to, boolean byMonth, Collection<String> metrics) {
+        Map<String, Map<String, BigDecimal>> buckets = new TreeMap<>();
+        if (metrics.isEmpty()) return buckets;
+        String placeholders = String.join(",", Collections.nCopies(metrics.size(), "?"));
+        List<Object> args = new ArrayList<>();
+        args.add(Date.valueOf(from));
+        args.add(Date.valueOf(to));
+        args.addAll(metrics);
+        jdbcTemplate.query(
+                "SELECT day, metric, value FROM dbo.analytics_daily_facts WHERE day BETWEEN ? AND ? AND metric IN (" + placeholders + ")",
+                rs -> {
+                    String bucket = bucketOf(rs.getDate(1).toLocalDate(), byMonth);
+                    buckets.computeIfAbsent(bucket, k -> new HashMap<>())
+                            .merge(rs.getString(2), rs.getBigDecimal(3), BigDecimal::add);
+                },
+                args.toArray());
+        return buckets;
+    }
+
+    /** Tổng một chỉ số trong [from, to]. */
+    public BigDecimal total(String metric, LocalDate from, LocalDate to) {
+        BigDecimal v = jdbcTemplate.queryForObject(
+                "SELECT SUM(value) FROM dbo.analytics_daily_facts WHERE metric = ? AND day BETWEEN ? AND ?",
+                BigDecimal.class, metric, Date.valueOf(from), Date.valueOf(to));
+        return v != null ? v : BigDecimal.ZERO;
+    }
+
+    /** Số user distinct của một nguồn trong [from, to], gom theo ngày hoặc tháng. */
+    public Map<String, Long> distinctUsers(String source, LocalDate from, LocalDate to, boolean byMonth) {
+        String bucketExpr = byMonth ? "CONVERT(char(7), day, 126)" : "CONVERT(char(10), day, 23)";
+        Map<String, Long> result = new TreeMap<>();
+        jdbcTemplate.query(
+                "SELECT " + bucketExpr + ", COUNT(DISTINCT user_id) FROM dbo.analytics_daily_users" +
+                        " WHERE source = ? AND day BETWEEN ? AND ? GROUP BY " + bucketExpr,
+                rs -> {
+                    result.put(rs.getString(1), rs.getLong(2));
+                },
+                source, Date.valueOf(from), Date.valueOf(to));
+        return result;
+    }
+
+    /** Số user distinct của một nguồn trong cả khoảng [from, to]. */
+    public long distinctUsersTotal(String source, LocalDate from, LocalDate to) {
+        Long v = jdbcTemplate.queryForObject(
+                "SELECT COUNT(DISTINCT user_id) FROM dbo.analytics_daily_users WHERE source = ? AND day BETWEEN ? AND ?",
+                Long.class, source, Date.valueOf(from), Date.valueOf(to));
+        return v != null ? v : 0;
+    }
+
+    static String bucketOf(LocalDate day, boolean byMonth) {
+        return byMonth ? day.toString().substring(0, 7) : day.toString();
+    }
+
+    public static LocalDate today() {
+        return LocalDate.now(ZoneOffset.UTC);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("lookbackDays", lookbackDays);
+        m.put("lastRefreshedFrom", lastRefreshedFrom);
+        m.put("refreshLatency", refreshLatency.snapshot());
+        return m;
+    }
+}
@@ -7,10 +7,11 @@ import com.example.back_end.model.User;
 import com.example.back_end.repository.RoleRepository;
 import com.example.back_end.repository.UserRepository;
 import com.example.back_end.security.JwtService;
+import com.example.back_end.security.PasswordHasher;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
@@ -30,7 +31,7 @@ public class AuthService {
 
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHasher passwordHasher;
     private final JwtService jwtService;
     private final ProfileService profileService;
     private final RestTemplate restTemplate;
@@ -42,7 +43,7 @@ public class AuthService {
     public AuthService(
             UserRepository userRepository,
             RoleRepository roleRepository,
-            PasswordEncoder passwordEncoder,
+            PasswordHasher passwordHasher,
             JwtService jwtService,
             ProfileService profileService,
             RestTemplate restTemplate,
@@ -52,7 +53,7 @@ public class AuthService {
     ) {
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHasher = passwordHasher;
         this.jwtService = jwtService;
         this.profileService = profileService;
         this.restTemplate = restTemplate;
@@ -74,7 +75,7 @@ public class AuthService {
 
         User u = new User();
         u.setEmail(req.email);
-        u.setPasswordHash(passwordEncoder.encode(req.password));
+        u.setPasswordHash(passwordHasher.encode(req.password));
         u.setFullName(req.fullName);
         u.setUsername(profileService.generateInitialUsername(req.fullName, req.email));
         u.setLocale("vi");
@@ -97,9 +98,18 @@ public class AuthService {
     public AuthDtos.AuthResponse login(AuthDtos.LoginRequest req) {
         User u = userRepository.findByEmailIgnoreCase(req.email)
                 .orElseThrow(() -> new IllegalArgumentException("Sai email hoặc mật khẩu"));
-        if (!passwordEncoder.matches(req.password, u.getPasswordHash())) {
+        if (!passwordHasher.matches(req.password, u.getPasswordHash())) {
             throw new IllegalArgumentException("Sai email hoặc mật khẩu");
         }
+        if (passwordHasher.needsUpgrade(u.getPasswordHash())) {
+            // Băm lại theo cost đang cấu hình khi vừa có mật khẩu gốc; pool bận thì để lần đăng nhập sau
+            try {
+                u.setPasswordHash(passwordHasher.encode(req.password));
+                u.setUpdatedAt(LocalDateTime.now());
+                u = userRepository.save(u);
+            } catch (ResponseStatusException ignored) {
+            }
+        }
         return toAuthResponse(u);
     }
 
@@ -176,7 +186,7 @@ public class AuthService {
                 .orElseThrow(() -> new IllegalArgumentException("KhA'ng tA�m thA?y role student"));
         User user = new User();
         user.setEmail(profile.email.trim().toLowerCase());
-        user.setPasswordHash(passwordEncoder.encode("social-login-" + profile.provider + "-" + UUID.randomUUID()));
+        user.setPasswordHash(passwordHasher.encode("social-login-" + profile.provider + "-" + UUID.randomUUID()));
         String fullName = (profile.fullName != null && !profile.fullName.isBlank()) ? profile.fullName.trim() : profile.email;
         user.setFullName(fullName);
         user.setUsername(profileService.generateInitialUsername(fullName, profile.email));
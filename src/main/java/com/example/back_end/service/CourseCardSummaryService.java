@@ -0,0 +1,53 @@
+package com.example.back_end.service;
+
+import com.example.back_end.service.event.CourseChangedEvent;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Duy trì dbo.course_card_summaries (số lesson, video preview) để trang danh sách khóa học không phải
+ * đếm lesson và tìm video cho từng dòng. Bảng được cập nhật trước khi commit, cùng transaction với thay đổi
+ * module/lesson/asset, nên thẻ khóa học không bao giờ lệch với nội dung đã commit.
+ */
+@Service
+public class CourseCardSummaryService {
+    private static final String REFRESH_SQL = """
+            MERGE dbo.course_card_summaries WITH (HOLDLOCK) AS t
+            USING (
+                SELECT :cid AS course_id,
+                       (SELECT COUNT(*)
+                          FROM dbo.lessons l JOIN dbo.modules m ON l.module_id = m.id
+                         WHERE m.course_id = :cid) AS lessons_count,
+                       (SELECT TOP 1 a.url
+                          FROM dbo.lesson_assets a
+                          JOIN dbo.lessons l ON a.lesson_id = l.id
+                          JOIN dbo.modules m ON l.module_id = m.id
+                         WHERE m.course_id = :cid AND a.kind = N'video'
+                         ORDER BY a.id) AS preview_video_url
+                 WHERE EXISTS (SELECT 1 FROM dbo.courses WHERE id = :cid)
+            ) AS s ON t.course_id = s.course_id
+            WHEN MATCHED THEN
+                UPDATE SET lessons_count = s.lessons_count, preview_video_url = s.preview_video_url, updated_at = SYSUTCDATETIME()
+            WHEN NOT MATCHED THEN
+                INSERT (course_id, lessons_count, preview_video_url) VALUES (s.course_id, s.lessons_count, s.preview_video_url);
+            """;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    // Chỉ module/lesson/asset ảnh hưởng tới summary; khóa mới chưa có dòng summary được đọc như 0 lesson.
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onCourseChanged(CourseChangedEvent event) {
+        if (event.part() != CourseChangedEvent.Part.OUTLINE || event.courseId() == null) return;
+        refresh(event.courseId());
+    }
+
+    public void refresh(Long courseId) {
+        em.createNativeQuery(REFRESH_SQL)
+                .setParameter("cid", courseId)
+                .executeUpdate();
+    }
+}
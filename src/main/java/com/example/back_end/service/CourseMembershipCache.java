@@ -0,0 +1,132 @@
+package com.example.back_end.service;
+
+import com.example.back_end.service.event.CourseChangedEvent;
+import com.example.back_end.service.event.CourseMembershipChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache quan hệ (người dùng, khóa học): chủ khóa học, giảng viên được phân công, đã ghi danh.
+ *
+ * Thay cho ba câu COUNT mà các service kiểm quyền (ghi chú, tài liệu, đánh giá) chạy ở gần như mọi lời gọi; một lần
+ * nạp đọc cả ba cờ trong một câu. Mục bị bỏ sau commit khi có CourseMembershipChangedEvent (ghi danh, phân công) hoặc
+ * CourseChangedEvent COURSE (tạo/xóa/đổi chủ khóa học). Phân công sửa thẳng trong DB chỉ có hiệu lực sau TTL hoặc khi
+ * xóa cache qua /api/admin/cache/course-membership.
+ */
+@Component
+public class CourseMembershipCache {
+    private static final String MEMBERSHIP_SQL =
+            "SELECT CASE WHEN EXISTS (SELECT 1 FROM dbo.courses WHERE id = ? AND created_by = ?) THEN 1 ELSE 0 END," +
+            " CASE WHEN EXISTS (SELECT 1 FROM dbo.course_instructors WHERE course_id = ? AND user_id = ?) THEN 1 ELSE 0 END," +
+            " CASE WHEN EXISTS (SELECT 1 FROM dbo.enrollments WHERE course_id = ? AND user_id = ?) THEN 1 ELSE 0 END";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long ttlMs;
+    private final int maxEntries;
+    private final LinkedHashMap<Key, Entry> entries;
+    // Tăng mỗi lần invalidate; kết quả nạp song song với một lần invalidate thì không được lưu
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public CourseMembershipCache(JdbcTemplate jdbcTemplate,
+                                 @Value("${app.course-membership.ttl-ms:300000}") long ttlMs,
+                                 @Value("${app.course-membership.max-entries:50000}") int maxEntries) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ttlMs = Math.max(0, ttlMs);
+        this.maxEntries = Math.max(1, maxEntries);
+        this.entries = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > CourseMembershipCache.this.maxEntries;
+            }
+        };
+    }
+
+    /** enrolled: có bản ghi dbo.enrollments (mọi trạng thái), như các câu COUNT trước đây. */
+    public record Membership(boolean owner, boolean instructor, boolean enrolled) {
+        public static final Membership NONE = new Membership(false, false, false);
+
+        /** Chủ khóa học hoặc giảng viên được phân công. */
+        public boolean teaches() {
+            return owner || instructor;
+        }
+    }
+
+    private record Key(Long userId, Long courseId) {}
+
+    private record Entry(Membership membership, long expiresAt) {}
+
+    public Membership get(Long userId, Long courseId) {
+        if (userId == null || courseId == null) return Membership.NONE;
+        Key key = new Key(userId, courseId);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            Entry e = entries.get(key);
+            if (e != null && e.expiresAt() > now) {
+                hits.increment();
+                return e.membership();
+            }
+        }
+        misses.increment();
+        long gen = generation.get();
+        Membership loaded = load(userId, courseId);
+        if (ttlMs > 0) {
+            synchronized (this) {
+                if (generation.get() == gen) entries.put(key, new Entry(loaded, now + ttlMs));
+            }
+        }
+        return loaded;
+    }
+
+    Membership load(Long userId, Long courseId) {
+        return jdbcTemplate.queryForObject(MEMBERSHIP_SQL,
+                (rs, i) -> new Membership(rs.getInt(1) > 0, rs.getInt(2) > 0, rs.getInt(3) > 0),
+                courseId, userId, courseId, userId, courseId, userId);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMembershipChanged(CourseMembershipChangedEvent event) {
+        remove(event.courseId(), event.userId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCourseChanged(CourseChangedEvent event) {
+        if (event.part() == CourseChangedEvent.Part.COURSE) remove(event.courseId(), null);
+    }
+
+    private synchronized void remove(Long courseId, Long userId) {
+        if (courseId == null) return;
+        generation.incrementAndGet();
+        boolean removed = userId != null
+                ? entries.remove(new Key(userId, courseId)) != null
+                : entries.keySet().removeIf(k -> courseId.equals(k.courseId()));
+        if (removed) invalidations.increment();
+    }
+
+    public synchronized void invalidateAll() {
+        generation.incrementAndGet();
+        if (!entries.isEmpty()) invalidations.increment();
+        entries.clear();
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("entries", entries.size());
+        m.put("maxEntries", maxEntries);
+        m.put("ttlMs", ttlMs);
+        m.put("hits", hits.sum());
+        m.put("misses", misses.sum());
+        m.put("invalidations", invalidations.sum());
+        return m;
+    }
+}
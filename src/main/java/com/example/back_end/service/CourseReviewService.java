@@ -22,20 +22,25 @@ import java.util.stream.Collectors;
 public class CourseReviewService {
     private final CourseReviewRepository reviewRepository;
     private final CourseRepository courseRepository;
+    private final TeacherDashboardCache teacherDashboards;
+    private final CourseMembershipCache membershipCache;
 
     @PersistenceContext
     private EntityManager entityManager;
 
-    public CourseReviewService(CourseReviewRepository reviewRepository, CourseRepository courseRepository) {
+    public CourseReviewService(CourseReviewRepository reviewRepository, CourseRepository courseRepository,
+                               TeacherDashboardCache teacherDashboards, CourseMembershipCache membershipCache) {
         this.reviewRepository = reviewRepository;
         this.courseRepository = courseRepository;
+        this.teacherDashboards = teacherDashboards;
+        this.membershipCache = membershipCache;
     }
 
     @Transactional
     public CourseReviewDtos.ReviewResponse createOrUpdateReview(User student, Long courseId, CourseReviewDtos.CreateRequest request) {
         Course course = courseRepository.findById(courseId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Khóa học không tồn tại"));
-        if (!isEnrolled(student.getId(), courseId)) {
+        if (!membershipCache.get(student.getId(), courseId).enrolled()) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Bạn cần tham gia khóa học trước khi đánh giá");
         }
         CourseReview review = reviewRepository.findByCourse_IdAndStudent_Id(courseId, student.getId())
@@ -57,6 +62,7 @@ public class CourseReviewService {
             review.setStatus("pending");
         }
         CourseReview saved = reviewRepository.save(review);
+        teacherDashboards.invalidateCourse(courseId);
         return toDto(saved);
     }
 
@@ -135,6 +141,7 @@ public class CourseReviewService {
         String normalized = normalizeStatus(status);
         review.setStatus(normalized);
         review.setAdminNote(truncate(clean(adminNote), 1000));
+        teacherDashboards.invalidateCourse(review.getCourse().getId());
         return toDto(reviewRepository.save(review));
     }
 
@@ -174,15 +181,6 @@ public class CourseReviewService {
         return summary;
     }
 
-    private boolean isEnrolled(Long userId, Long courseId) {
-        Number result = (Number) entityManager.createNativeQuery(
-                        "SELECT COUNT(*) FROM dbo.enrollments WHERE user_id = :uid AND course_id = :cid")
-                .setParameter("uid", userId)
-                .setParameter("cid", courseId)
-                .getSingleResult();
-        return result != null && result.intValue() > 0;
-    }
-
     private String clean(String value) {
         return value == null ? "" : value.trim();
     }
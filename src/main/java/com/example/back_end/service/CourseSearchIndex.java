@@ -0,0 +1,252 @@
+package com.example.back_end.service;
+
+import com.example.back_end.service.event.CourseChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Timestamp;
+import java.text.Normalizer;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * Chỉ mục đảo (inverted index) trong bộ nhớ cho ô tìm kiếm khóa học, thay cho LIKE N'%keyword%'.
+ *
+ * Token được bỏ dấu tiếng Việt ("Tiếng Anh" -> "tieng", "anh"; "đ" -> "d") nên người dùng gõ có dấu hay không
+ * đều ra cùng kết quả. Mọi từ trong câu truy vấn phải khớp (AND); mỗi từ được so theo tiền tố để gợi ý khi đang gõ,
+ * khớp trọn từ được cộng điểm cao hơn. Điểm theo trường: tiêu đề > slug = danh mục > tên giáo viên.
+ *
+ * Chỉ mục được dựng một lần khi ứng dụng khởi động và cập nhật từng khóa học khi nhận CourseChangedEvent.
+ */
+@Component
+public class CourseSearchIndex {
+    private static final Logger log = LoggerFactory.getLogger(CourseSearchIndex.class);
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^a-z0-9]+");
+
+    static final int W_TITLE = 8;
+    static final int W_SLUG = 4;
+    static final int W_CATEGORY = 4;
+    static final int W_TEACHER = 2;
+
+    private static final String COURSE_SQL =
+            "SELECT c.id, c.title, c.slug, c.status, c.created_at, u.full_name" +
+            " FROM dbo.courses c JOIN dbo.users u ON u.id = c.created_by";
+    private static final String CATEGORY_SQL =
+            "SELECT cc.course_id, cat.slug, cat.name" +
+            " FROM dbo.course_categories cc JOIN dbo.categories cat ON cat.id = cc.category_id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // token -> (courseId -> trọng số cao nhất của token trong khóa học đó)
+    private volatile ConcurrentSkipListMap<String, Map<Long, Integer>> postings = new ConcurrentSkipListMap<>();
+    private volatile Map<Long, Doc> docs = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    public CourseSearchIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public record Doc(Long id, String title, String slug, String status, LocalDateTime createdAt, Map<String, Integer> tokens) {}
+
+    public record Hit(Long id, String title, String slug, int score) {}
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return docs.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        try {
+            rebuild();
+        } catch (DataAccessException ex) {
+            log.warn("Không dựng được chỉ mục tìm kiếm khóa học, tìm kiếm sẽ dùng LIKE: {}", ex.getMessage());
+        }
+    }
+
+    public synchronized void rebuild() {
+        Map<Long, List<String>> categories = new HashMap<>();
+        jdbcTemplate.query(CATEGORY_SQL, rs -> {
+            List<String> list = categories.computeIfAbsent(rs.getLong(1), k -> new ArrayList<>());
+            list.add(rs.getString(2));
+            list.add(rs.getString(3));
+        });
+        List<Doc> loaded = new ArrayList<>();
+        jdbcTemplate.query(COURSE_SQL, rs -> {
+            long id = rs.getLong(1);
+            loaded.add(toDoc(id, rs.getString(2), rs.getString(3), rs.getString(4), rs.getTimestamp(5), rs.getString(6),
+                    categories.getOrDefault(id, List.of())));
+        });
+        // Dựng sang cấu trúc mới rồi mới tráo để request đang tìm không thấy chỉ mục rỗng
+        ConcurrentSkipListMap<String, Map<Long, Integer>> newPostings = new ConcurrentSkipListMap<>();
+        Map<Long, Doc> newDocs = new ConcurrentHashMap<>();
+        for (Doc d : loaded) {
+            put(newPostings, newDocs, d);
+        }
+        postings = newPostings;
+        docs = newDocs;
+        ready = true;
+        log.info("Course search index built: {} courses, {} tokens", docs.size(), postings.size());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCourseChanged(CourseChangedEvent event) {
+        if (!ready || event.part() != CourseChangedEvent.Part.COURSE || event.courseId() == null) return;
+        try {
+            reindex(event.courseId());
+        } catch (DataAccessException ex) {
+            log.warn("Không cập nhật được chỉ mục cho khóa học #{}: {}", event.courseId(), ex.getMessage());
+        }
+    }
+
+    public synchronized void reindex(Long courseId) {
+        List<String> cats = new ArrayList<>();
+        jdbcTemplate.query(CATEGORY_SQL + " WHERE cc.course_id = ?", rs -> {
+            cats.add(rs.getString(2));
+            cats.add(rs.getString(3));
+        }, courseId);
+        List<Doc> found = jdbcTemplate.query(COURSE_SQL + " WHERE c.id = ?",
+                (rs, i) -> toDoc(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4), rs.getTimestamp(5), rs.getString(6), cats),
+                courseId);
+        if (found.isEmpty()) {
+            remove(courseId);
+        } else {
+            upsert(found.get(0));
+        }
+    }
+
+    public synchronized void upsert(Doc doc) {
+        remove(doc.id());
+        put(postings, docs, doc);
+    }
+
+    /**
+     * Trả về id khóa học khớp với truy vấn, xếp theo điểm giảm dần rồi tới khóa mới hơn.
+     * status == null nghĩa là không lọc theo trạng thái.
+     */
+    public List<Long> search(String query, String status, int offset, int limit) {
+        List<Scored> ranked = rank(query, status);
+        int from = Math.max(0, Math.min(offset, ranked.size()));
+        int to = Math.min(ranked.size(), from + Math.max(0, limit));
+        List<Long> ids = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            ids.add(ranked.get(i).doc.id());
+        }
+        return ids;
+    }
+
+    /** Gợi ý khi đang gõ: trả trực tiếp từ bộ nhớ, không chạm DB. */
+    public List<Hit> suggest(String query, String status, int limit) {
+        List<Scored> ranked = rank(query, status);
+        List<Hit> hits = new ArrayList<>();
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            Scored s = ranked.get(i);
+            hits.add(new Hit(s.doc.id(), s.doc.title(), s.doc.slug(), s.score));
+        }
+        return hits;
+    }
+
+    private List<Scored> rank(String query, String status) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) return List.of();
+        ConcurrentSkipListMap<String, Map<Long, Integer>> postings = this.postings;
+        Map<Long, Doc> docs = this.docs;
+        Map<Long, Integer> scores = null;
+        for (String term : new LinkedHashSet<>(terms)) {
+            Map<Long, Integer> termScores = new HashMap<>();
+            ConcurrentNavigableMap<String, Map<Long, Integer>> range = postings.subMap(term, true, term + Character.MAX_VALUE, false);
+            for (Map.Entry<String, Map<Long, Integer>> e : range.entrySet()) {
+                boolean exact = e.getKey().length() == term.length();
+                for (Map.Entry<Long, Integer> p : e.getValue().entrySet()) {
+                    int s = exact ? p.getValue() * 2 : p.getValue();
+                    termScores.merge(p.getKey(), s, Math::max);
+                }
+            }
+            if (scores == null) {
+                scores = termScores;
+            } else {
+                Map<Long, Integer> next = new HashMap<>();
+                for (Map.Entry<Long, Integer> e : scores.entrySet()) {
+                    Integer s = termScores.get(e.getKey());
+                    if (s != null) next.put(e.getKey(), e.getValue() + s);
+                }
+                scores = next;
+            }
+            if (scores.isEmpty()) return List.of();
+        }
+        List<Scored> ranked = new ArrayList<>(scores.size());
+        for (Map.Entry<Long, Integer> e : scores.entrySet()) {
+            Doc d = docs.get(e.getKey());
+            if (d == null) continue;
+            if (status != null && !status.equalsIgnoreCase(d.status())) continue;
+            ranked.add(new Scored(d, e.getValue()));
+        }
+        ranked.sort(Comparator.comparingInt((Scored s) -> s.score).reversed()
+                .thenComparing(s -> s.doc.createdAt(), Comparator.nullsLast(Comparator.reverseOrder()))
+                .thenComparing(s -> s.doc.id(), Comparator.reverseOrder()));
+        return ranked;
+    }
+
+    private static void put(Map<String, Map<Long, Integer>> postings, Map<Long, Doc> docs, Doc d) {
+        docs.put(d.id(), d);
+        for (Map.Entry<String, Integer> t : d.tokens().entrySet()) {
+            postings.computeIfAbsent(t.getKey(), k -> new ConcurrentHashMap<>()).put(d.id(), t.getValue());
+        }
+    }
+
+    public synchronized void remove(Long courseId) {
+        Doc old = docs.remove(courseId);
+        if (old == null) return;
+        for (String token : old.tokens().keySet()) {
+            postings.computeIfPresent(token, (k, ids) -> {
+                ids.remove(courseId);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    static Doc toDoc(Long id, String title, String slug, String status, Timestamp createdAt, String teacher, List<String> categories) {
+        Map<String, Integer> tokens = new HashMap<>();
+        addTokens(tokens, title, W_TITLE);
+        addTokens(tokens, slug, W_SLUG);
+        for (String c : categories) addTokens(tokens, c, W_CATEGORY);
+        addTokens(tokens, teacher, W_TEACHER);
+        return new Doc(id, title, slug, status, createdAt != null ? createdAt.toLocalDateTime() : null, tokens);
+    }
+
+    private static void addTokens(Map<String, Integer> tokens, String text, int weight) {
+        for (String t : tokenize(text)) {
+            tokens.merge(t, weight, Math::max);
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) return List.of();
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFD);
+        folded = MARKS.matcher(folded).replaceAll("")
+                .replace('đ', 'd').replace('Đ', 'd')
+                .toLowerCase(Locale.ROOT);
+        List<String> out = new ArrayList<>();
+        for (String part : SEPARATORS.split(folded)) {
+            if (!part.isEmpty()) out.add(part);
+        }
+        return out;
+    }
+
+    private record Scored(Doc doc, int score) {}
+}
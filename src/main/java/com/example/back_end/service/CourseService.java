@@ -7,6 +7,8 @@ import com.example.back_end.model.User;
 import com.example.back_end.repository.CategoryRepository;
 import com.example.back_end.repository.CourseRepository;
 import com.example.back_end.repository.UserRepository;
+import com.example.back_end.service.event.CourseChangedEvent;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -22,15 +24,18 @@ public class CourseService {
     private final CourseRepository courseRepository;
     private final UserRepository userRepository;
     private final CategoryRepository categoryRepository;
+    private final ApplicationEventPublisher events;
 
     public CourseService(
             CourseRepository courseRepository,
             UserRepository userRepository,
-            CategoryRepository categoryRepository
+            CategoryRepository categoryRepository,
+            ApplicationEventPublisher events
     ) {
         this.courseRepository = courseRepository;
         this.userRepository = userRepository;
         this.categoryRepository = categoryRepository;
+        this.events = events;
     }
 
     @Transactional
@@ -40,6 +45,7 @@ public class CourseService {
         course.setCreatedBy(getCurrentUser());
         applyWritableFields(course, req, true);
         course = courseRepository.save(course);
+        events.publishEvent(CourseChangedEvent.course(course.getId()));
         return toResponse(course);
     }
 
@@ -66,6 +72,7 @@ public class CourseService {
                 .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy khóa học #" + id));
         applyWritableFields(course, req, false);
         course = courseRepository.save(course);
+        events.publishEvent(CourseChangedEvent.course(course.getId()));
         return toResponse(course);
     }
 
@@ -75,6 +82,7 @@ public class CourseService {
             throw new IllegalArgumentException("Không tìm thấy khóa học #" + id);
         }
         courseRepository.deleteById(id);
+        events.publishEvent(CourseChangedEvent.course(id));
     }
 
     private CourseDtos.CourseResponse toResponse(Course course) {
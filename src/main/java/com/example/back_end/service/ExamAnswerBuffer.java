@@ -0,0 +1,260 @@
+package com.example.back_end.service;
+
+import com.example.back_end.dto.ExamDtos;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bộ đệm ghi sau (write-behind) cho autosave câu trả lời bài thi.
+ *
+ * Khi bật (app.exam.answer-buffer.enabled=true), mỗi lần học viên chọn đáp án chỉ cập nhật bộ nhớ:
+ * nhiều lần sửa cùng một câu được gộp lại, và cứ mỗi app.exam.answer-buffer.flush-ms các thay đổi được ghi
+ * xuống dbo.quiz_answers bằng một batch MERGE. Nộp bài luôn flush attempt đó trước khi chấm.
+ *
+ * Cam kết độ bền: câu trả lời đã trả 200 OK nhưng chưa tới lượt flush sẽ mất nếu JVM dừng đột ngột
+ * (tối đa một chu kỳ flush). Flush lỗi được giữ lại và thử lại ở chu kỳ sau. Chế độ này giả định mỗi attempt
+ * chỉ được phục vụ bởi một node; khi tắt, saveAnswer ghi thẳng DB như trước.
+ */
+@Component
+public class ExamAnswerBuffer {
+    private static final Logger log = LoggerFactory.getLogger(ExamAnswerBuffer.class);
+
+    private static final String MERGE_SQL = """
+            MERGE dbo.quiz_answers WITH (HOLDLOCK) AS t
+            USING (SELECT ? AS attempt_id, ? AS question_id, ? AS selected_option_id, ? AS marked_for_review) AS s
+               ON t.attempt_id = s.attempt_id AND t.question_id = s.question_id
+            WHEN MATCHED THEN
+                UPDATE SET selected_option_id = s.selected_option_id, marked_for_review = s.marked_for_review
+            WHEN NOT MATCHED THEN
+                INSERT (attempt_id, question_id, selected_option_id, marked_for_review)
+                VALUES (s.attempt_id, s.question_id, s.selected_option_id, s.marked_for_review);
+            """;
+    private static final String TRACKING_SQL =
+            "UPDATE dbo.quiz_attempts SET last_seen_question_id = COALESCE(?, last_seen_question_id), last_saved_at = ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final QuizSnapshotCache quizSnapshots;
+    private final boolean enabled;
+
+    private final Map<Long, AttemptBuffer> attempts = new ConcurrentHashMap<>();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+
+    public ExamAnswerBuffer(JdbcTemplate jdbcTemplate, QuizSnapshotCache quizSnapshots,
+                            @Value("${app.exam.answer-buffer.enabled:false}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.quizSnapshots = quizSnapshots;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Câu trả lời đang chờ ghi của một câu hỏi. */
+    public record PendingAnswer(Long selectedOptionId, boolean markedForReview) {}
+
+    private static final class AttemptBuffer {
+        final Long attemptId;
+        final Long userId;
+        final LocalDateTime endsAt;
+        final Map<Long, Set<Long>> optionsByQuestion;
+        final ConcurrentHashMap<Long, PendingAnswer> pending = new ConcurrentHashMap<>();
+        volatile Long lastSeenQuestionId;
+        volatile LocalDateTime lastSavedAt;
+        volatile boolean trackingDirty;
+
+        AttemptBuffer(Long attemptId, Long userId, LocalDateTime endsAt, Map<Long, Set<Long>> optionsByQuestion) {
+            this.attemptId = attemptId;
+            this.userId = userId;
+            this.endsAt = endsAt;
+            this.optionsByQuestion = optionsByQuestion;
+        }
+    }
+
+    public void save(Long userId, Long attemptId, ExamDtos.AnswerUpdateRequest request) {
+        AttemptBuffer buf = attempts.get(attemptId);
+        if (buf == null) {
+            // Truy vấn ngoài thao tác trên map để không giữ khóa bin của ConcurrentHashMap trong lúc chờ DB
+            AttemptBuffer loaded = loadAttempt(attemptId);
+            AttemptBuffer raced = attempts.putIfAbsent(attemptId, loaded);
+            buf = raced != null ? raced : loaded;
+        }
+        if (!Objects.equals(buf.userId, userId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Bạn không được phép truy cập attempt này");
+        }
+        Set<Long> options = buf.optionsByQuestion.get(request.questionId);
+        if (options == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Câu hỏi không thuộc attempt");
+        }
+        if (request.selectedOptionId != null && !options.contains(request.selectedOptionId)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Đáp án không hợp lệ");
+        }
+        PendingAnswer prev = buf.pending.put(request.questionId,
+                new PendingAnswer(request.selectedOptionId, Boolean.TRUE.equals(request.markedForReview)));
+        if (prev != null) coalesced.increment();
+        if (request.lastSeenQuestionId != null) buf.lastSeenQuestionId = request.lastSeenQuestionId;
+        buf.lastSavedAt = LocalDateTime.now(ZoneOffset.UTC);
+        buf.trackingDirty = true;
+        accepted.increment();
+    }
+
+    /** Câu trả lời chưa ghi xuống DB của attempt, để hiển thị lại bài làm cho khớp với những gì học viên đã chọn. */
+    public Map<Long, PendingAnswer> pending(Long attemptId) {
+        AttemptBuffer buf = attempts.get(attemptId);
+        return buf == null ? Map.of() : Map.copyOf(buf.pending);
+    }
+
+    /**
+     * Ghi ngay các câu trả lời đang chờ của attempt. Nếu đang trong transaction (nộp bài) thì ghi cùng transaction đó.
+     */
+    public void flush(Long attemptId) {
+        AttemptBuffer buf = attempts.get(attemptId);
+        if (buf != null) flushBuffer(buf);
+    }
+
+    /** Attempt đã kết thúc: bỏ khỏi bộ đệm sau khi commit. Lần lưu sau sẽ nạp lại trạng thái và bị từ chối. */
+    public void complete(Long attemptId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    attempts.remove(attemptId);
+                }
+            });
+        } else {
+            attempts.remove(attemptId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.exam.answer-buffer.flush-ms:2000}")
+    public void flushAll() {
+        if (!enabled || attempts.isEmpty()) return;
+        LocalDateTime staleBefore = LocalDateTime.now(ZoneOffset.UTC).minusHours(1);
+        for (AttemptBuffer buf : attempts.values()) {
+            try {
+                flushBuffer(buf);
+            } catch (RuntimeException ex) {
+                flushFailures.increment();
+                log.warn("Flush câu trả lời attempt #{} lỗi, sẽ thử lại: {}", buf.attemptId, ex.getMessage());
+                continue;
+            }
+            // Attempt đã quá hạn lâu mà không nộp: không giữ metadata trong bộ nhớ nữa
+            if (buf.pending.isEmpty() && buf.endsAt != null && buf.endsAt.isBefore(staleBefore)) {
+                attempts.remove(buf.attemptId, buf);
+            }
+        }
+    }
+
+    private void flushBuffer(AttemptBuffer buf) {
+        if (buf.pending.isEmpty() && !buf.trackingDirty) return;
+        List<Map.Entry<Long, PendingAnswer>> batch = buf.pending.entrySet().stream()
+                .map(e -> Map.entry(e.getKey(), e.getValue()))
+                .toList();
+        if (!batch.isEmpty()) {
+            List<Object[]> args = new ArrayList<>(batch.size());
+            for (Map.Entry<Long, PendingAnswer> e : batch) {
+                PendingAnswer a = e.getValue();
+                args.add(new Object[]{buf.attemptId, e.getKey(), a.selectedOptionId(), a.markedForReview() ? 1 : 0});
+            }
+            jdbcTemplate.batchUpdate(MERGE_SQL, args);
+            // Trong transaction (nộp bài) chỉ bỏ khỏi bộ đệm sau khi commit, rollback thì vẫn còn để ghi lại
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        drain(buf, batch);
+                    }
+                });
+            } else {
+                drain(buf, batch);
+            }
+        }
+        if (buf.trackingDirty) {
+            buf.trackingDirty = false;
+            LocalDateTime savedAt = buf.lastSavedAt;
+            jdbcTemplate.update(TRACKING_SQL, buf.lastSeenQuestionId, savedAt != null ? Timestamp.valueOf(savedAt) : null, buf.attemptId);
+        }
+    }
+
+    // Chỉ bỏ những giá trị đã ghi; nếu học viên vừa đổi đáp án trong lúc flush thì giữ lại cho lần sau
+    private void drain(AttemptBuffer buf, List<Map.Entry<Long, PendingAnswer>> written) {
+        for (Map.Entry<Long, PendingAnswer> e : written) {
+            buf.pending.remove(e.getKey(), e.getValue());
+        }
+        flushedRows.add(written.size());
+    }
+
+    private AttemptBuffer loadAttempt(Long attemptId) {
+        List<Object[]> rows = jdbcTemplate.query(
+                "SELECT a.user_id, a.status, a.ends_at, a.quiz_id, a.question_watermark, z.updated_at " +
+                        "FROM dbo.quiz_attempts a JOIN dbo.quizzes z ON z.id = a.quiz_id WHERE a.id = ?",
+                (rs, n) -> new Object[]{rs.getLong(1), rs.getString(2), rs.getTimestamp(3), rs.getLong(4),
+                        rs.getObject(5) != null ? rs.getLong(5) : null, rs.getTimestamp(6)},
+                attemptId);
+        if (rows.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Không tìm thấy attempt");
+        }
+        Object[] r = rows.get(0);
+        if (!"in_progress".equalsIgnoreCase(String.valueOf(r[1]))) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bài làm đã kết thúc");
+        }
+        Map<Long, Set<Long>> options = new HashMap<>();
+        if (r[4] != null) {
+            // Câu hỏi của attempt là những câu trong ảnh chụp đề có id không vượt quá mốc
+            Timestamp version = (Timestamp) r[5];
+            QuizSnapshotCache.QuizSnapshot snapshot = quizSnapshots.get((Long) r[3], version != null ? version.toLocalDateTime() : null);
+            if (snapshot != null) {
+                for (QuizSnapshotCache.QuestionSnapshot q : snapshot.questionsUpTo((Long) r[4])) {
+                    Set<Long> ids = new HashSet<>();
+                    for (QuizSnapshotCache.OptionSnapshot o : q.options()) ids.add(o.id());
+                    options.put(q.id(), ids);
+                }
+            }
+        } else {
+            jdbcTemplate.query(
+                    "SELECT i.question_id, o.id FROM dbo.quiz_attempt_items i " +
+                            "LEFT JOIN dbo.question_options o ON o.question_id = i.question_id WHERE i.attempt_id = ?",
+                    rs -> {
+                        Set<Long> set = options.computeIfAbsent(rs.getLong(1), k -> new HashSet<>());
+                        long oid = rs.getLong(2);
+                        if (!rs.wasNull()) set.add(oid);
+                    },
+                    attemptId);
+        }
+        Timestamp endsAt = (Timestamp) r[2];
+        return new AttemptBuffer(attemptId, (Long) r[0], endsAt != null ? endsAt.toLocalDateTime() : null, options);
+    }
+
+    public Map<String, Object> stats() {
+        int pending = 0;
+        for (AttemptBuffer buf : attempts.values()) pending += buf.pending.size();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", enabled);
+        m.put("openAttempts", attempts.size());
+        m.put("pendingAnswers", pending);
+        m.put("accepted", accepted.sum());
+        m.put("coalesced", coalesced.sum());
+        m.put("flushedRows", flushedRows.sum());
+        m.put("flushFailures", flushFailures.sum());
+        return m;
+    }
+}
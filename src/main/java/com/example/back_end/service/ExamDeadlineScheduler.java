@@ -0,0 +1,187 @@
+package com.example.back_end.service;
+
+import com.example.back_end.util.LatencyRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tự nộp các attempt đã quá ends_at + auto_submit_grace_sec mà học viên không quay lại nộp.
+ *
+ * Giữ một hàng đợi ưu tiên theo hạn nộp của các attempt in_progress trong bộ nhớ: dựng một lần khi khởi động, sau đó
+ * mỗi lượt chỉ đọc thêm các attempt mới (id lớn hơn id đã thấy) và quét lại các attempt bắt đầu trong RESYNC_OVERLAP
+ * gần nhất để nhặt transaction commit muộn với id nhỏ hơn id đã thấy. Cả hai truy vấn đều có TOP nên khối lượng đọc
+ * của một lượt không phụ thuộc tổng số attempt đang mở. Mỗi lượt nộp tối đa batch-size attempt đã tới hạn,
+ * mỗi attempt một transaction riêng qua StudentExamService.autoSubmitExpired, nên khối lượng DB của một lượt có giới hạn.
+ * Attempt học viên đã tự nộp vẫn có thể còn trong hàng đợi; tới hạn sẽ được bỏ qua.
+ */
+@Component
+public class ExamDeadlineScheduler {
+    private static final Logger log = LoggerFactory.getLogger(ExamDeadlineScheduler.class);
+
+    private static final String OPEN_ATTEMPTS_SQL =
+            "SELECT TOP (?) a.id, DATEADD(SECOND, COALESCE(q.auto_submit_grace_sec, 0), a.ends_at)" +
+            " FROM dbo.quiz_attempts a JOIN dbo.quizzes q ON q.id = a.quiz_id" +
+            " WHERE a.id > ? AND a.status = N'in_progress' AND a.ends_at IS NOT NULL" +
+            " ORDER BY a.id";
+    // started_at so với giờ của DB (cùng nguồn với lúc INSERT) để không lệ thuộc đồng hồ của JVM
+    private static final String RECENT_ATTEMPTS_SQL =
+            "SELECT TOP (?) a.id, DATEADD(SECOND, COALESCE(q.auto_submit_grace_sec, 0), a.ends_at)" +
+            " FROM dbo.quiz_attempts a JOIN dbo.quizzes q ON q.id = a.quiz_id" +
+            " WHERE a.id <= ? AND a.started_at >= DATEADD(SECOND, -?, SYSUTCDATETIME())" +
+            " AND a.status = N'in_progress' AND a.ends_at IS NOT NULL" +
+            " ORDER BY a.id DESC";
+
+    private static final Duration RETRY_DELAY = Duration.ofMinutes(1);
+    private static final Duration RESYNC_OVERLAP = Duration.ofMinutes(10);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final StudentExamService studentExamService;
+    private final boolean enabled;
+    private final int batchSize;
+
+    private final PriorityQueue<Deadline> queue = new PriorityQueue<>();
+    private final Set<Long> queued = new HashSet<>();
+    private long lastSeenId;
+    private volatile boolean ready;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LatencyRecorder passLatency = new LatencyRecorder("exam.auto-submit.pass");
+
+    public ExamDeadlineScheduler(JdbcTemplate jdbcTemplate, StudentExamService studentExamService,
+                                 @Value("${app.exam.auto-submit.enabled:true}") boolean enabled,
+                                 @Value("${app.exam.auto-submit.batch-size:50}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.studentExamService = studentExamService;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    record Deadline(LocalDateTime at, Long attemptId) implements Comparable<Deadline> {
+        @Override
+        public int compareTo(Deadline o) {
+            int c = at.compareTo(o.at);
+            return c != 0 ? c : attemptId.compareTo(o.attemptId);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (!enabled) return;
+        try {
+            rebuild();
+        } catch (DataAccessException ex) {
+            log.warn("Không dựng được hàng đợi tự nộp bài, sẽ thử lại ở lượt sau: {}", ex.getMessage());
+        }
+    }
+
+    public synchronized void rebuild() {
+        queue.clear();
+        queued.clear();
+        lastSeenId = 0;
+        while (loadNewAttempts() == batchSize * 20) {
+            // đọc tiếp cho tới khi hết attempt in_progress
+        }
+        ready = true;
+        log.info("Exam auto-submit queue built: {} open attempts", queue.size());
+    }
+
+    /** Đọc các attempt in_progress có id lớn hơn id đã thấy; trả số dòng đã đọc. */
+    private int loadNewAttempts() {
+        int limit = batchSize * 20;
+        List<Deadline> rows = jdbcTemplate.query(OPEN_ATTEMPTS_SQL,
+                (rs, i) -> new Deadline(rs.getTimestamp(2).toLocalDateTime(), rs.getLong(1)),
+                limit, lastSeenId);
+        for (Deadline d : rows) {
+            lastSeenId = Math.max(lastSeenId, d.attemptId());
+            if (queued.add(d.attemptId())) queue.add(d);
+        }
+        return rows.size();
+    }
+
+    /** Quét lại các attempt bắt đầu gần đây có id không lớn hơn id đã thấy; trả số dòng đã đọc. */
+    int resyncRecent() {
+        List<Deadline> rows = jdbcTemplate.query(RECENT_ATTEMPTS_SQL,
+                (rs, i) -> new Deadline(rs.getTimestamp(2).toLocalDateTime(), rs.getLong(1)),
+                batchSize * 20, lastSeenId, RESYNC_OVERLAP.toSeconds());
+        for (Deadline d : rows) {
+            if (queued.add(d.attemptId())) queue.add(d);
+        }
+        return rows.size();
+    }
+
+    @Scheduled(fixedDelayString = "${app.exam.auto-submit.interval-ms:15000}",
+            initialDelayString = "${app.exam.auto-submit.interval-ms:15000}")
+    public void runPass() {
+        if (!enabled) return;
+        long started = System.nanoTime();
+        List<Deadline> due;
+        try {
+            due = pollDue(LocalDateTime.now(ZoneOffset.UTC));
+        } catch (DataAccessException ex) {
+            log.warn("Không đọc được attempt mới cho hàng đợi tự nộp bài: {}", ex.getMessage());
+            return;
+        }
+        for (Deadline d : due) {
+            try {
+                if (studentExamService.autoSubmitExpired(d.attemptId())) {
+                    submitted.increment();
+                } else {
+                    skipped.increment();
+                }
+            } catch (RuntimeException ex) {
+                failures.increment();
+                log.warn("Tự nộp attempt #{} lỗi, thử lại sau: {}", d.attemptId(), ex.getMessage());
+                requeue(d.attemptId(), LocalDateTime.now(ZoneOffset.UTC).plus(RETRY_DELAY));
+            }
+        }
+        if (!due.isEmpty()) passLatency.recordSince(started);
+    }
+
+    private synchronized void requeue(Long attemptId, LocalDateTime at) {
+        if (queued.add(attemptId)) queue.add(new Deadline(at, attemptId));
+    }
+
+    /** Lấy tối đa batchSize attempt đã tới hạn ra khỏi hàng đợi, sau khi nạp thêm attempt mới tạo. */
+    synchronized List<Deadline> pollDue(LocalDateTime now) {
+        if (!ready) {
+            rebuild();
+        } else {
+            resyncRecent();
+            loadNewAttempts();
+        }
+        List<Deadline> due = new ArrayList<>();
+        while (due.size() < batchSize && !queue.isEmpty() && !queue.peek().at().isAfter(now)) {
+            Deadline d = queue.poll();
+            queued.remove(d.attemptId());
+            due.add(d);
+        }
+        return due;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", enabled);
+        m.put("queued", queue.size());
+        m.put("nextDeadline", queue.isEmpty() ? null : queue.peek().at());
+        m.put("autoSubmitted", submitted.sum());
+        m.put("skipped", skipped.sum());
+        m.put("failures", failures.sum());
+        m.put("passLatency", passLatency.snapshot());
+        return m;
+    }
+}
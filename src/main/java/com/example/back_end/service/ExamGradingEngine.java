@@ -0,0 +1,95 @@
+package com.example.back_end.service;
+
+import com.example.back_end.util.LatencyRecorder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Chấm bài thi trắc nghiệm hoàn toàn trong bộ nhớ.
+ *
+ * Đáp án lấy từ ảnh chụp đề trong QuizSnapshotCache, giữ theo phiên bản (dbo.quizzes.updated_at); khi giáo viên
+ * sửa đề, updated_at đổi nên lần nộp kế tiếp tự nạp lại đáp án mới. Kết quả từng câu được ghi bằng một JDBC batch
+ * thay vì một câu UPDATE cho mỗi câu trả lời.
+ */
+@Service
+public class ExamGradingEngine {
+    private final JdbcTemplate jdbcTemplate;
+    private final QuizSnapshotCache snapshots;
+
+    private final LatencyRecorder submitLatency = new LatencyRecorder("exam.submit");
+
+    public ExamGradingEngine(JdbcTemplate jdbcTemplate, QuizSnapshotCache snapshots) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.snapshots = snapshots;
+    }
+
+    /** Đáp án bất biến của một đề ở một phiên bản cụ thể. */
+    public record AnswerKey(Long quizId, LocalDateTime version, Map<Long, QuestionKey> questions) {}
+
+    public record QuestionKey(int points, Set<Long> correctOptionIds) {}
+
+    public record QuestionResult(Long questionId, boolean correct, double points) {}
+
+    public record GradeResult(double totalPoints, double maxPoints, List<QuestionResult> results) {}
+
+    public AnswerKey answerKey(Long quizId, LocalDateTime version) {
+        QuizSnapshotCache.QuizSnapshot snapshot = snapshots.get(quizId, version);
+        if (snapshot == null) {
+            return new AnswerKey(quizId, version, Map.of());
+        }
+        return snapshot.answerKey();
+    }
+
+    public void invalidate(Long quizId) {
+        snapshots.invalidate(quizId);
+    }
+
+    /**
+     * Chấm điểm thuần trong bộ nhớ. selected: questionId -> optionId đã chọn (có thể thiếu câu chưa làm).
+     */
+    public GradeResult grade(AnswerKey key, Map<Long, Long> selected) {
+        double total = 0;
+        double max = 0;
+        List<QuestionResult> results = new ArrayList<>(key.questions().size());
+        for (Map.Entry<Long, QuestionKey> e : key.questions().entrySet()) {
+            QuestionKey q = e.getValue();
+            Long chosen = selected.get(e.getKey());
+            boolean correct = chosen != null && q.correctOptionIds().contains(chosen);
+            double awarded = correct ? q.points() : 0;
+            total += awarded;
+            max += q.points();
+            results.add(new QuestionResult(e.getKey(), correct, awarded));
+        }
+        return new GradeResult(total, max, results);
+    }
+
+    /**
+     * Ghi is_correct / points_awarded cho các câu đã trả lời trong một batch duy nhất.
+     * Chạy trên cùng connection với transaction hiện tại.
+     */
+    public void persistResults(Long attemptId, List<QuestionResult> results, Set<Long> answeredQuestionIds) {
+        List<Object[]> args = new ArrayList<>(answeredQuestionIds.size());
+        for (QuestionResult r : results) {
+            if (!answeredQuestionIds.contains(r.questionId())) continue;
+            args.add(new Object[]{r.correct() ? 1 : 0, BigDecimal.valueOf(r.points()), attemptId, r.questionId()});
+        }
+        if (args.isEmpty()) return;
+        jdbcTemplate.batchUpdate(
+                "UPDATE dbo.quiz_answers SET is_correct = ?, points_awarded = ? WHERE attempt_id = ? AND question_id = ?",
+                args);
+    }
+
+    public LatencyRecorder submitLatency() {
+        return submitLatency;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("submitLatency", submitLatency.snapshot());
+        return m;
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.back_end.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Xuất dữ liệu lớn (đơn hàng, doanh thu, số liệu analytics) dạng CSV hoặc NDJSON bằng cách đọc cursor forward-only
+ * và ghi từng dòng thẳng ra response, không gom kết quả trong bộ nhớ.
+ *
+ * Ghi ra output stream của servlet là blocking: client đọc chậm thì vòng đọc ResultSet cũng chậm theo, driver chỉ
+ * đọc thêm dữ liệu từ socket khi cần (responseBuffering=adaptive mặc định của mssql-jdbc), nên bộ nhớ không tăng
+ * theo số dòng.
+ *
+ * Mỗi lượt xuất giữ một connection Hikari suốt thời gian stream nên số lượt chạy cùng lúc bị giới hạn ở
+ * max-concurrent; vượt quá thì trả 503 ngay thay vì lấy hết pool của các request khác.
+ */
+@Service
+public class ExportStreamService {
+    public enum Format { CSV, NDJSON }
+
+    /** Một cột xuất: tên cột trong file và vị trí (1-based) trong câu SELECT. */
+    public record Column(String name, int index) {}
+
+    private static final int FLUSH_EVERY = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final Semaphore slots;
+
+    public ExportStreamService(DataSource dataSource, ObjectMapper objectMapper,
+                               @Value("${app.export.fetch-size:1000}") int fetchSize,
+                               @Value("${app.export.query-timeout-sec:600}") int queryTimeoutSec,
+                               @Value("${app.export.max-concurrent:1}") int maxConcurrent) {
+        this.slots = new Semaphore(Math.max(1, maxConcurrent));
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(Math.max(1, fetchSize));
+        this.jdbcTemplate.setQueryTimeout(Math.max(0, queryTimeoutSec));
+        this.objectMapper = objectMapper;
+    }
+
+    public static Format parseFormat(String value) {
+        if (value == null || value.isBlank() || "csv".equalsIgnoreCase(value)) return Format.CSV;
+        if ("ndjson".equalsIgnoreCase(value) || "jsonl".equalsIgnoreCase(value)) return Format.NDJSON;
+        throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Định dạng xuất không hỗ trợ: " + value);
+    }
+
+    /**
+     * Tạo response tải file; câu truy vấn chỉ chạy khi MVC bắt đầu ghi body (trên thread async).
+     * Lượt xuất giữ một chỗ từ lúc gọi tới khi body ghi xong; hết chỗ thì ném 503. Chỗ cũng được trả khi body không
+     * bao giờ chạy (executor từ chối, client ngắt/timeout trước khi dispatch, lỗi sau khi trả response).
+     */
+    public ResponseEntity<StreamingResponseBody> export(String fileName, Format format, String sql,
+                                                        List<Column> columns, Object... args) {
+        if (!slots.tryAcquire()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Đang có file khác được xuất, vui lòng thử lại sau");
+        }
+        String ext = format == Format.CSV ? ".csv" : ".ndjson";
+        MediaType type = format == Format.CSV
+                ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                : new MediaType("application", "x-ndjson", StandardCharsets.UTF_8);
+        Runnable release = releaseOnce();
+        StreamingResponseBody body = out -> {
+            try {
+                write(out, format, sql, columns, args);
+            } finally {
+                release.run();
+            }
+        };
+        releaseWhenRequestEnds(release);
+        return ResponseEntity.ok()
+                .contentType(type)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(fileName + ext, StandardCharsets.UTF_8).build().toString())
+                .body(body);
+    }
+
+    private Runnable releaseOnce() {
+        AtomicBoolean released = new AtomicBoolean();
+        return () -> {
+            if (released.compareAndSet(false, true)) slots.release();
+        };
+    }
+
+    /**
+     * Trả chỗ theo vòng đời request: khi xử lý async kết thúc (xong, timeout, lỗi, executor từ chối) và khi lượt
+     * dispatch đầu kết thúc mà chưa vào async. Ngoài request (gọi trực tiếp) thì chỉ body trả chỗ.
+     */
+    private static void releaseWhenRequestEnds(Runnable release) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes servlet)) return;
+        String key = ExportStreamService.class.getName() + ".slot." + System.identityHashCode(release);
+        WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(servlet.getRequest());
+        asyncManager.registerCallableInterceptor(key, new CallableProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                release.run();
+            }
+        });
+        attributes.registerDestructionCallback(key, () -> {
+            if (!asyncManager.isConcurrentHandlingStarted()) release.run();
+        }, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    void write(OutputStream out, Format format, String sql, List<Column> columns, Object... args) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 16 * 1024);
+        RowWriter rows = format == Format.CSV ? new CsvWriter(writer, columns) : new NdjsonWriter(writer, columns);
+        rows.header();
+        int[] count = new int[1];
+        try {
+            jdbcTemplate.query(sql, rs -> {
+                try {
+                    rows.row(rs);
+                    if (++count[0] % FLUSH_EVERY == 0) writer.flush();
+                } catch (IOException ex) {
+                    // Client ngắt kết nối: dừng đọc cursor, JdbcTemplate đóng statement
+                    throw new UncheckedIOException(ex);
+                }
+            }, args);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        writer.flush();
+    }
+
+    private static Object valueOf(ResultSet rs, int index) throws SQLException {
+        Object v = rs.getObject(index);
+        if (v instanceof Timestamp ts) return ts.toLocalDateTime().toString();
+        if (v instanceof java.sql.Date d) return d.toLocalDate().toString();
+        return v;
+    }
+
+    private interface RowWriter {
+        void header() throws IOException;
+
+        void row(ResultSet rs) throws IOException;
+    }
+
+    private static final class CsvWriter implements RowWriter {
+        private final Writer w;
+        private final List<Column> columns;
+
+        CsvWriter(Writer w, List<Column> columns) {
+            this.w = w;
+            this.columns = columns;
+        }
+
+        @Override
+        public void header() throws IOException {
+            // BOM để Excel nhận đúng UTF-8 (tên tiếng Việt)
+            w.write('\uFEFF');
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) w.write(',');
+                w.write(escapeCsv(columns.get(i).name()));
+            }
+            w.write("\r\n");
+        }
+
+        @Override
+        public void row(ResultSet rs) throws IOException {
+            try {
+                for (int i = 0; i < columns.size(); i++) {
+                    if (i > 0) w.write(',');
+                    Object v = valueOf(rs, columns.get(i).index());
+                    if (v == null) continue;
+                    if (v instanceof BigDecimal bd) {
+                        w.write(bd.toPlainString());
+                    } else if (v instanceof Number || v instanceof Boolean) {
+                        w.write(v.toString());
+                    } else {
+                        w.write(escapeCsv(v.toString()));
+                    }
+                }
+                w.write("\r\n");
+            } catch (SQLException ex) {
+                throw new IOException(ex);
+            }
+        }
+    }
+
+    private final class NdjsonWriter implements RowWriter {
+        private final Writer w;
+        private final List<Column> columns;
+        private JsonGenerator gen;
+
+        NdjsonWriter(Writer w, List<Column> columns) {
+            this.w = w;
+            this.columns = columns;
+        }
+
+        @Override
+        public void header() throws IOException {
+            gen = objectMapper.getFactory().createGenerator(w);
+            gen.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+            gen.configure(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM, false);
+            // Mỗi object một dòng; tự ghi '\n' thay cho dấu cách Jackson chèn giữa các giá trị gốc
+            gen.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void row(ResultSet rs) throws IOException {
+            try {
+                gen.writeStartObject();
+                for (Column c : columns) {
+                    gen.writeFieldName(c.name());
+                    Object v = valueOf(rs, c.index());
+                    if (v instanceof BigDecimal bd) {
+                        gen.writeNumber(bd);
+                    } else {
+                        gen.writeObject(v);
+                    }
+                }
+                gen.writeEndObject();
+                gen.flush();
+                w.write('\n');
+            } catch (SQLException ex) {
+                throw new IOException(ex);
+            }
+        }
+    }
+
+    /** Bọc ngoặc kép khi cần; chuỗi bắt đầu bằng = + - @ được thêm dấu ' để Excel không chạy như công thức. */
+    static String escapeCsv(String value) {
+        String v = value;
+        if (!v.isEmpty() && "=+-@\t\r".indexOf(v.charAt(0)) >= 0) {
+            v = "'" + v;
+        }
+        boolean quote = v.indexOf(',') >= 0 || v.indexOf('"') >= 0 || v.indexOf('\n') >= 0 || v.indexOf('\r') >= 0;
+        return quote ? '"' + v.replace("\"", "\"\"") + '"' : v;
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.back_end.service;
+
+import com.example.back_end.util.LatencyRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Bus giữa các node qua bảng dbo.support_events (app.support.broker.bus=jdbc), không cần broker ngoài.
+ *
+ * Phát: một thread ghi lần lượt từng sự kiện (sau commit nếu đang trong transaction), nên thứ tự phát trong một
+ * node được giữ nguyên. Nhận: mỗi node đọc các dòng có id lớn hơn id đã giao, theo thứ tự id, mỗi poll-ms.
+ * Id nhảy cóc có thể là một INSERT id nhỏ hơn chưa commit, nên dừng lại chờ tối đa gap-wait-ms trước khi bỏ qua
+ * khoảng trống (rollback, SQL Server nhảy identity sau khi khởi động lại). Dòng cũ hơn retention-minutes bị xóa.
+ */
+public class JdbcSupportEventBus implements SupportEventBus {
+    private static final Logger log = LoggerFactory.getLogger(JdbcSupportEventBus.class);
+    private static final long CLEANUP_INTERVAL_MS = 60_000;
+    private static final int CLEANUP_BATCH = 1000;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO dbo.support_events (destination, payload, published_at) VALUES (?, ?, ?)";
+    private static final String MAX_ID_SQL = "SELECT ISNULL(MAX(id), 0) FROM dbo.support_events";
+    private static final String POLL_SQL =
+            "SELECT TOP (?) id, destination, payload, published_at FROM dbo.support_events WHERE id > ? ORDER BY id";
+    private static final String CLEANUP_SQL = "DELETE TOP (?) FROM dbo.support_events WHERE published_at < ?";
+
+    record Row(long id, Envelope envelope) {}
+
+    private static final RowMapper<Row> ROW_MAPPER = (rs, i) -> new Row(rs.getLong("id"),
+            new Envelope(rs.getString("destination"), rs.getString("payload"), rs.getLong("published_at")));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final long gapWaitMs;
+    private final int retentionMinutes;
+    private final List<Consumer<Envelope>> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService publisher;
+    private final ScheduledExecutorService poller;
+
+    // Chỉ thread poller đọc/ghi
+    private long lastId = -1;
+    private long gapSince;
+    private long lastCleanup;
+    private boolean pollFailing;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder publishFailures = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder listenerFailures = new LongAdder();
+    private final LongAdder gapsSkipped = new LongAdder();
+    private final LongAdder pollErrors = new LongAdder();
+    private final LatencyRecorder insertLatency = new LatencyRecorder("support.bus.insert");
+
+    public JdbcSupportEventBus(JdbcTemplate jdbcTemplate, int batchSize, long gapWaitMs, int retentionMinutes) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = Math.max(1, batchSize);
+        this.gapWaitMs = Math.max(0, gapWaitMs);
+        this.retentionMinutes = Math.max(1, retentionMinutes);
+        this.publisher = Executors.newSingleThreadExecutor(r -> daemon(r, "support-bus-publisher"));
+        this.poller = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "support-bus-poller"));
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    public void start(long pollMs) {
+        long delay = Math.max(10, pollMs);
+        poller.scheduleWithFixedDelay(this::poll, delay, delay, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void publish(Envelope envelope) {
+        // Không ghi trên kết nối của transaction đang chạy: sự kiện chỉ được phát khi dữ liệu đã commit
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(envelope);
+                }
+            });
+        } else {
+            submit(envelope);
+        }
+    }
+
+    private void submit(Envelope envelope) {
+        try {
+            publisher.execute(() -> insert(envelope));
+        } catch (RejectedExecutionException ex) {
+            publishFailures.increment();
+        }
+    }
+
+    private void insert(Envelope envelope) {
+        long started = System.nanoTime();
+        try {
+            jdbcTemplate.update(INSERT_SQL, envelope.destination(), envelope.payload(), envelope.publishedAt());
+            published.increment();
+        } catch (DataAccessException ex) {
+            publishFailures.increment();
+            log.warn("Không phát được sự kiện support tới {}: {}", envelope.destination(), ex.getMessage());
+        } finally {
+            insertLatency.recordSince(started);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<Envelope> listener) {
+        listeners.add(listener);
+    }
+
+    private void poll() {
+        try {
+            long now = System.currentTimeMillis();
+            while (pollOnce(now) == batchSize) {
+                now = System.currentTimeMillis();
+            }
+            if (now - lastCleanup >= CLEANUP_INTERVAL_MS) {
+                lastCleanup = now;
+                jdbcTemplate.update(CLEANUP_SQL, CLEANUP_BATCH, now - TimeUnit.MINUTES.toMillis(retentionMinutes));
+            }
+            pollFailing = false;
+        } catch (DataAccessException ex) {
+            pollErrors.increment();
+            // Bảng chưa tạo hoặc DB gián đoạn: chỉ log lần lỗi đầu, poll sau thử lại
+            if (!pollFailing) log.warn("Không đọc được dbo.support_events: {}", ex.getMessage());
+            pollFailing = true;
+        } catch (RuntimeException ex) {
+            pollErrors.increment();
+            log.warn("Support bus poll error: {}", ex.getMessage());
+        }
+    }
+
+    /** Giao các sự kiện mới theo thứ tự id; trả về số dòng đã đọc. */
+    int pollOnce(long now) {
+        if (lastId < 0) {
+            // Node mới chỉ nhận sự kiện phát từ lúc nó chạy
+            Long max = jdbcTemplate.queryForObject(MAX_ID_SQL, Long.class);
+            lastId = max == null ? 0 : max;
+        }
+        List<Row> rows = jdbcTemplate.query(POLL_SQL, ROW_MAPPER, batchSize, lastId);
+        for (Row row : rows) {
+            if (row.id() != lastId + 1) {
+                if (gapSince == 0) gapSince = now;
+                if (now - gapSince < gapWaitMs) return 0;
+                gapsSkipped.increment();
+            }
+            gapSince = 0;
+            lastId = row.id();
+            deliver(row.envelope());
+        }
+        return rows.size();
+    }
+
+    private void deliver(Envelope envelope) {
+        delivered.increment();
+        for (Consumer<Envelope> listener : listeners) {
+            try {
+                listener.accept(envelope);
+            } catch (RuntimeException ex) {
+                listenerFailures.increment();
+                log.warn("Support event listener failed for {}: {}", envelope.destination(), ex.getMessage());
+            }
+        }
+    }
+
+    public void shutdown() {
+        poller.shutdownNow();
+        publisher.shutdown();
+        try {
+            publisher.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("type", "jdbc");
+        m.put("published", published.sum());
+        m.put("publishFailures", publishFailures.sum());
+        m.put("delivered", delivered.sum());
+        m.put("listenerFailures", listenerFailures.sum());
+        m.put("gapsSkipped", gapsSkipped.sum());
+        m.put("pollErrors", pollErrors.sum());
+        m.put("insertLatency", insertLatency.snapshot());
+        return m;
+    }
+}
@@ -5,10 +5,10 @@ import com.example.back_end.model.Course;
 import com.example.back_end.model.Lesson;
 import com.example.back_end.model.LessonNote;
 import com.example.back_end.model.LessonNoteComment;
-import com.example.back_end.model.Role;
 import com.example.back_end.model.User;
 import com.example.back_end.repository.LessonNoteCommentRepository;
 import com.example.back_end.repository.LessonNoteRepository;
+import com.example.back_end.security.AuthenticatedUser;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Query;
@@ -29,29 +29,34 @@ import java.util.stream.Collectors;
 public class LessonNoteService {
     private final LessonNoteRepository noteRepository;
     private final LessonNoteCommentRepository commentRepository;
+    private final TeacherDashboardCache teacherDashboards;
+    private final CourseMembershipCache membershipCache;
     @PersistenceContext private EntityManager em;
 
-    public LessonNoteService(LessonNoteRepository noteRepository, LessonNoteCommentRepository commentRepository) {
+    public LessonNoteService(LessonNoteRepository noteRepository, LessonNoteCommentRepository commentRepository,
+                             TeacherDashboardCache teacherDashboards, CourseMembershipCache membershipCache) {
         this.noteRepository = noteRepository;
         this.commentRepository = commentRepository;
+        this.teacherDashboards = teacherDashboards;
+        this.membershipCache = membershipCache;
     }
 
     @Transactional(readOnly = true)
-    public List<LessonNoteDtos.NoteResponse> listNotes(User user, Long courseId, Long lessonId) {
+    public List<LessonNoteDtos.NoteResponse> listNotes(AuthenticatedUser user, Long courseId, Long lessonId) {
         assertLessonInCourse(courseId, lessonId);
         AccessInfo access = resolveAccess(user, courseId);
         if (!access.canView()) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Bạn chưa được phép xem ghi chú của bài học này");
         }
         List<LessonNote> notes = noteRepository.findByLesson_IdAndCourse_IdOrderByCreatedAtAsc(lessonId, courseId);
-        return notes.stream().map(note -> toNoteDto(note, user.getId())).collect(Collectors.toList());
+        return notes.stream().map(note -> toNoteDto(note, user.id())).collect(Collectors.toList());
     }
 
     @Transactional
-    public LessonNoteDtos.NoteResponse createNote(User user, Long courseId, Long lessonId, String content) {
+    public LessonNoteDtos.NoteResponse createNote(AuthenticatedUser user, Long courseId, Long lessonId, String content) {
         assertLessonInCourse(courseId, lessonId);
         AccessInfo access = resolveAccess(user, courseId);
-        if (!hasRole(user, "student") || !access.enrolled) {
+        if (!user.hasRole("student") || !access.enrolled) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Chỉ học viên của khóa học mới có thể ghi chú");
         }
         String body = normalizeContent(content);
@@ -64,19 +69,19 @@ public class LessonNoteService {
         LessonNote note = new LessonNote();
         note.setCourse(referenceCourse(courseId));
         note.setLesson(referenceLesson(lessonId));
-        note.setStudent(user);
+        note.setStudent(referenceUser(user));
         note.setContent(body);
         note.setLastCommentAt(LocalDateTime.now(ZoneOffset.UTC));
         LessonNote saved = noteRepository.save(note);
-        return toNoteDto(requireNoteWithDetails(saved.getId()), user.getId());
+        return toNoteDto(requireNoteWithDetails(saved.getId()), user.id());
     }
 
     @Transactional
-    public LessonNoteDtos.NoteResponse addComment(User user, Long noteId, String content) {
+    public LessonNoteDtos.NoteResponse addComment(AuthenticatedUser user, Long noteId, String content) {
         LessonNote note = noteRepository.findById(noteId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Không tìm thấy ghi chú"));
         AccessInfo access = resolveAccess(user, note.getCourse().getId());
-        boolean mine = note.getStudent() != null && Objects.equals(note.getStudent().getId(), user.getId());
+        boolean mine = note.getStudent() != null && Objects.equals(note.getStudent().getId(), user.id());
         if (!(mine || access.isInstructor || access.isManager)) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Bạn không có quyền trả lời ghi chú này");
         }
@@ -89,13 +94,14 @@ public class LessonNoteService {
         }
         LessonNoteComment comment = new LessonNoteComment();
         comment.setNote(note);
-        comment.setUser(user);
-        comment.setAuthorRole(resolveAuthorRole(user, mine, access));
+        comment.setUser(referenceUser(user));
+        comment.setAuthorRole(resolveAuthorRole(mine, access));
         comment.setContent(body);
         commentRepository.save(comment);
         note.setLastCommentAt(LocalDateTime.now(ZoneOffset.UTC));
         noteRepository.save(note);
-        return toNoteDto(requireNoteWithDetails(note.getId()), user.getId());
+        teacherDashboards.invalidateCourse(note.getCourse().getId());
+        return toNoteDto(requireNoteWithDetails(note.getId()), user.id());
     }
 
     private LessonNoteDtos.NoteResponse toNoteDto(LessonNote note, Long currentUserId) {
@@ -154,47 +160,17 @@ public class LessonNoteService {
         }
     }
 
-    private AccessInfo resolveAccess(User user, Long courseId) {
+    private AccessInfo resolveAccess(AuthenticatedUser user, Long courseId) {
         AccessInfo info = new AccessInfo();
-        info.isManager = hasRole(user, "manager");
-        info.isInstructor = info.isManager || isCourseInstructor(user.getId(), courseId);
-        info.enrolled = isEnrolled(user.getId(), courseId);
+        info.isManager = user.hasRole("manager");
+        CourseMembershipCache.Membership membership = membershipCache.get(user.id(), courseId);
+        info.isInstructor = info.isManager || membership.teaches();
+        info.enrolled = membership.enrolled();
         return info;
     }
 
-    private boolean isEnrolled(Long userId, Long courseId) {
-        Number count = (Number) em.createNativeQuery(
-                        "SELECT COUNT(*) FROM dbo.enrollments WHERE user_id = :uid AND course_id = :cid")
-                .setParameter("uid", userId)
-                .setParameter("cid", courseId)
-                .getSingleResult();
-        return count != null && count.intValue() > 0;
-    }
-
-    private boolean isCourseInstructor(Long userId, Long courseId) {
-        Number owner = (Number) em.createNativeQuery("SELECT COUNT(*) FROM dbo.courses WHERE id = :cid AND created_by = :uid")
-                .setParameter("cid", courseId)
-                .setParameter("uid", userId)
-                .getSingleResult();
-        if (owner != null && owner.intValue() > 0) {
-            return true;
-        }
-        Number assigned = (Number) em.createNativeQuery("SELECT COUNT(*) FROM dbo.course_instructors WHERE course_id = :cid AND user_id = :uid")
-                .setParameter("cid", courseId)
-                .setParameter("uid", userId)
-                .getSingleResult();
-        return assigned != null && assigned.intValue() > 0;
-    }
-
-    private boolean hasRole(User user, String code) {
-        if (user == null || user.getRoles() == null) return false;
-        String expected = code == null ? null : code.trim().toLowerCase();
-        for (Role role : user.getRoles()) {
-            if (role.getCode() != null && role.getCode().trim().equalsIgnoreCase(expected)) {
-                return true;
-            }
-        }
-        return false;
+    private User referenceUser(AuthenticatedUser user) {
+        return em.getReference(User.class, user.id());
     }
 
     private Lesson referenceLesson(Long lessonId) {
@@ -205,7 +181,7 @@ public class LessonNoteService {
         return em.getReference(Course.class, courseId);
     }
 
-    private String resolveAuthorRole(User user, boolean mine, AccessInfo access) {
+    private String resolveAuthorRole(boolean mine, AccessInfo access) {
         if (mine) return "student";
         if (access.isManager) return "manager";
         if (access.isInstructor) return "teacher";
@@ -234,8 +210,8 @@ public class LessonNoteService {
     }
 
     @Transactional(readOnly = true)
-    public List<LessonNoteDtos.NoteResponse> listNotesForTeacher(User user, Long courseId, String status, String search) {
-        boolean isManager = hasRole(user, "manager");
+    public List<LessonNoteDtos.NoteResponse> listNotesForTeacher(AuthenticatedUser user, Long courseId, String status, String search) {
+        boolean isManager = user.hasRole("manager");
         StringBuilder sql = new StringBuilder("SELECT DISTINCT ln.id FROM dbo.lesson_notes ln JOIN dbo.courses c ON c.id = ln.course_id ");
         sql.append("WHERE 1=1 ");
         if (!isManager) {
@@ -249,7 +225,7 @@ public class LessonNoteService {
         }
 
         Query query = em.createNativeQuery(sql.toString());
-        query.setParameter("uid", user.getId());
+        query.setParameter("uid", user.id());
         if (courseId != null) {
             query.setParameter("courseId", courseId);
         }
@@ -274,7 +250,7 @@ public class LessonNoteService {
 
         return notes.stream()
                 .map(n -> {
-                    LessonNoteDtos.NoteResponse dto = toNoteDto(n, user.getId());
+                    LessonNoteDtos.NoteResponse dto = toNoteDto(n, user.id());
                     if (status != null && !status.isBlank()) {
                         String filter = status.trim().toLowerCase();
                         if (!filter.equals(dto.status != null ? dto.status.toLowerCase() : "")) {
@@ -22,12 +22,17 @@ import java.util.stream.Collectors;
 @Service
 public class LessonResourceService {
     private final LessonResourceRepository resourceRepository;
+    private final TeacherDashboardCache teacherDashboards;
+    private final CourseMembershipCache membershipCache;
 
     @PersistenceContext
     private EntityManager em;
 
-    public LessonResourceService(LessonResourceRepository resourceRepository) {
+    public LessonResourceService(LessonResourceRepository resourceRepository, TeacherDashboardCache teacherDashboards,
+                                 CourseMembershipCache membershipCache) {
         this.resourceRepository = resourceRepository;
+        this.teacherDashboards = teacherDashboards;
+        this.membershipCache = membershipCache;
     }
 
     @Transactional(readOnly = true)
@@ -71,6 +76,7 @@ public class LessonResourceService {
         if (resource.getDownloadCount() == null) {
             resource.setDownloadCount(0);
         }
+        teacherDashboards.invalidateCourse(courseId);
         return toDto(resourceRepository.save(resource));
     }
 
@@ -110,6 +116,7 @@ public class LessonResourceService {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "B\u1EA1n kh\u00F4ng c\u00F3 quy\u1EC1n s\u1EEDa t\u00E0i li\u1EC7u");
         }
         applyUpdate(resource, request, access.isManager);
+        teacherDashboards.invalidateCourse(resource.getCourse().getId());
         return toDto(resourceRepository.save(resource));
     }
 
@@ -122,6 +129,7 @@ public class LessonResourceService {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Ch\u1EC9 qu\u1EA3n l\u00FD m\u1EDBi \u0111\u01B0\u1EE3c duy\u1EC7t t\u00E0i li\u1EC7u");
         }
         resource.setStatus(normalizeStatus(status));
+        teacherDashboards.invalidateCourse(resource.getCourse().getId());
         return toDto(resourceRepository.save(resource));
     }
 
@@ -160,6 +168,7 @@ public class LessonResourceService {
         }
         resource.setStatus("hidden");
         resourceRepository.save(resource);
+        teacherDashboards.invalidateCourse(resource.getCourse().getId());
     }
 
     @Transactional
@@ -324,36 +333,13 @@ public class LessonResourceService {
     private AccessInfo resolveAccess(User user, Long courseId) {
         AccessInfo info = new AccessInfo();
         info.isManager = hasRole(user, "manager");
-        info.isInstructor = info.isManager || isCourseInstructor(user.getId(), courseId);
-        info.enrolled = isEnrolled(user.getId(), courseId);
+        CourseMembershipCache.Membership membership = membershipCache.get(user.getId(), courseId);
+        info.isInstructor = info.isManager || membership.teaches();
+        info.enrolled = membership.enrolled();
         info.isTeacher = hasRole(user, "teacher");
         return info;
     }
 
-    private boolean isEnrolled(Long userId, Long courseId) {
-        Number count = (Number) em.createNativeQuery(
-                        "SELECT COUNT(*) FROM dbo.enrollments WHERE user_id = :uid AND course_id = :cid")
-                .setParameter("uid", userId)
-                .setParameter("cid", courseId)
-                .getSingleResult();
-        return count != null && count.intValue() > 0;
-    }
-
-    private boolean isCourseInstructor(Long userId, Long courseId) {
-        Number owner = (Number) em.createNativeQuery("SELECT COUNT(*) FROM dbo.courses WHERE id = :cid AND created_by = :uid")
-                .setParameter("cid", courseId)
-                .setParameter("uid", userId)
-                .getSingleResult();
-        if (owner != null && owner.intValue() > 0) {
-            return true;
-        }
-        Number assigned = (Number) em.createNativeQuery("SELECT COUNT(*) FROM dbo.course_instructors WHERE course_id = :cid AND user_id = :uid")
-                .setParameter("cid", courseId)
-                .setParameter("uid", userId)
-                .getSingleResult();
-        return assigned != null && assigned.intValue() > 0;
-    }
-
     private boolean hasRole(User user, String code) {
         if (user == null || user.getRoles() == null) return false;
         for (Role role : user.getRoles()) {
@@ -0,0 +1,52 @@
+package com.example.back_end.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Bus trong JVM (app.support.broker.bus=local): giao ngay cho listener trên thread phát, dưới một khóa nên các
+ * sự kiện được giao đúng thứ tự phát. Dùng cho test và khi chạy một node.
+ */
+public class LocalSupportEventBus implements SupportEventBus {
+    private static final Logger log = LoggerFactory.getLogger(LocalSupportEventBus.class);
+
+    private final List<Consumer<Envelope>> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    @Override
+    public void publish(Envelope envelope) {
+        published.increment();
+        synchronized (this) {
+            for (Consumer<Envelope> listener : listeners) {
+                try {
+                    listener.accept(envelope);
+                } catch (RuntimeException ex) {
+                    failed.increment();
+                    log.warn("Support event listener failed for {}: {}", envelope.destination(), ex.getMessage());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<Envelope> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("type", "local");
+        m.put("published", published.sum());
+        m.put("listenerFailures", failed.sum());
+        return m;
+    }
+}
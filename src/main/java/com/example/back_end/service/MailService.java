@@ -1,28 +1,93 @@
 package com.example.back_end.service;
 
+import com.example.back_end.util.LatencyRecorder;
+import jakarta.annotation.PreDestroy;
 import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Gửi mail qua hàng đợi có giới hạn và một nhóm worker, request không phải chờ bắt tay SMTP.
+ *
+ * Mail được đưa vào hàng đợi sau khi transaction gọi tới commit (OTP đã nằm trong DB). Mỗi worker lấy một lô từ
+ * hàng đợi và gửi cả lô trên một kết nối SMTP (JavaMailSender.send(MimeMessage...)); mail lỗi được gửi lại với
+ * backoff tăng gấp đôi tới max-attempts lần. Hàng đợi đầy thì bỏ mail và ghi log, người dùng có thể yêu cầu mã mới.
+ */
 @Service
 public class MailService {
     private static final Logger log = LoggerFactory.getLogger(MailService.class);
     private static final String DEFAULT_FROM = "noreply@yourlms.local";
+    private static final long MAX_BACKOFF_MS = 5 * 60_000L;
 
     private final JavaMailSender mailSender;
     private final String fromAddress;
+    private final BlockingQueue<OutboundMail> queue;
+    private final int queueCapacity;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long retryBaseMs;
+    private final List<Thread> workers = new ArrayList<>();
+    private final ScheduledExecutorService retryScheduler;
+    private volatile boolean running = true;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failedAttempts = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder connections = new LongAdder();
+    private final LatencyRecorder deliveryLatency = new LatencyRecorder("mail.delivery");
 
     public MailService(ObjectProvider<JavaMailSender> mailSenderProvider,
-                       @Value("${app.mail.from:noreply@yourlms.local}") String fromAddress) {
+                       @Value("${app.mail.from:noreply@yourlms.local}") String fromAddress,
+                       @Value("${app.mail.workers:2}") int workerCount,
+                       @Value("${app.mail.queue-capacity:1000}") int queueCapacity,
+                       @Value("${app.mail.batch-size:20}") int batchSize,
+                       @Value("${app.mail.max-attempts:4}") int maxAttempts,
+                       @Value("${app.mail.retry-base-ms:2000}") long retryBaseMs) {
         this.mailSender = mailSenderProvider.getIfAvailable();
         this.fromAddress = fromAddress;
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.queue = new LinkedBlockingQueue<>(this.queueCapacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.retryBaseMs = Math.max(1, retryBaseMs);
+        AtomicInteger seq = new AtomicInteger();
+        int threads = mailSender == null ? 0 : Math.max(1, workerCount);
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(this::workLoop, "mail-sender-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            t.start();
+            workers.add(t);
+        }
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mail-retry");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Một mail chờ gửi; attempt tính từ 1, enqueuedAt theo System.nanoTime() của lần đưa vào đầu tiên. */
+    record OutboundMail(String to, String subject, String body, int attempt, long enqueuedAt) {
+        OutboundMail nextAttempt() {
+            return new OutboundMail(to, subject, body, attempt + 1, enqueuedAt);
+        }
     }
 
     public void sendOtpEmail(String to, String subject, String code, int expireMinutes) {
@@ -39,17 +104,105 @@ public class MailService {
             log.info("[DEV] Email -> {} | {}: {}", to, subject, body);
             return;
         }
+        OutboundMail mail = new OutboundMail(to, subject, body, 1, System.nanoTime());
+        // Trong transaction: chỉ gửi khi bản ghi (OTP) đã commit, rollback thì không gửi
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(mail);
+                }
+            });
+        } else {
+            enqueue(mail);
+        }
+    }
+
+    boolean enqueue(OutboundMail mail) {
+        if (!running || !queue.offer(mail)) {
+            rejected.increment();
+            log.warn("Mail queue full, dropping email to {}: {}", mail.to(), mail.subject());
+            return false;
+        }
+        return true;
+    }
+
+    private void workLoop() {
+        List<OutboundMail> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                OutboundMail first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                deliver(batch);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException ex) {
+                log.warn("Mail worker error: {}", ex.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /** Gửi một lô trên một kết nối SMTP; mail lỗi được lên lịch gửi lại. */
+    void deliver(List<OutboundMail> batch) {
+        Map<MimeMessage, OutboundMail> messages = new LinkedHashMap<>();
+        for (OutboundMail mail : batch) {
+            try {
+                messages.put(toMimeMessage(mail), mail);
+            } catch (Exception ex) {
+                dropped.increment();
+                log.warn("Khong the tao email toi {}: {}", mail.to(), ex.getMessage());
+            }
+        }
+        if (messages.isEmpty()) return;
+        Collection<OutboundMail> failed = List.of();
         try {
-            var mimeMessage = mailSender.createMimeMessage();
-            var helper = new MimeMessageHelper(mimeMessage, false, StandardCharsets.UTF_8.name());
-            helper.setTo(to);
-            helper.setFrom(parseAddress(fromAddress));
-            helper.setSubject(subject);
-            helper.setText(body, false);
-            mailSender.send(mimeMessage);
-        } catch (Exception ex) {
-            log.warn("Khong the gui email toi {}: {}", to, ex.getMessage());
+            connections.increment();
+            mailSender.send(messages.keySet().toArray(new MimeMessage[0]));
+        } catch (MailSendException ex) {
+            // Có danh sách mail lỗi thì chỉ gửi lại các mail đó; lỗi kết nối thì danh sách chứa cả lô
+            failed = ex.getFailedMessages().isEmpty()
+                    ? messages.values()
+                    : ex.getFailedMessages().keySet().stream().map(messages::get).filter(Objects::nonNull).toList();
+            log.warn("Khong the gui {} email: {}", failed.size(), ex.getMessage());
+        } catch (MailException ex) {
+            failed = messages.values();
+            log.warn("Khong the gui {} email: {}", failed.size(), ex.getMessage());
+        }
+        for (OutboundMail mail : messages.values()) {
+            if (failed.contains(mail)) {
+                failedAttempts.increment();
+                retry(mail);
+            } else {
+                sent.increment();
+                deliveryLatency.recordSince(mail.enqueuedAt());
+            }
+        }
+    }
+
+    private void retry(OutboundMail mail) {
+        if (mail.attempt() >= maxAttempts || !running) {
+            dropped.increment();
+            log.warn("Bo email toi {} sau {} lan gui loi: {}", mail.to(), mail.attempt(), mail.subject());
+            return;
         }
+        long delay = Math.min(MAX_BACKOFF_MS, retryBaseMs << Math.min(20, mail.attempt() - 1));
+        retried.increment();
+        retryScheduler.schedule(() -> enqueue(mail.nextAttempt()), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private MimeMessage toMimeMessage(OutboundMail mail) throws Exception {
+        var mimeMessage = mailSender.createMimeMessage();
+        var helper = new MimeMessageHelper(mimeMessage, false, StandardCharsets.UTF_8.name());
+        helper.setTo(mail.to());
+        helper.setFrom(parseAddress(fromAddress));
+        helper.setSubject(mail.subject());
+        helper.setText(mail.body(), false);
+        return mimeMessage;
     }
 
     private InternetAddress parseAddress(String raw) throws Exception {
@@ -63,4 +216,28 @@ public class MailService {
         }
         return new InternetAddress(raw.trim());
     }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        retryScheduler.shutdownNow();
+        workers.forEach(Thread::interrupt);
+        if (!queue.isEmpty()) log.warn("Mail service stopped with {} queued emails", queue.size());
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", mailSender != null);
+        m.put("workers", workers.size());
+        m.put("queued", queue.size());
+        m.put("queueCapacity", queueCapacity);
+        m.put("sent", sent.sum());
+        m.put("connections", connections.sum());
+        m.put("failedAttempts", failedAttempts.sum());
+        m.put("retried", retried.sum());
+        m.put("dropped", dropped.sum());
+        m.put("rejected", rejected.sum());
+        m.put("deliveryLatency", deliveryLatency.snapshot());
+        return m;
+    }
 }
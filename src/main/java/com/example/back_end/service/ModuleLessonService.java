@@ -7,6 +7,8 @@ import com.example.back_end.model.Lesson;
 import com.example.back_end.repository.CourseRepository;
 import com.example.back_end.repository.LessonRepository;
 import com.example.back_end.repository.ModuleRepository;
+import com.example.back_end.service.event.CourseChangedEvent;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -18,11 +20,14 @@ public class ModuleLessonService {
     private final CourseRepository courseRepository;
     private final ModuleRepository moduleRepository;
     private final LessonRepository lessonRepository;
+    private final ApplicationEventPublisher events;
 
-    public ModuleLessonService(CourseRepository courseRepository, ModuleRepository moduleRepository, LessonRepository lessonRepository) {
+    public ModuleLessonService(CourseRepository courseRepository, ModuleRepository moduleRepository, LessonRepository lessonRepository,
+                               ApplicationEventPublisher events) {
         this.courseRepository = courseRepository;
         this.moduleRepository = moduleRepository;
         this.lessonRepository = lessonRepository;
+        this.events = events;
     }
 
     public List<ModuleLessonDtos.ModuleResponse> listModules(Long courseId) {
@@ -39,6 +44,7 @@ public class ModuleLessonService {
         m.setTitle(req.title);
         m.setSortOrder(req.sortOrder != null ? req.sortOrder : 0);
         m = moduleRepository.save(m);
+        events.publishEvent(CourseChangedEvent.outline(courseId));
         return toModuleResponse(m, false);
     }
 
@@ -47,11 +53,16 @@ public class ModuleLessonService {
         CourseModule m = moduleRepository.findById(moduleId).orElseThrow();
         if (req.title != null) m.setTitle(req.title);
         if (req.sortOrder != null) m.setSortOrder(req.sortOrder);
-        return toModuleResponse(moduleRepository.save(m), false);
+        m = moduleRepository.save(m);
+        events.publishEvent(CourseChangedEvent.outline(m.getCourse().getId()));
+        return toModuleResponse(m, false);
     }
 
     @Transactional
-    public void deleteModule(Long moduleId) { moduleRepository.deleteById(moduleId); }
+    public void deleteModule(Long moduleId) {
+        moduleRepository.findById(moduleId).ifPresent(m -> events.publishEvent(CourseChangedEvent.outline(m.getCourse().getId())));
+        moduleRepository.deleteById(moduleId);
+    }
 
     public List<ModuleLessonDtos.LessonResponse> listLessons(Long moduleId) {
         return lessonRepository.findByModule_IdOrderBySortOrderAscIdAsc(moduleId).stream().map(this::toLessonResponse).collect(Collectors.toList());
@@ -67,7 +78,9 @@ public class ModuleLessonService {
         l.setDurationSeconds(req.durationSeconds);
         l.setSortOrder(req.sortOrder != null ? req.sortOrder : 0);
         l.setStatus(req.status != null ? req.status : "draft");
-        return toLessonResponse(lessonRepository.save(l));
+        l = lessonRepository.save(l);
+        events.publishEvent(CourseChangedEvent.outline(m.getCourse().getId()));
+        return toLessonResponse(l);
     }
 
     @Transactional
@@ -78,11 +91,16 @@ public class ModuleLessonService {
         if (req.durationSeconds != null) l.setDurationSeconds(req.durationSeconds);
         if (req.sortOrder != null) l.setSortOrder(req.sortOrder);
         if (req.status != null) l.setStatus(req.status);
-        return toLessonResponse(lessonRepository.save(l));
+        l = lessonRepository.save(l);
+        events.publishEvent(CourseChangedEvent.outline(l.getModule().getCourse().getId()));
+        return toLessonResponse(l);
     }
 
     @Transactional
-    public void deleteLesson(Long lessonId) { lessonRepository.deleteById(lessonId); }
+    public void deleteLesson(Long lessonId) {
+        lessonRepository.findById(lessonId).ifPresent(l -> events.publishEvent(CourseChangedEvent.outline(l.getModule().getCourse().getId())));
+        lessonRepository.deleteById(lessonId);
+    }
 
     private ModuleLessonDtos.ModuleResponse toModuleResponse(CourseModule m, boolean withLessons) {
         ModuleLessonDtos.ModuleResponse r = new ModuleLessonDtos.ModuleResponse();
@@ -0,0 +1,171 @@
+package com.example.back_end.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Giữ trong bộ nhớ các OTP còn hạn vừa tạo, để bước xác thực so mã mà không phải đọc lại dbo.email_otps.
+ *
+ * Chia theo (mục đích, email) vào các stripe có khóa riêng nên các luồng đăng ký đồng thời không tranh một khóa
+ * chung. Không thấy mã trong bộ nhớ (khởi động lại, OTP tạo ở instance khác) thì OtpService đọc DB như trước.
+ * Dùng mã luôn qua consume() (UPDATE có điều kiện consumed_at IS NULL) nên một mã chỉ dùng được một lần dù hai
+ * request cùng khớp. Định kỳ xóa theo lô các dòng đã hết hạn quá retention-hours.
+ */
+@Component
+public class OtpCodeStore {
+    private static final Logger log = LoggerFactory.getLogger(OtpCodeStore.class);
+
+    private static final int STRIPES = 16;
+    private static final int MAX_CODES_PER_KEY = 5;
+
+    private static final String CONSUME_SQL =
+            "UPDATE dbo.email_otps SET consumed_at = ? WHERE id = ? AND consumed_at IS NULL AND expires_at > ?";
+    private static final String CLEANUP_SQL =
+            "DELETE TOP (?) FROM dbo.email_otps WHERE expires_at < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int retentionHours;
+    private final int cleanupBatchSize;
+    private final List<Map<String, List<HotOtp>>> stripes = new ArrayList<>(STRIPES);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder purged = new LongAdder();
+
+    public OtpCodeStore(JdbcTemplate jdbcTemplate,
+                        @Value("${app.otp.cleanup.retention-hours:24}") int retentionHours,
+                        @Value("${app.otp.cleanup.batch-size:1000}") int cleanupBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.retentionHours = Math.max(0, retentionHours);
+        this.cleanupBatchSize = Math.max(1, cleanupBatchSize);
+        for (int i = 0; i < STRIPES; i++) stripes.add(new HashMap<>());
+    }
+
+    /** OTP đã lưu DB: id, mã, payload JSON và hạn dùng. */
+    public record HotOtp(Long id, String code, String payload, LocalDateTime expiresAt) {}
+
+    private static String key(String purpose, String email) {
+        return purpose + '|' + email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private Map<String, List<HotOtp>> stripe(String key) {
+        return stripes.get((key.hashCode() & 0x7fffffff) % STRIPES);
+    }
+
+    /** Ghi nhớ OTP sau khi transaction tạo nó commit. */
+    public void put(String purpose, String email, HotOtp otp) {
+        if (email == null || otp.id() == null) return;
+        String key = key(purpose, email);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    add(key, otp);
+                }
+            });
+        } else {
+            add(key, otp);
+        }
+    }
+
+    private void add(String key, HotOtp otp) {
+        Map<String, List<HotOtp>> s = stripe(key);
+        synchronized (s) {
+            List<HotOtp> codes = s.computeIfAbsent(key, k -> new ArrayList<>(2));
+            codes.add(otp);
+            if (codes.size() > MAX_CODES_PER_KEY) codes.remove(0);
+        }
+    }
+
+    /** OTP còn hạn khớp mã, mới nhất trước; null nếu bộ nhớ không có (gọi DB để chắc chắn). */
+    public HotOtp match(String purpose, String email, String code, LocalDateTime now) {
+        if (email == null || code == null) return null;
+        String key = key(purpose, email);
+        Map<String, List<HotOtp>> s = stripe(key);
+        synchronized (s) {
+            List<HotOtp> codes = s.get(key);
+            if (codes != null) {
+                for (int i = codes.size() - 1; i >= 0; i--) {
+                    HotOtp otp = codes.get(i);
+                    if (otp.code().equals(code) && otp.expiresAt().isAfter(now)) {
+                        hits.increment();
+                        return otp;
+                    }
+                }
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /** Đánh dấu đã dùng; false nếu mã đã được dùng (request khác, instance khác) hoặc vừa hết hạn. */
+    public boolean consume(String purpose, String email, Long otpId, LocalDateTime now) {
+        int updated = jdbcTemplate.update(CONSUME_SQL, Timestamp.valueOf(now), otpId, Timestamp.valueOf(now));
+        String key = key(purpose, email);
+        Map<String, List<HotOtp>> s = stripe(key);
+        synchronized (s) {
+            List<HotOtp> codes = s.get(key);
+            if (codes != null) {
+                codes.removeIf(o -> o.id().equals(otpId));
+                if (codes.isEmpty()) s.remove(key);
+            }
+        }
+        return updated > 0;
+    }
+
+    @Scheduled(fixedDelayString = "${app.otp.cleanup.interval-ms:600000}",
+            initialDelayString = "${app.otp.cleanup.interval-ms:600000}")
+    public void cleanup() {
+        LocalDateTime now = LocalDateTime.now();
+        evictExpired(now);
+        Timestamp cutoff = Timestamp.valueOf(now.minusHours(retentionHours));
+        try {
+            int deleted;
+            do {
+                // Xóa theo lô để mỗi câu DELETE chỉ giữ khóa trên một phần nhỏ bảng
+                deleted = jdbcTemplate.update(CLEANUP_SQL, cleanupBatchSize, cutoff);
+                purged.add(deleted);
+            } while (deleted == cleanupBatchSize);
+        } catch (DataAccessException ex) {
+            log.warn("Không dọn được OTP hết hạn: {}", ex.getMessage());
+        }
+    }
+
+    void evictExpired(LocalDateTime now) {
+        for (Map<String, List<HotOtp>> s : stripes) {
+            synchronized (s) {
+                s.values().removeIf(codes -> {
+                    codes.removeIf(o -> !o.expiresAt().isAfter(now));
+                    return codes.isEmpty();
+                });
+            }
+        }
+    }
+
+    public Map<String, Object> stats() {
+        int keys = 0;
+        for (Map<String, List<HotOtp>> s : stripes) {
+            synchronized (s) {
+                keys += s.size();
+            }
+        }
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("keys", keys);
+        m.put("hits", hits.sum());
+        m.put("misses", misses.sum());
+        m.put("purgedRows", purged.sum());
+        return m;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.back_end.service;
+
+import com.example.back_end.util.SlidingWindowRateLimiter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Giới hạn tần suất yêu cầu/xác thực OTP trong bộ nhớ, kiểm trước mọi truy vấn DB, băm mật khẩu và gửi mail.
+ * Gửi mã: theo email và theo IP; nhập mã: theo email (chặn dò mã 6 số).
+ */
+@Component
+public class OtpRateLimiter {
+    private static final String TOO_MANY = "Bạn thao tác quá nhiều lần, vui lòng thử lại sau";
+
+    private final SlidingWindowRateLimiter perEmail;
+    private final SlidingWindowRateLimiter perIp;
+    private final SlidingWindowRateLimiter verifyPerEmail;
+
+    public OtpRateLimiter(@Value("${app.otp.rate.email-limit:5}") int emailLimit,
+                          @Value("${app.otp.rate.ip-limit:20}") int ipLimit,
+                          @Value("${app.otp.rate.verify-limit:10}") int verifyLimit,
+                          @Value("${app.otp.rate.window-ms:900000}") long windowMs) {
+        this.perEmail = new SlidingWindowRateLimiter("otp.start.email", emailLimit, windowMs);
+        this.perIp = new SlidingWindowRateLimiter("otp.start.ip", ipLimit, windowMs);
+        this.verifyPerEmail = new SlidingWindowRateLimiter("otp.verify.email", verifyLimit, windowMs);
+    }
+
+    /** Ném 429 nếu IP hoặc email đã yêu cầu quá nhiều mã trong cửa sổ. */
+    public void checkStart(String email, String clientIp) {
+        if (clientIp != null && !perIp.tryAcquire(clientIp)) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, TOO_MANY);
+        }
+        if (email != null && !perEmail.tryAcquire(email.trim().toLowerCase(Locale.ROOT))) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, TOO_MANY);
+        }
+    }
+
+    public void checkVerify(String purpose, String email) {
+        if (email != null && !verifyPerEmail.tryAcquire(purpose + '|' + email.trim().toLowerCase(Locale.ROOT))) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, TOO_MANY);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.otp.cleanup.interval-ms:600000}")
+    public void evictIdle() {
+        perEmail.evictIdle();
+        perIp.evictIdle();
+        verifyPerEmail.evictIdle();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put(perEmail.name(), perEmail.snapshot());
+        m.put(perIp.name(), perIp.snapshot());
+        m.put(verifyPerEmail.name(), verifyPerEmail.snapshot());
+        return m;
+    }
+}
@@ -8,9 +8,9 @@ import com.example.back_end.repository.EmailOtpRepository;
 import com.example.back_end.repository.RoleRepository;
 import com.example.back_end.repository.UserRepository;
 import com.example.back_end.security.JwtService;
+import com.example.back_end.security.PasswordHasher;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -28,10 +28,12 @@ public class OtpService {
     private final EmailOtpRepository otpRepository;
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHasher passwordHasher;
     private final JwtService jwtService;
     private final ProfileService profileService;
     private final MailService mailService;
+    private final OtpCodeStore otpStore;
+    private final OtpRateLimiter rateLimiter;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Value("${app.otp.expire-min:10}")
@@ -43,17 +45,21 @@ public class OtpService {
     public OtpService(EmailOtpRepository otpRepository,
                       UserRepository userRepository,
                       RoleRepository roleRepository,
-                      PasswordEncoder passwordEncoder,
+                      PasswordHasher passwordHasher,
                       JwtService jwtService,
                       ProfileService profileService,
-                      MailService mailService) {
+                      MailService mailService,
+                      OtpCodeStore otpStore,
+                      OtpRateLimiter rateLimiter) {
         this.otpRepository = otpRepository;
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHasher = passwordHasher;
         this.jwtService = jwtService;
         this.profileService = profileService;
         this.mailService = mailService;
+        this.otpStore = otpStore;
+        this.rateLimiter = rateLimiter;
     }
 
     private String genCode() {
@@ -62,7 +68,9 @@ public class OtpService {
     }
 
     @Transactional
-    public Map<String, Object> startRegister(AuthDtos.RegisterRequest req) {
+    public Map<String, Object> startRegister(AuthDtos.RegisterRequest req, String clientIp) {
+        // Chặn trước khi chạm DB, băm mật khẩu hay gửi mail
+        rateLimiter.checkStart(req.email, clientIp);
         if (userRepository.findByEmailIgnoreCase(req.email).isPresent()) {
             throw new IllegalArgumentException("Email đã tồn tại");
         }
@@ -70,10 +78,12 @@ public class OtpService {
         Role role = roleRepository.findByCode(roleCode).orElseThrow(() -> new IllegalArgumentException("Role không hợp lệ"));
 
         String code = genCode();
+        // Ngoài try: pool băm bận thì trả 503 thay vì lỗi tạo OTP
+        String passwordHash = passwordHasher.encode(req.password);
         try {
             String payload = objectMapper.writeValueAsString(Map.of(
                     "fullName", req.fullName,
-                    "passwordHash", passwordEncoder.encode(req.password),
+                    "passwordHash", passwordHash,
                     "role", role.getCode()
             ));
             EmailOtp otp = new EmailOtp();
@@ -83,6 +93,7 @@ public class OtpService {
             otp.setPayload(payload);
             otp.setExpiresAt(LocalDateTime.now().plusMinutes(expireMin));
             otpRepository.save(otp);
+            otpStore.put(PURPOSE_REGISTER, req.email, new OtpCodeStore.HotOtp(otp.getId(), code, payload, otp.getExpiresAt()));
             mailService.sendOtpEmail(
                     req.email,
                     "Mã xác thực đăng ký",
@@ -93,16 +104,17 @@ public class OtpService {
             throw new IllegalArgumentException("Không thể tạo OTP: " + e.getMessage());
         }
 
-        // TODO: Integrate email sending via JavaMailSender if configured.
         return debug ? Map.of("ok", true, "devCode", code, "expireMin", expireMin) : Map.of("ok", true, "expireMin", expireMin);
     }
 
     @Transactional
     public AuthDtos.AuthResponse verifyRegister(String email, String code) {
-        EmailOtp otp = otpRepository.findTopByEmailIgnoreCaseAndPurposeAndCodeAndConsumedAtIsNullAndExpiresAtAfterOrderByIdDesc(
-                email, PURPOSE_REGISTER, code, LocalDateTime.now()).orElseThrow(() -> new IllegalArgumentException("Mã OTP không hợp lệ hoặc đã hết hạn"));
+        rateLimiter.checkVerify(PURPOSE_REGISTER, email);
+        OtpCodeStore.HotOtp otp = findOtp(email, PURPOSE_REGISTER, code);
+        // Dùng mã trước (UPDATE có điều kiện) để hai request cùng mã không tạo hai tài khoản
+        consumeOtp(email, PURPOSE_REGISTER, otp);
         try {
-            Map<String, Object> data = objectMapper.readValue(otp.getPayload(), Map.class);
+            Map<String, Object> data = objectMapper.readValue(otp.payload(), Map.class);
             String fullName = String.valueOf(data.get("fullName"));
             String passwordHash = String.valueOf(data.get("passwordHash"));
             String role = String.valueOf(data.get("role"));
@@ -120,9 +132,6 @@ public class OtpService {
             u.setLocale("vi"); u.setStatus("active"); u.setCreatedAt(LocalDateTime.now()); u.setUpdatedAt(LocalDateTime.now());
             u = userRepository.save(u);
 
-            otp.setConsumedAt(LocalDateTime.now());
-            otpRepository.save(otp);
-
             List<String> roleCodes = u.getRoles().stream().map(Role::getCode).collect(Collectors.toList());
             String token = jwtService.generate(u.getEmail(), Map.of("uid", u.getId(), "roles", roleCodes));
             AuthDtos.AuthResponse res = new AuthDtos.AuthResponse();
@@ -142,6 +151,22 @@ public class OtpService {
         }
     }
 
+    /** Tìm OTP còn hạn khớp mã: bộ nhớ trước, không có thì đọc DB. */
+    private OtpCodeStore.HotOtp findOtp(String email, String purpose, String code) {
+        LocalDateTime now = LocalDateTime.now();
+        OtpCodeStore.HotOtp hot = otpStore.match(purpose, email, code, now);
+        if (hot != null) return hot;
+        EmailOtp otp = otpRepository.findTopByEmailIgnoreCaseAndPurposeAndCodeAndConsumedAtIsNullAndExpiresAtAfterOrderByIdDesc(
+                email, purpose, code, now).orElseThrow(() -> new IllegalArgumentException("Mã OTP không hợp lệ hoặc đã hết hạn"));
+        return new OtpCodeStore.HotOtp(otp.getId(), otp.getCode(), otp.getPayload(), otp.getExpiresAt());
+    }
+
+    private void consumeOtp(String email, String purpose, OtpCodeStore.HotOtp otp) {
+        if (!otpStore.consume(purpose, email, otp.id(), LocalDateTime.now())) {
+            throw new IllegalArgumentException("Mã OTP không hợp lệ hoặc đã hết hạn");
+        }
+    }
+
     @Transactional
     public Map<String, Object> startPasswordChange(String email, String actorEmail) {
         if (actorEmail == null || actorEmail.isBlank()) {
@@ -151,6 +176,7 @@ public class OtpService {
         if (!targetEmail.equalsIgnoreCase(actorEmail)) {
             throw new IllegalArgumentException("Email không khớp với tài khoản hiện tại");
         }
+        rateLimiter.checkStart(targetEmail, null);
         User user = userRepository.findByEmailIgnoreCase(targetEmail)
                 .orElseThrow(() -> new IllegalArgumentException("Email không tồn tại trong hệ thống"));
 
@@ -164,6 +190,7 @@ public class OtpService {
             otp.setPayload(payload);
             otp.setExpiresAt(LocalDateTime.now().plusMinutes(expireMin));
             otpRepository.save(otp);
+            otpStore.put(PURPOSE_PASSWORD, targetEmail, new OtpCodeStore.HotOtp(otp.getId(), code, payload, otp.getExpiresAt()));
             mailService.sendOtpEmail(
                     targetEmail,
                     "Mã xác thực đổi mật khẩu",
@@ -192,17 +219,14 @@ public class OtpService {
             throw new IllegalArgumentException("Mật khẩu mới phải dài ít nhất 6 ký tự");
         }
 
-        EmailOtp otp = otpRepository.findTopByEmailIgnoreCaseAndPurposeAndCodeAndConsumedAtIsNullAndExpiresAtAfterOrderByIdDesc(
-                targetEmail, PURPOSE_PASSWORD, code, LocalDateTime.now())
-                .orElseThrow(() -> new IllegalArgumentException("Mã OTP không hợp lệ hoặc đã hết hạn"));
+        rateLimiter.checkVerify(PURPOSE_PASSWORD, targetEmail);
+        OtpCodeStore.HotOtp otp = findOtp(targetEmail, PURPOSE_PASSWORD, code);
+        consumeOtp(targetEmail, PURPOSE_PASSWORD, otp);
 
         User user = userRepository.findByEmailIgnoreCase(targetEmail).orElseThrow();
-        user.setPasswordHash(passwordEncoder.encode(newPassword));
+        user.setPasswordHash(passwordHasher.encode(newPassword));
         user.setUpdatedAt(LocalDateTime.now());
         userRepository.save(user);
-
-        otp.setConsumedAt(LocalDateTime.now());
-        otpRepository.save(otp);
     }
 }
 
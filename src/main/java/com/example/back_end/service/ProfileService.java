@@ -3,7 +3,8 @@ package com.example.back_end.service;
 import com.example.back_end.dto.ProfileDtos;
 import com.example.back_end.model.User;
 import com.example.back_end.repository.UserRepository;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import com.example.back_end.security.PasswordHasher;
+import com.example.back_end.security.PrincipalCache;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -18,11 +19,13 @@ public class ProfileService {
     private static final Pattern NON_ALLOWED = Pattern.compile("[^a-z0-9._-]");
 
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHasher passwordHasher;
+    private final PrincipalCache principalCache;
 
-    public ProfileService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public ProfileService(UserRepository userRepository, PasswordHasher passwordHasher, PrincipalCache principalCache) {
         this.userRepository = userRepository;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHasher = passwordHasher;
+        this.principalCache = principalCache;
     }
 
     @Transactional(readOnly = true)
@@ -31,12 +34,18 @@ public class ProfileService {
         return ProfileDtos.fromUser(user);
     }
 
+    @Transactional(readOnly = true)
+    public ProfileDtos.ProfileResponse getProfile(Long userId) {
+        User user = userRepository.findById(userId).orElseThrow();
+        return ProfileDtos.fromUser(user);
+    }
+
     @Transactional
-    public ProfileDtos.ProfileResponse updateProfile(String email, ProfileDtos.UpdateRequest request) {
+    public ProfileDtos.ProfileResponse updateProfile(Long userId, ProfileDtos.UpdateRequest request) {
         if (request == null) {
             throw new IllegalArgumentException("Không có dữ liệu để cập nhật");
         }
-        User user = userRepository.findByEmailIgnoreCase(email).orElseThrow();
+        User user = userRepository.findById(userId).orElseThrow();
         boolean changed = false;
 
         if (request.fullName != null) {
@@ -71,27 +80,28 @@ public class ProfileService {
         if (changed) {
             user.setUpdatedAt(LocalDateTime.now());
             user = userRepository.save(user);
+            principalCache.invalidateUser(user.getId());
         }
         return ProfileDtos.fromUser(user);
     }
 
     @Transactional
-    public void changePassword(String email, ProfileDtos.ChangePasswordRequest request) {
+    public void changePassword(Long userId, ProfileDtos.ChangePasswordRequest request) {
         if (request == null) throw new IllegalArgumentException("Thiếu thông tin mật khẩu");
-        User user = userRepository.findByEmailIgnoreCase(email).orElseThrow();
+        User user = userRepository.findById(userId).orElseThrow();
         if (request.currentPassword == null || request.currentPassword.isBlank()) {
             throw new IllegalArgumentException("Vui lòng nhập mật khẩu hiện tại");
         }
-        if (!passwordEncoder.matches(request.currentPassword, user.getPasswordHash())) {
+        if (!passwordHasher.matches(request.currentPassword, user.getPasswordHash())) {
             throw new IllegalArgumentException("Mật khẩu hiện tại không chính xác");
         }
         if (request.newPassword == null || request.newPassword.length() < 6) {
             throw new IllegalArgumentException("Mật khẩu mới phải dài ít nhất 6 ký tự");
         }
-        if (passwordEncoder.matches(request.newPassword, user.getPasswordHash())) {
+        if (passwordHasher.matches(request.newPassword, user.getPasswordHash())) {
             throw new IllegalArgumentException("Mật khẩu mới phải khác mật khẩu cũ");
         }
-        user.setPasswordHash(passwordEncoder.encode(request.newPassword));
+        user.setPasswordHash(passwordHasher.encode(request.newPassword));
         user.setUpdatedAt(LocalDateTime.now());
         userRepository.save(user);
     }
@@ -0,0 +1,182 @@
+package com.example.back_end.service;
+
+import com.example.back_end.dto.public_.PublicCourseDetailDto;
+import com.example.back_end.service.event.CourseChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Cache LRU cho trang chi tiết khóa học public, giới hạn theo "trọng số" (1 + số module + số lesson)
+ * thay vì số entry để khóa lớn không chiếm hết bộ nhớ.
+ *
+ * Mỗi lần khóa học thay đổi, course đó nhận một version mới lấy từ bộ đếm toàn cục. Request đọc ghi nhớ
+ * version toàn cục trước khi truy vấn và chỉ được đưa kết quả vào cache nếu course chưa bị invalidate kể từ
+ * thời điểm đó, nên một lần đọc chậm không thể ghi đè dữ liệu cũ lên cache sau khi giáo viên vừa sửa.
+ * Mốc invalidate chỉ giữ MAX_LOAD_MS; lần đọc chạy lâu hơn thế không được đưa vào cache nên bỏ mốc cũ vẫn an toàn.
+ *
+ * DTO trả ra được dùng chung giữa các request, nơi gọi không được sửa nội dung của nó.
+ */
+@Component
+public class PublicCourseDetailCache {
+    static final long MAX_LOAD_MS = 60_000;
+
+    private final PublicCourseQueryService queryService;
+    private final long maxWeight;
+
+    private final LinkedHashMap<Long, Entry> byId = new LinkedHashMap<>(64, 0.75f, true);
+    private final Map<String, Long> slugIndex = new HashMap<>();
+    private long totalWeight;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final Map<Long, Stamp> invalidatedAt = new ConcurrentHashMap<>();
+    private volatile long lastPruneAt = System.currentTimeMillis();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public PublicCourseDetailCache(PublicCourseQueryService queryService,
+                                   @Value("${app.cache.course-detail.max-weight:50000}") long maxWeight) {
+        this.queryService = queryService;
+        this.maxWeight = Math.max(1, maxWeight);
+    }
+
+    public PublicCourseDetailDto bySlug(String slug) {
+        if (slug == null) return null;
+        synchronized (this) {
+            Long id = slugIndex.get(slug);
+            Entry e = id != null ? byId.get(id) : null;
+            if (e != null) {
+                hits.increment();
+                return e.dto;
+            }
+        }
+        return load(() -> queryService.loadCourseDetailBySlug(slug));
+    }
+
+    public PublicCourseDetailDto byId(Long courseId) {
+        if (courseId == null) return null;
+        synchronized (this) {
+            Entry e = byId.get(courseId);
+            if (e != null) {
+                hits.increment();
+                return e.dto;
+            }
+        }
+        return load(() -> queryService.loadCourseDetailById(courseId, false));
+    }
+
+    private PublicCourseDetailDto load(Supplier<PublicCourseDetailDto> loader) {
+        misses.increment();
+        long startedAt = clock.get();
+        long startedMs = System.currentTimeMillis();
+        PublicCourseDetailDto dto = loader.get();
+        if (dto == null || dto.id == null) return dto;
+        // Mốc invalidate của lần đọc quá lâu có thể đã bị dọn
+        if (System.currentTimeMillis() - startedMs > MAX_LOAD_MS) return dto;
+        if (invalidatedSince(dto.id, startedAt)) return dto; // đã có thay đổi trong lúc đọc
+        synchronized (this) {
+            if (invalidatedSince(dto.id, startedAt)) return dto;
+            removeLocked(dto.id);
+            Entry e = new Entry(dto, weigh(dto));
+            byId.put(dto.id, e);
+            if (dto.slug != null) slugIndex.put(dto.slug, dto.id);
+            totalWeight += e.weight;
+            evictLocked();
+        }
+        return dto;
+    }
+
+    private boolean invalidatedSince(Long courseId, long startedAt) {
+        Stamp s = invalidatedAt.get(courseId);
+        return s != null && s.version() > startedAt;
+    }
+
+    public void invalidate(Long courseId) {
+        if (courseId == null) return;
+        long now = System.currentTimeMillis();
+        invalidatedAt.put(courseId, new Stamp(clock.incrementAndGet(), now));
+        invalidations.increment();
+        synchronized (this) {
+            removeLocked(courseId);
+        }
+        pruneInvalidations(now);
+    }
+
+    /** Bỏ các mốc cũ hơn MAX_LOAD_MS, tối đa một lượt quét mỗi MAX_LOAD_MS. */
+    void pruneInvalidations(long now) {
+        if (now - lastPruneAt < MAX_LOAD_MS) return;
+        lastPruneAt = now;
+        invalidatedAt.values().removeIf(s -> now - s.at() > MAX_LOAD_MS);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCourseChanged(CourseChangedEvent event) {
+        invalidate(event.courseId());
+    }
+
+    public synchronized void clear() {
+        long now = System.currentTimeMillis();
+        for (Long id : byId.keySet()) {
+            invalidatedAt.put(id, new Stamp(clock.incrementAndGet(), now));
+        }
+        byId.clear();
+        slugIndex.clear();
+        totalWeight = 0;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("entries", byId.size());
+        m.put("weight", totalWeight);
+        m.put("maxWeight", maxWeight);
+        m.put("hits", hits.sum());
+        m.put("misses", misses.sum());
+        m.put("evictions", evictions.sum());
+        m.put("invalidations", invalidations.sum());
+        m.put("invalidationMarks", invalidatedAt.size());
+        return m;
+    }
+
+    private void removeLocked(Long courseId) {
+        Entry old = byId.remove(courseId);
+        if (old == null) return;
+        totalWeight -= old.weight;
+        if (old.dto.slug != null) slugIndex.remove(old.dto.slug, courseId);
+    }
+
+    private void evictLocked() {
+        Iterator<Map.Entry<Long, Entry>> it = byId.entrySet().iterator();
+        while (totalWeight > maxWeight && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            totalWeight -= eldest.weight;
+            if (eldest.dto.slug != null) slugIndex.remove(eldest.dto.slug, eldest.dto.id);
+            evictions.increment();
+        }
+    }
+
+    private static long weigh(PublicCourseDetailDto dto) {
+        long w = 1;
+        for (PublicCourseDetailDto.ModuleItem m : dto.modules) {
+            w += 1 + m.lessons.size();
+        }
+        return w;
+    }
+
+    private record Entry(PublicCourseDetailDto dto, long weight) {}
+
+    /** version: giá trị clock lúc invalidate; at: epoch ms để dọn. */
+    private record Stamp(long version, long at) {}
+}
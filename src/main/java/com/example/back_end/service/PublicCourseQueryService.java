@@ -11,6 +11,18 @@ import java.util.List;
 
 @Service
 public class PublicCourseQueryService {
+    // Cây module -> lesson -> video đầu tiên được lấy trong một câu duy nhất (LEFT JOIN + OUTER APPLY),
+    // nên mỗi request chi tiết khóa học chỉ tốn đúng 2 round trip bất kể số module/lesson.
+    private static final String OUTLINE_SQL =
+            "SELECT m.id, m.title, m.sort_order," +
+            " l.id, l.title, l.type, l.duration_seconds, l.sort_order, l.status, v.url" +
+            " FROM dbo.modules m" +
+            " LEFT JOIN dbo.lessons l ON l.module_id = m.id" +
+            " OUTER APPLY (SELECT TOP 1 a.url FROM dbo.lesson_assets a" +
+            "              WHERE a.lesson_id = l.id AND a.kind = N'video' ORDER BY a.id) v" +
+            " WHERE m.course_id = :cid" +
+            " ORDER BY m.sort_order, m.id, l.sort_order, l.id";
+
     @PersistenceContext
     private EntityManager em;
 
@@ -22,48 +34,8 @@ public class PublicCourseQueryService {
                 .setParameter("slug", slug)
                 .getResultList();
         if (rows.isEmpty()) return null;
-        Object[] c = rows.get(0);
-        PublicCourseDetailDto dto = new PublicCourseDetailDto();
-        dto.id = toLong(c[0]);
-        dto.title = str(c[1]);
-        dto.slug = str(c[2]);
-        dto.level = str(c[3]);
-        dto.status = str(c[4]);
-        dto.price = (c[5] instanceof BigDecimal) ? (BigDecimal) c[5] : null;
-        dto.is_free = bool(c[6]);
-        dto.thumbnail_url = str(c[7]);
-
-        @SuppressWarnings("unchecked")
-        List<Object[]> modules = (List<Object[]>) em.createNativeQuery(
-                "SELECT id, title, sort_order FROM dbo.modules WHERE course_id = :cid ORDER BY sort_order, id")
-                .setParameter("cid", dto.id).getResultList();
-        for (Object[] m : modules) {
-            PublicCourseDetailDto.ModuleItem mi = new PublicCourseDetailDto.ModuleItem();
-            mi.id = toLong(m[0]);
-            mi.title = str(m[1]);
-            mi.sort_order = toInt(m[2]);
-
-            @SuppressWarnings("unchecked")
-            List<Object[]> lessons = (List<Object[]>) em.createNativeQuery(
-                    "SELECT id, title, type, duration_seconds, sort_order, status FROM dbo.lessons WHERE module_id = :mid ORDER BY sort_order, id")
-                    .setParameter("mid", mi.id).getResultList();
-            for (Object[] l : lessons) {
-                PublicCourseDetailDto.LessonItem li = new PublicCourseDetailDto.LessonItem();
-                li.id = toLong(l[0]);
-                li.title = str(l[1]);
-                li.type = str(l[2]);
-                li.duration_seconds = toInt(l[3]);
-                li.sort_order = toInt(l[4]);
-                li.status = str(l[5]);
-                @SuppressWarnings("unchecked")
-                List<String> vids = (List<String>) em.createNativeQuery(
-                        "SELECT TOP 1 url FROM dbo.lesson_assets WHERE lesson_id = :lid AND kind = N'video' ORDER BY id")
-                        .setParameter("lid", li.id).getResultList();
-                li.video_url = vids.isEmpty() ? null : vids.get(0);
-                mi.lessons.add(li);
-            }
-            dto.modules.add(mi);
-        }
+        PublicCourseDetailDto dto = mapCourse(rows.get(0), false);
+        loadOutline(dto);
         return dto;
     }
 
@@ -79,53 +51,54 @@ public class PublicCourseQueryService {
                 .setParameter("cid", courseId)
                 .getResultList();
         if (rows.isEmpty()) return null;
-        Object[] c = rows.get(0);
+        PublicCourseDetailDto dto = mapCourse(rows.get(0), includeCreator);
+        loadOutline(dto);
+        return dto;
+    }
+
+    private PublicCourseDetailDto mapCourse(Object[] c, boolean includeCreator) {
         PublicCourseDetailDto dto = new PublicCourseDetailDto();
         dto.id = toLong(c[0]);
         dto.title = str(c[1]);
         dto.slug = str(c[2]);
         dto.level = str(c[3]);
         dto.status = str(c[4]);
-        dto.price = (c[5] instanceof java.math.BigDecimal) ? (java.math.BigDecimal) c[5] : null;
+        dto.price = (c[5] instanceof BigDecimal) ? (BigDecimal) c[5] : null;
         dto.is_free = bool(c[6]);
         dto.thumbnail_url = str(c[7]);
         if (includeCreator) {
             dto.created_by_email = str(c[8]);
             dto.created_by_name = str(c[9]);
         }
+        return dto;
+    }
 
+    private void loadOutline(PublicCourseDetailDto dto) {
         @SuppressWarnings("unchecked")
-        List<Object[]> modules = (List<Object[]>) em.createNativeQuery(
-                        "SELECT id, title, sort_order FROM dbo.modules WHERE course_id = :cid ORDER BY sort_order, id")
-                .setParameter("cid", dto.id).getResultList();
-        for (Object[] m : modules) {
-            PublicCourseDetailDto.ModuleItem mi = new PublicCourseDetailDto.ModuleItem();
-            mi.id = toLong(m[0]);
-            mi.title = str(m[1]);
-            mi.sort_order = toInt(m[2]);
-
-            @SuppressWarnings("unchecked")
-            List<Object[]> lessons = (List<Object[]>) em.createNativeQuery(
-                            "SELECT id, title, type, duration_seconds, sort_order, status FROM dbo.lessons WHERE module_id = :mid ORDER BY sort_order, id")
-                    .setParameter("mid", mi.id).getResultList();
-            for (Object[] l : lessons) {
-                PublicCourseDetailDto.LessonItem li = new PublicCourseDetailDto.LessonItem();
-                li.id = toLong(l[0]);
-                li.title = str(l[1]);
-                li.type = str(l[2]);
-                li.duration_seconds = toInt(l[3]);
-                li.sort_order = toInt(l[4]);
-                li.status = str(l[5]);
-                @SuppressWarnings("unchecked")
-                List<String> vids = (List<String>) em.createNativeQuery(
-                                "SELECT TOP 1 url FROM dbo.lesson_assets WHERE lesson_id = :lid AND kind = N'video' ORDER BY id")
-                        .setParameter("lid", li.id).getResultList();
-                li.video_url = vids.isEmpty() ? null : vids.get(0);
-                mi.lessons.add(li);
+        List<Object[]> rows = (List<Object[]>) em.createNativeQuery(OUTLINE_SQL)
+                .setParameter("cid", dto.id)
+                .getResultList();
+        PublicCourseDetailDto.ModuleItem current = null;
+        for (Object[] r : rows) {
+            Long moduleId = toLong(r[0]);
+            if (current == null || !current.id.equals(moduleId)) {
+                current = new PublicCourseDetailDto.ModuleItem();
+                current.id = moduleId;
+                current.title = str(r[1]);
+                current.sort_order = toInt(r[2]);
+                dto.modules.add(current);
             }
-            dto.modules.add(mi);
+            if (r[3] == null) continue; // module chưa có lesson (LEFT JOIN)
+            PublicCourseDetailDto.LessonItem li = new PublicCourseDetailDto.LessonItem();
+            li.id = toLong(r[3]);
+            li.title = str(r[4]);
+            li.type = str(r[5]);
+            li.duration_seconds = toInt(r[6]);
+            li.sort_order = toInt(r[7]);
+            li.status = str(r[8]);
+            li.video_url = str(r[9]);
+            current.lessons.add(li);
         }
-        return dto;
     }
 
     private static Long toLong(Object o){ return o==null?null: ((Number)o).longValue(); }
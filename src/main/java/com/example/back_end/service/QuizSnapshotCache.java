@@ -0,0 +1,167 @@
+package com.example.back_end.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ảnh chụp bất biến của ngân hàng câu hỏi một đề (câu hỏi, lựa chọn, điểm, đáp án đúng), dùng chung cho
+ * việc tạo/hiển thị bài làm và chấm điểm.
+ *
+ * Mỗi ảnh chụp gắn với phiên bản dbo.quizzes.updated_at đọc cùng câu truy vấn với dữ liệu câu hỏi; người gọi truyền
+ * phiên bản họ đang thấy, lệch thì nạp lại. TeacherQuizController tăng updated_at và gọi invalidate khi sửa đề.
+ */
+@Component
+public class QuizSnapshotCache {
+    private static final String SNAPSHOT_SQL =
+            "SELECT z.updated_at, q.id, q.text, q.points, o.id, o.text, o.is_correct" +
+            " FROM dbo.quizzes z" +
+            " LEFT JOIN dbo.questions q ON q.quiz_id = z.id" +
+            " LEFT JOIN dbo.question_options o ON o.question_id = q.id" +
+            " WHERE z.id = ?" +
+            " ORDER BY q.sort_order, q.id, o.sort_order, o.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<Long, QuizSnapshot> snapshots = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public QuizSnapshotCache(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public record OptionSnapshot(Long id, String text, boolean correct) {}
+
+    public record QuestionSnapshot(Long id, String text, int points, List<OptionSnapshot> options) {}
+
+    public record QuizSnapshot(Long quizId, LocalDateTime version, List<QuestionSnapshot> questions,
+                               Map<Long, QuestionSnapshot> byId, ExamGradingEngine.AnswerKey answerKey) {
+
+        public QuestionSnapshot question(Long questionId) {
+            return byId.get(questionId);
+        }
+
+        /** Câu hỏi thuộc một attempt: những câu đã có khi attempt bắt đầu (id không vượt quá mốc lưu trên attempt). */
+        public List<QuestionSnapshot> questionsUpTo(long watermark) {
+            List<QuestionSnapshot> list = new ArrayList<>(questions.size());
+            for (QuestionSnapshot q : questions) {
+                if (q.id() <= watermark) list.add(q);
+            }
+            return list;
+        }
+
+        public long maxQuestionId() {
+            long max = 0;
+            for (QuestionSnapshot q : questions) max = Math.max(max, q.id());
+            return max;
+        }
+
+        public double maxPoints() {
+            double sum = 0;
+            for (QuestionSnapshot q : questions) sum += q.points();
+            return sum;
+        }
+
+        static QuizSnapshot of(Long quizId, LocalDateTime version, List<QuestionSnapshot> questions) {
+            Map<Long, QuestionSnapshot> byId = new HashMap<>();
+            Map<Long, ExamGradingEngine.QuestionKey> keys = new LinkedHashMap<>();
+            for (QuestionSnapshot q : questions) {
+                byId.put(q.id(), q);
+                Set<Long> correct = new HashSet<>();
+                for (OptionSnapshot o : q.options()) {
+                    if (o.correct()) correct.add(o.id());
+                }
+                keys.put(q.id(), new ExamGradingEngine.QuestionKey(q.points(), Set.copyOf(correct)));
+            }
+            return new QuizSnapshot(quizId, version, List.copyOf(questions), Map.copyOf(byId),
+                    new ExamGradingEngine.AnswerKey(quizId, version, Collections.unmodifiableMap(keys)));
+        }
+    }
+
+    /**
+     * Trả ảnh chụp của đề ở phiên bản {@code version} (updated_at mà người gọi vừa đọc); nạp lại nếu cache đang giữ
+     * phiên bản khác. Trả null nếu đề không tồn tại.
+     */
+    public QuizSnapshot get(Long quizId, LocalDateTime version) {
+        QuizSnapshot cached = snapshots.get(quizId);
+        if (cached != null && Objects.equals(cached.version(), version)) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        QuizSnapshot loaded = load(quizId);
+        if (loaded == null) {
+            snapshots.remove(quizId);
+            return null;
+        }
+        // Không đè lên bản mới hơn do request khác vừa nạp
+        snapshots.merge(quizId, loaded, (old, neu) -> isNewer(old.version(), neu.version()) ? old : neu);
+        return loaded;
+    }
+
+    public void invalidate(Long quizId) {
+        if (snapshots.remove(quizId) != null) invalidations.increment();
+    }
+
+    QuizSnapshot load(Long quizId) {
+        LocalDateTime[] version = new LocalDateTime[1];
+        boolean[] found = new boolean[1];
+        Map<Long, QuestionBuilder> questions = new LinkedHashMap<>();
+        jdbcTemplate.query(SNAPSHOT_SQL, rs -> {
+            found[0] = true;
+            Timestamp ts = rs.getTimestamp(1);
+            version[0] = ts != null ? ts.toLocalDateTime() : null;
+            long qid = rs.getLong(2);
+            if (rs.wasNull()) return;
+            QuestionBuilder q = questions.get(qid);
+            if (q == null) {
+                int points = rs.getInt(4);
+                q = new QuestionBuilder(qid, rs.getString(3), rs.wasNull() ? 1 : points);
+                questions.put(qid, q);
+            }
+            long oid = rs.getLong(5);
+            if (!rs.wasNull()) {
+                q.options.add(new OptionSnapshot(oid, Objects.toString(rs.getString(6), ""), rs.getBoolean(7)));
+            }
+        }, quizId);
+        if (!found[0]) return null;
+        List<QuestionSnapshot> list = new ArrayList<>(questions.size());
+        for (QuestionBuilder q : questions.values()) {
+            list.add(new QuestionSnapshot(q.id, Objects.toString(q.text, ""), q.points, List.copyOf(q.options)));
+        }
+        return QuizSnapshot.of(quizId, version[0], list);
+    }
+
+    private static boolean isNewer(LocalDateTime a, LocalDateTime b) {
+        return a != null && (b == null || a.isAfter(b));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("entries", snapshots.size());
+        m.put("hits", hits.sum());
+        m.put("misses", misses.sum());
+        m.put("invalidations", invalidations.sum());
+        return m;
+    }
+
+    private static final class QuestionBuilder {
+        final Long id;
+        final String text;
+        final int points;
+        final List<OptionSnapshot> options = new ArrayList<>();
+
+        QuestionBuilder(Long id, String text, int points) {
+            this.id = id;
+            this.text = text;
+            this.points = points;
+        }
+    }
+}
@@ -1,33 +1,48 @@
 package com.example.back_end.service;
 
 import com.example.back_end.dto.ExamDtos;
+import com.example.back_end.util.LatencyRecorder;
+import com.example.back_end.util.SeededPermutation;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class StudentExamService {
     @PersistenceContext private EntityManager em;
     private final StudentProgressService studentProgressService;
+    private final ExamGradingEngine gradingEngine;
+    private final ExamAnswerBuffer answerBuffer;
+    private final QuizSnapshotCache quizSnapshots;
+    private final TransactionTemplate tx;
     private static final int HARD_MAX_ATTEMPTS = 2;
+    private final LatencyRecorder overviewLatency = new LatencyRecorder("exam.overview");
 
-    public StudentExamService(StudentProgressService studentProgressService) {
+    public StudentExamService(StudentProgressService studentProgressService, ExamGradingEngine gradingEngine,
+                              ExamAnswerBuffer answerBuffer, QuizSnapshotCache quizSnapshots,
+                              PlatformTransactionManager transactionManager) {
         this.studentProgressService = studentProgressService;
+        this.gradingEngine = gradingEngine;
+        this.answerBuffer = answerBuffer;
+        this.quizSnapshots = quizSnapshots;
+        this.tx = new TransactionTemplate(transactionManager);
     }
     @Transactional(readOnly = true)
     public ExamDtos.ExamOverview loadOverview(Long userId, Long courseId, Long examId) {
+        long started = System.nanoTime();
         QuizInfo quiz = requireQuiz(courseId, examId);
         ExamAccess access = evaluateAccess(quiz, userId);
-        QuestionStats stats = loadQuestionStats(examId);
+        QuestionStats stats = loadQuestionStats(quiz);
 
         ExamDtos.ExamOverview dto = new ExamDtos.ExamOverview();
         dto.examId = examId;
@@ -53,15 +68,20 @@ public class StudentExamService {
         dto.enrolled = access.enrolled;
         dto.canAttempt = access.canAttempt;
         dto.lastAttemptFinishedAt = access.lastFinishedAt;
+        overviewLatency.recordSince(started);
         return dto;
     }
 
+    public LatencyRecorder overviewLatency() {
+        return overviewLatency;
+    }
+
     private QuizInfo requireQuiz(Long courseId, Long examId) {
         @SuppressWarnings("unchecked")
         List<Object[]> rows = em.createNativeQuery(
                         "SELECT q.id, q.course_id, q.lesson_id, q.title, q.time_limit_sec, q.shuffle, q.max_attempts, q.passing_score, " +
                                 "q.instructions, q.review_policy, q.attempt_window_start, q.attempt_window_end, q.auto_submit_grace_sec, q.retake_cooldown_minutes, " +
-                                "c.slug, c.title " +
+                                "c.slug, c.title, q.updated_at " +
                                 "FROM dbo.quizzes q JOIN dbo.courses c ON c.id = q.course_id WHERE q.id = :examId AND q.course_id = :courseId")
                 .setParameter("examId", examId)
                 .setParameter("courseId", courseId)
@@ -87,6 +107,7 @@ public class StudentExamService {
         info.retakeCooldownMinutes = r[13] != null ? ((Number) r[13]).intValue() : null;
         info.courseSlug = r[14] != null ? r[14].toString() : null;
         info.courseTitle = r[15] != null ? r[15].toString() : null;
+        info.version = toDateTime(r[16]);
         return info;
     }
     @Transactional(readOnly = true)
@@ -113,11 +134,46 @@ public class StudentExamService {
         return list;
     }
 
+    // Một round trip cho toàn bộ trạng thái của (quiz, user): ghi danh, số lượt, attempt đang làm, lần nộp gần nhất
+    // và điều kiện tiên quyết (mỗi tiên quyết một dòng, các cột tổng hợp lặp lại trên mọi dòng).
+    private static final String ACCESS_SQL = """
+            SELECT e.status, agg.attempts, act.id, fin.finished_at,
+                   p.required_course_id, pc.title,
+                   CASE WHEN EXISTS (SELECT 1 FROM dbo.course_certificates cert
+                                      WHERE cert.course_id = p.required_course_id AND cert.user_id = :uid) THEN 1 ELSE 0 END
+              FROM (SELECT 1 AS one) x
+              OUTER APPLY (SELECT TOP 1 status FROM dbo.enrollments WHERE user_id = :uid AND course_id = :cid) e
+              CROSS APPLY (SELECT COUNT(*) AS attempts FROM dbo.quiz_attempts WHERE quiz_id = :qid AND user_id = :uid) agg
+              OUTER APPLY (SELECT TOP 1 id FROM dbo.quiz_attempts
+                            WHERE quiz_id = :qid AND user_id = :uid AND status = N'in_progress'
+                            ORDER BY started_at DESC) act
+              OUTER APPLY (SELECT TOP 1 COALESCE(finished_at, ends_at) AS finished_at FROM dbo.quiz_attempts
+                            WHERE quiz_id = :qid AND user_id = :uid AND status IN (N'submitted', N'graded')
+                            ORDER BY finished_at DESC, ends_at DESC) fin
+              LEFT JOIN (dbo.prerequisites p JOIN dbo.courses pc ON pc.id = p.required_course_id) ON p.course_id = :cid
+            """;
+
     private ExamAccess evaluateAccess(QuizInfo quiz, Long userId) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = em.createNativeQuery(ACCESS_SQL)
+                .setParameter("qid", quiz.id)
+                .setParameter("cid", quiz.courseId)
+                .setParameter("uid", userId)
+                .getResultList();
+        Object[] head = rows.get(0);
+
         ExamAccess result = new ExamAccess();
         result.blockers = new ArrayList<>();
-        result.prerequisites = loadPrerequisites(quiz.courseId, userId);
-        String enrollmentStatus = getEnrollmentStatus(userId, quiz.courseId);
+        result.prerequisites = new ArrayList<>();
+        for (Object[] r : rows) {
+            if (r[4] == null) continue;
+            ExamDtos.PrerequisiteStatus status = new ExamDtos.PrerequisiteStatus();
+            status.courseId = ((Number) r[4]).longValue();
+            status.courseTitle = r[5] != null ? r[5].toString() : "";
+            status.met = toBool(r[6]);
+            result.prerequisites.add(status);
+        }
+        String enrollmentStatus = head[0] != null ? head[0].toString() : null;
         result.enrolled = enrollmentStatus != null;
 
         if (!result.enrolled) {
@@ -134,35 +190,10 @@ public class StudentExamService {
             result.blockers.add("Bài ki?m tra dã dóng");
         }
 
-        int attemptsRaw = ((Number) em.createNativeQuery(
-                        "SELECT COUNT(*) FROM dbo.quiz_attempts WHERE quiz_id = :qid AND user_id = :uid")
-                .setParameter("qid", quiz.id)
-                .setParameter("uid", userId)
-                .getSingleResult()).intValue();
+        int attemptsRaw = head[1] != null ? ((Number) head[1]).intValue() : 0;
         result.attemptCount = Math.min(attemptsRaw, HARD_MAX_ATTEMPTS);
-
-        @SuppressWarnings("unchecked")
-        List<Number> activeAttemptIds = em.createNativeQuery(
-                        "SELECT TOP 1 id FROM dbo.quiz_attempts WHERE quiz_id = :qid AND user_id = :uid AND status = N'in_progress' ORDER BY started_at DESC")
-                .setParameter("qid", quiz.id)
-                .setParameter("uid", userId)
-                .getResultList();
-        result.activeAttemptId = activeAttemptIds.stream()
-                .map(Number::longValue)
-                .findFirst()
-                .orElse(null);
-
-        @SuppressWarnings("unchecked")
-        List<Object> lastFinishedRows = em.createNativeQuery(
-                        "SELECT TOP 1 COALESCE(finished_at, ends_at) FROM dbo.quiz_attempts WHERE quiz_id = :qid AND user_id = :uid " +
-                                "AND status IN (N'submitted', N'graded') ORDER BY finished_at DESC, ends_at DESC")
-                .setParameter("qid", quiz.id)
-                .setParameter("uid", userId)
-                .getResultList();
-        result.lastFinishedAt = lastFinishedRows.stream()
-                .map(StudentExamService::toDateTime)
-                .findFirst()
-                .orElse(null);
+        result.activeAttemptId = head[2] != null ? ((Number) head[2]).longValue() : null;
+        result.lastFinishedAt = toDateTime(head[3]);
 
         if (result.attemptCount >= HARD_MAX_ATTEMPTS) {
             result.blockers.add("Ðã h?t lu?t làm bài");
@@ -181,14 +212,11 @@ public class StudentExamService {
         return result;
     }
 
-    private QuestionStats loadQuestionStats(Long examId) {
-        Object[] row = (Object[]) em.createNativeQuery(
-                        "SELECT COUNT(*), COALESCE(SUM(points),0) FROM dbo.questions WHERE quiz_id = :qid")
-                .setParameter("qid", examId)
-                .getSingleResult();
+    private QuestionStats loadQuestionStats(QuizInfo quiz) {
+        QuizSnapshotCache.QuizSnapshot snapshot = quizSnapshots.get(quiz.id, quiz.version);
         QuestionStats stats = new QuestionStats();
-        stats.count = row[0] != null ? ((Number) row[0]).intValue() : 0;
-        stats.totalPoints = row[1] != null ? toDouble(row[1]) : 0;
+        stats.count = snapshot != null ? snapshot.questions().size() : 0;
+        stats.totalPoints = snapshot != null ? snapshot.maxPoints() : 0;
         return stats;
     }
     @Transactional
@@ -205,119 +233,84 @@ public class StudentExamService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, reason);
         }
 
-        List<QuestionRecord> questions = loadQuestions(examId);
-        if (questions.isEmpty()) {
+        QuizSnapshotCache.QuizSnapshot snapshot = quizSnapshots.get(examId, quiz.version);
+        if (snapshot == null || snapshot.questions().isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Ð? thi chua có câu h?i");
         }
 
         int timeLimit = quiz.timeLimitSec != null && quiz.timeLimitSec > 0
                 ? quiz.timeLimitSec
-                : Math.max(questions.size() * 60, 300);
-
-        int seed = (int) (System.currentTimeMillis() & 0x7fffffff);
-        List<QuestionRecord> ordered = new ArrayList<>(questions);
-        if (quiz.shuffle) {
-            Collections.shuffle(ordered, new Random(seed));
-            ordered.forEach(q -> Collections.shuffle(q.options, new Random(seed + q.id.intValue())));
-        }
-
-        double maxPoints = ordered.stream()
-                .mapToDouble(q -> q.points != null ? q.points : 1)
-                .sum();
+                : Math.max(snapshot.questions().size() * 60, 300);
 
-        Long attemptId = insertAttempt(quiz, userId, timeLimit, seed, maxPoints);
-        persistAttemptItems(attemptId, ordered);
+        // Thứ tự câu hỏi/lựa chọn không lưu từng dòng mà tính lại từ (attemptId, seed); seed 0 = giữ thứ tự đề
+        int seed = quiz.shuffle ? (int) (System.currentTimeMillis() & 0x7fffffff) | 1 : 0;
+        Long attemptId = insertAttempt(quiz, userId, timeLimit, seed, snapshot.maxPoints(), snapshot.maxQuestionId());
         AttemptContext context = loadAttemptContext(attemptId, userId);
         return buildAttemptView(context);
     }
 
-    private List<QuestionRecord> loadQuestions(Long examId) {
-        @SuppressWarnings("unchecked")
-        List<Object[]> qrows = em.createNativeQuery(
-                        "SELECT id, text, points FROM dbo.questions WHERE quiz_id = :qid ORDER BY sort_order, id")
-                .setParameter("qid", examId)
-                .getResultList();
-        Map<Long, QuestionRecord> questions = new LinkedHashMap<>();
-        for (Object[] row : qrows) {
-            QuestionRecord q = new QuestionRecord();
-            q.id = ((Number) row[0]).longValue();
-            q.text = row[1] != null ? row[1].toString() : "";
-            q.points = row[2] != null ? ((Number) row[2]).intValue() : 1;
-            q.options = new ArrayList<>();
-            questions.put(q.id, q);
-        }
-        if (questions.isEmpty()) return List.of();
-
-        @SuppressWarnings("unchecked")
-        List<Object[]> orows = em.createNativeQuery(
-                        "SELECT id, question_id, text, is_correct FROM dbo.question_options WHERE question_id IN :ids ORDER BY sort_order, id")
-                .setParameter("ids", questions.keySet())
-                .getResultList();
-        for (Object[] row : orows) {
-            Long qid = ((Number) row[1]).longValue();
-            QuestionRecord q = questions.get(qid);
-            if (q == null) continue;
-            OptionRecord opt = new OptionRecord();
-            opt.id = ((Number) row[0]).longValue();
-            opt.text = row[2] != null ? row[2].toString() : "";
-            opt.correct = toBool(row[3]);
-            q.options.add(opt);
-        }
-        return new ArrayList<>(questions.values());
-    }
-
-    private Long insertAttempt(QuizInfo quiz, Long userId, int timeLimitSec, int seed, double maxPoints) {
+    private Long insertAttempt(QuizInfo quiz, Long userId, int timeLimitSec, int seed, double maxPoints, long questionWatermark) {
         Object res = em.createNativeQuery(
-                        "INSERT INTO dbo.quiz_attempts(quiz_id, user_id, started_at, status, time_limit_sec, ends_at, seed, max_points) " +
-                                "OUTPUT inserted.id VALUES (:qid, :uid, SYSUTCDATETIME(), N'in_progress', :limit, DATEADD(SECOND, :limit, SYSUTCDATETIME()), :seed, :max)")
+                        "INSERT INTO dbo.quiz_attempts(quiz_id, user_id, started_at, status, time_limit_sec, ends_at, seed, max_points, question_watermark) " +
+                                "OUTPUT inserted.id VALUES (:qid, :uid, SYSUTCDATETIME(), N'in_progress', :limit, DATEADD(SECOND, :limit, SYSUTCDATETIME()), :seed, :max, :watermark)")
                 .setParameter("qid", quiz.id)
                 .setParameter("uid", userId)
                 .setParameter("limit", timeLimitSec)
                 .setParameter("seed", seed)
                 .setParameter("max", BigDecimal.valueOf(maxPoints))
+                .setParameter("watermark", questionWatermark)
                 .getSingleResult();
         return ((Number) res).longValue();
     }
 
-    private void persistAttemptItems(Long attemptId, List<QuestionRecord> ordered) {
-        int order = 0;
-        for (QuestionRecord q : ordered) {
-            order++;
-            String optionOrder = q.options.stream()
-                    .map(o -> String.valueOf(o.id))
-                    .collect(Collectors.joining(","));
-            em.createNativeQuery(
-                            "INSERT INTO dbo.quiz_attempt_items(attempt_id, question_id, display_order, option_order) VALUES (:aid, :qid, :ord, :opts)")
-                    .setParameter("aid", attemptId)
-                    .setParameter("qid", q.id)
-                    .setParameter("ord", order)
-                    .setParameter("opts", optionOrder)
-                    .executeUpdate();
-        }
-    }
-
     @Transactional(readOnly = true)
     public ExamDtos.AttemptView loadAttempt(Long userId, Long attemptId) {
         AttemptContext context = loadAttemptContext(attemptId, userId);
         return buildAttemptView(context);
     }
-    @Transactional
+    /**
+     * Không khai báo @Transactional: khi bật bộ đệm, autosave chỉ cập nhật bộ nhớ và không lấy kết nối DB;
+     * chỉ nhánh ghi thẳng mới mở transaction.
+     */
     public void saveAnswer(Long userId, Long attemptId, ExamDtos.AnswerUpdateRequest request) {
         if (request == null || request.questionId == null) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Thi?u câu h?i");
         }
+        if (answerBuffer.isEnabled()) {
+            answerBuffer.save(userId, attemptId, request);
+            return;
+        }
+        tx.executeWithoutResult(status -> saveAnswerDirect(userId, attemptId, request));
+    }
+
+    private void saveAnswerDirect(Long userId, Long attemptId, ExamDtos.AnswerUpdateRequest request) {
         AttemptContext ctx = loadAttemptContext(attemptId, userId);
         if (!"in_progress".equalsIgnoreCase(ctx.status)) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Bài làm dã k?t thúc");
         }
-        ensureQuestionBelongs(attemptId, request.questionId);
-        if (request.selectedOptionId != null) {
-            ensureOptionBelongs(request.questionId, request.selectedOptionId);
+        if (ctx.questionWatermark != null) {
+            ensureAnswerMatchesSnapshot(ctx, request.questionId, request.selectedOptionId);
+        } else {
+            ensureQuestionBelongs(attemptId, request.questionId);
+            if (request.selectedOptionId != null) {
+                ensureOptionBelongs(request.questionId, request.selectedOptionId);
+            }
         }
         upsertAnswer(attemptId, request.questionId, request.selectedOptionId, Boolean.TRUE.equals(request.markedForReview));
         updateAttemptTracking(attemptId, request.lastSeenQuestionId);
     }
 
+    private void ensureAnswerMatchesSnapshot(AttemptContext ctx, Long questionId, Long optionId) {
+        QuizSnapshotCache.QuizSnapshot snapshot = quizSnapshots.get(ctx.quizId, ctx.quizVersion);
+        QuizSnapshotCache.QuestionSnapshot qs = snapshot != null ? snapshot.question(questionId) : null;
+        if (qs == null || qs.id() > ctx.questionWatermark) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Câu h?i không thu?c attempt");
+        }
+        if (optionId != null && qs.options().stream().noneMatch(o -> o.id().equals(optionId))) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Ðáp án không h?p l?");
+        }
+    }
+
     private void ensureQuestionBelongs(Long attemptId, Long questionId) {
         Number count = (Number) em.createNativeQuery(
                         "SELECT COUNT(*) FROM dbo.quiz_attempt_items WHERE attempt_id = :aid AND question_id = :qid")
@@ -368,30 +361,31 @@ public class StudentExamService {
     }
     @Transactional
     public ExamDtos.SubmitResponse submitAttempt(Long userId, Long attemptId) {
+        long started = System.nanoTime();
         AttemptContext ctx = loadAttemptContext(attemptId, userId);
         if (!"in_progress".equalsIgnoreCase(ctx.status)) {
             return buildSubmitResponse(ctx);
         }
-        List<QuestionRecord> questions = loadQuestions(ctx.quizId);
+        // Ghi nốt các câu trả lời còn trong bộ đệm, cùng transaction với việc chấm
+        answerBuffer.flush(attemptId);
+        ExamGradingEngine.AnswerKey key = gradingEngine.answerKey(ctx.quizId, ctx.quizVersion);
         Map<Long, AnswerState> answers = loadAnswers(attemptId);
+        Map<Long, Long> selected = new HashMap<>();
+        answers.forEach((qid, st) -> selected.put(qid, st.selectedOptionId));
+
+        ExamGradingEngine.GradeResult grade = gradingEngine.grade(key, selected);
+        gradingEngine.persistResults(attemptId, grade.results(), answers.keySet());
 
-        double totalPoints = 0;
-        for (QuestionRecord q : questions) {
-            AnswerState state = answers.get(q.id);
-            boolean correct = state != null && state.selectedOptionId != null &&
-                    q.options.stream().anyMatch(o -> o.id.equals(state.selectedOptionId) && o.correct);
-            double awarded = correct ? (q.points != null ? q.points : 1) : 0;
-            totalPoints += awarded;
-            upsertAnswerResult(attemptId, q.id, correct, awarded);
-        }
-        double maxPoints = ctx.maxPoints != null ? ctx.maxPoints :
-                questions.stream().mapToDouble(q -> q.points != null ? q.points : 1).sum();
+        double totalPoints = grade.totalPoints();
+        double maxPoints = ctx.maxPoints != null ? ctx.maxPoints : grade.maxPoints();
         double scorePercent = maxPoints > 0 ? (totalPoints / maxPoints) * 100.0 : 0;
         boolean passed = scorePercent >= ctx.passingScore;
+        LocalDateTime finishedAt = nowUtc();
 
         em.createNativeQuery(
-                        "UPDATE dbo.quiz_attempts SET status = N'graded', finished_at = SYSUTCDATETIME(), graded_at = SYSUTCDATETIME(), " +
+                        "UPDATE dbo.quiz_attempts SET status = N'graded', finished_at = :now, graded_at = :now, " +
                                 "score = :score, passed = :passed, total_points = :total, max_points = :max WHERE id = :id")
+                .setParameter("now", finishedAt)
                 .setParameter("score", BigDecimal.valueOf(scorePercent))
                 .setParameter("passed", passed ? 1 : 0)
                 .setParameter("total", BigDecimal.valueOf(totalPoints))
@@ -427,8 +421,15 @@ public class StudentExamService {
             }
         }
 
-        AttemptContext refreshed = loadAttemptContext(attemptId, userId);
-        ExamDtos.SubmitResponse dto = buildSubmitResponse(refreshed);
+        // Kết quả đã có sẵn trong bộ nhớ, không cần đọc lại attempt từ DB
+        ctx.status = "graded";
+        ctx.finishedAt = finishedAt;
+        ctx.gradedAt = finishedAt;
+        ctx.score = scorePercent;
+        ctx.passed = passed;
+        ctx.totalPoints = totalPoints;
+        ctx.maxPoints = maxPoints;
+        ExamDtos.SubmitResponse dto = buildSubmitResponse(ctx);
         dto.attemptsUsed = attemptsUsed;
         dto.attemptsAllowed = HARD_MAX_ATTEMPTS;
         dto.attemptsRemaining = Math.max(0, HARD_MAX_ATTEMPTS - attemptsUsed);
@@ -440,17 +441,31 @@ public class StudentExamService {
         } else if (locked) {
             dto.message = "Ban da het luot lam bai. Khoa hoc da bi khoa. Muon hoc lai, vui long dang ky khoa hoc.";
         }
+        answerBuffer.complete(attemptId);
+        gradingEngine.submitLatency().recordSince(started);
         return dto;
     }
 
-    private void upsertAnswerResult(Long attemptId, Long questionId, boolean correct, double points) {
-        em.createNativeQuery(
-                        "UPDATE dbo.quiz_answers SET is_correct = :correct, points_awarded = :points WHERE attempt_id = :aid AND question_id = :qid")
-                .setParameter("correct", correct ? 1 : 0)
-                .setParameter("points", BigDecimal.valueOf(points))
-                .setParameter("aid", attemptId)
-                .setParameter("qid", questionId)
-                .executeUpdate();
+    /**
+     * Nộp hộ attempt đã quá ends_at + auto_submit_grace_sec, dùng đúng luồng chấm của submitAttempt.
+     * Trả false nếu attempt không còn in_progress hoặc chưa tới hạn. Khóa dòng attempt để hai node không cùng nộp.
+     */
+    @Transactional
+    public boolean autoSubmitExpired(Long attemptId) {
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = em.createNativeQuery(
+                        "SELECT a.user_id, a.status, DATEADD(SECOND, COALESCE(q.auto_submit_grace_sec, 0), a.ends_at) " +
+                                "FROM dbo.quiz_attempts a WITH (UPDLOCK, ROWLOCK) JOIN dbo.quizzes q ON q.id = a.quiz_id WHERE a.id = :id")
+                .setParameter("id", attemptId)
+                .getResultList();
+        if (rows.isEmpty()) return false;
+        Object[] r = rows.get(0);
+        LocalDateTime deadline = toDateTime(r[2]);
+        if (!"in_progress".equalsIgnoreCase(String.valueOf(r[1])) || deadline == null || deadline.isAfter(nowUtc())) {
+            return false;
+        }
+        submitAttempt(((Number) r[0]).longValue(), attemptId);
+        return true;
     }
 
     private void issueCertificate(Long courseId, Long userId, Long attemptId) {
@@ -482,7 +497,7 @@ public class StudentExamService {
         List<Object[]> rows = em.createNativeQuery(
                         "SELECT a.id, a.quiz_id, a.user_id, a.status, a.started_at, a.ends_at, a.finished_at, a.graded_at, " +
                                 "a.last_seen_question_id, a.time_limit_sec, a.score, a.passed, a.max_points, a.total_points, " +
-                                "q.course_id, q.lesson_id, q.title, q.passing_score, q.review_policy " +
+                                "q.course_id, q.lesson_id, q.title, q.passing_score, q.review_policy, q.updated_at, a.seed, a.question_watermark " +
                                 "FROM dbo.quiz_attempts a JOIN dbo.quizzes q ON q.id = a.quiz_id WHERE a.id = :id")
                 .setParameter("id", attemptId)
                 .getResultList();
@@ -514,6 +529,9 @@ public class StudentExamService {
         ctx.examTitle = r[16] != null ? r[16].toString() : "";
         ctx.passingScore = r[17] != null ? toDouble(r[17]) : 50.0;
         ctx.reviewPolicy = r[18] != null ? r[18].toString() : "score_only";
+        ctx.quizVersion = toDateTime(r[19]);
+        ctx.seed = r[20] != null ? ((Number) r[20]).longValue() : 0;
+        ctx.questionWatermark = r[21] != null ? ((Number) r[21]).longValue() : null;
         return ctx;
     }
 
@@ -539,7 +557,7 @@ public class StudentExamService {
         view.lastSeenQuestionId = ctx.lastSeenQuestionId;
         boolean review = !"score_only".equalsIgnoreCase(ctx.reviewPolicy);
         if ("in_progress".equalsIgnoreCase(ctx.status) || review) {
-            view.questions = buildAttemptQuestions(ctx.attemptId, review);
+            view.questions = buildAttemptQuestions(ctx, review);
             view.questionCount = view.questions.size();
         } else {
             view.questions = List.of();
@@ -549,25 +567,45 @@ public class StudentExamService {
         return view;
     }
 
-    private List<ExamDtos.AttemptQuestion> buildAttemptQuestions(Long attemptId, boolean revealAnswers) {
-        @SuppressWarnings("unchecked")
-        List<Object[]> rows = em.createNativeQuery(
-                        "SELECT i.question_id, i.display_order, i.option_order, q.text, q.points " +
-                                "FROM dbo.quiz_attempt_items i JOIN dbo.questions q ON q.id = i.question_id WHERE i.attempt_id = :aid ORDER BY i.display_order")
-                .setParameter("aid", attemptId)
-                .getResultList();
-
-        Map<Long, List<ExamDtos.AttemptOption>> optionMap = loadAttemptOptions(rows);
-        Map<Long, AnswerState> answers = loadAnswers(attemptId);
-
+    private List<ExamDtos.AttemptQuestion> buildAttemptQuestions(AttemptContext ctx, boolean revealAnswers) {
+        QuizSnapshotCache.QuizSnapshot snapshot = quizSnapshots.get(ctx.quizId, ctx.quizVersion);
+        Map<Long, AnswerState> answers = loadAnswers(ctx.attemptId);
         List<ExamDtos.AttemptQuestion> list = new ArrayList<>();
-        for (Object[] row : rows) {
-            Long qid = ((Number) row[0]).longValue();
+        if (snapshot == null) return list;
+
+        List<QuizSnapshotCache.QuestionSnapshot> questions;
+        Map<Long, List<ExamDtos.AttemptOption>> options = new HashMap<>();
+        if (ctx.questionWatermark != null) {
+            questions = SeededPermutation.shuffle(snapshot.questionsUpTo(ctx.questionWatermark),
+                    QuizSnapshotCache.QuestionSnapshot::id, ctx.seed, ctx.attemptId);
+            for (QuizSnapshotCache.QuestionSnapshot qs : questions) {
+                List<QuizSnapshotCache.OptionSnapshot> ordered = SeededPermutation.shuffle(qs.options(),
+                        QuizSnapshotCache.OptionSnapshot::id, ctx.seed, SeededPermutation.salt(ctx.attemptId, qs.id()));
+                options.put(qs.id(), toAttemptOptions(ordered));
+            }
+        } else {
+            // Attempt cũ: thứ tự đã lưu trong dbo.quiz_attempt_items
+            @SuppressWarnings("unchecked")
+            List<Object[]> rows = em.createNativeQuery(
+                            "SELECT question_id, option_order FROM dbo.quiz_attempt_items WHERE attempt_id = :aid ORDER BY display_order")
+                    .setParameter("aid", ctx.attemptId)
+                    .getResultList();
+            questions = new ArrayList<>(rows.size());
+            for (Object[] row : rows) {
+                QuizSnapshotCache.QuestionSnapshot qs = snapshot.question(((Number) row[0]).longValue());
+                if (qs == null) continue;   // câu hỏi đã bị xóa khỏi đề
+                questions.add(qs);
+                options.put(qs.id(), orderOptions(qs, row[1] != null ? row[1].toString() : ""));
+            }
+        }
+
+        for (QuizSnapshotCache.QuestionSnapshot qs : questions) {
+            Long qid = qs.id();
             ExamDtos.AttemptQuestion q = new ExamDtos.AttemptQuestion();
             q.id = qid;
-            q.text = row[3] != null ? row[3].toString() : "";
-            q.points = row[4] != null ? ((Number) row[4]).intValue() : 1;
-            q.options = optionMap.getOrDefault(qid, List.of());
+            q.text = qs.text();
+            q.points = qs.points();
+            q.options = options.get(qid);
             AnswerState st = answers.get(qid);
             q.selectedOptionId = st != null ? st.selectedOptionId : null;
             q.markedForReview = st != null && st.markedForReview;
@@ -579,45 +617,33 @@ public class StudentExamService {
         return list;
     }
 
-    private Map<Long, List<ExamDtos.AttemptOption>> loadAttemptOptions(List<Object[]> rows) {
-        Set<Long> questionIds = rows.stream()
-                .map(r -> ((Number) r[0]).longValue())
-                .collect(Collectors.toSet());
-        if (questionIds.isEmpty()) return Map.of();
-
-        @SuppressWarnings("unchecked")
-        List<Object[]> options = em.createNativeQuery(
-                        "SELECT id, question_id, text FROM dbo.question_options WHERE question_id IN :ids")
-                .setParameter("ids", questionIds)
-                .getResultList();
-        Map<Long, ExamDtos.AttemptOption> optionById = new HashMap<>();
-        Map<Long, List<ExamDtos.AttemptOption>> byQuestion = new HashMap<>();
-        for (Object[] opt : options) {
-            Long id = ((Number) opt[0]).longValue();
-            Long qid = ((Number) opt[1]).longValue();
+    private static List<ExamDtos.AttemptOption> toAttemptOptions(List<QuizSnapshotCache.OptionSnapshot> options) {
+        List<ExamDtos.AttemptOption> list = new ArrayList<>(options.size());
+        for (QuizSnapshotCache.OptionSnapshot os : options) {
             ExamDtos.AttemptOption dto = new ExamDtos.AttemptOption();
-            dto.id = id;
-            dto.text = opt[2] != null ? opt[2].toString() : "";
-            optionById.put(id, dto);
-            byQuestion.computeIfAbsent(qid, k -> new ArrayList<>()).add(dto);
+            dto.id = os.id();
+            dto.text = os.text();
+            list.add(dto);
         }
-        for (Object[] row : rows) {
-            Long qid = ((Number) row[0]).longValue();
-            String order = row[2] != null ? row[2].toString() : "";
-            if (order.isBlank()) continue;
-            List<Long> ids = Arrays.stream(order.split(","))
-                    .filter(s -> !s.isBlank())
-                    .map(Long::valueOf)
-                    .collect(Collectors.toList());
-            List<ExamDtos.AttemptOption> reordered = new ArrayList<>();
-            for (Long id : ids) {
-                ExamDtos.AttemptOption opt = optionById.get(id);
-                if (opt != null) reordered.add(opt);
-            }
-            byQuestion.put(qid, reordered);
+        return list;
+    }
+
+    // option_order lưu thứ tự lựa chọn đã xáo lúc tạo attempt; rỗng thì giữ thứ tự gốc
+    private static List<ExamDtos.AttemptOption> orderOptions(QuizSnapshotCache.QuestionSnapshot qs, String order) {
+        Map<Long, ExamDtos.AttemptOption> byId = new LinkedHashMap<>();
+        for (ExamDtos.AttemptOption dto : toAttemptOptions(qs.options())) {
+            byId.put(dto.id, dto);
+        }
+        if (order.isBlank()) return new ArrayList<>(byId.values());
+        List<ExamDtos.AttemptOption> reordered = new ArrayList<>();
+        for (String s : order.split(",")) {
+            if (s.isBlank()) continue;
+            ExamDtos.AttemptOption opt = byId.get(Long.valueOf(s.trim()));
+            if (opt != null) reordered.add(opt);
         }
-        return byQuestion;
+        return reordered;
     }
+
     private Map<Long, AnswerState> loadAnswers(Long attemptId) {
         @SuppressWarnings("unchecked")
         List<Object[]> rows = em.createNativeQuery(
@@ -632,6 +658,14 @@ public class StudentExamService {
             st.markedForReview = row[2] != null && toBool(row[2]);
             map.put(st.questionId, st);
         }
+        // Câu trả lời chưa flush mới hơn bản trong DB
+        answerBuffer.pending(attemptId).forEach((qid, p) -> {
+            AnswerState st = new AnswerState();
+            st.questionId = qid;
+            st.selectedOptionId = p.selectedOptionId();
+            st.markedForReview = p.markedForReview();
+            map.put(qid, st);
+        });
         return map;
     }
 
@@ -641,36 +675,6 @@ public class StudentExamService {
         return (int) Math.max(0, seconds);
     }
 
-    private List<ExamDtos.PrerequisiteStatus> loadPrerequisites(Long courseId, Long userId) {
-        @SuppressWarnings("unchecked")
-        List<Object[]> rows = em.createNativeQuery(
-                        "SELECT p.required_course_id, c.title, " +
-                                "CASE WHEN EXISTS (SELECT 1 FROM dbo.course_certificates cert WHERE cert.course_id = p.required_course_id AND cert.user_id = :uid) THEN 1 ELSE 0 END AS met " +
-                                "FROM dbo.prerequisites p JOIN dbo.courses c ON c.id = p.required_course_id WHERE p.course_id = :cid")
-                .setParameter("cid", courseId)
-                .setParameter("uid", userId)
-                .getResultList();
-        List<ExamDtos.PrerequisiteStatus> list = new ArrayList<>();
-        for (Object[] r : rows) {
-            ExamDtos.PrerequisiteStatus status = new ExamDtos.PrerequisiteStatus();
-            status.courseId = ((Number) r[0]).longValue();
-            status.courseTitle = r[1] != null ? r[1].toString() : "";
-            status.met = toBool(r[2]);
-            list.add(status);
-        }
-        return list;
-    }
-
-    private String getEnrollmentStatus(Long userId, Long courseId) {
-        @SuppressWarnings("unchecked")
-        List<Object> rows = em.createNativeQuery(
-                        "SELECT TOP 1 status FROM dbo.enrollments WHERE user_id = :uid AND course_id = :cid")
-                .setParameter("uid", userId)
-                .setParameter("cid", courseId)
-                .getResultList();
-        return rows.isEmpty() ? null : (rows.get(0) != null ? rows.get(0).toString() : null);
-    }
-
     private static LocalDateTime nowUtc() {
         return LocalDateTime.now(ZoneOffset.UTC);
     }
@@ -713,6 +717,7 @@ public class StudentExamService {
         Integer retakeCooldownMinutes;
         String courseSlug;
         String courseTitle;
+        LocalDateTime version;
     }
 
     private static class ExamAccess {
@@ -730,19 +735,6 @@ public class StudentExamService {
         double totalPoints;
     }
 
-    private static class QuestionRecord {
-        Long id;
-        String text;
-        Integer points;
-        List<OptionRecord> options;
-    }
-
-    private static class OptionRecord {
-        Long id;
-        String text;
-        boolean correct;
-    }
-
     private static class AttemptContext {
         Long attemptId;
         Long quizId;
@@ -763,6 +755,9 @@ public class StudentExamService {
         double passingScore;
         String reviewPolicy;
         String examTitle;
+        LocalDateTime quizVersion;
+        long seed;
+        Long questionWatermark;
     }
 
     private static class AnswerState {
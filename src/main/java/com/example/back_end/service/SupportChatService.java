@@ -5,39 +5,57 @@ import com.example.back_end.model.*;
 import com.example.back_end.model.enums.SupportSenderType;
 import com.example.back_end.model.enums.SupportThreadStatus;
 import com.example.back_end.repository.*;
+import com.example.back_end.service.event.SupportThreadChangedEvent;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 import java.util.stream.Collectors;
 
 @Service
 public class SupportChatService {
+    private static final int MESSAGE_PAGE_SIZE = 50;
+    private static final int MAX_MESSAGE_PAGE_SIZE = 100;
+
     private final SupportThreadRepository threadRepository;
     private final SupportMessageRepository messageRepository;
     private final SupportRatingRepository ratingRepository;
     private final UserRepository userRepository;
     private final CourseRepository courseRepository;
     private final SupportRealtimeGateway realtimeGateway;
+    private final SupportInboxIndex inboxIndex;
+    private final ApplicationEventPublisher events;
+    private final TransactionTemplate readOnlyTx;
 
     public SupportChatService(SupportThreadRepository threadRepository,
                               SupportMessageRepository messageRepository,
                               SupportRatingRepository ratingRepository,
                               UserRepository userRepository,
                               CourseRepository courseRepository,
-                              SupportRealtimeGateway realtimeGateway) {
+                              SupportRealtimeGateway realtimeGateway,
+                              SupportInboxIndex inboxIndex,
+                              ApplicationEventPublisher events,
+                              PlatformTransactionManager transactionManager) {
         this.threadRepository = threadRepository;
         this.messageRepository = messageRepository;
         this.ratingRepository = ratingRepository;
         this.userRepository = userRepository;
         this.courseRepository = courseRepository;
         this.realtimeGateway = realtimeGateway;
+        this.inboxIndex = inboxIndex;
+        this.events = events;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
     }
 
     @Transactional
@@ -69,9 +87,12 @@ public class SupportChatService {
         thread = threadRepository.save(thread);
 
         SupportMessage firstMessage = persistMessage(thread, student, SupportSenderType.STUDENT, req.message, req.attachments);
-        SupportDtos.ThreadDetail detail = toDetail(thread, List.of(firstMessage), null);
+        SupportDtos.MessagePage firstPage = new SupportDtos.MessagePage();
+        firstPage.data = List.of(toMessageDto(firstMessage));
+        SupportDtos.ThreadDetail detail = toDetail(thread, firstPage, null);
         realtimeGateway.threadCreated(detail);
         realtimeGateway.messageAppended(thread.getId(), toMessageDto(firstMessage));
+        events.publishEvent(SupportThreadChangedEvent.created(detail));
         return detail;
     }
 
@@ -93,11 +114,18 @@ public class SupportChatService {
         if (thread.isHasUnreadForStudent()) {
             thread.setHasUnreadForStudent(false);
         }
-        List<SupportMessage> messages = messageRepository.findByThread_IdOrderByCreatedAtAsc(thread.getId());
+        SupportDtos.MessagePage messages = loadMessages(thread.getId(), null, null);
         SupportRating rating = ratingRepository.findByThread_Id(thread.getId()).orElse(null);
         return toDetail(thread, messages, rating);
     }
 
+    @Transactional(readOnly = true)
+    public SupportDtos.MessagePage studentMessages(Long threadId, Long studentId, Long beforeId, Integer limit) {
+        SupportThread thread = threadRepository.findByIdAndStudent_Id(threadId, studentId)
+                .orElseThrow(() -> new IllegalArgumentException("KhA'ng tA?m th???y h??? sA? chat #" + threadId));
+        return loadMessages(thread.getId(), beforeId, limit);
+    }
+
     @Transactional
     public SupportDtos.MessageDto studentSendMessage(Long threadId, Long studentId, SupportDtos.SendMessageRequest req) {
         SupportThread thread = threadRepository.findByIdAndStudent_Id(threadId, studentId)
@@ -107,12 +135,14 @@ public class SupportChatService {
         }
         SupportMessage message = persistMessage(thread, thread.getStudent(), SupportSenderType.STUDENT, req.content, req.attachments);
         SupportDtos.MessageDto dto = toMessageDto(message);
+        SupportDtos.ThreadSummary summary = toSummary(thread);
         realtimeGateway.messageAppended(thread.getId(), dto);
-        realtimeGateway.threadUpdated(toSummary(thread));
+        realtimeGateway.threadUpdated(summary);
+        events.publishEvent(SupportThreadChangedEvent.studentMessage(summary));
         return dto;
     }
 
-    @Transactional(readOnly = true)
+    /** Trả từ SupportInboxIndex; chỉ nhánh đọc DB mới mở transaction (lấy kết nối). */
     public SupportDtos.ThreadListResponse managerThreads(Long managerId, SupportDtos.ThreadFilter filter, int page, int size) {
         Pageable pageable = PageRequest.of(Math.max(page, 0), Math.min(Math.max(size, 1), 50));
         SupportThreadStatus status = filter != null ? SupportThreadStatus.from(valueOrNull(filter.status)) : null;
@@ -121,10 +151,26 @@ public class SupportChatService {
         LocalDateTime fromDate = filter != null ? filter.from : null;
         LocalDateTime toDate = filter != null ? filter.to : null;
         boolean mineOnly = filter != null && Boolean.TRUE.equals(filter.mineOnly);
-        Page<SupportThread> paged = threadRepository.searchForManager(
-                status, courseId, studentKeyword, fromDate, toDate, mineOnly, managerId, pageable
+        SupportDtos.ThreadListResponse indexed = inboxIndex.search(
+                status, courseId, studentKeyword, fromDate, toDate, mineOnly, managerId, page, size
         );
-        return toPagedResponse(paged);
+        if (indexed != null) {
+            return indexed;
+        }
+        // Chỉ mục chưa nạp được hoặc lọc gồm hội thoại đóng đã bị cắt khỏi chỉ mục
+        SupportDtos.ThreadListResponse resp = readOnlyTx.execute(tx -> toPagedResponse(threadRepository.searchForManager(
+                status, courseId, studentKeyword, fromDate, toDate, mineOnly, managerId, pageable
+        )));
+        inboxIndex.fillUnreadCounts(resp.data);
+        return resp;
+    }
+
+    public SupportDtos.InboxBadges managerBadges(Long managerId) {
+        SupportDtos.InboxBadges badges = inboxIndex.badges(managerId);
+        if (badges == null) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Hộp thư đang đồng bộ, vui lòng thử lại sau");
+        }
+        return badges;
     }
 
     @Transactional
@@ -136,12 +182,21 @@ public class SupportChatService {
                 && thread.getManager().getId().equals(viewerManagerId)
                 && thread.isHasUnreadForManager()) {
             thread.setHasUnreadForManager(false);
+            events.publishEvent(SupportThreadChangedEvent.managerRead(toSummary(thread)));
         }
-        List<SupportMessage> messages = messageRepository.findByThread_IdOrderByCreatedAtAsc(thread.getId());
+        SupportDtos.MessagePage messages = loadMessages(thread.getId(), null, null);
         SupportRating rating = ratingRepository.findByThread_Id(thread.getId()).orElse(null);
         return toDetail(thread, messages, rating);
     }
 
+    @Transactional(readOnly = true)
+    public SupportDtos.MessagePage managerMessages(Long threadId, Long beforeId, Integer limit) {
+        if (!threadRepository.existsById(threadId)) {
+            throw new IllegalArgumentException("KhA'ng tA?m th???y h??? sA? chat #" + threadId);
+        }
+        return loadMessages(threadId, beforeId, limit);
+    }
+
     @Transactional
     public SupportDtos.ThreadSummary claimThread(Long threadId, Long managerId) {
         SupportThread thread = threadRepository.findById(threadId)
@@ -157,6 +212,7 @@ public class SupportChatService {
         thread.setUpdatedAt(LocalDateTime.now());
         SupportDtos.ThreadSummary summary = toSummary(thread);
         realtimeGateway.threadUpdated(summary);
+        events.publishEvent(SupportThreadChangedEvent.updated(summary));
         return summary;
     }
 
@@ -174,8 +230,10 @@ public class SupportChatService {
         }
         SupportMessage message = persistMessage(thread, thread.getManager(), SupportSenderType.MANAGER, req.content, req.attachments);
         SupportDtos.MessageDto dto = toMessageDto(message);
+        SupportDtos.ThreadSummary summary = toSummary(thread);
         realtimeGateway.messageAppended(thread.getId(), dto);
-        realtimeGateway.threadUpdated(toSummary(thread));
+        realtimeGateway.threadUpdated(summary);
+        events.publishEvent(SupportThreadChangedEvent.managerMessage(summary));
         return dto;
     }
 
@@ -198,6 +256,7 @@ public class SupportChatService {
         }
         SupportDtos.ThreadSummary summary = toSummary(thread);
         realtimeGateway.threadUpdated(summary);
+        events.publishEvent(SupportThreadChangedEvent.updated(summary));
         return summary;
     }
 
@@ -221,6 +280,7 @@ public class SupportChatService {
         SupportDtos.ThreadSummary summary = toSummary(thread);
         realtimeGateway.threadUpdated(summary);
         realtimeGateway.threadTransferred(summary);
+        events.publishEvent(SupportThreadChangedEvent.updated(summary));
         return summary;
     }
 
@@ -310,6 +370,42 @@ public class SupportChatService {
         }
     }
 
+    /**
+     * Một trang tin nhắn theo con trỏ id: mới nhất khi beforeId null, nếu không thì các tin có id nhỏ hơn beforeId.
+     * Lấy thêm một dòng để biết còn trang cũ hơn; đính kèm của cả trang lấy bằng một truy vấn IN thay vì từng tin.
+     */
+    private SupportDtos.MessagePage loadMessages(Long threadId, Long beforeId, Integer limit) {
+        int size = limit == null ? MESSAGE_PAGE_SIZE : Math.min(Math.max(limit, 1), MAX_MESSAGE_PAGE_SIZE);
+        Pageable pageable = PageRequest.of(0, size + 1);
+        List<SupportMessage> rows = beforeId == null
+                ? messageRepository.findByThread_IdOrderByIdDesc(threadId, pageable)
+                : messageRepository.findByThread_IdAndIdLessThanOrderByIdDesc(threadId, beforeId, pageable);
+        boolean hasMore = rows.size() > size;
+        List<SupportMessage> messages = new ArrayList<>(rows.subList(0, Math.min(rows.size(), size)));
+        Collections.reverse(messages);
+
+        Map<Long, List<String>> attachments = attachmentsByMessage(messages);
+        SupportDtos.MessagePage page = new SupportDtos.MessagePage();
+        page.data = messages.stream()
+                .map(m -> toMessageDto(m, attachments.getOrDefault(m.getId(), List.of())))
+                .collect(Collectors.toList());
+        page.hasMore = hasMore;
+        page.nextBeforeId = hasMore ? messages.get(0).getId() : null;
+        return page;
+    }
+
+    private Map<Long, List<String>> attachmentsByMessage(List<SupportMessage> messages) {
+        if (messages.isEmpty()) return Map.of();
+        List<Long> ids = messages.stream().map(SupportMessage::getId).collect(Collectors.toList());
+        Map<Long, List<String>> result = new HashMap<>();
+        for (Object[] row : messageRepository.findAttachmentUrls(ids)) {
+            String url = (String) row[1];
+            if (url == null || url.isBlank()) continue;
+            result.computeIfAbsent(((Number) row[0]).longValue(), k -> new ArrayList<>()).add(url);
+        }
+        return result;
+    }
+
     private SupportDtos.ThreadListResponse toPagedResponse(Page<SupportThread> paged) {
         SupportDtos.ThreadListResponse resp = new SupportDtos.ThreadListResponse();
         resp.data = paged.getContent().stream().map(this::toSummary).collect(Collectors.toList());
@@ -343,7 +439,7 @@ public class SupportChatService {
         return summary;
     }
 
-    private SupportDtos.ThreadDetail toDetail(SupportThread thread, List<SupportMessage> messages, SupportRating rating) {
+    private SupportDtos.ThreadDetail toDetail(SupportThread thread, SupportDtos.MessagePage messages, SupportRating rating) {
         SupportDtos.ThreadDetail detail = new SupportDtos.ThreadDetail();
         SupportDtos.ThreadSummary summary = toSummary(thread);
         detail.id = summary.id;
@@ -365,12 +461,23 @@ public class SupportChatService {
         detail.updatedAt = summary.updatedAt;
         detail.student = summary.student;
         detail.manager = summary.manager;
-        detail.messages = messages.stream().map(this::toMessageDto).collect(Collectors.toList());
+        detail.messages = messages.data;
+        detail.hasMoreMessages = messages.hasMore;
+        detail.nextBeforeId = messages.nextBeforeId;
         detail.rating = rating != null ? toRatingDto(rating) : null;
         return detail;
     }
 
     private SupportDtos.MessageDto toMessageDto(SupportMessage message) {
+        List<String> attachments = message.getAttachments() == null ? List.of()
+                : message.getAttachments().stream()
+                .map(SupportMessageAttachment::getAttachmentUrl)
+                .filter(url -> url != null && !url.isBlank())
+                .collect(Collectors.toList());
+        return toMessageDto(message, attachments);
+    }
+
+    private SupportDtos.MessageDto toMessageDto(SupportMessage message, List<String> attachments) {
         SupportDtos.MessageDto dto = new SupportDtos.MessageDto();
         dto.id = message.getId();
         dto.threadId = message.getThread() != null ? message.getThread().getId() : null;
@@ -378,11 +485,6 @@ public class SupportChatService {
         dto.sender = message.getSender() != null ? toParticipant(message.getSender()) : null;
         dto.content = message.getContent();
         dto.createdAt = message.getCreatedAt();
-        List<String> attachments = message.getAttachments() == null ? List.of()
-                : message.getAttachments().stream()
-                .map(SupportMessageAttachment::getAttachmentUrl)
-                .filter(url -> url != null && !url.isBlank())
-                .collect(Collectors.toList());
         dto.attachments = attachments;
         return dto;
     }
@@ -0,0 +1,24 @@
+package com.example.back_end.service;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Kênh phát sự kiện support chat giữa các node (chế độ app.support.broker.mode=relay).
+ *
+ * Mỗi node phát sự kiện đã serialize lên bus và nhận lại toàn bộ sự kiện (kể cả của chính mình) theo đúng thứ tự
+ * phát, rồi đẩy xuống simple broker trong JVM cho các socket đang nối vào node đó. Vì mọi node giao theo cùng một
+ * thứ tự nên tin nhắn của một hội thoại không bị đảo dù người gửi nằm ở node khác nhau.
+ */
+public interface SupportEventBus {
+
+    /** Sự kiện đã serialize: đích STOMP, payload JSON và thời điểm phát (epoch ms) để đo độ trễ giao. */
+    record Envelope(String destination, String payload, long publishedAt) {}
+
+    void publish(Envelope envelope);
+
+    /** Đăng ký nhận sự kiện; listener được gọi tuần tự theo thứ tự phát. */
+    void subscribe(Consumer<Envelope> listener);
+
+    Map<String, Object> stats();
+}
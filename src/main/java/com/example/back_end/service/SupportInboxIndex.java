@@ -0,0 +1,466 @@
+package com.example.back_end.service;
+
+import com.example.back_end.dto.SupportDtos;
+import com.example.back_end.model.enums.SupportSenderType;
+import com.example.back_end.model.enums.SupportThreadStatus;
+import com.example.back_end.service.event.SupportThreadChangedEvent;
+import com.example.back_end.util.LatencyRecorder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Chỉ mục hộp thư quản lý support trong bộ nhớ, thay cho searchForManager ở mỗi lần làm mới hộp thư.
+ *
+ * Giữ bản tóm tắt của mọi hội thoại đang mở và tối đa max-closed hội thoại đã đóng mới nhất, kèm số tin học viên
+ * quản lý chưa đọc và bộ đếm theo trạng thái (toàn hệ thống và theo từng quản lý). Dựng khi ứng dụng khởi động, đồng
+ * bộ lại với DB mỗi refresh-ms và cập nhật từ SupportThreadChangedEvent sau commit; mỗi thay đổi được đẩy thành
+ * InboxDelta trên /topic/support/inbox. Chế độ relay: các node khác nhận InboxDelta qua bus và áp giá trị của nó.
+ * Bản cũ hơn bản đang giữ (updatedAt nhỏ hơn) bị bỏ qua nên áp lại một thay đổi không làm sai số đếm.
+ */
+@Component
+public class SupportInboxIndex {
+    private static final Logger log = LoggerFactory.getLogger(SupportInboxIndex.class);
+    private static final int MAX_PAGE_SIZE = 50;
+
+    // Số chưa đọc lúc nạp: tin học viên sau lần trả lời cuối của quản lý (ước lượng, quản lý có thể đã mở xem)
+    private static final String LOAD_SQL = """
+            SELECT t.id, t.topic, t.subject, t.origin, t.channel, t.metadata, t.course_id, c.title AS course_title,
+                   t.status, t.priority, t.last_message_preview, t.last_message_at, t.last_sender,
+                   t.has_unread_for_student, t.has_unread_for_manager, t.created_at, t.updated_at,
+                   t.student_id, su.full_name AS student_name, su.email AS student_email, su.avatar_url AS student_avatar,
+                   t.manager_id, mu.full_name AS manager_name, mu.email AS manager_email, mu.avatar_url AS manager_avatar,
+                   CASE WHEN t.has_unread_for_manager = 1 THEN (
+                       SELECT COUNT(*) FROM dbo.support_messages m
+                       WHERE m.thread_id = t.id AND m.sender_type = N'STUDENT'
+                         AND (t.last_manager_activity_at IS NULL OR m.created_at > t.last_manager_activity_at)
+                   ) ELSE 0 END AS unread_count
+            FROM dbo.support_threads t
+            JOIN dbo.users su ON su.id = t.student_id
+            LEFT JOIN dbo.users mu ON mu.id = t.manager_id
+            LEFT JOIN dbo.courses c ON c.id = t.course_id
+            WHERE t.status <> N'CLOSED'
+               OR t.id IN (SELECT TOP (?) id FROM dbo.support_threads WHERE status = N'CLOSED'
+                           ORDER BY created_at DESC, id DESC)
+            """;
+
+    private static final Comparator<Entry> OLDEST_FIRST = Comparator
+            .comparing((Entry e) -> e.summary().createdAt)
+            .thenComparing(e -> e.summary().id);
+    private static final Comparator<SupportDtos.ThreadSummary> NEWEST_FIRST = Comparator
+            .comparing((SupportDtos.ThreadSummary s) -> s.createdAt, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(s -> s.id, Comparator.reverseOrder());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SupportRealtimeGateway realtimeGateway;
+    private final ObjectMapper objectMapper;
+    private final int maxClosed;
+
+    // Chỉ đọc/ghi dưới khóa của index; null khi chưa nạp được
+    private State state;
+    // Khác null khi đang nạp: các thay đổi trong lúc đó được áp lại lên bản vừa nạp
+    private List<Consumer<State>> pending;
+    private final AtomicBoolean loading = new AtomicBoolean();
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder remoteApplied = new LongAdder();
+    private final LongAdder staleSkipped = new LongAdder();
+    private final LongAdder remoteFailures = new LongAdder();
+    private final LongAdder memoryQueries = new LongAdder();
+    private final LongAdder dbFallbacks = new LongAdder();
+    private final LatencyRecorder loadLatency = new LatencyRecorder("support.inbox.load");
+    private final LatencyRecorder queryLatency = new LatencyRecorder("support.inbox.query");
+
+    public SupportInboxIndex(JdbcTemplate jdbcTemplate,
+                             SupportRealtimeGateway realtimeGateway,
+                             ObjectMapper objectMapper,
+                             SupportEventBus eventBus,
+                             @Value("${app.support.broker.mode:simple}") String mode,
+                             @Value("${app.support.inbox.max-closed:20000}") int maxClosed) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.realtimeGateway = realtimeGateway;
+        this.objectMapper = objectMapper;
+        this.maxClosed = Math.max(0, maxClosed);
+        if ("relay".equalsIgnoreCase(mode == null ? null : mode.trim())) {
+            eventBus.subscribe(this::onBusEvent);
+        }
+    }
+
+    /** Một hội thoại trong chỉ mục; summary không bị sửa sau khi đưa vào nên trả thẳng cho client được. */
+    record Entry(SupportDtos.ThreadSummary summary, int unread) {
+        Long managerId() {
+            return summary.manager != null ? summary.manager.id : null;
+        }
+
+        boolean closed() {
+            return summary.status == SupportThreadStatus.CLOSED;
+        }
+    }
+
+    /** Bộ đếm của các hội thoại đang mở (không tính CLOSED). */
+    private static final class Counts {
+        final long[] byStatus = new long[SupportThreadStatus.values().length];
+        long unassigned;
+        long unreadThreads;
+        long unreadMessages;
+
+        void add(Entry e, int sign) {
+            byStatus[e.summary().status.ordinal()] += sign;
+            if (e.managerId() == null) unassigned += sign;
+            if (e.unread() > 0) {
+                unreadThreads += sign;
+                unreadMessages += (long) sign * e.unread();
+            }
+        }
+
+        SupportDtos.InboxCounts toDto() {
+            SupportDtos.InboxCounts dto = new SupportDtos.InboxCounts();
+            dto.byStatus = new EnumMap<>(SupportThreadStatus.class);
+            for (SupportThreadStatus status : SupportThreadStatus.values()) {
+                if (status != SupportThreadStatus.CLOSED) dto.byStatus.put(status, byStatus[status.ordinal()]);
+            }
+            dto.unassigned = unassigned;
+            dto.unreadThreads = unreadThreads;
+            dto.unreadMessages = unreadMessages;
+            return dto;
+        }
+    }
+
+    private static final class State {
+        final int maxClosed;
+        final Map<Long, Entry> entries = new HashMap<>();
+        final TreeSet<Entry> closed = new TreeSet<>(OLDEST_FIRST);
+        final Counts all = new Counts();
+        final Map<Long, Counts> byManager = new HashMap<>();
+        // Đã có hội thoại đóng không nằm trong chỉ mục: lọc gồm CLOSED phải đọc DB
+        boolean truncated;
+
+        State(int maxClosed) {
+            this.maxClosed = maxClosed;
+        }
+
+        void put(Entry e) {
+            Entry prev = entries.put(e.summary().id, e);
+            if (prev != null) count(prev, -1);
+            count(e, 1);
+            while (closed.size() > maxClosed) {
+                entries.remove(closed.pollFirst().summary().id);
+                truncated = true;
+            }
+        }
+
+        private void count(Entry e, int sign) {
+            if (e.closed()) {
+                if (sign > 0) closed.add(e); else closed.remove(e);
+                return;
+            }
+            all.add(e, sign);
+            if (e.managerId() != null) byManager.computeIfAbsent(e.managerId(), k -> new Counts()).add(e, sign);
+        }
+    }
+
+    public synchronized boolean isReady() {
+        return state != null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        rebuild();
+    }
+
+    @Scheduled(fixedDelayString = "${app.support.inbox.refresh-ms:300000}",
+            initialDelayString = "${app.support.inbox.refresh-ms:300000}")
+    public void refresh() {
+        rebuild();
+    }
+
+    /** Nạp lại toàn bộ từ DB sang cấu trúc mới rồi mới tráo; lỗi thì giữ bản cũ (hoặc để service đọc DB). */
+    public void rebuild() {
+        if (!loading.compareAndSet(false, true)) return;
+        long started = System.nanoTime();
+        synchronized (this) {
+            pending = new ArrayList<>();
+        }
+        try {
+            List<Entry> loaded = loadThreads();
+            synchronized (this) {
+                State next = new State(maxClosed);
+                for (Entry e : loaded) next.put(e);
+                for (Consumer<State> change : pending) change.accept(next);
+                state = next;
+            }
+            loads.increment();
+        } catch (DataAccessException ex) {
+            loadFailures.increment();
+            log.warn("Không nạp được chỉ mục hộp thư support, danh sách sẽ đọc DB: {}", ex.getMessage());
+        } finally {
+            synchronized (this) {
+                pending = null;
+            }
+            loading.set(false);
+            loadLatency.recordSince(started);
+        }
+    }
+
+    /** Lấy thêm một hội thoại đóng để State biết là đã cắt bớt. */
+    List<Entry> loadThreads() {
+        return jdbcTemplate.query(LOAD_SQL, (rs, i) -> new Entry(toSummary(rs), rs.getInt("unread_count")),
+                maxClosed + 1);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onThreadChanged(SupportThreadChangedEvent event) {
+        if (event.thread() == null || event.thread().id == null) return;
+        SupportDtos.InboxDelta delta;
+        synchronized (this) {
+            if (pending != null) pending.add(s -> applyLocal(s, event));
+            if (state == null) return;
+            delta = applyLocal(state, event);
+        }
+        if (delta != null) realtimeGateway.inboxChanged(delta);
+    }
+
+    private SupportDtos.InboxDelta applyLocal(State s, SupportThreadChangedEvent event) {
+        SupportDtos.ThreadSummary next = event.thread();
+        Entry prev = s.entries.get(next.id);
+        if (isStale(prev, next)) {
+            staleSkipped.increment();
+            return null;
+        }
+        int unread = switch (event.kind()) {
+            case CREATED -> 1;
+            // Cùng lastMessageAt: tin này đã được tính (áp lại sau khi nạp)
+            case STUDENT_MESSAGE -> prev == null ? 1
+                    : isAfter(next.lastMessageAt, prev.summary().lastMessageAt) ? prev.unread() + 1 : prev.unread();
+            case MANAGER_MESSAGE, MANAGER_READ -> 0;
+            case UPDATED -> prev != null ? prev.unread() : (next.unreadForManager ? 1 : 0);
+        };
+        if (!next.unreadForManager) unread = 0;
+        Entry entry = new Entry(copyOf(next, unread), unread);
+        s.put(entry);
+        applied.increment();
+
+        SupportDtos.InboxDelta delta = new SupportDtos.InboxDelta();
+        delta.thread = entry.summary();
+        if (prev != null) {
+            delta.previousStatus = prev.summary().status;
+            delta.previousManagerId = prev.managerId();
+            delta.previousUnreadCount = prev.unread();
+        }
+        delta.counts = s.all.toDto();
+        return delta;
+    }
+
+    /** InboxDelta từ bus (relay), kể cả của chính node này: áp nguyên giá trị, không phát lại. */
+    private void onBusEvent(SupportEventBus.Envelope envelope) {
+        if (!SupportRealtimeGateway.INBOX_CHANNEL.equals(envelope.destination())) return;
+        SupportDtos.InboxDelta delta;
+        try {
+            delta = objectMapper.readValue(envelope.payload(), SupportDtos.InboxDelta.class);
+        } catch (JsonProcessingException ex) {
+            remoteFailures.increment();
+            return;
+        }
+        if (delta.thread == null || delta.thread.id == null) return;
+        synchronized (this) {
+            if (pending != null) pending.add(s -> applyRemote(s, delta.thread));
+            if (state != null) applyRemote(state, delta.thread);
+        }
+    }
+
+    private void applyRemote(State s, SupportDtos.ThreadSummary next) {
+        if (isStale(s.entries.get(next.id), next)) {
+            staleSkipped.increment();
+            return;
+        }
+        s.put(new Entry(copyOf(next, next.unreadCount), next.unreadCount));
+        remoteApplied.increment();
+    }
+
+    /**
+     * Danh sách hộp thư quản lý từ bộ nhớ, cùng bộ lọc và thứ tự (mới tạo trước) như searchForManager.
+     * Trả về null khi chưa nạp được hoặc lọc có thể gồm hội thoại đóng đã bị cắt khỏi chỉ mục.
+     */
+    public SupportDtos.ThreadListResponse search(SupportThreadStatus status, Long courseId, String studentKeyword,
+                                                 LocalDateTime from, LocalDateTime to, boolean mineOnly, Long managerId,
+                                                 int page, int size) {
+        long started = System.nanoTime();
+        String keyword = studentKeyword == null ? null : studentKeyword.toLowerCase(Locale.ROOT);
+        List<SupportDtos.ThreadSummary> matches = new ArrayList<>();
+        synchronized (this) {
+            if (state == null || (state.truncated && (status == null || status == SupportThreadStatus.CLOSED))) {
+                dbFallbacks.increment();
+                return null;
+            }
+            for (Entry e : state.entries.values()) {
+                SupportDtos.ThreadSummary s = e.summary();
+                if (status != null && s.status != status) continue;
+                if (courseId != null && !courseId.equals(s.courseId)) continue;
+                if (from != null && (s.createdAt == null || s.createdAt.isBefore(from))) continue;
+                if (to != null && (s.createdAt == null || s.createdAt.isAfter(to))) continue;
+                if (mineOnly && (managerId == null || !managerId.equals(e.managerId()))) continue;
+                if (keyword != null && !matchesStudent(s.student, keyword)) continue;
+                matches.add(s);
+            }
+        }
+        matches.sort(NEWEST_FIRST);
+        int pageSize = Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+        int pageNo = Math.max(page, 0);
+        long offset = (long) pageNo * pageSize;
+        SupportDtos.ThreadListResponse resp = new SupportDtos.ThreadListResponse();
+        resp.data = offset >= matches.size() ? List.of()
+                : new ArrayList<>(matches.subList((int) offset, (int) Math.min(matches.size(), offset + pageSize)));
+        resp.totalElements = matches.size();
+        resp.page = pageNo;
+        resp.size = pageSize;
+        memoryQueries.increment();
+        queryLatency.recordSince(started);
+        return resp;
+    }
+
+    private static boolean matchesStudent(SupportDtos.ParticipantInfo student, String keyword) {
+        if (student == null) return false;
+        return (student.fullName != null && student.fullName.toLowerCase(Locale.ROOT).contains(keyword))
+                || (student.email != null && student.email.toLowerCase(Locale.ROOT).contains(keyword));
+    }
+
+    /** Điền unreadCount cho danh sách đọc từ DB (các bản tóm tắt vừa dựng, chưa ai dùng chung). */
+    public void fillUnreadCounts(List<SupportDtos.ThreadSummary> summaries) {
+        if (summaries == null) return;
+        synchronized (this) {
+            for (SupportDtos.ThreadSummary s : summaries) {
+                Entry e = state != null ? state.entries.get(s.id) : null;
+                s.unreadCount = !s.unreadForManager ? 0 : e != null ? e.unread() : 1;
+            }
+        }
+    }
+
+    /** Số badge toàn hệ thống và của riêng quản lý; null khi chỉ mục chưa nạp được. */
+    public synchronized SupportDtos.InboxBadges badges(Long managerId) {
+        if (state == null) return null;
+        SupportDtos.InboxBadges badges = new SupportDtos.InboxBadges();
+        badges.all = state.all.toDto();
+        Counts mine = managerId != null ? state.byManager.get(managerId) : null;
+        badges.mine = (mine != null ? mine : new Counts()).toDto();
+        return badges;
+    }
+
+    private static boolean isStale(Entry prev, SupportDtos.ThreadSummary next) {
+        return prev != null && prev.summary().updatedAt != null && next.updatedAt != null
+                && next.updatedAt.isBefore(prev.summary().updatedAt);
+    }
+
+    private static boolean isAfter(LocalDateTime a, LocalDateTime b) {
+        return a != null && (b == null || a.isAfter(b));
+    }
+
+    private static SupportDtos.ThreadSummary copyOf(SupportDtos.ThreadSummary src, int unread) {
+        SupportDtos.ThreadSummary s = new SupportDtos.ThreadSummary();
+        s.id = src.id;
+        s.topic = src.topic;
+        s.subject = src.subject;
+        s.origin = src.origin;
+        s.channel = src.channel;
+        s.metadata = src.metadata;
+        s.courseId = src.courseId;
+        s.courseTitle = src.courseTitle;
+        s.status = src.status;
+        s.priority = src.priority;
+        s.lastMessagePreview = src.lastMessagePreview;
+        s.lastMessageAt = src.lastMessageAt;
+        s.lastSender = src.lastSender;
+        s.unreadForStudent = src.unreadForStudent;
+        s.unreadForManager = src.unreadForManager;
+        s.unreadCount = unread;
+        s.createdAt = src.createdAt;
+        s.updatedAt = src.updatedAt;
+        s.student = src.student;
+        s.manager = src.manager;
+        return s;
+    }
+
+    private static SupportDtos.ThreadSummary toSummary(ResultSet rs) throws SQLException {
+        SupportDtos.ThreadSummary s = new SupportDtos.ThreadSummary();
+        s.id = rs.getLong("id");
+        s.topic = rs.getString("topic");
+        s.subject = rs.getString("subject");
+        s.origin = rs.getString("origin");
+        s.channel = rs.getString("channel");
+        s.metadata = rs.getString("metadata");
+        s.courseId = longOrNull(rs, "course_id");
+        s.courseTitle = rs.getString("course_title");
+        s.status = SupportThreadStatus.from(rs.getString("status"));
+        s.priority = rs.getString("priority");
+        s.lastMessagePreview = rs.getString("last_message_preview");
+        s.lastMessageAt = toLocal(rs.getTimestamp("last_message_at"));
+        s.lastSender = SupportSenderType.from(rs.getString("last_sender"));
+        s.unreadForStudent = rs.getBoolean("has_unread_for_student");
+        s.unreadForManager = rs.getBoolean("has_unread_for_manager");
+        s.createdAt = toLocal(rs.getTimestamp("created_at"));
+        s.updatedAt = toLocal(rs.getTimestamp("updated_at"));
+        s.student = participant(rs.getLong("student_id"), rs.getString("student_name"),
+                rs.getString("student_email"), rs.getString("student_avatar"));
+        Long managerId = longOrNull(rs, "manager_id");
+        s.manager = managerId == null ? null : participant(managerId, rs.getString("manager_name"),
+                rs.getString("manager_email"), rs.getString("manager_avatar"));
+        return s;
+    }
+
+    private static SupportDtos.ParticipantInfo participant(Long id, String fullName, String email, String avatarUrl) {
+        SupportDtos.ParticipantInfo info = new SupportDtos.ParticipantInfo();
+        info.id = id;
+        info.fullName = fullName;
+        info.email = email;
+        info.avatarUrl = avatarUrl;
+        return info;
+    }
+
+    private static Long longOrNull(ResultSet rs, String column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static LocalDateTime toLocal(Timestamp ts) {
+        return ts == null ? null : ts.toLocalDateTime();
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("ready", state != null);
+        m.put("threads", state != null ? state.entries.size() : 0);
+        m.put("closedThreads", state != null ? state.closed.size() : 0);
+        m.put("truncated", state != null && state.truncated);
+        m.put("counts", state != null ? state.all.toDto() : null);
+        m.put("loads", loads.sum());
+        m.put("loadFailures", loadFailures.sum());
+        m.put("applied", applied.sum());
+        m.put("remoteApplied", remoteApplied.sum());
+        m.put("staleSkipped", staleSkipped.sum());
+        m.put("remoteFailures", remoteFailures.sum());
+        m.put("memoryQueries", memoryQueries.sum());
+        m.put("dbFallbacks", dbFallbacks.sum());
+        m.put("loadLatency", loadLatency.snapshot());
+        m.put("queryLatency", queryLatency.snapshot());
+        return m;
+    }
+}
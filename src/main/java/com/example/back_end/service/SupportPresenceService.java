@@ -0,0 +1,349 @@
+package com.example.back_end.service;
+
+import com.example.back_end.dto.SupportDtos;
+import com.example.back_end.security.AuthenticatedUser;
+import com.example.back_end.security.PrincipalCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.security.Principal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Trạng thái online và đang gõ của support chat, chỉ nằm trong bộ nhớ (không ghi DB).
+ *
+ * Mỗi phiên STOMP đã xác thực (JWT lúc handshake) được ghi theo người dùng và theo các hội thoại nó đang subscribe
+ * (/topic/support/threads/{id}), trong các stripe có khóa riêng. Heartbeat (/app/support/heartbeat) hay frame bất kỳ
+ * chỉ cập nhật thời điểm hoạt động của phiên; mỗi flush-ms một lượt quét đánh dấu phiên im lặng quá idle-ms là offline
+ * và gửi thay đổi online/offline gộp thành một tin trên /topic/support/presence. Sự kiện đang gõ chỉ gửi tới những
+ * người đang mở hội thoại đó (học viên chủ hội thoại, quản lý), nên chi phí không phụ thuộc số phiên đang kết nối.
+ * Mỗi node chỉ biết các phiên nối vào chính nó nên delta presence chỉ gửi tới socket của node đó, kể cả ở chế độ relay.
+ */
+@Component
+public class SupportPresenceService {
+    private static final int STRIPES = 16;
+    private static final int MAX_THREAD_OWNERS = 10_000;
+    private static final Pattern THREAD_TOPIC = Pattern.compile("^/topic/support/threads/(\\d+)$");
+    private static final String THREAD_STUDENT_SQL = "SELECT student_id FROM dbo.support_threads WHERE id = ?";
+
+    private final PrincipalCache principalCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final SupportRealtimeGateway realtimeGateway;
+    private final long idleMs;
+    private final long typingThrottleMs;
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final List<Map<Long, Set<String>>> userStripes = new ArrayList<>(STRIPES);
+    private final List<Map<Long, Set<String>>> threadStripes = new ArrayList<>(STRIPES);
+    private final Set<Long> dirtyUsers = ConcurrentHashMap.newKeySet();
+    // Người dùng đã báo online trong lượt flush gần nhất; chỉ thread flush sửa
+    private final Set<Long> publishedOnline = ConcurrentHashMap.newKeySet();
+    // Chủ hội thoại không đổi sau khi tạo nên giữ tới khi bị đẩy khỏi LRU
+    private final LinkedHashMap<Long, Long> threadStudents;
+
+    private final LongAdder connects = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder presenceBatches = new LongAdder();
+    private final LongAdder typingForwarded = new LongAdder();
+    private final LongAdder typingThrottled = new LongAdder();
+    private final LongAdder typingRejected = new LongAdder();
+
+    public SupportPresenceService(PrincipalCache principalCache,
+                                  JdbcTemplate jdbcTemplate,
+                                  SupportRealtimeGateway realtimeGateway,
+                                  @Value("${app.support.presence.idle-ms:60000}") long idleMs,
+                                  @Value("${app.support.presence.typing-throttle-ms:2000}") long typingThrottleMs) {
+        this.principalCache = principalCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.realtimeGateway = realtimeGateway;
+        this.idleMs = Math.max(1, idleMs);
+        this.typingThrottleMs = Math.max(0, typingThrottleMs);
+        for (int i = 0; i < STRIPES; i++) {
+            userStripes.add(new HashMap<>());
+            threadStripes.add(new HashMap<>());
+        }
+        this.threadStudents = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                return size() > MAX_THREAD_OWNERS;
+            }
+        };
+    }
+
+    private static final class Session {
+        final String id;
+        final Long userId;
+        final String email;
+        final String fullName;
+        final boolean manager;
+        // subscription id -> thread id
+        final Map<String, Long> subscriptions = new ConcurrentHashMap<>();
+        final Map<Long, Long> lastTypingAt = new ConcurrentHashMap<>();
+        volatile long lastSeen;
+        volatile boolean active = true;
+
+        Session(String id, AuthenticatedUser user, long now) {
+            this.id = id;
+            this.userId = user.id();
+            this.email = user.email();
+            this.fullName = user.fullName();
+            this.manager = user.hasRole("manager");
+            this.lastSeen = now;
+        }
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        AuthenticatedUser user = userOf(event.getUser());
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (user != null && sessionId != null) connected(sessionId, user, System.currentTimeMillis());
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        disconnected(event.getSessionId());
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        subscribed(headers.getSessionId(), headers.getSubscriptionId(), headers.getDestination(),
+                System.currentTimeMillis());
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        unsubscribed(headers.getSessionId(), headers.getSubscriptionId());
+    }
+
+    private AuthenticatedUser userOf(Principal principal) {
+        if (!(principal instanceof Authentication auth)) return null;
+        try {
+            return principalCache.require(auth);
+        } catch (RuntimeException ex) {
+            return null;
+        }
+    }
+
+    void connected(String sessionId, AuthenticatedUser user, long now) {
+        Session session = new Session(sessionId, user, now);
+        sessions.put(sessionId, session);
+        index(userStripes, session.userId, sessionId);
+        connects.increment();
+        dirtyUsers.add(session.userId);
+    }
+
+    void disconnected(String sessionId) {
+        if (sessionId == null) return;
+        Session session = sessions.remove(sessionId);
+        if (session == null) return;
+        unindex(userStripes, session.userId, sessionId);
+        for (Long threadId : session.subscriptions.values()) {
+            unindex(threadStripes, threadId, sessionId);
+        }
+        dirtyUsers.add(session.userId);
+    }
+
+    void subscribed(String sessionId, String subscriptionId, String destination, long now) {
+        Session session = sessionId == null ? null : sessions.get(sessionId);
+        if (session == null) return;
+        touch(session, now);
+        if (subscriptionId == null || destination == null) return;
+        Matcher m = THREAD_TOPIC.matcher(destination);
+        if (!m.matches()) return;
+        Long threadId = Long.valueOf(m.group(1));
+        session.subscriptions.put(subscriptionId, threadId);
+        index(threadStripes, threadId, sessionId);
+    }
+
+    void unsubscribed(String sessionId, String subscriptionId) {
+        Session session = sessionId == null ? null : sessions.get(sessionId);
+        if (session == null || subscriptionId == null) return;
+        Long threadId = session.subscriptions.remove(subscriptionId);
+        if (threadId != null && !session.subscriptions.containsValue(threadId)) {
+            unindex(threadStripes, threadId, sessionId);
+        }
+    }
+
+    /** Heartbeat: chỉ ghi thời điểm hoạt động, thay đổi online được gửi ở lượt flush. */
+    public void touch(String sessionId, long now) {
+        Session session = sessionId == null ? null : sessions.get(sessionId);
+        if (session != null) touch(session, now);
+    }
+
+    private void touch(Session session, long now) {
+        session.lastSeen = now;
+        if (!session.active) {
+            session.active = true;
+            dirtyUsers.add(session.userId);
+        }
+    }
+
+    /** Chuyển trạng thái đang gõ; false nếu không gửi (không phải người trong hội thoại, bị giới hạn, không ai xem). */
+    public boolean typing(String sessionId, Long threadId, boolean typing, long now) {
+        Session session = sessionId == null ? null : sessions.get(sessionId);
+        if (session == null || threadId == null) return false;
+        touch(session, now);
+        Long studentId = threadStudent(threadId);
+        if (studentId == null || (!session.manager && !studentId.equals(session.userId))) {
+            typingRejected.increment();
+            return false;
+        }
+        if (typing) {
+            Long last = session.lastTypingAt.get(threadId);
+            if (last != null && now - last < typingThrottleMs) {
+                typingThrottled.increment();
+                return false;
+            }
+            session.lastTypingAt.put(threadId, now);
+        } else if (session.lastTypingAt.remove(threadId) == null) {
+            return false;
+        }
+
+        Set<String> recipients = new LinkedHashSet<>();
+        for (String watcherId : members(threadStripes, threadId)) {
+            Session watcher = sessions.get(watcherId);
+            if (watcher == null || watcher.userId.equals(session.userId)) continue;
+            if (watcher.manager || watcher.userId.equals(studentId)) recipients.add(watcher.email);
+        }
+        if (recipients.isEmpty()) return false;
+        SupportDtos.TypingEvent event = new SupportDtos.TypingEvent();
+        event.threadId = threadId;
+        event.userId = session.userId;
+        event.fullName = session.fullName;
+        event.typing = typing;
+        realtimeGateway.typingChanged(recipients, event);
+        typingForwarded.increment();
+        return true;
+    }
+
+    private Long threadStudent(Long threadId) {
+        synchronized (threadStudents) {
+            Long cached = threadStudents.get(threadId);
+            if (cached != null) return cached;
+        }
+        Long studentId = loadThreadStudent(threadId);
+        if (studentId != null) {
+            synchronized (threadStudents) {
+                threadStudents.put(threadId, studentId);
+            }
+        }
+        return studentId;
+    }
+
+    Long loadThreadStudent(Long threadId) {
+        List<Long> ids = jdbcTemplate.queryForList(THREAD_STUDENT_SQL, Long.class, threadId);
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    @Scheduled(fixedDelayString = "${app.support.presence.flush-ms:2000}")
+    public void flush() {
+        flush(System.currentTimeMillis());
+    }
+
+    /** Đánh dấu phiên im lặng là offline rồi gửi một tin gộp các người dùng đổi trạng thái kể từ lượt trước. */
+    synchronized void flush(long now) {
+        long cutoff = now - idleMs;
+        for (Session session : sessions.values()) {
+            if (session.active && session.lastSeen < cutoff) {
+                session.active = false;
+                expired.increment();
+                dirtyUsers.add(session.userId);
+            }
+        }
+        if (dirtyUsers.isEmpty()) return;
+        List<Long> online = new ArrayList<>();
+        List<Long> offline = new ArrayList<>();
+        for (Iterator<Long> it = dirtyUsers.iterator(); it.hasNext(); ) {
+            Long userId = it.next();
+            it.remove();
+            if (isOnline(userId)) {
+                if (publishedOnline.add(userId)) online.add(userId);
+            } else if (publishedOnline.remove(userId)) {
+                offline.add(userId);
+            }
+        }
+        if (online.isEmpty() && offline.isEmpty()) return;
+        SupportDtos.PresenceDelta delta = new SupportDtos.PresenceDelta();
+        delta.online = online;
+        delta.offline = offline;
+        realtimeGateway.presenceChanged(delta);
+        presenceBatches.increment();
+    }
+
+    public boolean isOnline(Long userId) {
+        for (String sessionId : members(userStripes, userId)) {
+            Session session = sessions.get(sessionId);
+            if (session != null && session.active) return true;
+        }
+        return false;
+    }
+
+    /** Người dùng online theo lượt flush gần nhất (khớp với các delta đã gửi). */
+    public List<Long> onlineUsers() {
+        return List.copyOf(publishedOnline);
+    }
+
+    private static Map<Long, Set<String>> stripe(List<Map<Long, Set<String>>> stripes, Long key) {
+        return stripes.get((Long.hashCode(key) & 0x7fffffff) % STRIPES);
+    }
+
+    private static void index(List<Map<Long, Set<String>>> stripes, Long key, String sessionId) {
+        Map<Long, Set<String>> s = stripe(stripes, key);
+        synchronized (s) {
+            s.computeIfAbsent(key, k -> new HashSet<>(2)).add(sessionId);
+        }
+    }
+
+    private static void unindex(List<Map<Long, Set<String>>> stripes, Long key, String sessionId) {
+        Map<Long, Set<String>> s = stripe(stripes, key);
+        synchronized (s) {
+            Set<String> ids = s.get(key);
+            if (ids == null) return;
+            ids.remove(sessionId);
+            if (ids.isEmpty()) s.remove(key);
+        }
+    }
+
+    private static List<String> members(List<Map<Long, Set<String>>> stripes, Long key) {
+        Map<Long, Set<String>> s = stripe(stripes, key);
+        synchronized (s) {
+            Set<String> ids = s.get(key);
+            return ids == null ? List.of() : List.copyOf(ids);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        int watchedThreads = 0;
+        for (Map<Long, Set<String>> s : threadStripes) {
+            synchronized (s) {
+                watchedThreads += s.size();
+            }
+        }
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("sessions", sessions.size());
+        m.put("onlineUsers", publishedOnline.size());
+        m.put("watchedThreads", watchedThreads);
+        m.put("connects", connects.sum());
+        m.put("expired", expired.sum());
+        m.put("presenceBatches", presenceBatches.sum());
+        m.put("typingForwarded", typingForwarded.sum());
+        m.put("typingThrottled", typingThrottled.sum());
+        m.put("typingRejected", typingRejected.sum());
+        return m;
+    }
+}
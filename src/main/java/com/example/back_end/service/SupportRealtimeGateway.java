@@ -1,47 +1,275 @@
 package com.example.back_end.service;
 
 import com.example.back_end.dto.SupportDtos;
+import com.example.back_end.util.LatencyRecorder;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.Nullable;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.MimeTypeUtils;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Đẩy sự kiện support chat tới các socket STOMP.
+ *
+ * Sự kiện được đưa vào hàng đợi sau khi transaction gọi tới commit (rollback thì không phát) và một thread riêng
+ * gửi đi theo đúng thứ tự, nên request không chờ broker. Mỗi payload chỉ serialize JSON một lần rồi gửi tới mọi
+ * đích của nó. Các threadUpdated của cùng một hội thoại trong coalesce-ms được gộp, chỉ gửi bản mới nhất.
+ * Hàng đợi đầy thì bỏ sự kiện (client vẫn poll lại chi tiết hội thoại).
+ *
+ * Chế độ simple (mặc định): gửi thẳng vào simple broker của JVM này, chỉ đúng khi chạy một node.
+ * Chế độ relay: phát qua {@link SupportEventBus}; mỗi node nhận lại sự kiện theo thứ tự của bus và đẩy xuống
+ * simple broker của mình, nên socket nối vào node nào cũng nhận được. Riêng presence chỉ gửi vào broker cục bộ:
+ * mỗi node chỉ biết các phiên nối vào nó, phát delta của node này cho node khác sẽ báo offline người vẫn đang online
+ * ở node đó.
+ */
 @Component
 public class SupportRealtimeGateway {
+    private static final Logger log = LoggerFactory.getLogger(SupportRealtimeGateway.class);
     private static final String THREAD_CHANNEL_PREFIX = "/topic/support/threads/";
     private static final String THREAD_META_CHANNEL = "/topic/support/thread-updates";
     private static final String MANAGER_ALERT_CHANNEL = "/topic/support/manager-alerts";
+    private static final String PRESENCE_CHANNEL = "/topic/support/presence";
+    private static final String TYPING_QUEUE = "/queue/support/typing";
+    static final String INBOX_CHANNEL = "/topic/support/inbox";
 
     private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+    private final SupportEventBus eventBus;
+    private final boolean relay;
+    private final int queueCapacity;
+    private final long coalesceMs;
+    private final ScheduledExecutorService dispatcher;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ConcurrentHashMap<Long, PendingUpdate> pendingUpdates = new ConcurrentHashMap<>();
+
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LatencyRecorder dispatchLatency = new LatencyRecorder("support.dispatch");
+    private final LatencyRecorder deliveryLatency = new LatencyRecorder("support.relay.delivery");
 
-    public SupportRealtimeGateway(@Nullable SimpMessagingTemplate messagingTemplate) {
+    public SupportRealtimeGateway(@Nullable SimpMessagingTemplate messagingTemplate,
+                                  ObjectMapper objectMapper,
+                                  SupportEventBus eventBus,
+                                  @Value("${app.support.broker.mode:simple}") String mode,
+                                  @Value("${app.support.dispatch.queue-capacity:10000}") int queueCapacity,
+                                  @Value("${app.support.dispatch.coalesce-ms:150}") long coalesceMs) {
         this.messagingTemplate = messagingTemplate;
+        this.objectMapper = objectMapper;
+        this.eventBus = eventBus;
+        this.relay = "relay".equalsIgnoreCase(mode == null ? null : mode.trim());
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.coalesceMs = Math.max(0, coalesceMs);
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "support-dispatch");
+            t.setDaemon(true);
+            return t;
+        });
+        if (relay) {
+            eventBus.subscribe(this::deliver);
+        }
+    }
+
+    /** Một sự kiện chờ gửi: payload và các đích nhận cùng payload đó; localOnly: không phát qua bus. */
+    private record Outbound(Object payload, String[] destinations, long enqueuedAt, boolean localOnly) {}
+
+    /** threadUpdated đang chờ hết cửa sổ gộp; summary được thay bằng bản mới nhất. */
+    private static final class PendingUpdate {
+        volatile SupportDtos.ThreadSummary summary;
+        final long enqueuedAt = System.nanoTime();
+
+        PendingUpdate(SupportDtos.ThreadSummary summary) {
+            this.summary = summary;
+        }
     }
 
     public void threadCreated(SupportDtos.ThreadDetail detail) {
-        send(MANAGER_ALERT_CHANNEL, detail);
-        send(THREAD_META_CHANNEL, detail);
+        send(detail, MANAGER_ALERT_CHANNEL, THREAD_META_CHANNEL);
     }
 
     public void threadUpdated(SupportDtos.ThreadSummary summary) {
-        send(THREAD_META_CHANNEL, summary);
+        if (summary == null) return;
+        if (summary.id == null || coalesceMs == 0) {
+            send(summary, THREAD_META_CHANNEL);
+            return;
+        }
+        afterCommit(() -> coalesceUpdate(summary));
     }
 
     public void messageAppended(Long threadId, SupportDtos.MessageDto message) {
         if (threadId == null) return;
-        send(THREAD_CHANNEL_PREFIX + threadId, message);
+        send(message, THREAD_CHANNEL_PREFIX + threadId);
     }
 
     public void threadTransferred(SupportDtos.ThreadSummary summary) {
-        send(MANAGER_ALERT_CHANNEL, summary);
+        send(summary, MANAGER_ALERT_CHANNEL);
     }
 
     public void threadRated(Long threadId, SupportDtos.RatingDto rating) {
         if (threadId == null) return;
-        send(THREAD_CHANNEL_PREFIX + threadId + "/rating", rating);
+        send(rating, THREAD_CHANNEL_PREFIX + threadId + "/rating");
+    }
+
+    /** Gọi từ lượt flush của SupportPresenceService (ngoài transaction); chỉ tới socket của node này. */
+    public void presenceChanged(SupportDtos.PresenceDelta delta) {
+        if (delta == null) return;
+        enqueue(new Outbound(delta, new String[]{PRESENCE_CHANNEL}, System.nanoTime(), true));
+    }
+
+    /** Gọi từ listener đã chạy sau commit (SupportInboxIndex) nên đưa thẳng vào hàng đợi. */
+    public void inboxChanged(SupportDtos.InboxDelta delta) {
+        if (delta == null) return;
+        enqueue(new Outbound(delta, new String[]{INBOX_CHANNEL}, System.nanoTime(), false));
+    }
+
+    /** Gửi tới hàng đợi riêng (/user/{email}/queue/support/typing) của từng người nhận. */
+    public void typingChanged(Collection<String> recipients, SupportDtos.TypingEvent event) {
+        if (recipients == null || recipients.isEmpty()) return;
+        send(event, recipients.stream().map(email -> "/user/" + email + TYPING_QUEUE).toArray(String[]::new));
+    }
+
+    private void send(Object payload, String... destinations) {
+        if (payload == null) return;
+        Outbound event = new Outbound(payload, destinations, System.nanoTime(), false);
+        afterCommit(() -> enqueue(event));
+    }
+
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private void enqueue(Outbound event) {
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            dropped.increment();
+            return;
+        }
+        try {
+            dispatcher.execute(() -> {
+                queued.decrementAndGet();
+                dispatch(event);
+            });
+        } catch (RejectedExecutionException ex) {
+            queued.decrementAndGet();
+            dropped.increment();
+        }
+    }
+
+    private void coalesceUpdate(SupportDtos.ThreadSummary summary) {
+        boolean[] created = {false};
+        pendingUpdates.compute(summary.id, (id, pending) -> {
+            if (pending == null) {
+                created[0] = true;
+                return new PendingUpdate(summary);
+            }
+            coalesced.increment();
+            pending.summary = summary;
+            return pending;
+        });
+        if (!created[0]) return;
+        try {
+            dispatcher.schedule(() -> {
+                PendingUpdate pending = pendingUpdates.remove(summary.id);
+                if (pending != null) {
+                    dispatch(new Outbound(pending.summary, new String[]{THREAD_META_CHANNEL}, pending.enqueuedAt, false));
+                }
+            }, coalesceMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            pendingUpdates.remove(summary.id);
+            dropped.increment();
+        }
+    }
+
+    private void dispatch(Outbound event) {
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(event.payload());
+        } catch (JsonProcessingException ex) {
+            failures.increment();
+            log.warn("Cannot serialize support event for {}: {}", event.destinations()[0], ex.getMessage());
+            return;
+        }
+        boolean viaBus = relay && !event.localOnly();
+        byte[] body = viaBus ? null : json.getBytes(StandardCharsets.UTF_8);
+        for (String destination : event.destinations()) {
+            try {
+                if (viaBus) {
+                    eventBus.publish(new SupportEventBus.Envelope(destination, json, System.currentTimeMillis()));
+                } else {
+                    sendLocal(destination, body);
+                }
+            } catch (RuntimeException ex) {
+                failures.increment();
+                log.warn("Cannot send support event to {}: {}", destination, ex.getMessage());
+            }
+        }
+        dispatched.increment();
+        dispatchLatency.recordSince(event.enqueuedAt());
+    }
+
+    /** Sự kiện từ bus (của node này hoặc node khác) xuống simple broker cục bộ, giữ nguyên JSON đã serialize. */
+    private void deliver(SupportEventBus.Envelope envelope) {
+        deliveryLatency.recordNanos(TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - envelope.publishedAt()));
+        sendLocal(envelope.destination(), envelope.payload().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void sendLocal(String destination, byte[] body) {
+        if (messagingTemplate == null) return;
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        headers.setLeaveMutable(true);
+        messagingTemplate.send(destination, MessageBuilder.createMessage(body, headers.getMessageHeaders()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdown();
     }
 
-    private void send(String destination, Object payload) {
-        if (messagingTemplate == null || destination == null || payload == null) return;
-        messagingTemplate.convertAndSend(destination, payload);
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("mode", relay ? "relay" : "simple");
+        m.put("queued", queued.get());
+        m.put("pendingUpdates", pendingUpdates.size());
+        m.put("dispatched", dispatched.sum());
+        m.put("coalesced", coalesced.sum());
+        m.put("dropped", dropped.sum());
+        m.put("failures", failures.sum());
+        m.put("dispatchLatency", dispatchLatency.snapshot());
+        m.put("deliveryLatency", deliveryLatency.snapshot());
+        m.put("bus", eventBus.stats());
+        return m;
     }
 }
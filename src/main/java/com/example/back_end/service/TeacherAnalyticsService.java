@@ -4,9 +4,9 @@ import com.example.back_end.dto.TeacherAnalyticsDtos;
 import com.example.back_end.model.User;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
-import jakarta.persistence.Query;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.CollectionUtils;
 
 import java.sql.Timestamp;
@@ -16,12 +16,20 @@ import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+/**
+ * Dashboard giảng viên. Tập khóa học được truyền thành một tham số duy nhất (chuỗi id tách bằng STRING_SPLIT) nên
+ * câu SQL không đổi theo giảng viên và SQL Server dùng lại được plan; các chỉ số được gom thành vài truy vấn
+ * GROUP BY theo khóa thay vì subquery lồng cho từng khóa. Kết quả được giữ trong TeacherDashboardCache.
+ */
 @Service
 public class TeacherAnalyticsService {
     @PersistenceContext
@@ -30,8 +38,126 @@ public class TeacherAnalyticsService {
     private static final DateTimeFormatter NOTE_TIME = DateTimeFormatter.ofPattern("HH:mm dd/MM");
     private static final String[] TREND_COLORS = new String[]{"#a855f7", "#10b981", "#f97316"};
 
-    @Transactional(readOnly = true)
+    private static final String COURSE_IDS_CTE =
+            "WITH tc AS (SELECT DISTINCT CAST(value AS BIGINT) AS id FROM STRING_SPLIT(:ids, ',')) ";
+
+    private static final String COURSE_STATS_SQL = COURSE_IDS_CTE + """
+            , e AS (
+                SELECT e.course_id,
+                       SUM(CASE WHEN e.status <> N'revoked' THEN 1 ELSE 0 END) AS enrolled,
+                       SUM(CASE WHEN e.status IN (N'refunded', N'revoked') THEN 1 ELSE 0 END) AS dropouts
+                  FROM dbo.enrollments e JOIN tc ON tc.id = e.course_id
+                 GROUP BY e.course_id
+            ), p AS (
+                SELECT m.course_id, SUM(CAST(lp.progress_percent AS FLOAT)) AS progress_sum,
+                       COUNT(lp.progress_percent) AS progress_count
+                  FROM dbo.lesson_progress lp
+                  JOIN dbo.lessons l ON l.id = lp.lesson_id
+                  JOIN dbo.modules m ON m.id = l.module_id
+                  JOIN tc ON tc.id = m.course_id
+                 GROUP BY m.course_id
+            ), r AS (
+                SELECT r.course_id,
+                       SUM(CASE WHEN r.status = N'pending' THEN 1 ELSE 0 END) AS pending,
+                       SUM(CASE WHEN r.status = N'approved' THEN 1 ELSE 0 END) AS approved,
+                       AVG(CASE WHEN r.status = N'approved'
+                                THEN CAST((r.course_score + r.instructor_score + r.support_score) AS FLOAT)/3.0 END) AS rating,
+                       AVG(CASE WHEN r.status = N'approved'
+                                THEN CASE WHEN r.would_recommend = 1 THEN 100.0 ELSE 0 END END) AS recommend,
+                       SUM(CASE WHEN r.status = N'approved' AND r.created_at >= :since THEN 1 ELSE 0 END) AS new_reviews
+                  FROM dbo.course_reviews r JOIN tc ON tc.id = r.course_id
+                 GROUP BY r.course_id
+            ), x AS (
+                SELECT x.course_id,
+                       SUM(CASE WHEN x.status = N'pending' THEN 1 ELSE 0 END) AS pending,
+                       SUM(CASE WHEN x.status = N'approved' THEN 1 ELSE 0 END) AS approved,
+                       SUM(CASE WHEN x.status = N'hidden' THEN 1 ELSE 0 END) AS hidden
+                  FROM dbo.lesson_resources x JOIN tc ON tc.id = x.course_id
+                 GROUP BY x.course_id
+            )
+            SELECT c.id, c.title, c.status, e.enrolled, e.dropouts, p.progress_sum, p.progress_count,
+                   r.pending, r.approved, r.rating, r.recommend, r.new_reviews, x.pending, x.approved, x.hidden
+              FROM dbo.courses c
+              JOIN tc ON tc.id = c.id
+              LEFT JOIN e ON e.course_id = c.id
+              LEFT JOIN p ON p.course_id = c.id
+              LEFT JOIN r ON r.course_id = c.id
+              LEFT JOIN x ON x.course_id = c.id
+            """;
+
+    // Ghi chú "đã trả lời" khi có bình luận của giảng viên/quản lý; "chờ phản hồi" khi bình luận cuối là của học viên
+    private static final String TOTALS_SQL = COURSE_IDS_CTE + """
+            , n AS (
+                SELECT CASE WHEN EXISTS (SELECT 1 FROM dbo.lesson_note_comments c
+                                          WHERE c.note_id = ln.id
+                                            AND LOWER(ISNULL(c.author_role,'')) IN (N'teacher', N'manager'))
+                            THEN 1 ELSE 0 END AS answered,
+                       lc.last_role
+                  FROM dbo.lesson_notes ln
+                  JOIN tc ON tc.id = ln.course_id
+                  OUTER APPLY (SELECT TOP 1 LOWER(ISNULL(c.author_role,'')) AS last_role
+                                 FROM dbo.lesson_note_comments c
+                                WHERE c.note_id = ln.id ORDER BY c.created_at DESC) lc
+            )
+            SELECT s.students, nt.pending, nt.answered, nt.awaiting, st.open_threads, st.avg_minutes
+              FROM (SELECT COUNT(DISTINCT e.user_id) AS students
+                      FROM dbo.enrollments e JOIN tc ON tc.id = e.course_id
+                     WHERE e.status <> N'revoked') s
+             CROSS JOIN (SELECT SUM(1 - answered) AS pending, SUM(answered) AS answered,
+                                SUM(CASE WHEN answered = 1 AND last_role IN (N'', N'student') THEN 1 ELSE 0 END) AS awaiting
+                           FROM n) nt
+             CROSS JOIN (SELECT SUM(CASE WHEN t.status IN (N'NEW', N'IN_PROGRESS', N'WAITING_STUDENT') THEN 1 ELSE 0 END) AS open_threads,
+                                AVG(CASE WHEN t.last_manager_activity_at IS NOT NULL AND t.last_student_activity_at IS NOT NULL
+                                          AND DATEDIFF(minute, t.last_student_activity_at, t.last_manager_activity_at) >= 0
+                                         THEN DATEDIFF(minute, t.last_student_activity_at, t.last_manager_activity_at) END) AS avg_minutes
+                           FROM dbo.support_threads t JOIN tc ON tc.id = t.course_id) st
+            """;
+
+    private static final String LATEST_NOTES_SQL = COURSE_IDS_CTE + """
+            SELECT TOP 3 c.title, u.full_name, ln.content, ln.last_comment_at
+              FROM dbo.lesson_notes ln
+              JOIN tc ON tc.id = ln.course_id
+              JOIN dbo.courses c ON c.id = ln.course_id
+              JOIN dbo.users u ON u.id = ln.student_id
+             ORDER BY ln.last_comment_at DESC
+            """;
+
+    private static final String TRENDS_SQL = COURSE_IDS_CTE + """
+            SELECT 'E', CONVERT(date, e.start_at), COUNT(*)
+              FROM dbo.enrollments e JOIN tc ON tc.id = e.course_id
+             WHERE e.start_at >= :from AND e.start_at < :to
+             GROUP BY CONVERT(date, e.start_at)
+            UNION ALL
+            SELECT 'C', CONVERT(date, lp.completed_at), COUNT(*)
+              FROM dbo.lesson_progress lp
+              JOIN dbo.lessons l ON l.id = lp.lesson_id
+              JOIN dbo.modules m ON m.id = l.module_id
+              JOIN tc ON tc.id = m.course_id
+             WHERE lp.completed_at IS NOT NULL AND lp.progress_percent = 100
+               AND lp.completed_at >= :from AND lp.completed_at < :to
+             GROUP BY CONVERT(date, lp.completed_at)
+            UNION ALL
+            SELECT 'R', CONVERT(date, r.created_at), COUNT(*)
+              FROM dbo.course_reviews r JOIN tc ON tc.id = r.course_id
+             WHERE r.status = N'approved' AND r.created_at >= :from AND r.created_at < :to
+             GROUP BY CONVERT(date, r.created_at)
+            """;
+
+    private final TeacherDashboardCache dashboardCache;
+    private final TransactionTemplate readOnlyTx;
+
+    public TeacherAnalyticsService(TeacherDashboardCache dashboardCache, PlatformTransactionManager transactionManager) {
+        this.dashboardCache = dashboardCache;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+    }
+
     public TeacherAnalyticsDtos.DashboardResponse buildDashboard(User user, int days) {
+        Long userId = user != null ? user.getId() : null;
+        return dashboardCache.get(userId, days, () -> readOnlyTx.execute(status -> computeDashboard(user, days)));
+    }
+
+    private TeacherDashboardCache.Computed computeDashboard(User user, int days) {
         TeacherAnalyticsDtos.DashboardResponse dto = new TeacherAnalyticsDtos.DashboardResponse();
         dto.name = user != null && user.getFullName() != null && !user.getFullName().isBlank()
                 ? user.getFullName()
@@ -40,18 +166,20 @@ public class TeacherAnalyticsService {
         if (CollectionUtils.isEmpty(courseIds)) {
             dto.summary = defaultSummary();
             dto.trends = defaultTrends(days);
-            return dto;
+            return new TeacherDashboardCache.Computed(dto, Set.of());
         }
-        String courseIn = joinIds(courseIds);
-        SummaryStats summary = fetchSummary(courseIn);
+        String ids = joinIds(courseIds);
+        List<CourseStats> courses = fetchCourseStats(ids, days);
+        SummaryStats summary = fetchTotals(ids, courses);
         dto.summary = buildSummaryCards(summary, days);
         dto.hero.pending = summary.notesPending + summary.resourcesPending;
         dto.hero.resolved = summary.notesResolved;
-        dto.courses = fetchCourseCards(courseIn);
-        dto.interactions = fetchInteractions(courseIn);
-        dto.reviews = fetchReviews(courseIn, days);
-        dto.trends = fetchTrends(courseIn, days);
-        return dto;
+        dto.courses = buildCourseCards(courses);
+        dto.interactions = buildInteractions(summary, courses);
+        dto.interactions.latestNotes = fetchLatestNotes(ids);
+        dto.reviews = buildReviews(courses);
+        dto.trends = fetchTrends(ids, days);
+        return new TeacherDashboardCache.Computed(dto, new HashSet<>(courseIds));
     }
 
     private List<Long> loadCourseIds(Long userId) {
@@ -66,50 +194,58 @@ public class TeacherAnalyticsService {
         return rows.stream().map(Number::longValue).collect(Collectors.toList());
     }
 
-    private SummaryStats fetchSummary(String courseInClause) {
+    private List<CourseStats> fetchCourseStats(String ids, int days) {
+        Timestamp since = Timestamp.valueOf(LocalDateTime.now(ZoneOffset.UTC).minusDays(days));
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = em.createNativeQuery(COURSE_STATS_SQL)
+                .setParameter("ids", ids)
+                .setParameter("since", since)
+                .getResultList();
+        List<CourseStats> list = new ArrayList<>(rows.size());
+        for (Object[] r : rows) {
+            CourseStats c = new CourseStats();
+            c.title = r[1] != null ? r[1].toString() : null;
+            c.published = r[2] != null && "published".equalsIgnoreCase(r[2].toString());
+            c.enrolled = longOf(r[3]);
+            c.dropouts = longOf(r[4]);
+            c.progressSum = r[5] != null ? ((Number) r[5]).doubleValue() : 0d;
+            c.progressCount = longOf(r[6]);
+            c.reviewsPending = (int) longOf(r[7]);
+            c.reviewsApproved = (int) longOf(r[8]);
+            c.rating = r[9] != null ? ((Number) r[9]).doubleValue() : null;
+            c.recommend = r[10] != null ? ((Number) r[10]).doubleValue() : 0d;
+            c.newReviews = (int) longOf(r[11]);
+            c.resourcesPending = (int) longOf(r[12]);
+            c.resourcesApproved = (int) longOf(r[13]);
+            c.resourcesHidden = (int) longOf(r[14]);
+            list.add(c);
+        }
+        return list;
+    }
+
+    private SummaryStats fetchTotals(String ids, List<CourseStats> courses) {
+        Object[] r = (Object[]) em.createNativeQuery(TOTALS_SQL)
+                .setParameter("ids", ids)
+                .getSingleResult();
         SummaryStats stats = new SummaryStats();
-        Number students = singleNumber("SELECT COUNT(DISTINCT user_id) FROM dbo.enrollments " +
-                "WHERE status <> N'revoked' AND course_id IN (" + courseInClause + ")");
-        Number activeCourses = singleNumber("SELECT COUNT(*) FROM dbo.courses " +
-                "WHERE id IN (" + courseInClause + ") AND status = N'published'");
-        Number avgProgress = singleNumber("SELECT AVG(CAST(lp.progress_percent AS FLOAT)) " +
-                "FROM dbo.lesson_progress lp " +
-                "JOIN dbo.lessons l ON l.id = lp.lesson_id " +
-                "JOIN dbo.modules m ON m.id = l.module_id " +
-                "WHERE m.course_id IN (" + courseInClause + ")");
-        Number notesPending = singleNumber("SELECT COUNT(*) FROM dbo.lesson_notes ln " +
-                "WHERE ln.course_id IN (" + courseInClause + ") " +
-                "AND NOT EXISTS (SELECT 1 FROM dbo.lesson_note_comments c " +
-                "WHERE c.note_id = ln.id AND LOWER(ISNULL(c.author_role,'')) IN (N'teacher', N'manager'))");
-        Number noteTeacher = singleNumber("SELECT COUNT(*) FROM dbo.lesson_notes ln " +
-                "WHERE ln.course_id IN (" + courseInClause + ") " +
-                "AND EXISTS (SELECT 1 FROM dbo.lesson_note_comments c " +
-                "WHERE c.note_id = ln.id AND LOWER(ISNULL(c.author_role,'')) IN (N'teacher', N'manager'))");
-        Number noteAwaiting = singleNumber(
-                "WITH t AS (" +
-                        " SELECT ln.id, (" +
-                        "   SELECT TOP 1 LOWER(ISNULL(c.author_role,'')) FROM dbo.lesson_note_comments c " +
-                        "   WHERE c.note_id = ln.id ORDER BY c.created_at DESC" +
-                        " ) AS last_role" +
-                        " FROM dbo.lesson_notes ln " +
-                        " WHERE ln.course_id IN (" + courseInClause + ") " +
-                        "   AND EXISTS (SELECT 1 FROM dbo.lesson_note_comments c " +
-                        "       WHERE c.note_id = ln.id AND LOWER(ISNULL(c.author_role,'')) IN (N'teacher',N'manager'))" +
-                        ") SELECT COUNT(*) FROM t WHERE last_role = '' OR last_role = 'student'");
-        Number resourcesPending = singleNumber("SELECT COUNT(*) FROM dbo.lesson_resources " +
-                "WHERE course_id IN (" + courseInClause + ") AND status = N'pending'");
-        Number reviewsPending = singleNumber("SELECT COUNT(*) FROM dbo.course_reviews " +
-                "WHERE course_id IN (" + courseInClause + ") AND status = N'pending'");
-
-        stats.studentsActive = students != null ? students.longValue() : 0L;
-        stats.activeCourses = activeCourses != null ? activeCourses.longValue() : 0L;
-        stats.avgProgress = avgProgress != null ? avgProgress.doubleValue() : 0d;
-        stats.notesPending = notesPending != null ? notesPending.intValue() : 0;
-        int teacherNotes = noteTeacher != null ? noteTeacher.intValue() : 0;
-        int awaiting = noteAwaiting != null ? noteAwaiting.intValue() : 0;
-        stats.notesResolved = Math.max(teacherNotes - awaiting, 0);
-        stats.resourcesPending = resourcesPending != null ? resourcesPending.intValue() : 0;
-        stats.reviewsPending = reviewsPending != null ? reviewsPending.intValue() : 0;
+        stats.studentsActive = longOf(r[0]);
+        stats.notesPending = (int) longOf(r[1]);
+        int teacherNotes = (int) longOf(r[2]);
+        stats.notesAwaiting = (int) longOf(r[3]);
+        stats.notesResolved = Math.max(teacherNotes - stats.notesAwaiting, 0);
+        stats.supportOpen = (int) longOf(r[4]);
+        stats.avgResponseMinutes = r[5] != null ? ((Number) r[5]).doubleValue() : null;
+
+        double progressSum = 0;
+        long progressCount = 0;
+        for (CourseStats c : courses) {
+            if (c.published) stats.activeCourses++;
+            progressSum += c.progressSum;
+            progressCount += c.progressCount;
+            stats.resourcesPending += c.resourcesPending;
+            stats.reviewsPending += c.reviewsPending;
+        }
+        stats.avgProgress = progressCount > 0 ? progressSum / progressCount : 0d;
         return stats;
     }
 
@@ -137,98 +273,47 @@ public class TeacherAnalyticsService {
         return card;
     }
 
-    private List<TeacherAnalyticsDtos.CourseCard> fetchCourseCards(String courseInClause) {
-        @SuppressWarnings("unchecked")
-        List<Object[]> rows = em.createNativeQuery(
-                        "SELECT TOP 6 c.title, " +
-                                "(SELECT COUNT(*) FROM dbo.enrollments e " +
-                                " WHERE e.course_id = c.id AND e.status <> N'revoked') AS enrolled, " +
-                                "(SELECT COUNT(*) FROM dbo.enrollments e " +
-                                " WHERE e.course_id = c.id AND e.status IN (N'refunded', N'revoked')) AS dropouts, " +
-                                "(SELECT AVG(CAST(lp.progress_percent AS FLOAT)) FROM dbo.lesson_progress lp " +
-                                " JOIN dbo.lessons l ON l.id = lp.lesson_id " +
-                                " JOIN dbo.modules m ON m.id = l.module_id " +
-                                " WHERE m.course_id = c.id) AS avgProgress, " +
-                                "(SELECT AVG(CAST((course_score + instructor_score + support_score) AS FLOAT)/3.0) " +
-                                " FROM dbo.course_reviews r WHERE r.course_id = c.id AND r.status = N'approved') AS rating " +
-                                "FROM dbo.courses c WHERE c.id IN (" + courseInClause + ") " +
-                                "ORDER BY enrolled DESC")
-                .getResultList();
+    private List<TeacherAnalyticsDtos.CourseCard> buildCourseCards(List<CourseStats> courses) {
+        List<CourseStats> top = new ArrayList<>(courses);
+        top.sort(Comparator.comparingLong((CourseStats c) -> c.enrolled).reversed());
         List<TeacherAnalyticsDtos.CourseCard> cards = new ArrayList<>();
-        for (Object[] r : rows) {
+        for (CourseStats c : top.subList(0, Math.min(6, top.size()))) {
             TeacherAnalyticsDtos.CourseCard card = new TeacherAnalyticsDtos.CourseCard();
-            card.title = r[0] != null ? r[0].toString() : "Khóa học";
-            card.enrolled = r[1] != null ? ((Number) r[1]).longValue() : 0L;
-            double completion = r[3] != null ? ((Number) r[3]).doubleValue() : 0d;
-            card.completion = (int) Math.round(completion);
-            card.drop = r[2] != null ? ((Number) r[2]).longValue() : 0L;
-            card.rating = r[4] != null ? roundOne(((Number) r[4]).doubleValue()) : 0d;
+            card.title = c.title != null ? c.title : "Khóa học";
+            card.enrolled = c.enrolled;
+            card.completion = c.progressCount > 0 ? (int) Math.round(c.progressSum / c.progressCount) : 0;
+            card.drop = c.dropouts;
+            card.rating = c.rating != null ? roundOne(c.rating) : 0d;
             cards.add(card);
         }
         return cards;
     }
 
-    private TeacherAnalyticsDtos.InteractionBlock fetchInteractions(String courseInClause) {
+    private TeacherAnalyticsDtos.InteractionBlock buildInteractions(SummaryStats stats, List<CourseStats> courses) {
         TeacherAnalyticsDtos.InteractionBlock block = new TeacherAnalyticsDtos.InteractionBlock();
-        Number notesPending = singleNumber("SELECT COUNT(*) FROM dbo.lesson_notes ln " +
-                "WHERE ln.course_id IN (" + courseInClause + ") " +
-                "AND NOT EXISTS (SELECT 1 FROM dbo.lesson_note_comments c " +
-                "WHERE c.note_id = ln.id AND LOWER(ISNULL(c.author_role,'')) IN (N'teacher', N'manager'))");
-        Number noteTeacher = singleNumber("SELECT COUNT(*) FROM dbo.lesson_notes ln " +
-                "WHERE ln.course_id IN (" + courseInClause + ") " +
-                "AND EXISTS (SELECT 1 FROM dbo.lesson_note_comments c " +
-                "WHERE c.note_id = ln.id AND LOWER(ISNULL(c.author_role,'')) IN (N'teacher', N'manager'))");
-        Number noteAwaiting = singleNumber(
-                "WITH t AS (" +
-                        " SELECT ln.id, (" +
-                        "   SELECT TOP 1 LOWER(ISNULL(c.author_role,'')) FROM dbo.lesson_note_comments c " +
-                        "   WHERE c.note_id = ln.id ORDER BY c.created_at DESC" +
-                        " ) AS last_role" +
-                        " FROM dbo.lesson_notes ln " +
-                        " WHERE ln.course_id IN (" + courseInClause + ") " +
-                        "   AND EXISTS (SELECT 1 FROM dbo.lesson_note_comments c " +
-                        "       WHERE c.note_id = ln.id AND LOWER(ISNULL(c.author_role,'')) IN (N'teacher',N'manager'))" +
-                        ") SELECT COUNT(*) FROM t WHERE last_role = '' OR last_role = 'student'");
-        block.notes.pending = notesPending != null ? notesPending.intValue() : 0;
-        int teacherNotes = noteTeacher != null ? noteTeacher.intValue() : 0;
-        int awaiting = noteAwaiting != null ? noteAwaiting.intValue() : 0;
-        block.notes.awaiting = awaiting;
-        block.notes.resolved = Math.max(teacherNotes - awaiting, 0);
-
-        Number resPending = singleNumber("SELECT COUNT(*) FROM dbo.lesson_resources WHERE course_id IN (" + courseInClause + ") AND status = N'pending'");
-        Number resApproved = singleNumber("SELECT COUNT(*) FROM dbo.lesson_resources WHERE course_id IN (" + courseInClause + ") AND status = N'approved'");
-        Number resHidden = singleNumber("SELECT COUNT(*) FROM dbo.lesson_resources WHERE course_id IN (" + courseInClause + ") AND status = N'hidden'");
-        block.resources.pending = resPending != null ? resPending.intValue() : 0;
-        block.resources.approved = resApproved != null ? resApproved.intValue() : 0;
-        block.resources.hidden = resHidden != null ? resHidden.intValue() : 0;
-
-        Number supportOpen = singleNumber("SELECT COUNT(*) FROM dbo.support_threads WHERE course_id IN (" + courseInClause + ") " +
-                "AND status IN (N'NEW', N'IN_PROGRESS', N'WAITING_STUDENT')");
-        block.support.open = supportOpen != null ? supportOpen.intValue() : 0;
-        Number avgMinutes = singleNumber("SELECT AVG(CASE WHEN last_student_activity_at IS NOT NULL AND last_manager_activity_at IS NOT NULL THEN " +
-                "DATEDIFF(minute, last_student_activity_at, last_manager_activity_at) END) " +
-                "FROM dbo.support_threads WHERE course_id IN (" + courseInClause + ") " +
-                "AND last_manager_activity_at IS NOT NULL AND last_student_activity_at IS NOT NULL " +
-                "AND DATEDIFF(minute, last_student_activity_at, last_manager_activity_at) >= 0");
-        if (avgMinutes != null && avgMinutes.doubleValue() > 0) {
-            block.support.avgResponse = "~" + Math.round(avgMinutes.doubleValue()) + " phút";
+        block.notes.pending = stats.notesPending;
+        block.notes.awaiting = stats.notesAwaiting;
+        block.notes.resolved = stats.notesResolved;
+
+        for (CourseStats c : courses) {
+            block.resources.pending += c.resourcesPending;
+            block.resources.approved += c.resourcesApproved;
+            block.resources.hidden += c.resourcesHidden;
+        }
+
+        block.support.open = stats.supportOpen;
+        if (stats.avgResponseMinutes != null && stats.avgResponseMinutes > 0) {
+            block.support.avgResponse = "~" + Math.round(stats.avgResponseMinutes) + " phút";
         } else {
             block.support.avgResponse = "Chưa có dữ liệu";
         }
-
-        block.latestNotes = fetchLatestNotes(courseInClause);
         return block;
     }
 
-    private List<TeacherAnalyticsDtos.NotePreview> fetchLatestNotes(String courseInClause) {
+    private List<TeacherAnalyticsDtos.NotePreview> fetchLatestNotes(String ids) {
         @SuppressWarnings("unchecked")
-        List<Object[]> rows = em.createNativeQuery(
-                        "SELECT TOP 3 c.title, u.full_name, ln.content, ln.last_comment_at " +
-                                "FROM dbo.lesson_notes ln " +
-                                "JOIN dbo.courses c ON c.id = ln.course_id " +
-                                "JOIN dbo.users u ON u.id = ln.student_id " +
-                                "WHERE ln.course_id IN (" + courseInClause + ") " +
-                                "ORDER BY ln.last_comment_at DESC")
+        List<Object[]> rows = em.createNativeQuery(LATEST_NOTES_SQL)
+                .setParameter("ids", ids)
                 .getResultList();
         List<TeacherAnalyticsDtos.NotePreview> notes = new ArrayList<>();
         for (Object[] r : rows) {
@@ -248,52 +333,46 @@ public class TeacherAnalyticsService {
         return notes;
     }
 
-    private List<TeacherAnalyticsDtos.ReviewCard> fetchReviews(String courseInClause, int days) {
-        @SuppressWarnings("unchecked")
-        List<Object[]> rows = em.createNativeQuery(
-                        "SELECT TOP 5 c.title, " +
-                                "AVG(CAST((r.course_score + r.instructor_score + r.support_score) AS FLOAT)/3.0) AS avgScore, " +
-                                "AVG(CASE WHEN r.would_recommend = 1 THEN 100.0 ELSE 0 END) AS recommend, " +
-                                "SUM(CASE WHEN r.created_at >= DATEADD(day, -" + days + ", SYSUTCDATETIME()) THEN 1 ELSE 0 END) AS newReviews " +
-                                "FROM dbo.course_reviews r " +
-                                "JOIN dbo.courses c ON c.id = r.course_id " +
-                                "WHERE r.status = N'approved' AND r.course_id IN (" + courseInClause + ") " +
-                                "GROUP BY c.title ORDER BY avgScore DESC")
-                .getResultList();
+    private List<TeacherAnalyticsDtos.ReviewCard> buildReviews(List<CourseStats> courses) {
+        List<CourseStats> reviewed = new ArrayList<>();
+        for (CourseStats c : courses) {
+            if (c.reviewsApproved > 0) reviewed.add(c);
+        }
+        reviewed.sort(Comparator.comparingDouble((CourseStats c) -> c.rating != null ? c.rating : 0d).reversed());
         List<TeacherAnalyticsDtos.ReviewCard> list = new ArrayList<>();
-        for (Object[] r : rows) {
+        for (CourseStats c : reviewed.subList(0, Math.min(5, reviewed.size()))) {
             TeacherAnalyticsDtos.ReviewCard card = new TeacherAnalyticsDtos.ReviewCard();
-            card.course = r[0] != null ? r[0].toString() : "Khóa học";
-            card.avg = r[1] != null ? roundOne(((Number) r[1]).doubleValue()) : 0d;
-            card.recommend = r[2] != null ? (int) Math.round(((Number) r[2]).doubleValue()) : 0;
-            card.newReviews = r[3] != null ? ((Number) r[3]).intValue() : 0;
+            card.course = c.title != null ? c.title : "Khóa học";
+            card.avg = c.rating != null ? roundOne(c.rating) : 0d;
+            card.recommend = (int) Math.round(c.recommend);
+            card.newReviews = c.newReviews;
             list.add(card);
         }
         return list;
     }
 
-    private List<TeacherAnalyticsDtos.TrendSeries> fetchTrends(String courseInClause, int days) {
+    private List<TeacherAnalyticsDtos.TrendSeries> fetchTrends(String ids, int days) {
         LocalDate to = LocalDate.now(ZoneOffset.UTC);
         LocalDate from = to.minusDays(days - 1L);
-        Timestamp fromTs = Timestamp.valueOf(from.atStartOfDay());
-        Timestamp toTs = Timestamp.valueOf(to.plusDays(1).atStartOfDay());
-
-        Map<LocalDate, Integer> enrollMap = mapCounts("SELECT CONVERT(date, start_at) AS d, COUNT(*) FROM dbo.enrollments " +
-                "WHERE course_id IN (" + courseInClause + ") AND start_at >= :from AND start_at < :to " +
-                "GROUP BY CONVERT(date, start_at)", fromTs, toTs);
-        Map<LocalDate, Integer> completionMap = mapCounts(
-                "SELECT CONVERT(date, lp.completed_at) AS d, COUNT(*) FROM dbo.lesson_progress lp " +
-                        "JOIN dbo.lessons l ON l.id = lp.lesson_id " +
-                        "JOIN dbo.modules m ON m.id = l.module_id " +
-                        "WHERE lp.completed_at IS NOT NULL AND lp.progress_percent = 100 " +
-                        "AND m.course_id IN (" + courseInClause + ") " +
-                        "AND lp.completed_at >= :from AND lp.completed_at < :to " +
-                        "GROUP BY CONVERT(date, lp.completed_at)", fromTs, toTs);
-        Map<LocalDate, Integer> reviewMap = mapCounts(
-                "SELECT CONVERT(date, created_at) AS d, COUNT(*) FROM dbo.course_reviews " +
-                        "WHERE status = N'approved' AND course_id IN (" + courseInClause + ") " +
-                        "AND created_at >= :from AND created_at < :to " +
-                        "GROUP BY CONVERT(date, created_at)", fromTs, toTs);
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = em.createNativeQuery(TRENDS_SQL)
+                .setParameter("ids", ids)
+                .setParameter("from", Timestamp.valueOf(from.atStartOfDay()))
+                .setParameter("to", Timestamp.valueOf(to.plusDays(1).atStartOfDay()))
+                .getResultList();
+        Map<LocalDate, Integer> enrollMap = new HashMap<>();
+        Map<LocalDate, Integer> completionMap = new HashMap<>();
+        Map<LocalDate, Integer> reviewMap = new HashMap<>();
+        for (Object[] r : rows) {
+            LocalDate date = toLocalDate(r[1]);
+            if (date == null) continue;
+            Map<LocalDate, Integer> target = switch (String.valueOf(r[0])) {
+                case "E" -> enrollMap;
+                case "C" -> completionMap;
+                default -> reviewMap;
+            };
+            target.put(date, r[2] != null ? ((Number) r[2]).intValue() : 0);
+        }
 
         List<Integer> enrollValues = buildSeries(from, to, enrollMap);
         List<Integer> completeValues = buildSeries(from, to, completionMap);
@@ -324,28 +403,15 @@ public class TeacherAnalyticsService {
         return series;
     }
 
-    private Map<LocalDate, Integer> mapCounts(String sql, Timestamp from, Timestamp to) {
-        @SuppressWarnings("unchecked")
-        List<Object[]> rows = em.createNativeQuery(sql)
-                .setParameter("from", from)
-                .setParameter("to", to)
-                .getResultList();
-        Map<LocalDate, Integer> map = new HashMap<>();
-        for (Object[] r : rows) {
-            if (r[0] == null) continue;
-            LocalDate date;
-            if (r[0] instanceof LocalDate ld) {
-                date = ld;
-            } else if (r[0] instanceof java.sql.Date d) {
-                date = d.toLocalDate();
-            } else if (r[0] instanceof java.sql.Timestamp ts) {
-                date = ts.toLocalDateTime().toLocalDate();
-            } else {
-                continue;
-            }
-            map.put(date, r[1] != null ? ((Number) r[1]).intValue() : 0);
+    private LocalDate toLocalDate(Object value) {
+        if (value instanceof LocalDate ld) {
+            return ld;
+        } else if (value instanceof java.sql.Date d) {
+            return d.toLocalDate();
+        } else if (value instanceof java.sql.Timestamp ts) {
+            return ts.toLocalDateTime().toLocalDate();
         }
-        return map;
+        return null;
     }
 
     private List<Integer> buildSeries(LocalDate from, LocalDate to, Map<LocalDate, Integer> data) {
@@ -358,10 +424,8 @@ public class TeacherAnalyticsService {
         return values;
     }
 
-    private Number singleNumber(String sql) {
-        Query query = em.createNativeQuery(sql);
-        Object result = query.getSingleResult();
-        return result instanceof Number n ? n : null;
+    private long longOf(Object value) {
+        return value instanceof Number n ? n.longValue() : 0L;
     }
 
     private List<TeacherAnalyticsDtos.SummaryCard> defaultSummary() {
@@ -396,8 +460,28 @@ public class TeacherAnalyticsService {
         long activeCourses;
         double avgProgress;
         int notesPending;
+        int notesAwaiting;
         int notesResolved;
         int resourcesPending;
         int reviewsPending;
+        int supportOpen;
+        Double avgResponseMinutes;
+    }
+
+    private static class CourseStats {
+        String title;
+        boolean published;
+        long enrolled;
+        long dropouts;
+        double progressSum;
+        long progressCount;
+        int reviewsPending;
+        int reviewsApproved;
+        Double rating;
+        double recommend;
+        int newReviews;
+        int resourcesPending;
+        int resourcesApproved;
+        int resourcesHidden;
     }
 }
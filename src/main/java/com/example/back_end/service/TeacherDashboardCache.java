@@ -0,0 +1,116 @@
+package com.example.back_end.service;
+
+import com.example.back_end.dto.TeacherAnalyticsDtos;
+import com.example.back_end.service.event.CourseChangedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Cache dashboard giảng viên theo (giảng viên, số ngày) với TTL ngắn.
+ *
+ * Mỗi mục nhớ tập khóa học đã dùng để tính; duyệt ghi chú/tài liệu/đánh giá gọi invalidateCourse để bỏ các dashboard
+ * chứa khóa đó. Sửa khóa học (CourseChangedEvent COURSE) có thể đổi tập khóa của giảng viên nên xóa toàn bộ.
+ * Số liệu do học viên tạo ra (đăng ký, tiến độ) chỉ hiện ra sau khi hết TTL.
+ * Chỉ cache các cửa sổ CACHED_WINDOWS (days lấy từ query string); số ngày khác vẫn tính nhưng không lưu, để một
+ * giảng viên không làm phình cache bằng các giá trị days tùy ý.
+ */
+@Component
+public class TeacherDashboardCache {
+    static final Set<Integer> CACHED_WINDOWS = Set.of(7, 30, 90);
+
+    private final long ttlMs;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    // Tăng mỗi lần invalidate; mục tính xong sau một lần invalidate bắt đầu giữa chừng thì không được lưu
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder uncached = new LongAdder();
+
+    public TeacherDashboardCache(@Value("${app.teacher-dashboard.ttl-ms:60000}") long ttlMs) {
+        this.ttlMs = Math.max(0, ttlMs);
+    }
+
+    private record Key(Long teacherId, int days) {}
+
+    private record Entry(TeacherAnalyticsDtos.DashboardResponse dashboard, Set<Long> courseIds, long expiresAt) {}
+
+    /** Kết quả tính dashboard kèm tập khóa học đã dùng. */
+    public record Computed(TeacherAnalyticsDtos.DashboardResponse dashboard, Set<Long> courseIds) {}
+
+    public TeacherAnalyticsDtos.DashboardResponse get(Long teacherId, int days, Supplier<Computed> loader) {
+        if (teacherId == null || ttlMs == 0) return loader.get().dashboard();
+        if (!CACHED_WINDOWS.contains(days)) {
+            uncached.increment();
+            return loader.get().dashboard();
+        }
+        Key key = new Key(teacherId, days);
+        long now = System.currentTimeMillis();
+        Entry cached = entries.get(key);
+        if (cached != null && cached.expiresAt() > now) {
+            hits.increment();
+            return cached.dashboard();
+        }
+        misses.increment();
+        long gen = generation.get();
+        Computed computed = loader.get();
+        if (generation.get() == gen) {
+            entries.put(key, new Entry(computed.dashboard(), Set.copyOf(computed.courseIds()), now + ttlMs));
+        }
+        return computed.dashboard();
+    }
+
+    /** Bỏ các dashboard có chứa khóa học; trong transaction thì chờ commit để không nạp lại dữ liệu chưa commit. */
+    public void invalidateCourse(Long courseId) {
+        if (courseId == null) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    removeCourse(courseId);
+                }
+            });
+        } else {
+            removeCourse(courseId);
+        }
+    }
+
+    private void removeCourse(Long courseId) {
+        generation.incrementAndGet();
+        if (entries.values().removeIf(e -> e.courseIds().contains(courseId))) invalidations.increment();
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        if (!entries.isEmpty()) invalidations.increment();
+        entries.clear();
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCourseChanged(CourseChangedEvent event) {
+        if (event.part() == CourseChangedEvent.Part.COURSE) invalidateAll();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("entries", entries.size());
+        m.put("ttlMs", ttlMs);
+        m.put("hits", hits.sum());
+        m.put("misses", misses.sum());
+        m.put("invalidations", invalidations.sum());
+        m.put("uncached", uncached.sum());
+        return m;
+    }
+}
@@ -6,8 +6,9 @@ import com.example.back_end.model.User;
 import com.example.back_end.repository.RoleRepository;
 import com.example.back_end.repository.UserRepository;
 import com.example.back_end.repository.CourseRepository;
+import com.example.back_end.security.PasswordHasher;
+import com.example.back_end.security.PrincipalCache;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -22,20 +23,23 @@ import java.util.stream.Collectors;
 public class UserService {
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHasher passwordHasher;
     private final ProfileService profileService;
     private final CourseRepository courseRepository;
+    private final PrincipalCache principalCache;
 
     public UserService(UserRepository userRepository,
                        RoleRepository roleRepository,
-                       PasswordEncoder passwordEncoder,
+                       PasswordHasher passwordHasher,
                        ProfileService profileService,
-                       CourseRepository courseRepository) {
+                       CourseRepository courseRepository,
+                       PrincipalCache principalCache) {
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHasher = passwordHasher;
         this.profileService = profileService;
         this.courseRepository = courseRepository;
+        this.principalCache = principalCache;
     }
 
     public List<User> getSampleUsers(int limit) {
@@ -72,6 +76,8 @@ public class UserService {
         User user = userRepository.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy người dùng #" + id));
         applyFields(user, req, false);
+        // Email, họ tên hoặc vai trò có thể vừa đổi
+        principalCache.invalidateUser(id);
         return UserDtos.UserResponse.fromEntity(userRepository.save(user));
     }
 
@@ -81,6 +87,7 @@ public class UserService {
                 .orElseThrow(() -> new IllegalArgumentException("Không tìm thấy người dùng #" + id));
         courseRepository.findAllByCreatedBy(user).forEach(courseRepository::delete);
         userRepository.delete(user);
+        principalCache.invalidateUser(id);
     }
 
     @Transactional(readOnly = true)
@@ -130,7 +137,7 @@ public class UserService {
         if (req.password != null) {
             String pwd = req.password.trim();
             if (pwd.length() < 6) throw new IllegalArgumentException("Mật khẩu phải từ 6 ký tự");
-            user.setPasswordHash(passwordEncoder.encode(pwd));
+            user.setPasswordHash(passwordHasher.encode(pwd));
         } else if (creating) {
             throw new IllegalArgumentException("Mật khẩu bắt buộc khi tạo mới");
         }
@@ -0,0 +1,17 @@
+package com.example.back_end.service.event;
+
+/**
+ * Phát ra sau mỗi thay đổi dữ liệu của một khóa học để các cache/chỉ mục trong bộ nhớ tự làm mới.
+ * COURSE: bản ghi dbo.courses (tạo, sửa, duyệt, xóa); OUTLINE: module, lesson hoặc lesson asset.
+ */
+public record CourseChangedEvent(Long courseId, Part part) {
+    public enum Part { COURSE, OUTLINE }
+
+    public static CourseChangedEvent course(Long courseId) {
+        return new CourseChangedEvent(courseId, Part.COURSE);
+    }
+
+    public static CourseChangedEvent outline(Long courseId) {
+        return new CourseChangedEvent(courseId, Part.OUTLINE);
+    }
+}
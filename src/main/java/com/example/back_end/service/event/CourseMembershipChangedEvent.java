@@ -0,0 +1,16 @@
+package com.example.back_end.service.event;
+
+/**
+ * Phát ra khi quan hệ người dùng - khóa học đổi (ghi danh, phân công giảng viên) để CourseMembershipCache bỏ mục cũ.
+ * userId null: mọi người dùng của khóa học.
+ */
+public record CourseMembershipChangedEvent(Long courseId, Long userId) {
+
+    public static CourseMembershipChangedEvent enrollment(Long courseId, Long userId) {
+        return new CourseMembershipChangedEvent(courseId, userId);
+    }
+
+    public static CourseMembershipChangedEvent course(Long courseId) {
+        return new CourseMembershipChangedEvent(courseId, null);
+    }
+}
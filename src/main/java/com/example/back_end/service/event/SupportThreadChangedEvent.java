@@ -0,0 +1,38 @@
+package com.example.back_end.service.event;
+
+import com.example.back_end.dto.SupportDtos;
+
+/**
+ * Phát khi hội thoại support đổi (tạo, tin nhắn mới, quản lý đọc, nhận/chuyển/đổi trạng thái) để SupportInboxIndex
+ * cập nhật số chưa đọc và nhóm trạng thái sau commit. thread là bản tóm tắt đã dựng trong transaction.
+ */
+public record SupportThreadChangedEvent(Kind kind, SupportDtos.ThreadSummary thread) {
+
+    public enum Kind {
+        CREATED,
+        STUDENT_MESSAGE,
+        MANAGER_MESSAGE,
+        MANAGER_READ,
+        UPDATED
+    }
+
+    public static SupportThreadChangedEvent created(SupportDtos.ThreadSummary thread) {
+        return new SupportThreadChangedEvent(Kind.CREATED, thread);
+    }
+
+    public static SupportThreadChangedEvent studentMessage(SupportDtos.ThreadSummary thread) {
+        return new SupportThreadChangedEvent(Kind.STUDENT_MESSAGE, thread);
+    }
+
+    public static SupportThreadChangedEvent managerMessage(SupportDtos.ThreadSummary thread) {
+        return new SupportThreadChangedEvent(Kind.MANAGER_MESSAGE, thread);
+    }
+
+    public static SupportThreadChangedEvent managerRead(SupportDtos.ThreadSummary thread) {
+        return new SupportThreadChangedEvent(Kind.MANAGER_READ, thread);
+    }
+
+    public static SupportThreadChangedEvent updated(SupportDtos.ThreadSummary thread) {
+        return new SupportThreadChangedEvent(Kind.UPDATED, thread);
+    }
+}
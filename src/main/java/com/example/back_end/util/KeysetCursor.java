@@ -0,0 +1,34 @@
+package com.example.back_end.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Cursor cho phân trang keyset theo (created_at DESC, id DESC); id phân định các hàng cùng created_at.
+ * Token là base64 URL-safe của "createdAt|id", client chỉ coi nó là một chuỗi mờ.
+ */
+public record KeysetCursor(LocalDateTime createdAt, long id) {
+
+    /** Vị trí trước hàng đầu tiên: mọi hàng thật đều xếp sau nó. */
+    public static final KeysetCursor FIRST = new KeysetCursor(LocalDateTime.of(9999, 12, 31, 23, 59, 59), Long.MAX_VALUE);
+
+    public String encode() {
+        String raw = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Token rỗng là trang đầu; token sai định dạng ném IllegalArgumentException.
+     */
+    public static KeysetCursor decode(String token) {
+        if (token == null || token.isBlank()) return FIRST;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+            int sep = raw.lastIndexOf('|');
+            return new KeysetCursor(LocalDateTime.parse(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.back_end.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram độ trễ không khóa để báo thời gian của các đường nóng mà không cần thư viện metrics.
+ * Mẫu được chia vào các bucket log-tuyến tính (4 bucket cho mỗi lũy thừa của 2, đơn vị micro giây), nên percentile
+ * sai lệch tối đa khoảng 20% còn mỗi lần ghi chỉ tốn vài phép tăng atomic.
+ */
+public final class LatencyRecorder {
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    public LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        buckets.incrementAndGet(bucketOf(micros));
+        count.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    /** Ghi thời gian đã trôi qua kể từ {@code startNanos} (giá trị lấy từ {@link System#nanoTime()}). */
+    public void recordSince(long startNanos) {
+        recordNanos(System.nanoTime() - startNanos);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    /** Percentile gần đúng, đơn vị micro giây; {@code p} trong [0, 100]. */
+    public long percentileMicros(double p) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(total * Math.min(100, Math.max(0, p)) / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= Math.max(1, rank)) return upperBoundOf(i);
+        }
+        return maxMicros.get();
+    }
+
+    public Map<String, Object> snapshot() {
+        long n = count.sum();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("count", n);
+        m.put("meanMicros", n == 0 ? 0 : totalMicros.sum() / n);
+        m.put("p50Micros", percentileMicros(50));
+        m.put("p99Micros", percentileMicros(99));
+        m.put("maxMicros", maxMicros.get());
+        return m;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+        count.reset();
+        totalMicros.reset();
+        maxMicros.reset();
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) return (int) micros;
+        int exp = 63 - Long.numberOfLeadingZeros(micros);   // micros thuộc [2^exp, 2^(exp+1))
+        int sub = (int) ((micros >>> (exp - 2)) & (SUB_BUCKETS - 1));
+        return Math.min(BUCKETS - 1, (exp - 1) * SUB_BUCKETS + sub);
+    }
+
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exp = bucket / SUB_BUCKETS + 1;
+        int sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exp - 2)) - 1;
+    }
+}
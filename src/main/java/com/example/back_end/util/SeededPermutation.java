@@ -0,0 +1,58 @@
+package com.example.back_end.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Xáo trộn tất định theo (seed, salt, id phần tử), để thứ tự câu hỏi và lựa chọn của một attempt được tính lại
+ * mỗi lần hiển thị thay vì lưu từng dòng.
+ *
+ * Mỗi phần tử lấy hash SplitMix64 của id làm khóa sắp xếp, nên thứ tự chỉ phụ thuộc vào các id có mặt chứ không
+ * phụ thuộc thứ tự liệt kê, và bỏ một phần tử không làm đổi thứ tự tương đối của các phần tử còn lại.
+ * Khóa và chỉ số được gói chung vào một {@code long[]} rồi sắp xếp kiểu nguyên thủy, nên mỗi lần gọi không cấp phát
+ * {@link java.util.Random} hay comparator boxed nào.
+ */
+public final class SeededPermutation {
+    private static final int INDEX_BITS = 20;
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+    private SeededPermutation() {
+    }
+
+    /**
+     * Trả về {@code items} đã sắp lại theo seed và salt (ví dụ id attempt, hoặc id attempt trộn với id câu hỏi cho
+     * các lựa chọn của câu đó). Seed 0 nghĩa là không xáo, trả nguyên thứ tự đầu vào.
+     */
+    public static <T> List<T> shuffle(List<T> items, ToLongFunction<T> idOf, long seed, long salt) {
+        int n = items.size();
+        if (seed == 0 || n < 2) return items;
+        if (n > INDEX_MASK) throw new IllegalArgumentException("Too many elements to shuffle: " + n);
+        long base = mix(seed ^ mix(salt));
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            long h = mix(base ^ idOf.applyAsLong(items.get(i)));
+            // xóa bit dấu để sắp xếp có dấu khớp thứ tự hash; các bit thấp giữ chỉ số và phân định khi trùng
+            keys[i] = ((h >>> 1) & ~INDEX_MASK) | i;
+        }
+        Arrays.sort(keys);
+        List<T> out = new ArrayList<>(n);
+        for (long k : keys) {
+            out.add(items.get((int) (k & INDEX_MASK)));
+        }
+        return out;
+    }
+
+    /** Salt cho các lựa chọn của một câu hỏi trong attempt. */
+    public static long salt(long attemptId, long questionId) {
+        return mix(attemptId) ^ questionId;
+    }
+
+    /** Bước trộn cuối của SplitMix64. */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.back_end.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Giới hạn tần suất theo cửa sổ trượt cho từng key (ví dụ số lần xin OTP theo email hoặc theo IP client).
+ *
+ * Dùng xấp xỉ hai ô: số đếm của cửa sổ cố định trước được nhân với phần còn chồng lên cửa sổ trượt, nên mỗi key chỉ
+ * tốn hai bộ đếm thay vì log mốc thời gian mà loạt request vắt qua ranh giới cửa sổ vẫn bị chặn. Key không còn hoạt
+ * động được dọn bằng {@link #evictIdle()}.
+ */
+public final class SlidingWindowRateLimiter {
+    private final String name;
+    private final int limit;
+    private final long windowMs;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder denied = new LongAdder();
+
+    public SlidingWindowRateLimiter(String name, int limit, long windowMs) {
+        this(name, limit, windowMs, System::currentTimeMillis);
+    }
+
+    SlidingWindowRateLimiter(String name, int limit, long windowMs, LongSupplier clock) {
+        this.name = name;
+        this.limit = Math.max(1, limit);
+        this.windowMs = Math.max(1, windowMs);
+        this.clock = clock;
+    }
+
+    private static final class Window {
+        long start;
+        int current;
+        int previous;
+    }
+
+    /** Đếm một lần cho {@code key}; trả false (không đếm) khi key đã vượt giới hạn. */
+    public boolean tryAcquire(String key) {
+        if (key == null) return true;
+        long now = clock.getAsLong();
+        Window w = windows.computeIfAbsent(key, k -> new Window());
+        synchronized (w) {
+            roll(w, now);
+            double overlap = 1.0 - (double) (now - w.start) / windowMs;
+            double estimate = w.previous * overlap + w.current;
+            if (estimate + 1 > limit) {
+                denied.increment();
+                return false;
+            }
+            w.current++;
+        }
+        allowed.increment();
+        return true;
+    }
+
+    private void roll(Window w, long now) {
+        long aligned = now - Math.floorMod(now, windowMs);
+        if (w.start == aligned) return;
+        w.previous = w.start == aligned - windowMs ? w.current : 0;
+        w.current = 0;
+        w.start = aligned;
+    }
+
+    /** Bỏ các key không có sự kiện trong hai cửa sổ gần nhất; trả số key đã bỏ. */
+    public int evictIdle() {
+        long cutoff = clock.getAsLong() - 2 * windowMs;
+        int before = windows.size();
+        windows.entrySet().removeIf(e -> {
+            synchronized (e.getValue()) {
+                return e.getValue().start < cutoff;
+            }
+        });
+        return before - windows.size();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("limit", limit);
+        m.put("windowMs", windowMs);
+        m.put("keys", windows.size());
+        m.put("allowed", allowed.sum());
+        m.put("denied", denied.sum());
+        return m;
+    }
+}
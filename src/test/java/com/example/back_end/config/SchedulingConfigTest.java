@@ -0,0 +1,56 @@
+package com.example.back_end.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SchedulingConfigTest {
+
+    @Test
+    void scheduledJobs_shouldNotRunOnBrokerScheduler() throws Exception {
+        try (AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext()) {
+            ctx.registerBean(SchedulingConfig.class, 3);
+            ctx.register(BrokerLikeConfig.class);
+            ctx.refresh();
+
+            String thread = ctx.getBean(Job.class).ranOn.get(2, TimeUnit.SECONDS);
+
+            assertThat(thread).startsWith("scheduling-");
+            assertThat(ctx.getBean("scheduledJobsTaskScheduler", ThreadPoolTaskScheduler.class)
+                    .getScheduledThreadPoolExecutor().getCorePoolSize()).isEqualTo(3);
+        }
+    }
+
+    /** Giống cấu hình STOMP: có sẵn một TaskScheduler khác (messageBrokerTaskScheduler). */
+    @Configuration
+    static class BrokerLikeConfig {
+        @Bean
+        ThreadPoolTaskScheduler messageBrokerTaskScheduler() {
+            ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+            scheduler.setThreadNamePrefix("MessageBroker-");
+            return scheduler;
+        }
+
+        @Bean
+        Job job() {
+            return new Job();
+        }
+    }
+
+    static class Job {
+        final CompletableFuture<String> ranOn = new CompletableFuture<>();
+
+        @Scheduled(fixedDelay = 60_000)
+        void run() {
+            ranOn.complete(Thread.currentThread().getName());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.back_end.security;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PasswordHasherTest {
+
+    private PasswordHasher hasher;
+
+    @AfterEach
+    void tearDown() {
+        if (hasher != null) hasher.shutdown();
+    }
+
+    @Test
+    void encodeAndMatches_shouldRunOnPoolAndRecordLatency() {
+        hasher = new PasswordHasher(new BCryptPasswordEncoder(4), 2, 8, 5_000);
+
+        String hash = hasher.encode("secret");
+
+        assertThat(hasher.matches("secret", hash)).isTrue();
+        assertThat(hasher.matches("wrong", hash)).isFalse();
+        assertThat(hasher.stats()).containsEntry("threads", 2).containsEntry("rejected", 0L);
+    }
+
+    @Test
+    void needsUpgrade_shouldFlagHashesWithLowerCost() {
+        hasher = new PasswordHasher(new BCryptPasswordEncoder(6), 1, 8, 5_000);
+
+        assertThat(hasher.needsUpgrade(new BCryptPasswordEncoder(4).encode("secret"))).isTrue();
+        assertThat(hasher.needsUpgrade(hasher.encode("secret"))).isFalse();
+        assertThat(hasher.needsUpgrade(null)).isFalse();
+    }
+
+    @Test
+    void encode_shouldReject503WhenPoolAndQueueAreFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder blocking = new BCryptPasswordEncoder(4) {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.encode(rawPassword);
+            }
+        };
+        hasher = new PasswordHasher(blocking, 1, 1, 5_000);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            // Một tác vụ chiếm thread, một tác vụ nằm trong hàng đợi
+            callers.submit(() -> hasher.encode("a"));
+            waitUntil(() -> hasher.stats().get("active").equals(1));
+            callers.submit(() -> hasher.encode("b"));
+            waitUntil(() -> hasher.stats().get("queued").equals(1));
+
+            assertThatThrownBy(() -> hasher.encode("c"))
+                    .isInstanceOf(ResponseStatusException.class)
+                    .extracting(ex -> ((ResponseStatusException) ex).getStatusCode())
+                    .isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+            assertThat(hasher.stats()).containsEntry("rejected", 1L);
+        } finally {
+            release.countDown();
+            callers.shutdown();
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.back_end.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PrincipalCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final PrincipalCache cache = new PrincipalCache(null, 60_000, 100) {
+        @Override
+        AuthenticatedUser load(String email) {
+            loads.incrementAndGet();
+            if (email.startsWith("gone")) return null;
+            return new AuthenticatedUser(email.startsWith("a") ? 1L : 2L, email, "User", Set.of("student"));
+        }
+    };
+
+    @Test
+    void resolve_shouldLoadOncePerEmailIgnoringCase() {
+        AuthenticatedUser first = cache.resolve("a@x.vn");
+
+        assertThat(cache.resolve("A@X.vn ")).isSameAs(first);
+        assertThat(loads).hasValue(1);
+        assertThat(first.hasRole("STUDENT")).isTrue();
+    }
+
+    @Test
+    void invalidateUser_shouldDropOnlyThatUser() {
+        cache.resolve("a@x.vn");
+        cache.resolve("b@x.vn");
+
+        cache.invalidateUser(1L);
+        cache.resolve("a@x.vn");
+        cache.resolve("b@x.vn");
+
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    void require_shouldPreferDetailsAndRejectUnknownUser() {
+        AuthenticatedUser details = new AuthenticatedUser(9L, "c@x.vn", "C", Set.of());
+        var auth = new UsernamePasswordAuthenticationToken("c@x.vn", null, List.of());
+        auth.setDetails(details);
+
+        assertThat(cache.require(auth)).isSameAs(details);
+        assertThat(loads).hasValue(0);
+        assertThatThrownBy(() -> cache.require(new UsernamePasswordAuthenticationToken("gone@x.vn", null, List.of())))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
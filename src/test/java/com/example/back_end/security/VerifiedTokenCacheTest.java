@@ -0,0 +1,66 @@
+package com.example.back_end.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VerifiedTokenCacheTest {
+
+    private static final String SECRET = "test-secret-that-is-long-enough-for-hs256-keys";
+
+    private final JwtService jwtService = new JwtService(SECRET, 60_000);
+    private final AtomicReference<Set<String>> dbRoles = new AtomicReference<>(Set.of("student"));
+
+    private final PrincipalCache principals = new PrincipalCache(null, 60_000, 100) {
+        @Override
+        AuthenticatedUser load(String email) {
+            return new AuthenticatedUser(1L, email, "User", dbRoles.get());
+        }
+    };
+    private final VerifiedTokenCache cache = new VerifiedTokenCache(jwtService, principals, 100);
+
+    private String token() {
+        return jwtService.generate("a@x.vn", Map.of("uid", 1L, "roles", List.of("student")));
+    }
+
+    @Test
+    void authenticate_shouldReusePrebuiltAuthenticationForSameToken() {
+        String token = token();
+        Authentication first = cache.authenticate(token);
+
+        assertThat(cache.authenticate(token)).isSameAs(first);
+        assertThat(first.getAuthorities()).extracting(GrantedAuthority::getAuthority).containsExactly("ROLE_STUDENT");
+        assertThat(cache.stats()).containsEntry("hits", 1L).containsEntry("misses", 1L);
+    }
+
+    @Test
+    void authenticate_shouldRebuildWhenPrincipalIsInvalidated() {
+        String token = token();
+        Authentication first = cache.authenticate(token);
+
+        dbRoles.set(Set.of("teacher"));
+        principals.invalidateUser(1L);
+        Authentication second = cache.authenticate(token);
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getAuthorities()).extracting(GrantedAuthority::getAuthority).containsExactly("ROLE_TEACHER");
+    }
+
+    @Test
+    void authenticate_shouldRejectTamperedAndExpiredTokens() {
+        String token = token();
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+        String expired = new JwtService(SECRET, -1_000).generate("a@x.vn", Map.of());
+
+        assertThat(cache.authenticate(tampered)).isNull();
+        assertThat(cache.authenticate(expired)).isNull();
+        assertThat(cache.stats()).containsEntry("rejected", 2L).containsEntry("entries", 0);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.back_end.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class AnalyticsQueryFanoutTest {
+
+    private final AnalyticsQueryFanout fanout =
+            new AnalyticsQueryFanout(mock(PlatformTransactionManager.class), 4, 10, 3, 300);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        fanout.shutdown();
+    }
+
+    @Test
+    void await_shouldRunQueriesConcurrently() {
+        CountDownLatch allStarted = new CountDownLatch(3);
+        Runnable waitForOthers = () -> {
+            allStarted.countDown();
+            try {
+                allStarted.await(2, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        AnalyticsQueryFanout.Result r = fanout.batch()
+                .add("a", () -> { waitForOthers.run(); return 1L; })
+                .add("b", () -> { waitForOthers.run(); return 2L; })
+                .add("c", () -> { waitForOthers.run(); return 3L; })
+                .await();
+
+        assertThat(r.partial()).isFalse();
+        assertThat(r.getLong("a") + r.getLong("b") + r.getLong("c")).isEqualTo(6L);
+    }
+
+    @Test
+    void await_shouldReturnPartialResultWhenAQueryIsSlowOrFails() {
+        AnalyticsQueryFanout.Result r = fanout.batch()
+                .add("fast", () -> 7L)
+                .add("slow", () -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignored) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return 1L;
+                })
+                .add("broken", () -> { throw new IllegalStateException("db error"); })
+                .await();
+
+        assertThat(r.getLong("fast")).isEqualTo(7L);
+        assertThat(r.missing()).containsExactlyInAnyOrder("slow", "broken");
+        assertThat(fanout.stats()).containsEntry("timeouts", 1L).containsEntry("failures", 1L);
+    }
+
+    @Test
+    void threadsFor_shouldLeaveReservedConnectionsForRequests() {
+        assertThat(AnalyticsQueryFanout.threadsFor(4, 5, 3)).isEqualTo(2);
+        assertThat(AnalyticsQueryFanout.threadsFor(4, 10, 3)).isEqualTo(4);
+        assertThat(AnalyticsQueryFanout.threadsFor(4, 3, 3)).isEqualTo(1);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.back_end.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AnalyticsRollupServiceTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final AnalyticsRollupService service =
+            new AnalyticsRollupService(jdbcTemplate, mock(PlatformTransactionManager.class), 7);
+
+    @Test
+    void facts_shouldMergeDailyRowsIntoMonthBuckets() throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getDate(1)).thenReturn(
+                Date.valueOf("2025-11-29"), Date.valueOf("2025-11-30"), Date.valueOf("2025-12-01"));
+        when(rs.getString(2)).thenReturn(AnalyticsRollupService.ENROLLMENTS);
+        when(rs.getBigDecimal(3)).thenReturn(new BigDecimal("10.50"), new BigDecimal("4.50"), new BigDecimal("7"));
+        doAnswer(inv -> {
+            RowCallbackHandler handler = inv.getArgument(1);
+            for (int i = 0; i < 3; i++) handler.processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+
+        Map<String, Map<String, BigDecimal>> byMonth = service.facts(
+                LocalDate.of(2025, 11, 1), LocalDate.of(2025, 12, 31), true, List.of(AnalyticsRollupService.ENROLLMENTS));
+
+        assertThat(byMonth.keySet()).containsExactly("2025-11", "2025-12");
+        assertThat(byMonth.get("2025-11").get(AnalyticsRollupService.ENROLLMENTS)).isEqualByComparingTo("15");
+        assertThat(byMonth.get("2025-12").get(AnalyticsRollupService.ENROLLMENTS)).isEqualByComparingTo("7");
+    }
+
+    @Test
+    void bucketOf_shouldFormatDayAndMonth() {
+        LocalDate day = LocalDate.of(2025, 3, 7);
+        assertThat(AnalyticsRollupService.bucketOf(day, false)).isEqualTo("2025-03-07");
+        assertThat(AnalyticsRollupService.bucketOf(day, true)).isEqualTo("2025-03");
+    }
+}
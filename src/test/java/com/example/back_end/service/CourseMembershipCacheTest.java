@@ -0,0 +1,51 @@
+package com.example.back_end.service;
+
+import com.example.back_end.service.event.CourseChangedEvent;
+import com.example.back_end.service.event.CourseMembershipChangedEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CourseMembershipCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final CourseMembershipCache cache = new CourseMembershipCache(null, 60_000, 100) {
+        @Override
+        Membership load(Long userId, Long courseId) {
+            loads.incrementAndGet();
+            return new Membership(userId == 1L, false, userId == 2L);
+        }
+    };
+
+    @Test
+    void get_shouldLoadEachPairOnceUntilEnrollmentChanges() {
+        assertThat(cache.get(1L, 10L).teaches()).isTrue();
+        assertThat(cache.get(2L, 10L).enrolled()).isTrue();
+        cache.get(2L, 10L);
+        assertThat(loads).hasValue(2);
+
+        cache.onMembershipChanged(CourseMembershipChangedEvent.enrollment(10L, 2L));
+        cache.get(1L, 10L);
+        cache.get(2L, 10L);
+
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    void onCourseChanged_shouldDropEveryUserOfThatCourseOnly() {
+        cache.get(1L, 10L);
+        cache.get(2L, 10L);
+        cache.get(1L, 20L);
+
+        cache.onCourseChanged(CourseChangedEvent.course(10L));
+        cache.onCourseChanged(CourseChangedEvent.outline(20L));
+        cache.get(1L, 10L);
+        cache.get(2L, 10L);
+        cache.get(1L, 20L);
+
+        assertThat(loads).hasValue(5);
+    }
+}
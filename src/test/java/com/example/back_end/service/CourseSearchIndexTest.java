@@ -0,0 +1,54 @@
+package com.example.back_end.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class CourseSearchIndexTest {
+
+    private CourseSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new CourseSearchIndex(mock(JdbcTemplate.class));
+        index.upsert(CourseSearchIndex.toDoc(1L, "Tiếng Anh giao tiếp cơ bản", "tieng-anh-giao-tiep", "published",
+                Timestamp.valueOf("2025-01-01 00:00:00"), "Nguyễn Văn Đức", List.of("speaking", "Giao tiếp")));
+        index.upsert(CourseSearchIndex.toDoc(2L, "Luyện đề TOEIC 650+", "toeic-650", "published",
+                Timestamp.valueOf("2025-02-01 00:00:00"), "Trần Thị Anh", List.of("toeic")));
+        index.upsert(CourseSearchIndex.toDoc(3L, "IELTS Writing", "ielts-writing", "draft",
+                Timestamp.valueOf("2025-03-01 00:00:00"), "Lê Đức", List.of()));
+    }
+
+    @Test
+    void search_shouldIgnoreVietnameseDiacritics() {
+        assertThat(index.search("tieng anh", null, 0, 10)).containsExactly(1L);
+        assertThat(index.search("LUYỆN ĐỀ", null, 0, 10)).containsExactly(2L);
+        assertThat(index.search("duc", null, 0, 10)).containsExactlyInAnyOrder(1L, 3L);
+    }
+
+    @Test
+    void search_shouldMatchPrefixesAndRankTitleAboveTeacher() {
+        // "anh" nằm trong tiêu đề khóa 1 nhưng chỉ là tên giáo viên của khóa 2
+        assertThat(index.search("an", null, 0, 10)).containsExactly(1L, 2L);
+        assertThat(index.suggest("toe", "published", 5)).extracting(CourseSearchIndex.Hit::slug).containsExactly("toeic-650");
+    }
+
+    @Test
+    void upsertAndRemove_shouldUpdateIndexIncrementally() {
+        assertThat(index.search("writing", "published", 0, 10)).isEmpty();
+        index.upsert(CourseSearchIndex.toDoc(3L, "IELTS Speaking", "ielts-speaking", "published",
+                Timestamp.valueOf("2025-03-01 00:00:00"), "Lê Đức", List.of()));
+        assertThat(index.search("writing", null, 0, 10)).isEmpty();
+        assertThat(index.search("speak", "published", 0, 10)).containsExactly(3L, 1L);
+
+        index.remove(3L);
+        assertThat(index.search("ielts", null, 0, 10)).isEmpty();
+        assertThat(index.size()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.back_end.service;
+
+import com.example.back_end.dto.ExamDtos;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ExamAnswerBufferTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final QuizSnapshotCache quizSnapshots = mock(QuizSnapshotCache.class);
+    private final ExamAnswerBuffer buffer = new ExamAnswerBuffer(jdbcTemplate, quizSnapshots, true);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        Timestamp endsAt = Timestamp.valueOf(LocalDateTime.now().plusHours(1));
+        List<Object[]> rows = List.<Object[]>of(new Object[]{5L, "in_progress", endsAt, 9L, 2L, null});
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq(100L))).thenReturn((List) rows);
+        // Câu 3 được thêm sau khi attempt bắt đầu (vượt mốc 2) nên không thuộc attempt
+        when(quizSnapshots.get(eq(9L), any())).thenReturn(QuizSnapshotCache.QuizSnapshot.of(9L, null, List.of(
+                new QuizSnapshotCache.QuestionSnapshot(1L, "Q1", 1, List.of(
+                        new QuizSnapshotCache.OptionSnapshot(11L, "A", true),
+                        new QuizSnapshotCache.OptionSnapshot(12L, "B", false))),
+                new QuizSnapshotCache.QuestionSnapshot(2L, "Q2", 1, List.of(
+                        new QuizSnapshotCache.OptionSnapshot(21L, "C", true))),
+                new QuizSnapshotCache.QuestionSnapshot(3L, "Q3", 1, List.of(
+                        new QuizSnapshotCache.OptionSnapshot(31L, "D", true))))));
+    }
+
+    private static ExamDtos.AnswerUpdateRequest answer(Long questionId, Long optionId) {
+        ExamDtos.AnswerUpdateRequest r = new ExamDtos.AnswerUpdateRequest();
+        r.questionId = questionId;
+        r.selectedOptionId = optionId;
+        return r;
+    }
+
+    @Test
+    void save_shouldCoalesceEditsAndFlushOneBatch() {
+        buffer.save(5L, 100L, answer(1L, 11L));
+        buffer.save(5L, 100L, answer(1L, 12L));
+        buffer.save(5L, 100L, answer(2L, 21L));
+
+        assertThat(buffer.pending(100L)).hasSize(2);
+        assertThat(buffer.pending(100L).get(1L).selectedOptionId()).isEqualTo(12L);
+
+        buffer.flushAll();
+
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), argThat((List<Object[]> args) -> args.size() == 2));
+        assertThat(buffer.pending(100L)).isEmpty();
+        assertThat(buffer.stats()).containsEntry("coalesced", 1L).containsEntry("flushedRows", 2L);
+    }
+
+    @Test
+    void flushAll_shouldKeepAnswersWhenWriteFails() {
+        buffer.save(5L, 100L, answer(1L, 11L));
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenThrow(new RuntimeException("db down"));
+
+        buffer.flushAll();
+
+        assertThat(buffer.pending(100L)).containsKey(1L);
+        assertThat(buffer.stats()).containsEntry("flushFailures", 1L);
+    }
+
+    @Test
+    void save_shouldRejectOtherUsersAndForeignOptions() {
+        assertThatThrownBy(() -> buffer.save(6L, 100L, answer(1L, 11L))).isInstanceOf(ResponseStatusException.class);
+        assertThatThrownBy(() -> buffer.save(5L, 100L, answer(1L, 21L))).isInstanceOf(ResponseStatusException.class);
+        assertThatThrownBy(() -> buffer.save(5L, 100L, answer(3L, 31L))).isInstanceOf(ResponseStatusException.class);
+        assertThat(buffer.pending(100L)).isEmpty();
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.back_end.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ExamDeadlineSchedulerTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 3, 1, 10, 0);
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final StudentExamService studentExamService = mock(StudentExamService.class);
+    private final ExamDeadlineScheduler scheduler = new ExamDeadlineScheduler(jdbcTemplate, studentExamService, true, 2);
+
+    @SuppressWarnings("unchecked")
+    private void stubOpenAttempts(List<ExamDeadlineScheduler.Deadline> rows) {
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), anyInt(), anyLong())).thenReturn((List) rows, (List) List.of());
+    }
+
+    @Test
+    void pollDue_shouldReturnEarliestExpiredAttemptsUpToBatchSize() {
+        stubOpenAttempts(List.of(
+                new ExamDeadlineScheduler.Deadline(NOW.minusMinutes(1), 3L),
+                new ExamDeadlineScheduler.Deadline(NOW.plusMinutes(5), 4L),
+                new ExamDeadlineScheduler.Deadline(NOW.minusMinutes(9), 5L),
+                new ExamDeadlineScheduler.Deadline(NOW.minusMinutes(4), 6L)));
+
+        List<ExamDeadlineScheduler.Deadline> first = scheduler.pollDue(NOW);
+        List<ExamDeadlineScheduler.Deadline> second = scheduler.pollDue(NOW);
+
+        assertThat(first).extracting(ExamDeadlineScheduler.Deadline::attemptId).containsExactly(5L, 6L);
+        assertThat(second).extracting(ExamDeadlineScheduler.Deadline::attemptId).containsExactly(3L);
+        assertThat(scheduler.stats()).containsEntry("queued", 1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void pollDue_shouldPickUpLateCommittedAttemptFromRecentWindowWithoutRebuilding() {
+        stubOpenAttempts(List.of(new ExamDeadlineScheduler.Deadline(NOW.plusMinutes(5), 10L)));
+        scheduler.pollDue(NOW);
+        // Attempt #8 commit sau khi #10 đã được đọc: chỉ lượt quét lại cửa sổ gần đây thấy nó
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), anyInt(), anyLong(), anyLong()))
+                .thenReturn((List) List.of(new ExamDeadlineScheduler.Deadline(NOW.minusMinutes(1), 8L)));
+
+        List<ExamDeadlineScheduler.Deadline> due = scheduler.pollDue(NOW);
+
+        assertThat(due).extracting(ExamDeadlineScheduler.Deadline::attemptId).containsExactly(8L);
+        verify(jdbcTemplate).query(anyString(), any(RowMapper.class), eq(40), eq(10L), anyLong());
+        // Một truy vấn id > ? khi dựng lúc đầu, một truy vấn nữa ở lượt sau: không quét lại toàn bộ
+        verify(jdbcTemplate, times(2)).query(anyString(), any(RowMapper.class), anyInt(), anyLong());
+    }
+
+    @Test
+    void runPass_shouldRetryFailedSubmitLater() {
+        stubOpenAttempts(List.of(new ExamDeadlineScheduler.Deadline(LocalDateTime.now().minusHours(30), 7L)));
+        when(studentExamService.autoSubmitExpired(7L)).thenThrow(new RuntimeException("deadlock"));
+
+        scheduler.runPass();
+
+        assertThat(scheduler.stats()).containsEntry("failures", 1L).containsEntry("queued", 1);
+    }
+}
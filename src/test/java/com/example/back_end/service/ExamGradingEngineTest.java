@@ -0,0 +1,58 @@
+package com.example.back_end.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ExamGradingEngineTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final ExamGradingEngine engine = new ExamGradingEngine(jdbcTemplate, new QuizSnapshotCache(jdbcTemplate));
+
+    private ExamGradingEngine.AnswerKey key() {
+        Map<Long, ExamGradingEngine.QuestionKey> q = new LinkedHashMap<>();
+        q.put(1L, new ExamGradingEngine.QuestionKey(2, Set.of(11L)));
+        q.put(2L, new ExamGradingEngine.QuestionKey(1, Set.of(21L)));
+        q.put(3L, new ExamGradingEngine.QuestionKey(1, Set.of(31L)));
+        return new ExamGradingEngine.AnswerKey(9L, LocalDateTime.of(2025, 1, 1, 0, 0), q);
+    }
+
+    @Test
+    void grade_shouldScoreAttemptInMemory() {
+        Map<Long, Long> selected = new LinkedHashMap<>();
+        selected.put(1L, 11L);
+        selected.put(2L, 22L);
+
+        ExamGradingEngine.GradeResult result = engine.grade(key(), selected);
+
+        assertThat(result.totalPoints()).isEqualTo(2.0);
+        assertThat(result.maxPoints()).isEqualTo(4.0);
+        assertThat(result.results()).extracting(ExamGradingEngine.QuestionResult::correct).containsExactly(true, false, false);
+    }
+
+    @Test
+    void persistResults_shouldWriteAnsweredQuestionsInOneBatch() {
+        ExamGradingEngine.GradeResult result = engine.grade(key(), Map.of(1L, 11L, 2L, 21L));
+
+        engine.persistResults(100L, result.results(), Set.of(1L, 2L));
+
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), argThat((List<Object[]> args) -> args.size() == 2));
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void persistResults_shouldSkipDbWhenNothingAnswered() {
+        engine.persistResults(100L, engine.grade(key(), Map.of()).results(), Set.of());
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+}
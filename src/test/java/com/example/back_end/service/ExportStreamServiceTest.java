@@ -0,0 +1,106 @@
+package com.example.back_end.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ExportStreamServiceTest {
+
+    private static final List<ExportStreamService.Column> COLUMNS = List.of(
+            new ExportStreamService.Column("id", 1),
+            new ExportStreamService.Column("name", 2),
+            new ExportStreamService.Column("amount", 3),
+            new ExportStreamService.Column("createdAt", 4));
+
+    private ExportStreamService serviceReturning(Object[]... rows) throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(rs);
+        int[] cursor = {-1};
+        when(rs.next()).thenAnswer(inv -> ++cursor[0] < rows.length);
+        when(rs.getObject(anyInt())).thenAnswer(inv -> rows[cursor[0]][(int) inv.getArgument(0) - 1]);
+        return new ExportStreamService(dataSource, new ObjectMapper(), 500, 60, 1);
+    }
+
+    private static Object[] row(long id, String name) {
+        return new Object[]{id, name, new BigDecimal("1500000.00"),
+                Timestamp.valueOf(LocalDateTime.of(2025, 3, 1, 9, 30))};
+    }
+
+    @Test
+    void write_shouldStreamEscapedCsv() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serviceReturning(row(1, "Nguyễn, Văn \"A\""), row(2, "=HYPERLINK()"))
+                .write(out, ExportStreamService.Format.CSV, "SELECT", COLUMNS);
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "\uFEFFid,name,amount,createdAt\r\n" +
+                "1,\"Nguyễn, Văn \"\"A\"\"\",1500000.00,2025-03-01T09:30\r\n" +
+                "2,'=HYPERLINK(),1500000.00,2025-03-01T09:30\r\n");
+    }
+
+    @Test
+    void write_shouldStreamOneJsonObjectPerLine() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serviceReturning(row(1, "A"), row(2, null))
+                .write(out, ExportStreamService.Format.NDJSON, "SELECT", COLUMNS);
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(
+                "{\"id\":1,\"name\":\"A\",\"amount\":1500000.00,\"createdAt\":\"2025-03-01T09:30\"}\n" +
+                "{\"id\":2,\"name\":null,\"amount\":1500000.00,\"createdAt\":\"2025-03-01T09:30\"}\n");
+    }
+
+    @Test
+    void export_shouldRejectWhileAnotherExportHoldsTheSlot() throws Exception {
+        ExportStreamService service = serviceReturning(row(1, "A"));
+        StreamingResponseBody first = service.export("a", ExportStreamService.Format.CSV, "SELECT", COLUMNS).getBody();
+
+        assertThatThrownBy(() -> service.export("b", ExportStreamService.Format.CSV, "SELECT", COLUMNS))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        ex -> assertThat(ex.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+
+        first.writeTo(new ByteArrayOutputStream());
+        assertThat(service.export("c", ExportStreamService.Format.CSV, "SELECT", COLUMNS).getBody()).isNotNull();
+    }
+
+    @Test
+    void export_shouldReleaseSlotWhenRequestEndsWithoutRunningBody() throws Exception {
+        ExportStreamService service = serviceReturning(row(1, "A"));
+        ServletRequestAttributes attributes = new ServletRequestAttributes(new MockHttpServletRequest());
+        RequestContextHolder.setRequestAttributes(attributes);
+        try {
+            // Body không bao giờ được ghi (ví dụ client ngắt trước khi vào async)
+            service.export("a", ExportStreamService.Format.CSV, "SELECT", COLUMNS);
+            attributes.requestCompleted();
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+
+        assertThat(service.export("b", ExportStreamService.Format.CSV, "SELECT", COLUMNS).getBody()).isNotNull();
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.back_end.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class JdbcSupportEventBusTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final JdbcSupportEventBus bus = new JdbcSupportEventBus(jdbcTemplate, 100, 1_000, 60);
+    private final List<String> received = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        bus.shutdown();
+    }
+
+    private static JdbcSupportEventBus.Row row(long id) {
+        return new JdbcSupportEventBus.Row(id, new SupportEventBus.Envelope("/topic/support/threads/" + id, "{}", 0L));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void pollReturns(List<JdbcSupportEventBus.Row> rows) {
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), anyInt(), anyLong())).thenReturn(rows);
+    }
+
+    @Test
+    void pollOnce_shouldWaitOnIdGapThenSkipAfterGapWait() {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(10L);
+        bus.subscribe(e -> received.add(e.destination()));
+
+        pollReturns(List.of(row(11), row(13)));
+        bus.pollOnce(5_000);
+        // id 12 có thể chưa commit: chỉ giao 11, giữ 13 lại
+        assertThat(received).containsExactly("/topic/support/threads/11");
+
+        pollReturns(List.of(row(13)));
+        bus.pollOnce(5_500);
+        assertThat(received).hasSize(1);
+
+        bus.pollOnce(6_000);
+        assertThat(received).containsExactly("/topic/support/threads/11", "/topic/support/threads/13");
+        assertThat(bus.stats()).containsEntry("delivered", 2L).containsEntry("gapsSkipped", 1L);
+    }
+}
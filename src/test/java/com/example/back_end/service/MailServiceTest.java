@@ -0,0 +1,158 @@
+package com.example.back_end.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class MailServiceTest {
+
+    private FakeSmtpServer smtp;
+    private MailService mailService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        smtp = new FakeSmtpServer();
+        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+        sender.setHost("127.0.0.1");
+        sender.setPort(smtp.port());
+        @SuppressWarnings("unchecked")
+        ObjectProvider<JavaMailSender> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(sender);
+        mailService = new MailService(provider, "LMS <noreply@lms.local>", 1, 10, 20, 2, 10);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        mailService.shutdown();
+        smtp.close();
+    }
+
+    @Test
+    void deliver_shouldSendWholeBatchOverOneConnection() {
+        long now = System.nanoTime();
+        mailService.deliver(List.of(
+                new MailService.OutboundMail("a@x.vn", "OTP", "1", 1, now),
+                new MailService.OutboundMail("b@x.vn", "OTP", "2", 1, now),
+                new MailService.OutboundMail("c@x.vn", "OTP", "3", 1, now)));
+
+        assertThat(smtp.connections).hasValue(1);
+        assertThat(smtp.recipients).containsExactly("a@x.vn", "b@x.vn", "c@x.vn");
+    }
+
+    @Test
+    void sendOtpEmail_shouldReturnImmediatelyAndDeliverInBackground() {
+        mailService.sendOtpEmail("a@x.vn", "Mã xác thực", "123456", 10);
+
+        // Bộ đếm sent tăng sau khi send() trả về, có thể muộn hơn lúc server nhận mail
+        await(() -> (Long) mailService.stats().get("sent") == 1L);
+        assertThat(smtp.recipients).contains("a@x.vn");
+    }
+
+    @Test
+    void sendOtpEmail_shouldRetryRejectedRecipientThenDropIt() {
+        mailService.sendOtpEmail("reject@x.vn", "OTP", "123456", 10);
+
+        await(() -> (Long) mailService.stats().get("dropped") == 1L);
+        Map<String, Object> stats = mailService.stats();
+        assertThat(stats).containsEntry("failedAttempts", 2L).containsEntry("retried", 1L).containsEntry("sent", 0L);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) throw new AssertionError("timed out");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ex) {
+                throw new AssertionError(ex);
+            }
+        }
+    }
+
+    /** Minimal SMTP stand-in: accepts everything except recipients starting with "reject". */
+    private static final class FakeSmtpServer implements Closeable {
+        private final ServerSocket server = new ServerSocket(0);
+        final AtomicInteger connections = new AtomicInteger();
+        final List<String> recipients = new CopyOnWriteArrayList<>();
+
+        FakeSmtpServer() throws IOException {
+            Thread t = new Thread(() -> {
+                while (!server.isClosed()) {
+                    try {
+                        Socket socket = server.accept();
+                        connections.incrementAndGet();
+                        Thread h = new Thread(() -> handle(socket));
+                        h.setDaemon(true);
+                        h.start();
+                    } catch (IOException ignored) {
+                        return;
+                    }
+                }
+            });
+            t.setDaemon(true);
+            t.start();
+        }
+
+        int port() {
+            return server.getLocalPort();
+        }
+
+        private void handle(Socket socket) {
+            try (socket;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                 Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII)) {
+                reply(out, "220 fake");
+                String pending = null;
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String cmd = line.toUpperCase();
+                    if (cmd.startsWith("RCPT")) {
+                        pending = line.substring(line.indexOf('<') + 1, line.indexOf('>'));
+                        reply(out, pending.startsWith("reject") ? "550 rejected" : "250 ok");
+                    } else if (cmd.startsWith("DATA")) {
+                        reply(out, "354 go");
+                        while ((line = in.readLine()) != null && !line.equals(".")) {
+                            // message body
+                        }
+                        recipients.add(pending);
+                        reply(out, "250 queued");
+                    } else if (cmd.startsWith("QUIT")) {
+                        reply(out, "221 bye");
+                        return;
+                    } else {
+                        reply(out, "250 ok");
+                    }
+                }
+            } catch (IOException ignored) {
+                // client closed
+            }
+        }
+
+        private static void reply(Writer out, String line) throws IOException {
+            out.write(line + "\r\n");
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.back_end.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OtpCodeStoreTest {
+
+    private final OtpCodeStore store = new OtpCodeStore(null, 24, 1000);
+    private final LocalDateTime now = LocalDateTime.of(2025, 12, 5, 10, 0);
+
+    @Test
+    void match_shouldFindLiveCodeByPurposeAndEmailIgnoringCase() {
+        store.put("register", "A@x.vn", new OtpCodeStore.HotOtp(1L, "111111", "{}", now.plusMinutes(10)));
+        store.put("register", "a@x.vn", new OtpCodeStore.HotOtp(2L, "222222", "{}", now.plusMinutes(10)));
+
+        assertThat(store.match("register", "a@X.vn ", "111111", now).id()).isEqualTo(1L);
+        assertThat(store.match("register", "a@x.vn", "222222", now).id()).isEqualTo(2L);
+        assertThat(store.match("change-password", "a@x.vn", "111111", now)).isNull();
+        assertThat(store.match("register", "a@x.vn", "999999", now)).isNull();
+    }
+
+    @Test
+    void evictExpired_shouldDropCodesPastTheirDeadline() {
+        store.put("register", "a@x.vn", new OtpCodeStore.HotOtp(1L, "111111", "{}", now.plusMinutes(1)));
+
+        assertThat(store.match("register", "a@x.vn", "111111", now.plusMinutes(2))).isNull();
+        store.evictExpired(now.plusMinutes(2));
+
+        assertThat(store.stats()).containsEntry("keys", 0);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.back_end.service;
+
+import com.example.back_end.dto.public_.PublicCourseDetailDto;
+import com.example.back_end.service.event.CourseChangedEvent;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class PublicCourseDetailCacheTest {
+
+    private final PublicCourseQueryService queryService = mock(PublicCourseQueryService.class);
+
+    @Test
+    void bySlug_shouldServeRepeatedReadsFromMemoryUntilCourseChanges() {
+        PublicCourseDetailCache cache = new PublicCourseDetailCache(queryService, 1000);
+        when(queryService.loadCourseDetailBySlug("ielts")).thenReturn(course(5L, "ielts", 3));
+
+        cache.bySlug("ielts");
+        cache.bySlug("ielts");
+        assertThat(cache.byId(5L)).isNotNull();
+        verify(queryService, times(1)).loadCourseDetailBySlug("ielts");
+        assertThat(cache.stats()).containsEntry("hits", 2L).containsEntry("misses", 1L);
+
+        cache.onCourseChanged(CourseChangedEvent.outline(5L));
+        cache.bySlug("ielts");
+        verify(queryService, times(2)).loadCourseDetailBySlug("ielts");
+    }
+
+    @Test
+    void load_shouldNotCacheResultReadBeforeConcurrentInvalidation() {
+        PublicCourseDetailCache cache = new PublicCourseDetailCache(queryService, 1000);
+        when(queryService.loadCourseDetailById(7L, false)).thenAnswer(inv -> {
+            cache.invalidate(7L); // giáo viên sửa khóa học trong lúc đang đọc
+            return course(7L, "toeic", 1);
+        });
+
+        assertThat(cache.byId(7L)).isNotNull();
+        assertThat(cache.stats()).containsEntry("entries", 0);
+    }
+
+    @Test
+    void invalidate_shouldPruneMarksOlderThanMaxLoadTime() {
+        PublicCourseDetailCache cache = new PublicCourseDetailCache(queryService, 1000);
+        for (long id = 1; id <= 100; id++) {
+            cache.invalidate(id);
+        }
+        assertThat(cache.stats()).containsEntry("invalidationMarks", 100);
+
+        cache.pruneInvalidations(System.currentTimeMillis() + 2 * PublicCourseDetailCache.MAX_LOAD_MS);
+        assertThat(cache.stats()).containsEntry("invalidationMarks", 0);
+    }
+
+    @Test
+    void put_shouldEvictLeastRecentlyUsedWhenWeightExceeded() {
+        PublicCourseDetailCache cache = new PublicCourseDetailCache(queryService, 10);
+        when(queryService.loadCourseDetailById(1L, false)).thenReturn(course(1L, "a", 4));
+        when(queryService.loadCourseDetailById(2L, false)).thenReturn(course(2L, "b", 4));
+
+        cache.byId(1L);
+        cache.byId(2L);
+
+        assertThat(cache.stats()).containsEntry("entries", 1).containsEntry("evictions", 1L);
+        cache.byId(2L);
+        assertThat(cache.stats()).containsEntry("hits", 1L);
+    }
+
+    private static PublicCourseDetailDto course(Long id, String slug, int lessons) {
+        PublicCourseDetailDto dto = new PublicCourseDetailDto();
+        dto.id = id;
+        dto.slug = slug;
+        PublicCourseDetailDto.ModuleItem m = new PublicCourseDetailDto.ModuleItem();
+        m.id = id * 10;
+        for (int i = 0; i < lessons; i++) {
+            m.lessons.add(new PublicCourseDetailDto.LessonItem());
+        }
+        dto.modules.add(m);
+        return dto;
+    }
+}
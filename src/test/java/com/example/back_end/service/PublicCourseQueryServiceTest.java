@@ -0,0 +1,72 @@
+package com.example.back_end.service;
+
+import com.example.back_end.dto.public_.PublicCourseDetailDto;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PublicCourseQueryServiceTest {
+
+    @Mock
+    private EntityManager em;
+
+    @InjectMocks
+    private PublicCourseQueryService service;
+
+    @Test
+    void loadCourseDetailBySlug_shouldUseFixedQueryCountForLargeCourse() {
+        List<Object[]> outline = new ArrayList<>();
+        long lessonId = 1000;
+        for (long m = 1; m <= 20; m++) {
+            for (int l = 0; l < 10; l++) {
+                lessonId++;
+                outline.add(new Object[]{m, "Module " + m, (int) m, lessonId, "Lesson " + lessonId, "video", 60, l, "published",
+                        l == 0 ? "https://cdn/" + lessonId + ".mp4" : null});
+            }
+        }
+        outline.add(new Object[]{21L, "Empty module", 21, null, null, null, null, null, null, null});
+
+        stubQuery("FROM dbo.courses",
+                List.<Object[]>of(new Object[]{5L, "IELTS", "ielts", "beginner", "published", new BigDecimal("10.00"), 0, null}));
+        stubQuery("FROM dbo.modules", outline);
+
+        PublicCourseDetailDto dto = service.loadCourseDetailBySlug("ielts");
+
+        assertThat(dto.id).isEqualTo(5L);
+        assertThat(dto.is_free).isFalse();
+        assertThat(dto.modules).hasSize(21);
+        assertThat(dto.modules.get(0).lessons).hasSize(10);
+        assertThat(dto.modules.get(0).lessons.get(0).video_url).isEqualTo("https://cdn/1001.mp4");
+        assertThat(dto.modules.get(20).lessons).isEmpty();
+        verify(em, times(2)).createNativeQuery(anyString());
+    }
+
+    @Test
+    void loadCourseDetailById_shouldReturnNullWithoutOutlineQueryWhenMissing() {
+        stubQuery("FROM dbo.courses", List.of());
+
+        assertThat(service.loadCourseDetailById(9L, true)).isNull();
+        verify(em, times(1)).createNativeQuery(anyString());
+    }
+
+    private void stubQuery(String sqlFragment, List<Object[]> rows) {
+        Query query = mock(Query.class);
+        when(em.createNativeQuery(contains(sqlFragment))).thenReturn(query);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(query.getResultList()).thenReturn(rows);
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.back_end.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+class QuizSnapshotCacheTest {
+
+    private static final LocalDateTime V1 = LocalDateTime.of(2025, 1, 1, 0, 0);
+    private static final LocalDateTime V2 = V1.plusMinutes(5);
+
+    private final QuizSnapshotCache cache = spy(new QuizSnapshotCache(mock(JdbcTemplate.class)));
+
+    private static QuizSnapshotCache.QuizSnapshot snapshot(LocalDateTime version) {
+        return QuizSnapshotCache.QuizSnapshot.of(9L, version, List.of(
+                new QuizSnapshotCache.QuestionSnapshot(1L, "Q1", 2, List.of(
+                        new QuizSnapshotCache.OptionSnapshot(11L, "A", true),
+                        new QuizSnapshotCache.OptionSnapshot(12L, "B", false))),
+                new QuizSnapshotCache.QuestionSnapshot(2L, "Q2", 1, List.of(
+                        new QuizSnapshotCache.OptionSnapshot(21L, "C", false)))));
+    }
+
+    @Test
+    void get_shouldReuseSnapshotUntilVersionChanges() {
+        doReturn(snapshot(V1)).when(cache).load(9L);
+        cache.get(9L, V1);
+        cache.get(9L, V1);
+        verify(cache, times(1)).load(9L);
+
+        doReturn(snapshot(V2)).when(cache).load(9L);
+        assertThat(cache.get(9L, V2).version()).isEqualTo(V2);
+        verify(cache, times(2)).load(9L);
+    }
+
+    @Test
+    void invalidate_shouldForceReload() {
+        doReturn(snapshot(V1)).when(cache).load(9L);
+        cache.get(9L, V1);
+        cache.invalidate(9L);
+        cache.get(9L, V1);
+        verify(cache, times(2)).load(9L);
+    }
+
+    @Test
+    void snapshot_shouldDeriveAnswerKeyAndTotals() {
+        QuizSnapshotCache.QuizSnapshot s = snapshot(V1);
+
+        assertThat(s.maxPoints()).isEqualTo(3.0);
+        assertThat(s.answerKey().questions().get(1L).correctOptionIds()).isEqualTo(Set.of(11L));
+        assertThat(s.answerKey().questions().get(2L).correctOptionIds()).isEmpty();
+        assertThat(s.question(2L).text()).isEqualTo("Q2");
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.back_end.service;
+
+import com.example.back_end.dto.ExamDtos;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class StudentExamServiceTest {
+
+    private final EntityManager em = mock(EntityManager.class);
+    private final QuizSnapshotCache quizSnapshots = mock(QuizSnapshotCache.class);
+    private final ExamAnswerBuffer answerBuffer = mock(ExamAnswerBuffer.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final StudentExamService service = new StudentExamService(
+            mock(StudentProgressService.class), mock(ExamGradingEngine.class), answerBuffer, quizSnapshots,
+            transactionManager);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "em", em);
+        stubQuery("FROM dbo.quizzes q JOIN dbo.courses c", List.<Object[]>of(new Object[]{
+                9L, 5L, null, "Final", 600, 0, 2, new BigDecimal("50"), null, "score_only",
+                null, null, 0, null, "ielts", "IELTS", Timestamp.valueOf(LocalDateTime.of(2025, 1, 1, 0, 0))}));
+        when(quizSnapshots.get(eq(9L), any())).thenReturn(QuizSnapshotCache.QuizSnapshot.of(9L, null, List.of(
+                new QuizSnapshotCache.QuestionSnapshot(1L, "Q1", 2, List.of()),
+                new QuizSnapshotCache.QuestionSnapshot(2L, "Q2", 1, List.of()))));
+    }
+
+    @Test
+    void saveAnswer_withBuffer_shouldNotOpenTransaction() {
+        when(answerBuffer.isEnabled()).thenReturn(true);
+        ExamDtos.AnswerUpdateRequest request = new ExamDtos.AnswerUpdateRequest();
+        request.questionId = 1L;
+
+        service.saveAnswer(3L, 40L, request);
+
+        verify(answerBuffer).save(3L, 40L, request);
+        verifyNoInteractions(transactionManager);
+    }
+
+    @Test
+    void loadOverview_shouldEvaluateAccessInOneQuery() {
+        Timestamp finished = Timestamp.valueOf(LocalDateTime.of(2025, 1, 2, 8, 0));
+        stubQuery("OUTER APPLY", List.of(
+                new Object[]{"active", 1, null, finished, 3L, "Basics", 1},
+                new Object[]{"active", 1, null, finished, 4L, "Grammar", 0}));
+
+        ExamDtos.ExamOverview dto = service.loadOverview(7L, 5L, 9L);
+
+        assertThat(dto.enrolled).isTrue();
+        assertThat(dto.attemptsUsed).isEqualTo(1);
+        assertThat(dto.questionCount).isEqualTo(2);
+        assertThat(dto.lastAttemptFinishedAt).isEqualTo(finished.toLocalDateTime());
+        assertThat(dto.prerequisites).extracting(p -> p.courseId).containsExactly(3L, 4L);
+        assertThat(dto.canAttempt).isFalse();
+        verify(em, times(2)).createNativeQuery(anyString());
+    }
+
+    @Test
+    void loadOverview_shouldHandleNoEnrollmentAndNoPrerequisites() {
+        stubQuery("OUTER APPLY", List.<Object[]>of(new Object[]{null, 0, null, null, null, null, 0}));
+
+        ExamDtos.ExamOverview dto = service.loadOverview(7L, 5L, 9L);
+
+        assertThat(dto.enrolled).isFalse();
+        assertThat(dto.prerequisites).isEmpty();
+        assertThat(dto.activeAttemptId).isNull();
+        assertThat(service.overviewLatency().count()).isEqualTo(1);
+    }
+
+    private void stubQuery(String sqlFragment, List<Object[]> rows) {
+        Query query = mock(Query.class);
+        when(em.createNativeQuery(contains(sqlFragment))).thenReturn(query);
+        when(query.setParameter(anyString(), any())).thenReturn(query);
+        when(query.getResultList()).thenReturn(rows);
+    }
+}
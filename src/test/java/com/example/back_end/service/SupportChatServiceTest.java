@@ -5,6 +5,7 @@ import com.example.back_end.model.*;
 import com.example.back_end.model.enums.SupportSenderType;
 import com.example.back_end.model.enums.SupportThreadStatus;
 import com.example.back_end.repository.*;
+import com.example.back_end.service.event.SupportThreadChangedEvent;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,8 +14,12 @@ import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Pageable;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -36,6 +41,10 @@ class SupportChatServiceTest {
     private CourseRepository courseRepository;
     @Mock
     private SupportRealtimeGateway realtimeGateway;
+    @Mock
+    private SupportInboxIndex inboxIndex;
+    @Mock
+    private ApplicationEventPublisher events;
 
     @InjectMocks
     private SupportChatService service;
@@ -87,6 +96,41 @@ class SupportChatServiceTest {
         verify(realtimeGateway).messageAppended(eq(10L), any(SupportDtos.MessageDto.class));
     }
 
+    @Test
+    void studentThreadDetail_shouldReturnLatestPageWithBatchedAttachments() {
+        SupportThread thread = new SupportThread();
+        thread.setId(30L);
+        thread.setStudent(student);
+        thread.setHasUnreadForStudent(true);
+        // Repository trả mới nhất trước, thêm một dòng cho biết còn trang cũ hơn
+        List<SupportMessage> newestFirst = new ArrayList<>();
+        for (long id = 151; id >= 101; id--) {
+            SupportMessage message = new SupportMessage();
+            message.setId(id);
+            message.setThread(thread);
+            message.setSenderType(SupportSenderType.STUDENT);
+            message.setContent("Tin " + id);
+            newestFirst.add(message);
+        }
+
+        when(threadRepository.findByIdAndStudent_Id(30L, 1L)).thenReturn(Optional.of(thread));
+        when(messageRepository.findByThread_IdOrderByIdDesc(eq(30L), any(Pageable.class))).thenReturn(newestFirst);
+        when(messageRepository.findAttachmentUrls(anyCollection()))
+                .thenReturn(List.<Object[]>of(new Object[]{151L, "https://cdn/a.png"}, new Object[]{151L, "https://cdn/b.png"}));
+
+        SupportDtos.ThreadDetail detail = service.studentThreadDetail(30L, 1L);
+
+        assertThat(detail.messages).hasSize(50);
+        assertThat(detail.messages.get(0).id).isEqualTo(102L);
+        assertThat(detail.messages.get(49).id).isEqualTo(151L);
+        assertThat(detail.messages.get(49).attachments).containsExactly("https://cdn/a.png", "https://cdn/b.png");
+        assertThat(detail.messages.get(0).attachments).isEmpty();
+        assertThat(detail.hasMoreMessages).isTrue();
+        assertThat(detail.nextBeforeId).isEqualTo(102L);
+        assertThat(thread.isHasUnreadForStudent()).isFalse();
+        verify(messageRepository, times(1)).findAttachmentUrls(anyCollection());
+    }
+
     @Test
     void managerSendMessage_shouldUpdateThreadStateAndNotifyStudent() {
         SupportThread thread = new SupportThread();
@@ -112,6 +156,8 @@ class SupportChatServiceTest {
         assertThat(thread.getLastSender()).isEqualTo(SupportSenderType.MANAGER);
         verify(realtimeGateway).messageAppended(eq(44L), any(SupportDtos.MessageDto.class));
         verify(realtimeGateway).threadUpdated(any(SupportDtos.ThreadSummary.class));
+        verify(events).publishEvent(argThat((Object e) -> e instanceof SupportThreadChangedEvent changed
+                && changed.kind() == SupportThreadChangedEvent.Kind.MANAGER_MESSAGE && changed.thread().id == 44L));
     }
 
     @Test
@@ -0,0 +1,115 @@
+package com.example.back_end.service;
+
+import com.example.back_end.dto.SupportDtos;
+import com.example.back_end.model.enums.SupportThreadStatus;
+import com.example.back_end.service.event.SupportThreadChangedEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SupportInboxIndexTest {
+
+    private static final LocalDateTime T0 = LocalDateTime.of(2026, 1, 1, 8, 0);
+
+    private final SupportRealtimeGateway gateway = mock(SupportRealtimeGateway.class);
+    private final List<SupportInboxIndex.Entry> rows = new ArrayList<>();
+    private final SupportInboxIndex index = new SupportInboxIndex(null, gateway, new ObjectMapper(),
+            new LocalSupportEventBus(), "simple", 1) {
+        @Override
+        List<Entry> loadThreads() {
+            return rows;
+        }
+    };
+
+    @Test
+    void events_shouldMaintainUnreadCountsAndBadges() {
+        rows.add(entry(thread(1L, SupportThreadStatus.NEW, null, "An", 0), 2));
+        rows.add(entry(thread(2L, SupportThreadStatus.IN_PROGRESS, 9L, "Binh", 1), 0));
+        index.rebuild();
+
+        SupportDtos.InboxBadges badges = index.badges(9L);
+        assertThat(badges.all.byStatus).containsEntry(SupportThreadStatus.NEW, 1L)
+                .containsEntry(SupportThreadStatus.IN_PROGRESS, 1L)
+                .doesNotContainKey(SupportThreadStatus.CLOSED);
+        assertThat(badges.all.unassigned).isEqualTo(1);
+        assertThat(badges.all.unreadMessages).isEqualTo(2);
+        assertThat(badges.mine.byStatus).containsEntry(SupportThreadStatus.IN_PROGRESS, 1L);
+
+        SupportDtos.ThreadSummary message = thread(2L, SupportThreadStatus.IN_PROGRESS, 9L, "Binh", 5);
+        message.unreadForManager = true;
+        index.onThreadChanged(SupportThreadChangedEvent.studentMessage(message));
+        // Áp lại cùng sự kiện (sau khi nạp lại) không tính thêm tin chưa đọc
+        index.onThreadChanged(SupportThreadChangedEvent.studentMessage(message));
+        // Bản cũ hơn bản đang giữ bị bỏ qua
+        index.onThreadChanged(SupportThreadChangedEvent.updated(thread(2L, SupportThreadStatus.WAITING_STUDENT, 9L, "Binh", 2)));
+
+        assertThat(index.badges(9L).mine.unreadMessages).isEqualTo(1);
+        assertThat(index.stats()).containsEntry("staleSkipped", 1L);
+        ArgumentCaptor<SupportDtos.InboxDelta> delta = ArgumentCaptor.forClass(SupportDtos.InboxDelta.class);
+        verify(gateway, times(2)).inboxChanged(delta.capture());
+        assertThat(delta.getAllValues().get(0).previousUnreadCount).isZero();
+        assertThat(delta.getAllValues().get(0).thread.unreadCount).isEqualTo(1);
+        assertThat(delta.getAllValues().get(0).counts.unreadMessages).isEqualTo(3);
+
+        index.onThreadChanged(SupportThreadChangedEvent.managerRead(thread(1L, SupportThreadStatus.NEW, null, "An", 0)));
+        assertThat(index.badges(9L).all.unreadThreads).isEqualTo(1);
+    }
+
+    @Test
+    void search_shouldFilterAndPageFromMemoryUntilClosedThreadsAreTruncated() {
+        rows.add(entry(thread(1L, SupportThreadStatus.NEW, null, "An", 0), 1));
+        rows.add(entry(thread(2L, SupportThreadStatus.IN_PROGRESS, 9L, "Binh", 1), 0));
+        rows.add(entry(thread(3L, SupportThreadStatus.IN_PROGRESS, 8L, "Chi", 2), 0));
+        rows.add(entry(thread(4L, SupportThreadStatus.CLOSED, 9L, "Dung", 3), 0));
+        index.rebuild();
+
+        SupportDtos.ThreadListResponse all = index.search(null, null, null, null, null, false, 9L, 0, 2);
+        assertThat(all.data).extracting(s -> s.id).containsExactly(4L, 3L);
+        assertThat(all.totalElements).isEqualTo(4);
+        assertThat(index.search(SupportThreadStatus.IN_PROGRESS, null, null, null, null, true, 9L, 0, 20).data)
+                .extracting(s -> s.id).containsExactly(2L);
+        assertThat(index.search(null, null, "CHI", null, null, false, 9L, 0, 20).data)
+                .extracting(s -> s.id).containsExactly(3L);
+
+        // max-closed = 1: hội thoại đóng thứ hai đẩy cái cũ ra, lọc gồm CLOSED phải đọc DB
+        SupportDtos.ThreadSummary closed = thread(2L, SupportThreadStatus.CLOSED, 9L, "Binh", 4);
+        index.onThreadChanged(SupportThreadChangedEvent.updated(closed));
+        assertThat(index.search(null, null, null, null, null, false, 9L, 0, 20)).isNull();
+        assertThat(index.search(SupportThreadStatus.IN_PROGRESS, null, null, null, null, false, 9L, 0, 20).data)
+                .extracting(s -> s.id).containsExactly(3L);
+        verify(gateway).inboxChanged(any());
+    }
+
+    private static SupportInboxIndex.Entry entry(SupportDtos.ThreadSummary summary, int unread) {
+        summary.unreadForManager = unread > 0;
+        summary.unreadCount = unread;
+        return new SupportInboxIndex.Entry(summary, unread);
+    }
+
+    private static SupportDtos.ThreadSummary thread(Long id, SupportThreadStatus status, Long managerId,
+                                                    String studentName, int minutes) {
+        SupportDtos.ThreadSummary s = new SupportDtos.ThreadSummary();
+        s.id = id;
+        s.status = status;
+        s.createdAt = T0.plusMinutes(id);
+        s.updatedAt = T0.plusMinutes(minutes);
+        s.lastMessageAt = s.updatedAt;
+        s.student = new SupportDtos.ParticipantInfo();
+        s.student.id = 100 + id;
+        s.student.fullName = studentName;
+        s.student.email = studentName.toLowerCase() + "@x.vn";
+        if (managerId != null) {
+            s.manager = new SupportDtos.ParticipantInfo();
+            s.manager.id = managerId;
+        }
+        return s;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.back_end.service;
+
+import com.example.back_end.dto.SupportDtos;
+import com.example.back_end.security.AuthenticatedUser;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collection;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.*;
+
+class SupportPresenceServiceTest {
+
+    private static final AuthenticatedUser STUDENT = new AuthenticatedUser(1L, "s@x.vn", "Student", Set.of("student"));
+    private static final AuthenticatedUser OTHER = new AuthenticatedUser(3L, "o@x.vn", "Other", Set.of("student"));
+    private static final AuthenticatedUser MANAGER = new AuthenticatedUser(2L, "m@x.vn", "Manager", Set.of("manager"));
+
+    private final SupportRealtimeGateway gateway = mock(SupportRealtimeGateway.class);
+    private final SupportPresenceService presence = new SupportPresenceService(null, null, gateway, 60_000, 2_000) {
+        @Override
+        Long loadThreadStudent(Long threadId) {
+            return threadId == 7L ? 1L : null;
+        }
+    };
+
+    @Test
+    void typing_shouldReachOnlyOtherParticipantsWatchingThread() {
+        presence.connected("s1", STUDENT, 0);
+        presence.connected("m1", MANAGER, 0);
+        presence.connected("o1", OTHER, 0);
+        presence.subscribed("s1", "sub-1", "/topic/support/threads/7", 0);
+        presence.subscribed("m1", "sub-1", "/topic/support/threads/7", 0);
+        presence.subscribed("o1", "sub-1", "/topic/support/threads/7", 0);
+
+        assertThat(presence.typing("m1", 7L, true, 1_000)).isTrue();
+        // Trong cửa sổ throttle: không gửi lại
+        assertThat(presence.typing("m1", 7L, true, 1_500)).isFalse();
+        // Học viên khác không phải người trong hội thoại
+        assertThat(presence.typing("o1", 7L, true, 1_500)).isFalse();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<String>> recipients = ArgumentCaptor.forClass(Collection.class);
+        ArgumentCaptor<SupportDtos.TypingEvent> event = ArgumentCaptor.forClass(SupportDtos.TypingEvent.class);
+        verify(gateway, times(1)).typingChanged(recipients.capture(), event.capture());
+        assertThat(recipients.getValue()).containsExactly("s@x.vn");
+        assertThat(event.getValue().userId).isEqualTo(2L);
+        assertThat(event.getValue().typing).isTrue();
+        assertThat(presence.stats()).containsEntry("typingThrottled", 1L).containsEntry("typingRejected", 1L);
+
+        presence.unsubscribed("s1", "sub-1");
+        assertThat(presence.typing("m1", 7L, false, 1_600)).isFalse();
+        verify(gateway, times(1)).typingChanged(anyCollection(), any());
+    }
+
+    @Test
+    void flush_shouldBatchPresenceChangesAndExpireIdleSessions() {
+        presence.connected("s1", STUDENT, 0);
+        presence.connected("s2", STUDENT, 0);
+        presence.connected("m1", MANAGER, 0);
+
+        presence.flush(1_000);
+        ArgumentCaptor<SupportDtos.PresenceDelta> delta = ArgumentCaptor.forClass(SupportDtos.PresenceDelta.class);
+        verify(gateway).presenceChanged(delta.capture());
+        assertThat(delta.getValue().online).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(presence.onlineUsers()).containsExactlyInAnyOrder(1L, 2L);
+
+        // Học viên còn một phiên hoạt động; quản lý im lặng quá idle-ms
+        presence.disconnected("s1");
+        presence.touch("s2", 50_000);
+        presence.flush(70_000);
+        verify(gateway, times(2)).presenceChanged(delta.capture());
+        assertThat(delta.getValue().online).isEmpty();
+        assertThat(delta.getValue().offline).containsExactly(2L);
+        assertThat(presence.isOnline(1L)).isTrue();
+        assertThat(presence.stats()).containsEntry("expired", 1L).containsEntry("presenceBatches", 2L);
+
+        // Không có thay đổi: không gửi gì
+        presence.flush(71_000);
+        verify(gateway, times(2)).presenceChanged(any());
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.back_end.service;
+
+import com.example.back_end.dto.SupportDtos;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class SupportRealtimeGatewayTest {
+
+    private final SimpMessagingTemplate template = mock(SimpMessagingTemplate.class);
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private SupportRealtimeGateway gateway;
+
+    @AfterEach
+    void tearDown() {
+        if (gateway != null) gateway.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<Message<byte[]>> messageCaptor() {
+        return ArgumentCaptor.forClass(Message.class);
+    }
+
+    private Map<String, Object> json(Message<byte[]> message) throws Exception {
+        return objectMapper.readValue(new String(message.getPayload(), StandardCharsets.UTF_8), new TypeReference<>() {});
+    }
+
+    private static SupportDtos.MessageDto message(long id, String content) {
+        SupportDtos.MessageDto dto = new SupportDtos.MessageDto();
+        dto.id = id;
+        dto.threadId = 7L;
+        dto.content = content;
+        return dto;
+    }
+
+    @Test
+    void relayMode_shouldDeliverSerializedEventsThroughBusInOrder() throws Exception {
+        gateway = new SupportRealtimeGateway(template, objectMapper, new LocalSupportEventBus(), "relay", 100, 0);
+
+        gateway.messageAppended(7L, message(1L, "Xin chào"));
+        gateway.messageAppended(7L, message(2L, "Cần hỗ trợ"));
+
+        ArgumentCaptor<Message<byte[]>> captor = messageCaptor();
+        verify(template, timeout(2_000).times(2)).send(eq("/topic/support/threads/7"), captor.capture());
+        List<Message<byte[]>> sent = captor.getAllValues();
+        assertThat(sent.get(0).getHeaders().get(MessageHeaders.CONTENT_TYPE)).isEqualTo(MimeTypeUtils.APPLICATION_JSON);
+        assertThat(json(sent.get(0))).containsEntry("id", 1).containsEntry("content", "Xin chào");
+        assertThat(json(sent.get(1))).containsEntry("id", 2);
+
+        Map<String, Object> stats = gateway.stats();
+        assertThat(stats).containsEntry("mode", "relay");
+        assertThat((Map<String, Object>) stats.get("bus")).containsEntry("published", 2L);
+        assertThat((Map<String, Object>) stats.get("deliveryLatency")).containsEntry("count", 2L);
+    }
+
+    @Test
+    void relayMode_shouldKeepPresenceOnLocalNode() throws Exception {
+        LocalSupportEventBus bus = new LocalSupportEventBus();
+        SimpMessagingTemplate otherTemplate = mock(SimpMessagingTemplate.class);
+        gateway = new SupportRealtimeGateway(template, objectMapper, bus, "relay", 100, 0);
+        SupportRealtimeGateway other = new SupportRealtimeGateway(otherTemplate, objectMapper, bus, "relay", 100, 0);
+        try {
+            SupportDtos.PresenceDelta delta = new SupportDtos.PresenceDelta();
+            delta.online = List.of();
+            delta.offline = List.of(5L);
+            gateway.presenceChanged(delta);
+            // Tin nhắn vẫn qua bus tới cả hai node; node kia không nhận presence của node này
+            gateway.messageAppended(7L, message(1L, "Xin chào"));
+
+            ArgumentCaptor<Message<byte[]>> captor = messageCaptor();
+            verify(template, timeout(2_000)).send(eq("/topic/support/presence"), captor.capture());
+            assertThat(json(captor.getValue())).containsEntry("offline", List.of(5));
+            verify(otherTemplate, timeout(2_000)).send(eq("/topic/support/threads/7"), any(Message.class));
+            verify(otherTemplate, never()).send(eq("/topic/support/presence"), any(Message.class));
+            assertThat(bus.stats()).containsEntry("published", 1L);
+        } finally {
+            other.shutdown();
+        }
+    }
+
+    @Test
+    void threadCreated_shouldSerializeOnceForBothChannels() throws Exception {
+        LocalSupportEventBus bus = new LocalSupportEventBus();
+        gateway = new SupportRealtimeGateway(template, objectMapper, bus, "simple", 100, 0);
+        SupportDtos.ThreadDetail detail = new SupportDtos.ThreadDetail();
+        detail.id = 7L;
+        detail.topic = "payment";
+
+        gateway.threadCreated(detail);
+
+        ArgumentCaptor<Message<byte[]>> captor = messageCaptor();
+        verify(template, timeout(2_000)).send(eq("/topic/support/manager-alerts"), captor.capture());
+        verify(template, timeout(2_000)).send(eq("/topic/support/thread-updates"), captor.capture());
+        assertThat(captor.getAllValues().get(0).getPayload()).isSameAs(captor.getAllValues().get(1).getPayload());
+        assertThat(json(captor.getAllValues().get(0))).containsEntry("topic", "payment");
+        verify(template, never()).convertAndSend(anyString(), any(Object.class));
+        assertThat(bus.stats()).containsEntry("published", 0L);
+    }
+
+    @Test
+    void threadUpdated_shouldCoalesceBurstForSameThread() throws Exception {
+        gateway = new SupportRealtimeGateway(template, objectMapper, new LocalSupportEventBus(), "simple", 100, 200);
+
+        for (int i = 1; i <= 5; i++) {
+            SupportDtos.ThreadSummary summary = new SupportDtos.ThreadSummary();
+            summary.id = 7L;
+            summary.lastMessagePreview = "Tin " + i;
+            gateway.threadUpdated(summary);
+        }
+
+        ArgumentCaptor<Message<byte[]>> captor = messageCaptor();
+        verify(template, timeout(2_000)).send(eq("/topic/support/thread-updates"), captor.capture());
+        assertThat(json(captor.getValue())).containsEntry("lastMessagePreview", "Tin 5");
+        verify(template, after(300).times(1)).send(eq("/topic/support/thread-updates"), any(Message.class));
+        assertThat(gateway.stats()).containsEntry("coalesced", 4L);
+    }
+}
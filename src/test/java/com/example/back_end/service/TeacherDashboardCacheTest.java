@@ -0,0 +1,55 @@
+package com.example.back_end.service;
+
+import com.example.back_end.dto.TeacherAnalyticsDtos;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TeacherDashboardCacheTest {
+
+    private final TeacherDashboardCache cache = new TeacherDashboardCache(60_000);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private TeacherDashboardCache.Computed load(Long... courseIds) {
+        loads.incrementAndGet();
+        return new TeacherDashboardCache.Computed(new TeacherAnalyticsDtos.DashboardResponse(), Set.of(courseIds));
+    }
+
+    @Test
+    void get_shouldReuseDashboardUntilOneOfItsCoursesIsInvalidated() {
+        TeacherAnalyticsDtos.DashboardResponse first = cache.get(1L, 30, () -> load(10L, 11L));
+        cache.get(2L, 30, () -> load(20L));
+
+        assertThat(cache.get(1L, 30, () -> load(10L, 11L))).isSameAs(first);
+        assertThat(loads).hasValue(2);
+
+        cache.invalidateCourse(11L);
+
+        assertThat(cache.get(1L, 30, () -> load(10L, 11L))).isNotSameAs(first);
+        cache.get(2L, 30, () -> load(20L));
+        assertThat(loads).hasValue(3);
+    }
+
+    @Test
+    void get_shouldKeepWindowsSeparate() {
+        cache.get(1L, 7, () -> load(10L));
+        cache.get(1L, 30, () -> load(10L));
+
+        assertThat(loads).hasValue(2);
+        assertThat(cache.stats()).containsEntry("entries", 2);
+    }
+
+    @Test
+    void get_shouldNotCacheArbitraryWindows() {
+        for (int days = 8; days < 20; days++) {
+            cache.get(1L, days, () -> load(10L));
+        }
+        cache.get(1L, 8, () -> load(10L));
+
+        assertThat(loads).hasValue(13);
+        assertThat(cache.stats()).containsEntry("entries", 0).containsEntry("uncached", 13L);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.back_end.util;
+
+import com.example.back_end.repository.CourseRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.repository.Query;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class KeysetCursorTest {
+
+    private static final LocalDateTime CREATED = LocalDateTime.of(2026, 3, 1, 9, 30, 15, 123_456_700);
+
+    @Test
+    void encode_shouldRoundTripIncludingFractionalSeconds() {
+        KeysetCursor cursor = new KeysetCursor(CREATED, 42L);
+
+        String token = cursor.encode();
+
+        assertThat(token).doesNotContain("|", "=", "+", "/");
+        assertThat(KeysetCursor.decode(token)).isEqualTo(cursor);
+        assertThat(KeysetCursor.decode(" " + token + " ")).isEqualTo(cursor);
+    }
+
+    @Test
+    void decode_shouldTreatBlankAsFirstPageAndRejectMalformedTokens() {
+        assertThat(KeysetCursor.decode(null)).isEqualTo(KeysetCursor.FIRST);
+        assertThat(KeysetCursor.decode("  ")).isEqualTo(KeysetCursor.FIRST);
+
+        assertThatThrownBy(() -> KeysetCursor.decode("not base64!")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> KeysetCursor.decode(token("2026-03-01T09:30"))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> KeysetCursor.decode(token("2026-03-01T09:30|abc"))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> KeysetCursor.decode(token("yesterday|5"))).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void cursorsOfRowsWithEqualCreatedAt_shouldStayDistinct() {
+        KeysetCursor first = new KeysetCursor(CREATED, 10L);
+        KeysetCursor second = new KeysetCursor(CREATED, 9L);
+
+        assertThat(first.encode()).isNotEqualTo(second.encode());
+        assertThat(KeysetCursor.decode(second.encode()).id()).isEqualTo(9L);
+    }
+
+    @Test
+    void keysetQueries_shouldBreakTiesOnIdInBothFilterAndOrder() {
+        // Hàng cùng created_at với cursor chỉ được lấy khi id nhỏ hơn, và thứ tự phải khớp điều kiện đó
+        Method[] afterQueries = Arrays.stream(CourseRepository.class.getDeclaredMethods())
+                .filter(m -> m.getName().endsWith("After"))
+                .toArray(Method[]::new);
+        assertThat(afterQueries).hasSize(2);
+        for (Method m : afterQueries) {
+            String sql = m.getAnnotation(Query.class).value().replaceAll("\\s+", " ");
+            assertThat(sql).contains("(c.created_at < :afterCreatedAt OR (c.created_at = :afterCreatedAt AND c.id < :afterId))")
+                    .contains("ORDER BY c.created_at DESC, c.id DESC");
+        }
+    }
+
+    private static String token(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.back_end.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SeededPermutationTest {
+
+    private static final List<Long> IDS = LongStream.rangeClosed(1, 100).boxed().toList();
+
+    @Test
+    void shuffle_shouldBeDeterministicPerSeedAndSalt() {
+        List<Long> a = SeededPermutation.shuffle(IDS, Long::longValue, 12345, 77);
+        List<Long> b = SeededPermutation.shuffle(IDS, Long::longValue, 12345, 77);
+        List<Long> otherAttempt = SeededPermutation.shuffle(IDS, Long::longValue, 12345, 78);
+
+        assertThat(a).isEqualTo(b).containsExactlyInAnyOrderElementsOf(IDS).isNotEqualTo(IDS);
+        assertThat(otherAttempt).isNotEqualTo(a);
+    }
+
+    @Test
+    void shuffle_shouldKeepRelativeOrderWhenAnElementDisappears() {
+        List<Long> full = SeededPermutation.shuffle(IDS, Long::longValue, 99, 5);
+        List<Long> without = new ArrayList<>(IDS);
+        without.remove(Long.valueOf(40));
+
+        List<Long> expected = new ArrayList<>(full);
+        expected.remove(Long.valueOf(40));
+        assertThat(SeededPermutation.shuffle(without, Long::longValue, 99, 5)).isEqualTo(expected);
+    }
+
+    @Test
+    void shuffle_shouldKeepInputOrderForZeroSeed() {
+        assertThat(SeededPermutation.shuffle(IDS, Long::longValue, 0, 5)).isSameAs(IDS);
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.back_end.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SlidingWindowRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_900);
+    private final SlidingWindowRateLimiter limiter = new SlidingWindowRateLimiter("test", 3, 1_000, now::get);
+
+    @Test
+    void tryAcquire_shouldLimitEachKeySeparately() {
+        assertThat(limiter.tryAcquire("a")).isTrue();
+        assertThat(limiter.tryAcquire("a")).isTrue();
+        assertThat(limiter.tryAcquire("a")).isTrue();
+        assertThat(limiter.tryAcquire("a")).isFalse();
+        assertThat(limiter.tryAcquire("b")).isTrue();
+    }
+
+    @Test
+    void tryAcquire_shouldWeightPreviousWindowAcrossBoundary() {
+        for (int i = 0; i < 3; i++) limiter.tryAcquire("a");
+
+        // Đầu cửa sổ kế tiếp: 3 lần trước vẫn được tính gần đủ
+        now.addAndGet(100);
+        assertThat(limiter.tryAcquire("a")).isFalse();
+
+        // Đi qua 3/4 cửa sổ mới: còn ~0.75 lần từ cửa sổ trước
+        now.addAndGet(750);
+        assertThat(limiter.tryAcquire("a")).isTrue();
+        assertThat(limiter.tryAcquire("a")).isTrue();
+        assertThat(limiter.tryAcquire("a")).isFalse();
+    }
+
+    @Test
+    void evictIdle_shouldDropKeysUnusedForTwoWindows() {
+        limiter.tryAcquire("a");
+        now.addAndGet(2_500);
+        limiter.tryAcquire("b");
+
+        assertThat(limiter.evictIdle()).isEqualTo(1);
+        assertThat(limiter.snapshot()).containsEntry("keys", 1);
+    }
+}